@@ -56,6 +56,6 @@ import org.slf4j.LoggerFactory;
 
 public class cassandraConstants {
 
-  public static final String VERSION = "19.39.0";
+  public static final String VERSION = "19.40.0";
 
 }
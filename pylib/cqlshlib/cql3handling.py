@@ -73,6 +73,8 @@ class Cql3ParsingRuleSet(CqlParsingRuleSet):
         ('default_time_to_live', None),
         ('speculative_retry', None),
         ('memtable_flush_period_in_ms', None),
+        ('rows_per_partition_to_cache', None),
+        ('bloom_filter_type', None),
     )
 
     columnfamily_layout_map_options = (
@@ -0,0 +1,336 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.cache;
+
+import java.nio.ByteBuffer;
+import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
+
+import com.googlecode.concurrentlinkedhashmap.ConcurrentLinkedHashMap;
+import com.googlecode.concurrentlinkedhashmap.EvictionListener;
+import com.googlecode.concurrentlinkedhashmap.Weigher;
+import org.cliffc.high_scale_lib.NonBlockingHashMap;
+import org.cliffc.high_scale_lib.NonBlockingHashSet;
+
+import org.apache.cassandra.config.DatabaseDescriptor;
+import org.apache.cassandra.metrics.CacheMetrics;
+
+/**
+ * A node-wide, off-heap cache of uncompressed chunks of compressed sstables, keyed by data file and chunk offset.
+ * CompressedRandomAccessReader copies chunks in and out of it, so a hot chunk only gets uncompressed once.
+ */
+public class ChunkCache implements ICache<ChunkCache.Key, ByteBuffer>
+{
+    public static final ChunkCache instance = new ChunkCache(DatabaseDescriptor.getChunkCacheSizeInMB() * 1024 * 1024);
+
+    private final ConcurrentLinkedHashMap<Key, RefCountedMemory> map;
+    // the cached chunks of each file, so that releasing an sstable doesn't go through the whole cache
+    private final ConcurrentMap<String, Set<Key>> keysByPath = new NonBlockingHashMap<>();
+    public final CacheMetrics metrics;
+
+    private ChunkCache(long capacity)
+    {
+        EvictionListener<Key, RefCountedMemory> listener = new EvictionListener<Key, RefCountedMemory>()
+        {
+            public void onEviction(Key key, RefCountedMemory mem)
+            {
+                mem.unreference();
+                // unless it has been cached again since
+                if (!map.containsKey(key))
+                    unindex(key);
+            }
+        };
+
+        map = new ConcurrentLinkedHashMap.Builder<Key, RefCountedMemory>()
+              .weigher(new Weigher<RefCountedMemory>()
+              {
+                  public int weightOf(RefCountedMemory value)
+                  {
+                      return (int) value.size();
+                  }
+              })
+              .maximumWeightedCapacity(capacity)
+              .concurrencyLevel(ConcurrentLinkedHashCache.DEFAULT_CONCURENCY_LEVEL)
+              .listener(listener)
+              .build();
+        metrics = new CacheMetrics("ChunkCache", this);
+    }
+
+    /**
+     * Copies the cached chunk, if any, to buffer, starting at its position.
+     *
+     * @return the length of the chunk, or -1 if it isn't cached
+     */
+    public int read(String path, long offset, ByteBuffer buffer)
+    {
+        if (map.capacity() == 0)
+            return -1;
+
+        metrics.requests.mark();
+        RefCountedMemory mem = map.get(new Key(path, offset));
+        if (mem == null || !mem.reference())
+            return -1;
+
+        try
+        {
+            int length = (int) mem.size();
+            ByteBuffer dst = buffer.duplicate();
+            dst.limit(dst.position() + length);
+            mem.getBytes(0, dst);
+            metrics.hits.mark();
+            return length;
+        }
+        finally
+        {
+            mem.unreference();
+        }
+    }
+
+    /**
+     * Caches the remaining bytes of buffer as the chunk at the given offset.
+     */
+    public void put(String path, long offset, ByteBuffer buffer)
+    {
+        if (map.capacity() == 0 || !buffer.hasRemaining())
+            return;
+
+        RefCountedMemory mem = serialize(buffer);
+        if (mem == null)
+            return; // out of memory.  never mind.
+
+        Key key = new Key(path, offset);
+        RefCountedMemory old = map.put(key, mem);
+        if (old != null)
+            old.unreference();
+        index(key);
+    }
+
+    /**
+     * Drops all the chunks of the given file.
+     */
+    public void invalidate(String path)
+    {
+        Set<Key> keys = keysByPath.remove(path);
+        if (keys == null)
+            return;
+
+        for (Key key : keys)
+        {
+            RefCountedMemory mem = map.remove(key);
+            if (mem != null)
+                mem.unreference();
+        }
+    }
+
+    private void index(Key key)
+    {
+        Set<Key> keys = keysByPath.get(key.path);
+        if (keys == null)
+        {
+            Set<Key> newKeys = new NonBlockingHashSet<>();
+            keys = keysByPath.putIfAbsent(key.path, newKeys);
+            if (keys == null)
+                keys = newKeys;
+        }
+        keys.add(key);
+    }
+
+    private void unindex(Key key)
+    {
+        Set<Key> keys = keysByPath.get(key.path);
+        if (keys != null)
+            keys.remove(key);
+    }
+
+    private static RefCountedMemory serialize(ByteBuffer buffer)
+    {
+        RefCountedMemory mem;
+        try
+        {
+            mem = new RefCountedMemory(buffer.remaining());
+        }
+        catch (OutOfMemoryError e)
+        {
+            return null;
+        }
+        mem.setBytes(0, buffer);
+        return mem;
+    }
+
+    public long capacity()
+    {
+        return map.capacity();
+    }
+
+    public void setCapacity(long capacity)
+    {
+        map.setCapacity(capacity);
+    }
+
+    public boolean putIfAbsent(Key key, ByteBuffer value)
+    {
+        RefCountedMemory mem = serialize(value);
+        if (mem == null)
+            return false;
+
+        RefCountedMemory old = map.putIfAbsent(key, mem);
+        if (old != null)
+        {
+            mem.unreference();
+            return false;
+        }
+        index(key);
+        return true;
+    }
+
+    public boolean replace(Key key, ByteBuffer oldToReplace, ByteBuffer value)
+    {
+        // if there is no old value in our map, we fail
+        RefCountedMemory old = map.get(key);
+        if (old == null)
+            return false;
+
+        RefCountedMemory mem = serialize(value);
+        if (mem == null)
+            return false; // out of memory.  never mind.
+
+        // reference old guy before reading it
+        if (!old.reference())
+        {
+            mem.unreference();
+            return false; // we have already freed hence noop.
+        }
+        ByteBuffer oldValue;
+        try
+        {
+            oldValue = ByteBuffer.allocate((int) old.size());
+            old.getBytes(0, oldValue);
+        }
+        finally
+        {
+            old.unreference();
+        }
+        boolean success = oldValue.equals(oldToReplace) && map.replace(key, old, mem);
+
+        if (success)
+            old.unreference(); // so it will be eventually be cleaned
+        else
+            mem.unreference();
+        return success;
+    }
+
+    public void put(Key key, ByteBuffer value)
+    {
+        put(key.path, key.offset, value);
+    }
+
+    public ByteBuffer get(Key key)
+    {
+        RefCountedMemory mem = map.get(key);
+        if (mem == null || !mem.reference())
+            return null;
+
+        try
+        {
+            ByteBuffer buffer = ByteBuffer.allocate((int) mem.size());
+            mem.getBytes(0, buffer);
+            return buffer;
+        }
+        finally
+        {
+            mem.unreference();
+        }
+    }
+
+    public void remove(Key key)
+    {
+        RefCountedMemory mem = map.remove(key);
+        if (mem != null)
+            mem.unreference();
+        unindex(key);
+    }
+
+    public int size()
+    {
+        return map.size();
+    }
+
+    public long weightedSize()
+    {
+        return map.weightedSize();
+    }
+
+    public void clear()
+    {
+        // unlike eviction, removal doesn't go through the listener
+        for (Key key : map.keySet())
+            remove(key);
+        keysByPath.clear();
+    }
+
+    public Set<Key> keySet()
+    {
+        return map.keySet();
+    }
+
+    public Set<Key> hotKeySet(int n)
+    {
+        return map.descendingKeySetWithLimit(n);
+    }
+
+    public boolean containsKey(Key key)
+    {
+        return map.containsKey(key);
+    }
+
+    public static class Key
+    {
+        public final String path;
+        public final long offset;
+
+        public Key(String path, long offset)
+        {
+            this.path = path;
+            this.offset = offset;
+        }
+
+        @Override
+        public boolean equals(Object o)
+        {
+            if (this == o)
+                return true;
+            if (!(o instanceof Key))
+                return false;
+
+            Key that = (Key) o;
+            return offset == that.offset && path.equals(that.path);
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return 31 * path.hashCode() + (int) (offset ^ (offset >>> 32));
+        }
+
+        @Override
+        public String toString()
+        {
+            return path + "@" + offset;
+        }
+    }
+}
@@ -0,0 +1,810 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.cache;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.apache.cassandra.config.CFMetaData;
+import org.apache.cassandra.config.Schema;
+import org.apache.cassandra.db.RowIndexEntry;
+import org.apache.cassandra.db.TypeSizes;
+import org.apache.cassandra.io.ISerializer;
+import org.apache.cassandra.io.sstable.Descriptor;
+import org.apache.cassandra.io.util.DataOutputBuffer;
+import org.apache.cassandra.io.util.Memory;
+import org.apache.cassandra.io.util.MemoryInputStream;
+import org.apache.cassandra.io.util.MemoryOutputStream;
+import org.apache.cassandra.utils.vint.EncodedDataInputStream;
+import org.apache.cassandra.utils.vint.EncodedDataOutputStream;
+import org.cliffc.high_scale_lib.NonBlockingHashMapLong;
+
+/**
+ * A key cache that keeps its entries off-heap, keys included, so that it adds no object per entry for the garbage
+ * collector to go through.
+ *
+ * The cache is split in segments, each with its own lock.  A segment appends its entries, in the form they are
+ * saved in, to the newest of its slabs, and finds them through a hash table of their locations, both off-heap.
+ * Once all of its slabs are full, a segment reuses the oldest one: the entries read since it was last written to
+ * are packed at its start, and the others evicted.
+ *
+ * Entries refer to their sstable by a number: only the descriptors of the sstables with cached entries are kept
+ * on-heap.  Entries larger than a slab, which only the column index of old sstables can make, are not cached.
+ */
+public class SerializingKeyCache implements ICache<KeyCacheKey, RowIndexEntry>
+{
+    private static final Logger logger = LoggerFactory.getLogger(SerializingKeyCache.class);
+    private static final TypeSizes ENCODED_TYPE_SIZES = TypeSizes.VINT;
+
+    private static final int SEGMENTS = 16;
+    private static final int MIN_SLAB_SIZE = 4 << 10;
+    private static final int MAX_SLAB_SIZE = 1 << 20;
+    private static final int MIN_BUCKETS = 64;
+
+    // layout of an entry in a slab, followed by its key and value
+    private static final int NEXT = 0; // location of the next entry of the same bucket
+    private static final int HASH = 8;
+    private static final int LENGTH = 12; // of the whole entry, a multiple of 8
+    private static final int DESCRIPTOR = 16;
+    private static final int KEY_LENGTH = 20;
+    private static final int FLAGS = 24;
+    private static final int HEADER_SIZE = 32;
+
+    private static final byte DEAD = 1; // removed, replaced or evicted
+    private static final byte READ = 2; // since its slab was last written to
+    private static final long NONE = -1L;
+
+    private final int slabSize;
+    private volatile long capacity;
+    private final Segment[] segments = new Segment[SEGMENTS];
+    private final Descriptors descriptors = new Descriptors();
+
+    private SerializingKeyCache(long capacity)
+    {
+        this.capacity = capacity;
+        this.slabSize = (int) Math.max(MIN_SLAB_SIZE, Math.min(MAX_SLAB_SIZE, capacity / SEGMENTS / 4)) & ~7;
+        for (int i = 0; i < SEGMENTS; i++)
+            segments[i] = new Segment(capacity / SEGMENTS);
+    }
+
+    public static SerializingKeyCache create(long weightedCapacity)
+    {
+        return new SerializingKeyCache(weightedCapacity);
+    }
+
+    /**
+     * Entries are serialized with the comparator of their table and read back according to the version of their
+     * sstable, so the entries of a dropped table are not cached anymore.
+     */
+    private static ISerializer<RowIndexEntry> serializer(Descriptor desc)
+    {
+        CFMetaData cfm = Schema.instance.getCFMetaData(desc.ksname, desc.cfname);
+        if (cfm == null)
+            return null;
+        return cfm.comparator.rowIndexEntrySerializer().forCache(desc.version);
+    }
+
+    private static int hash(int descriptor, byte[] key)
+    {
+        int h = 31 * descriptor + Arrays.hashCode(key);
+        // spread the bits, the high ones picking the segment and the low ones the bucket
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h;
+    }
+
+    private Segment segment(int hash)
+    {
+        return segments[(hash >>> 28) & (SEGMENTS - 1)];
+    }
+
+    private static long location(int slab, int offset)
+    {
+        return ((long) slab << 32) | offset;
+    }
+
+    private static int slab(long location)
+    {
+        return (int) (location >>> 32);
+    }
+
+    private static int offset(long location)
+    {
+        return (int) location;
+    }
+
+    public long capacity()
+    {
+        return capacity;
+    }
+
+    public void setCapacity(long capacity)
+    {
+        this.capacity = capacity;
+        for (Segment segment : segments)
+            segment.setLimit(capacity / SEGMENTS);
+    }
+
+    public void put(KeyCacheKey key, RowIndexEntry value)
+    {
+        put(key, value, false, null);
+    }
+
+    public boolean putIfAbsent(KeyCacheKey key, RowIndexEntry value)
+    {
+        return put(key, value, true, null);
+    }
+
+    public boolean replace(KeyCacheKey key, RowIndexEntry old, RowIndexEntry value)
+    {
+        return put(key, value, false, old);
+    }
+
+    private boolean put(KeyCacheKey key, RowIndexEntry value, boolean ifAbsent, RowIndexEntry expected)
+    {
+        ISerializer<RowIndexEntry> serializer = serializer(key.desc);
+        if (serializer == null)
+            return false;
+
+        long length = (HEADER_SIZE + key.key.length + serializer.serializedSize(value, ENCODED_TYPE_SIZES) + 7) & ~7L;
+        if (length > slabSize)
+            return false;
+
+        int descriptor = descriptors.acquire(key.desc);
+        int hash = hash(descriptor, key.key);
+        boolean added = segment(hash).put(hash, descriptor, key.key, value, serializer, (int) length, ifAbsent, expected);
+        if (!added)
+            descriptors.release(descriptor);
+        return added;
+    }
+
+    public RowIndexEntry get(KeyCacheKey key)
+    {
+        int descriptor = descriptors.find(key.desc);
+        if (descriptor < 0)
+            return null;
+
+        ISerializer<RowIndexEntry> serializer = serializer(key.desc);
+        if (serializer == null)
+            return null;
+
+        int hash = hash(descriptor, key.key);
+        return segment(hash).get(hash, descriptor, key.key, serializer);
+    }
+
+    public boolean containsKey(KeyCacheKey key)
+    {
+        int descriptor = descriptors.find(key.desc);
+        if (descriptor < 0)
+            return false;
+
+        int hash = hash(descriptor, key.key);
+        return segment(hash).contains(hash, descriptor, key.key);
+    }
+
+    public void remove(KeyCacheKey key)
+    {
+        int descriptor = descriptors.find(key.desc);
+        if (descriptor < 0)
+            return;
+
+        int hash = hash(descriptor, key.key);
+        segment(hash).remove(hash, descriptor, key.key);
+    }
+
+    public int size()
+    {
+        int size = 0;
+        for (Segment segment : segments)
+            size += segment.size();
+        return size;
+    }
+
+    /**
+     * @return the off-heap memory taken by the slabs and hash tables of the cache
+     */
+    public long weightedSize()
+    {
+        long size = 0;
+        for (Segment segment : segments)
+            size += segment.weightedSize();
+        return size;
+    }
+
+    public void clear()
+    {
+        for (Segment segment : segments)
+            segment.clear();
+    }
+
+    public Set<KeyCacheKey> keySet()
+    {
+        return hotKeySet(Integer.MAX_VALUE);
+    }
+
+    /**
+     * @return up to n keys, taking the most recently written or read ones of each segment in turn
+     */
+    public Set<KeyCacheKey> hotKeySet(int n)
+    {
+        List<Iterator<KeyCacheKey>> keys = new ArrayList<>(SEGMENTS);
+        for (Segment segment : segments)
+            keys.add(segment.keys().iterator());
+
+        Set<KeyCacheKey> hotKeys = new LinkedHashSet<>();
+        boolean found = true;
+        while (found && hotKeys.size() < n)
+        {
+            found = false;
+            for (int i = 0; i < SEGMENTS && hotKeys.size() < n; i++)
+            {
+                if (keys.get(i).hasNext())
+                {
+                    hotKeys.add(keys.get(i).next());
+                    found = true;
+                }
+            }
+        }
+        return hotKeys;
+    }
+
+    private final class Segment
+    {
+        private Memory table;
+        private int buckets;
+        private Memory[] slabs = new Memory[0];
+        // when each slab was last started, to find the oldest one
+        private long[] started = new long[0];
+        // where the entries of each slab end
+        private int[] ends = new int[0];
+        private int slabCount;
+        // of the memory taken by the slabs and the table
+        private long limit;
+        // the slab being written, and where
+        private int current = -1;
+        private int position;
+        private long slabsStarted;
+        private int size;
+
+        private Segment(long limit)
+        {
+            this.limit = limit;
+            resize(MIN_BUCKETS);
+        }
+
+        private Memory memory(long location)
+        {
+            return slabs[slab(location)];
+        }
+
+        private long bucket(int hash)
+        {
+            return (hash & (buckets - 1)) * 8L;
+        }
+
+        private long find(int hash, int descriptor, byte[] key)
+        {
+            for (long location = table.getLong(bucket(hash)); location != NONE; location = memory(location).getLong(offset(location) + NEXT))
+            {
+                Memory slab = memory(location);
+                int offset = offset(location);
+                if (slab.getInt(offset + HASH) == hash
+                    && slab.getInt(offset + DESCRIPTOR) == descriptor
+                    && slab.getInt(offset + KEY_LENGTH) == key.length
+                    && keyEquals(slab, offset + HEADER_SIZE, key))
+                    return location;
+            }
+            return NONE;
+        }
+
+        private boolean keyEquals(Memory slab, int offset, byte[] key)
+        {
+            for (int i = 0; i < key.length; i++)
+            {
+                if (slab.getByte(offset + i) != key[i])
+                    return false;
+            }
+            return true;
+        }
+
+        private RowIndexEntry read(long location, ISerializer<RowIndexEntry> serializer)
+        {
+            Memory slab = memory(location);
+            int offset = offset(location);
+            try
+            {
+                int valueOffset = offset + HEADER_SIZE + slab.getInt(offset + KEY_LENGTH);
+                return serializer.deserialize(new EncodedDataInputStream(new MemoryInputStream(slab, valueOffset)));
+            }
+            catch (IOException e)
+            {
+                logger.debug("Cannot fetch in memory data, we will failback to read from disk ", e);
+                return null;
+            }
+        }
+
+        /**
+         * Entries have no equals(), so the value is compared in its serialized form.
+         */
+        private boolean valueEquals(long location, RowIndexEntry expected, ISerializer<RowIndexEntry> serializer)
+        {
+            DataOutputBuffer buffer = new DataOutputBuffer();
+            try
+            {
+                serializer.serialize(expected, new EncodedDataOutputStream(buffer));
+            }
+            catch (IOException e)
+            {
+                throw new RuntimeException(e);
+            }
+
+            Memory slab = memory(location);
+            int offset = offset(location);
+            int valueOffset = HEADER_SIZE + slab.getInt(offset + KEY_LENGTH);
+            if (valueOffset + buffer.getLength() > slab.getInt(offset + LENGTH))
+                return false;
+
+            byte[] value = new byte[buffer.getLength()];
+            slab.getBytes(offset + valueOffset, value, 0, value.length);
+            return Arrays.equals(value, Arrays.copyOf(buffer.getData(), buffer.getLength()));
+        }
+
+        synchronized RowIndexEntry get(int hash, int descriptor, byte[] key, ISerializer<RowIndexEntry> serializer)
+        {
+            long location = find(hash, descriptor, key);
+            if (location == NONE)
+                return null;
+
+            memory(location).setByte(offset(location) + FLAGS, READ);
+            return read(location, serializer);
+        }
+
+        synchronized boolean contains(int hash, int descriptor, byte[] key)
+        {
+            return find(hash, descriptor, key) != NONE;
+        }
+
+        synchronized boolean put(int hash, int descriptor, byte[] key, RowIndexEntry value, ISerializer<RowIndexEntry> serializer, int length, boolean ifAbsent, RowIndexEntry expected)
+        {
+            long existing = find(hash, descriptor, key);
+            if (ifAbsent && existing != NONE)
+                return false;
+            if (expected != null && (existing == NONE || !valueEquals(existing, expected, serializer)))
+                return false;
+
+            long location = allocate(length);
+            if (location == NONE)
+                return false;
+
+            Memory slab = memory(location);
+            int offset = offset(location);
+            slab.setInt(offset + HASH, hash);
+            slab.setInt(offset + LENGTH, length);
+            slab.setInt(offset + DESCRIPTOR, descriptor);
+            slab.setInt(offset + KEY_LENGTH, key.length);
+            slab.setByte(offset + FLAGS, (byte) 0);
+            slab.setBytes(offset + HEADER_SIZE, key, 0, key.length);
+            try
+            {
+                serializer.serialize(value, new EncodedDataOutputStream(new MemoryOutputStream(slab, offset + HEADER_SIZE + key.length)));
+            }
+            catch (IOException e)
+            {
+                throw new RuntimeException(e);
+            }
+
+            // allocating may have evicted the existing entry
+            existing = find(hash, descriptor, key);
+            if (existing != NONE)
+                unlink(existing);
+
+            slab.setLong(offset + NEXT, table.getLong(bucket(hash)));
+            table.setLong(bucket(hash), location);
+            if (++size > buckets * 3L / 4)
+                resize(buckets * 2);
+            return true;
+        }
+
+        synchronized void remove(int hash, int descriptor, byte[] key)
+        {
+            long location = find(hash, descriptor, key);
+            if (location != NONE)
+                unlink(location);
+        }
+
+        /**
+         * Removes the entry from its bucket and marks it dead, so that evicting its slab skips it.
+         */
+        private void unlink(long location)
+        {
+            Memory slab = memory(location);
+            int offset = offset(location);
+            long next = slab.getLong(offset + NEXT);
+            long bucket = bucket(slab.getInt(offset + HASH));
+
+            long previous = table.getLong(bucket);
+            if (previous == location)
+            {
+                table.setLong(bucket, next);
+            }
+            else
+            {
+                while (memory(previous).getLong(offset(previous) + NEXT) != location)
+                    previous = memory(previous).getLong(offset(previous) + NEXT);
+                memory(previous).setLong(offset(previous) + NEXT, next);
+            }
+
+            slab.setByte(offset + FLAGS, DEAD);
+            size--;
+            descriptors.release(slab.getInt(offset + DESCRIPTOR));
+        }
+
+        private long allocate(int length)
+        {
+            // the entries read get one more round of the slabs, so going round twice is bound to make room
+            for (int i = 0; current < 0 || position + length > slabSize; i++)
+            {
+                if (i > 2 * slabCount || !startSlab())
+                    return NONE;
+            }
+            long location = location(current, position);
+            position += length;
+            return location;
+        }
+
+        /**
+         * Makes a new slab, or the oldest one if there is no room for another, the one entries are written to.
+         */
+        private boolean startSlab()
+        {
+            if (current >= 0)
+                ends[current] = position;
+
+            // the table may have grown into the room of the slabs
+            while (slabCount > 1 && memorySize() > limit)
+                freeOldest();
+
+            int next;
+            if (memorySize() + slabSize <= limit)
+            {
+                next = freeSlot();
+                try
+                {
+                    slabs[next] = Memory.allocate(slabSize);
+                }
+                catch (OutOfMemoryError e)
+                {
+                    return false;
+                }
+                slabCount++;
+                position = 0;
+            }
+            else if (slabCount > 0)
+            {
+                next = oldest();
+                current = next;
+                position = compact(next);
+            }
+            else
+            {
+                return false; // no capacity
+            }
+
+            current = next;
+            started[next] = ++slabsStarted;
+            return true;
+        }
+
+        private int freeSlot()
+        {
+            for (int i = 0; i < slabs.length; i++)
+            {
+                if (slabs[i] == null)
+                    return i;
+            }
+            int slot = slabs.length;
+            slabs = Arrays.copyOf(slabs, slot + 1);
+            started = Arrays.copyOf(started, slot + 1);
+            ends = Arrays.copyOf(ends, slot + 1);
+            return slot;
+        }
+
+        private int oldest()
+        {
+            int oldest = -1;
+            for (int i = 0; i < slabs.length; i++)
+            {
+                if (slabs[i] != null && (oldest < 0 || started[i] < started[oldest]))
+                    oldest = i;
+            }
+            return oldest;
+        }
+
+        /**
+         * Moves the entries of the slab that were read to its start, evicting the others.
+         *
+         * @return where the entries kept end
+         */
+        private int compact(int slab)
+        {
+            Memory memory = slabs[slab];
+            int end = ends[slab];
+            int kept = 0;
+            for (int offset = 0; offset < end; )
+            {
+                int length = memory.getInt(offset + LENGTH);
+                byte flags = memory.getByte(offset + FLAGS);
+                if (flags == READ)
+                {
+                    // the entry is moved down, so copying upwards never overwrites what is left to copy
+                    for (int i = 0; i < length; i += 8)
+                        memory.setLong(kept + i, memory.getLong(offset + i));
+                    memory.setByte(kept + FLAGS, (byte) 0);
+                    relink(location(slab, offset), location(slab, kept));
+                    kept += length;
+                }
+                else if (flags != DEAD)
+                {
+                    unlink(location(slab, offset));
+                }
+                offset += length;
+            }
+            ends[slab] = kept;
+            return kept;
+        }
+
+        /**
+         * Points the bucket of the entry moved from the given location to its new one.
+         */
+        private void relink(long from, long to)
+        {
+            long bucket = bucket(memory(to).getInt(offset(to) + HASH));
+            long previous = table.getLong(bucket);
+            if (previous == from)
+            {
+                table.setLong(bucket, to);
+                return;
+            }
+            while (memory(previous).getLong(offset(previous) + NEXT) != from)
+                previous = memory(previous).getLong(offset(previous) + NEXT);
+            memory(previous).setLong(offset(previous) + NEXT, to);
+        }
+
+        private void evict(int slab)
+        {
+            int end = slab == current ? position : ends[slab];
+            for (int offset = 0; offset < end; offset += slabs[slab].getInt(offset + LENGTH))
+            {
+                if (slabs[slab].getByte(offset + FLAGS) != DEAD)
+                    unlink(location(slab, offset));
+            }
+            ends[slab] = 0;
+            if (slab == current)
+                position = 0;
+        }
+
+        private void resize(int newBuckets)
+        {
+            Memory newTable = Memory.allocate(newBuckets * 8L);
+            newTable.setMemory(0, newTable.size(), (byte) 0xFF); // NONE
+            if (table != null)
+            {
+                for (long bucket = 0; bucket < buckets * 8L; bucket += 8)
+                {
+                    long location = table.getLong(bucket);
+                    while (location != NONE)
+                    {
+                        Memory slab = memory(location);
+                        int offset = offset(location);
+                        long next = slab.getLong(offset + NEXT);
+                        long newBucket = (slab.getInt(offset + HASH) & (newBuckets - 1)) * 8L;
+                        slab.setLong(offset + NEXT, newTable.getLong(newBucket));
+                        newTable.setLong(newBucket, location);
+                        location = next;
+                    }
+                }
+                table.free();
+            }
+            table = newTable;
+            buckets = newBuckets;
+        }
+
+        private void freeOldest()
+        {
+            int slab = oldest();
+            if (slab == current)
+            {
+                ends[current] = position;
+                current = -1;
+            }
+            evict(slab);
+            slabs[slab].free();
+            slabs[slab] = null;
+            slabCount--;
+        }
+
+        synchronized void setLimit(long limit)
+        {
+            this.limit = limit;
+            while (slabCount > 0 && memorySize() > limit)
+                freeOldest();
+            if (slabCount == 0)
+                resize(MIN_BUCKETS);
+        }
+
+        synchronized void clear()
+        {
+            while (slabCount > 0)
+                freeOldest();
+            resize(MIN_BUCKETS);
+        }
+
+        synchronized int size()
+        {
+            return size;
+        }
+
+        synchronized long weightedSize()
+        {
+            return memorySize();
+        }
+
+        private long memorySize()
+        {
+            return (long) slabCount * slabSize + table.size();
+        }
+
+        /**
+         * @return the keys of the live entries, from the newest slab to the oldest
+         */
+        synchronized List<KeyCacheKey> keys()
+        {
+            Integer[] order = new Integer[slabs.length];
+            for (int i = 0; i < order.length; i++)
+                order[i] = i;
+            Arrays.sort(order, new Comparator<Integer>()
+            {
+                public int compare(Integer i, Integer j)
+                {
+                    return Long.compare(started[j], started[i]);
+                }
+            });
+
+            List<KeyCacheKey> keys = new ArrayList<>(size);
+            for (int slab : order)
+            {
+                if (slabs[slab] == null)
+                    continue;
+
+                int end = slab == current ? position : ends[slab];
+                for (int offset = 0; offset < end; offset += slabs[slab].getInt(offset + LENGTH))
+                {
+                    if (slabs[slab].getByte(offset + FLAGS) == DEAD)
+                        continue;
+
+                    Descriptor desc = descriptors.get(slabs[slab].getInt(offset + DESCRIPTOR));
+                    byte[] key = new byte[slabs[slab].getInt(offset + KEY_LENGTH)];
+                    slabs[slab].getBytes(offset + HEADER_SIZE, key, 0, key.length);
+                    keys.add(new KeyCacheKey(desc, ByteBuffer.wrap(key)));
+                }
+            }
+            return keys;
+        }
+    }
+
+    /**
+     * Numbers the descriptors of the sstables with entries in the cache, counting their entries so as to forget
+     * the sstables that have none left.  Numbers are not reused.
+     */
+    private static final class Descriptors
+    {
+        private final ConcurrentMap<Descriptor, Numbered> byDescriptor = new ConcurrentHashMap<>();
+        private final NonBlockingHashMapLong<Numbered> byNumber = new NonBlockingHashMapLong<>();
+        private final AtomicInteger lastNumber = new AtomicInteger();
+
+        private static final class Numbered
+        {
+            private final Descriptor desc;
+            private final int number;
+            private final AtomicInteger entries = new AtomicInteger(1);
+
+            private Numbered(Descriptor desc, int number)
+            {
+                this.desc = desc;
+                this.number = number;
+            }
+
+            private boolean acquire()
+            {
+                while (true)
+                {
+                    int n = entries.get();
+                    if (n <= 0)
+                        return false;
+                    if (entries.compareAndSet(n, n + 1))
+                        return true;
+                }
+            }
+        }
+
+        /**
+         * @return the number of desc, counting one more entry for it
+         */
+        int acquire(Descriptor desc)
+        {
+            while (true)
+            {
+                Numbered numbered = byDescriptor.get(desc);
+                if (numbered == null)
+                {
+                    numbered = new Numbered(desc, lastNumber.incrementAndGet());
+                    byNumber.put(numbered.number, numbered);
+                    if (byDescriptor.putIfAbsent(desc, numbered) == null)
+                        return numbered.number;
+                    byNumber.remove(numbered.number);
+                }
+                else if (numbered.acquire())
+                {
+                    return numbered.number;
+                }
+                else
+                {
+                    // its last entry is gone, and it is about to be forgotten
+                    byDescriptor.remove(desc, numbered);
+                }
+            }
+        }
+
+        /**
+         * Counts one less entry for the given descriptor number.
+         */
+        void release(int number)
+        {
+            Numbered numbered = byNumber.get(number);
+            if (numbered.entries.decrementAndGet() == 0)
+            {
+                byDescriptor.remove(numbered.desc, numbered);
+                byNumber.remove(number);
+            }
+        }
+
+        /**
+         * @return the number of desc, or -1 if it has no entries
+         */
+        int find(Descriptor desc)
+        {
+            Numbered numbered = byDescriptor.get(desc);
+            return numbered == null ? -1 : numbered.number;
+        }
+
+        Descriptor get(int number)
+        {
+            return byNumber.get(number).desc;
+        }
+    }
+}
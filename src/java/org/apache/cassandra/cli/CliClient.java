@@ -143,6 +143,7 @@ public class CliClient
         DEFAULT_TIME_TO_LIVE,
         SPECULATIVE_RETRY,
         POPULATE_IO_CACHE_ON_FLUSH,
+        ROWS_PER_PARTITION_TO_CACHE,
     }
 
     private static final String DEFAULT_PLACEMENT_STRATEGY = "org.apache.cassandra.locator.NetworkTopologyStrategy";
@@ -1360,6 +1361,9 @@ public class CliClient
             case POPULATE_IO_CACHE_ON_FLUSH:
                 cfDef.setPopulate_io_cache_on_flush(Boolean.parseBoolean(mValue));
                 break;
+            case ROWS_PER_PARTITION_TO_CACHE:
+                cfDef.setRows_per_partition_to_cache(Integer.parseInt(mValue));
+                break;
             default:
                 //must match one of the above or we'd throw an exception at the valueOf statement above.
                 assert(false);
@@ -1894,6 +1898,8 @@ public class CliClient
         }
         if (cfDef.isSetIndex_interval())
             writeAttr(output, false, "index_interval", cfDef.index_interval);
+        if (cfDef.isSetRows_per_partition_to_cache())
+            writeAttr(output, false, "rows_per_partition_to_cache", cfDef.rows_per_partition_to_cache);
 
         output.append(";");
         output.append(NEWLINE);
@@ -2188,6 +2194,7 @@ public class CliClient
         sessionState.out.printf("      Populate IO Cache on flush: %b%n", cf_def.populate_io_cache_on_flush);
         sessionState.out.printf("      Replicate on write: %s%n", cf_def.replicate_on_write);
         sessionState.out.printf("      Caching: %s%n", cf_def.caching);
+        sessionState.out.printf("      Rows per partition to cache: %s%n", cf_def.isSetRows_per_partition_to_cache() ? cf_def.rows_per_partition_to_cache : "default");
         sessionState.out.printf("      Default time to live: %s%n", cf_def.default_time_to_live);
         sessionState.out.printf("      Bloom Filter FP chance: %s%n", cf_def.isSetBloom_filter_fp_chance() ? cf_def.bloom_filter_fp_chance : "default");
         sessionState.out.printf("      Index interval: %s%n", cf_def.isSetIndex_interval() ? cf_def.index_interval : "default");
@@ -59,6 +59,7 @@ import org.apache.cassandra.thrift.CqlResult;
 import org.apache.cassandra.tracing.Tracing;
 import org.apache.cassandra.utils.ByteBufferUtil;
 import org.apache.cassandra.utils.FBUtilities;
+import org.apache.cassandra.utils.FilterFactory;
 
 import static org.apache.cassandra.utils.FBUtilities.*;
 
@@ -84,6 +85,8 @@ public final class CFMetaData
     public final static SpeculativeRetry DEFAULT_SPECULATIVE_RETRY = new SpeculativeRetry(SpeculativeRetry.RetryType.PERCENTILE, 0.99);
     public final static int DEFAULT_INDEX_INTERVAL = 128;
     public final static boolean DEFAULT_POPULATE_IO_CACHE_ON_FLUSH = false;
+    public final static int DEFAULT_ROWS_PER_PARTITION_TO_CACHE = Integer.MAX_VALUE; // the whole partition
+    public final static FilterFactory.Type DEFAULT_BLOOM_FILTER_TYPE = FilterFactory.Type.STANDARD;
 
     // Note that this is the default only for user created tables
     public final static String DEFAULT_COMPRESSOR = LZ4Compressor.class.getCanonicalName();
@@ -143,6 +146,8 @@ public final class CFMetaData
                                                                     + "compaction_strategy_options text,"
                                                                     + "speculative_retry text,"
                                                                     + "populate_io_cache_on_flush boolean,"
+                                                                    + "rows_per_partition_to_cache int,"
+                                                                    + "bloom_filter_type text,"
                                                                     + "index_interval int,"
                                                                     + "dropped_columns map<text, bigint>,"
                                                                     + "PRIMARY KEY (keyspace_name, columnfamily_name)"
@@ -412,6 +417,8 @@ public final class CFMetaData
     private volatile int defaultTimeToLive = DEFAULT_DEFAULT_TIME_TO_LIVE;
     private volatile SpeculativeRetry speculativeRetry = DEFAULT_SPECULATIVE_RETRY;
     private volatile boolean populateIoCacheOnFlush = DEFAULT_POPULATE_IO_CACHE_ON_FLUSH;
+    private volatile int rowsPerPartitionToCache = DEFAULT_ROWS_PER_PARTITION_TO_CACHE;
+    private volatile FilterFactory.Type bloomFilterType = DEFAULT_BLOOM_FILTER_TYPE;
     private volatile Map<ColumnIdentifier, Long> droppedColumns = new HashMap<>();
     private volatile Map<String, TriggerDefinition> triggers = new HashMap<>();
     private volatile boolean isPurged = false;
@@ -458,6 +465,8 @@ public final class CFMetaData
     public CFMetaData defaultTimeToLive(int prop) {defaultTimeToLive = prop; return this;}
     public CFMetaData speculativeRetry(SpeculativeRetry prop) {speculativeRetry = prop; return this;}
     public CFMetaData populateIoCacheOnFlush(boolean prop) {populateIoCacheOnFlush = prop; return this;}
+    public CFMetaData rowsPerPartitionToCache(int prop) {rowsPerPartitionToCache = prop; return this;}
+    public CFMetaData bloomFilterType(FilterFactory.Type prop) {bloomFilterType = prop; return this;}
     public CFMetaData droppedColumns(Map<ColumnIdentifier, Long> cols) {droppedColumns = cols; return this;}
     public CFMetaData triggers(Map<String, TriggerDefinition> prop) {triggers = prop; return this;}
 
@@ -619,6 +628,8 @@ public final class CFMetaData
                       .speculativeRetry(oldCFMD.speculativeRetry)
                       .memtableFlushPeriod(oldCFMD.memtableFlushPeriod)
                       .populateIoCacheOnFlush(oldCFMD.populateIoCacheOnFlush)
+                      .rowsPerPartitionToCache(oldCFMD.rowsPerPartitionToCache)
+                      .bloomFilterType(oldCFMD.bloomFilterType)
                       .droppedColumns(new HashMap<>(oldCFMD.droppedColumns))
                       .triggers(new HashMap<>(oldCFMD.triggers))
                       .rebuild();
@@ -680,6 +691,19 @@ public final class CFMetaData
         return populateIoCacheOnFlush;
     }
 
+    /**
+     * @return how many CQL rows (or cells, for non-CQL3 tables) of the head of each partition the row cache holds
+     */
+    public int getRowsPerPartitionToCache()
+    {
+        return rowsPerPartitionToCache;
+    }
+
+    public boolean cachesFullPartitions()
+    {
+        return rowsPerPartitionToCache == Integer.MAX_VALUE;
+    }
+
     public int getGcGraceSeconds()
     {
         return gcGraceSeconds;
@@ -790,6 +814,14 @@ public final class CFMetaData
              : new SimpleCType(keyValidator);
     }
 
+    /**
+     * @return the kind of bloom filter new sstables of this table get
+     */
+    public FilterFactory.Type getBloomFilterType()
+    {
+        return bloomFilterType;
+    }
+
     public double getBloomFilterFpChance()
     {
         // we disallow bFFPC==null starting in 1.2.1 but tolerated it before that
@@ -866,6 +898,8 @@ public final class CFMetaData
             .append(indexInterval, rhs.indexInterval)
             .append(speculativeRetry, rhs.speculativeRetry)
             .append(populateIoCacheOnFlush, rhs.populateIoCacheOnFlush)
+            .append(rowsPerPartitionToCache, rhs.rowsPerPartitionToCache)
+            .append(bloomFilterType, rhs.bloomFilterType)
             .append(droppedColumns, rhs.droppedColumns)
             .append(triggers, rhs.triggers)
             .isEquals();
@@ -899,6 +933,8 @@ public final class CFMetaData
             .append(indexInterval)
             .append(speculativeRetry)
             .append(populateIoCacheOnFlush)
+            .append(rowsPerPartitionToCache)
+            .append(bloomFilterType)
             .append(droppedColumns)
             .append(triggers)
             .toHashCode();
@@ -1012,6 +1048,8 @@ public final class CFMetaData
                 newCFMD.populateIoCacheOnFlush(cf_def.populate_io_cache_on_flush);
             if (cf_def.isSetTriggers())
                 newCFMD.triggers(TriggerDefinition.fromThrift(cf_def.triggers));
+            if (cf_def.isSetRows_per_partition_to_cache())
+                newCFMD.rowsPerPartitionToCache(cf_def.rows_per_partition_to_cache);
 
             CompressionParameters cp = CompressionParameters.create(cf_def.compression_options);
 
@@ -1112,6 +1150,8 @@ public final class CFMetaData
         defaultTimeToLive = cfm.defaultTimeToLive;
         speculativeRetry = cfm.speculativeRetry;
         populateIoCacheOnFlush = cfm.populateIoCacheOnFlush;
+        rowsPerPartitionToCache = cfm.rowsPerPartitionToCache;
+        bloomFilterType = cfm.bloomFilterType;
 
         if (!cfm.droppedColumns.isEmpty())
             droppedColumns = cfm.droppedColumns;
@@ -1263,6 +1303,7 @@ public final class CFMetaData
         def.setDefault_time_to_live(defaultTimeToLive);
         def.setSpeculative_retry(speculativeRetry.toString());
         def.setTriggers(TriggerDefinition.toThrift(triggers));
+        def.setRows_per_partition_to_cache(rowsPerPartitionToCache);
 
         return def;
     }
@@ -1452,6 +1493,9 @@ public final class CFMetaData
         if (bloomFilterFpChance != null && bloomFilterFpChance == 0)
             throw new ConfigurationException("Zero false positives is impossible; bloom filter false positive chance bffpc must be 0 < bffpc <= 1");
 
+        if (rowsPerPartitionToCache <= 0)
+            throw new ConfigurationException(String.format("rows_per_partition_to_cache must be strictly positive (got %d)", rowsPerPartitionToCache));
+
         return this;
     }
 
@@ -1611,6 +1655,8 @@ public final class CFMetaData
         adder.add("local_read_repair_chance", dcLocalReadRepairChance);
         adder.add("replicate_on_write", replicateOnWrite);
         adder.add("populate_io_cache_on_flush", populateIoCacheOnFlush);
+        adder.add("rows_per_partition_to_cache", rowsPerPartitionToCache);
+        adder.add("bloom_filter_type", bloomFilterType.toString());
         adder.add("gc_grace_seconds", gcGraceSeconds);
         adder.add("default_validator", defaultValidator.toString());
         adder.add("key_validator", keyValidator.toString());
@@ -1700,6 +1746,12 @@ public final class CFMetaData
             if (result.has("populate_io_cache_on_flush"))
                 cfm.populateIoCacheOnFlush(result.getBoolean("populate_io_cache_on_flush"));
 
+            if (result.has("rows_per_partition_to_cache"))
+                cfm.rowsPerPartitionToCache(result.getInt("rows_per_partition_to_cache"));
+
+            if (result.has("bloom_filter_type"))
+                cfm.bloomFilterType(FilterFactory.Type.fromString(result.getString("bloom_filter_type")));
+
             /*
              * The info previously hold by key_aliases, column_aliases and value_alias is now stored in columnMetadata (because 1) this
              * make more sense and 2) this allow to store indexing information).
@@ -2159,6 +2211,8 @@ public final class CFMetaData
             .append("speculative_retry", speculativeRetry)
             .append("indexInterval", indexInterval)
             .append("populateIoCacheOnFlush", populateIoCacheOnFlush)
+            .append("rowsPerPartitionToCache", rowsPerPartitionToCache)
+            .append("bloomFilterType", bloomFilterType)
             .append("droppedColumns", droppedColumns)
             .append("triggers", triggers)
             .toString();
@@ -75,6 +75,7 @@ public class Config
 
     public Integer memtable_flush_writers = null; // will get set to the length of data dirs in DatabaseDescriptor
     public Integer memtable_total_space_in_mb;
+    public Double memtable_cleanup_threshold = null; // will get set to 1 / (1 + memtable_flush_writers) in DatabaseDescriptor
 
     public Integer storage_port = 7000;
     public Integer ssl_storage_port = 7001;
@@ -111,11 +112,13 @@ public class Config
     public Integer column_index_size_in_kb = 64;
     public Integer in_memory_compaction_limit_in_mb = 64;
     public Integer concurrent_compactors = FBUtilities.getAvailableProcessors();
+    public Integer concurrent_validators = 1;
     public volatile Integer compaction_throughput_mb_per_sec = 16;
 
     public Integer max_streaming_retries = 3;
 
     public volatile Integer stream_throughput_outbound_megabits_per_sec = 200;
+    public boolean stream_entire_sstables = true;
 
     public String[] data_file_directories;
 
@@ -127,8 +130,10 @@ public class Config
     public CommitLogSync commitlog_sync;
     public Double commitlog_sync_batch_window_in_ms;
     public Integer commitlog_sync_period_in_ms;
+    public Double commitlog_sync_group_window_in_ms;
     public int commitlog_segment_size_in_mb = 32;
     public int commitlog_periodic_queue_size = 1024 * FBUtilities.getAvailableProcessors();
+    public String commitlog_compressor;
 
     public String endpoint_snitch;
     public Boolean dynamic_snitch = true;
@@ -146,12 +151,19 @@ public class Config
     public ServerEncryptionOptions encryption_options;
 
     public InternodeCompression internode_compression = InternodeCompression.none;
+    public InternodeTransport internode_transport = InternodeTransport.blocking;
+    public int internode_send_queue_size = 16384;
+    public InternodeCoalescing internode_coalescing = InternodeCoalescing.disabled;
+    public int internode_coalescing_window_us = 200;
 
     @Deprecated
     public Integer index_interval = null;
 
     public int hinted_handoff_throttle_in_kb = 1024;
     public int max_hints_delivery_threads = 1;
+    public String hints_directory;
+    public String hints_compressor;
+    public int batchlog_replay_throttle_in_kb = 1024;
     public boolean compaction_preheat_key_cache = true; //preheat是"预热"的意思
 
     public volatile boolean incremental_backups = false;
@@ -162,10 +174,17 @@ public class Config
     public Long key_cache_size_in_mb = null;
     public volatile int key_cache_save_period = 14400;
     public int key_cache_keys_to_save = Integer.MAX_VALUE;
+    public boolean key_cache_off_heap = false;
 
     public long row_cache_size_in_mb = 0;
     public volatile int row_cache_save_period = 0;
     public int row_cache_keys_to_save = Integer.MAX_VALUE;
+
+    public Long counter_cache_size_in_mb = null;
+    public volatile int counter_cache_save_period = 7200;
+    public int counter_cache_keys_to_save = Integer.MAX_VALUE;
+
+    public Long chunk_cache_size_in_mb = null;
     public String memory_allocator = NativeAllocator.class.getSimpleName();
     public boolean populate_io_cache_on_flush = false;
 
@@ -210,7 +229,8 @@ public class Config
     public static enum CommitLogSync
     {
         periodic,
-        batch
+        batch,
+        group
     }
 
     public static enum InternodeCompression
@@ -218,6 +238,16 @@ public class Config
         all, none, dc
     }
 
+    public static enum InternodeTransport
+    {
+        blocking, netty
+    }
+
+    public static enum InternodeCoalescing
+    {
+        disabled, fixed, movingaverage
+    }
+
     public static enum DiskAccessMode
     {
         auto,
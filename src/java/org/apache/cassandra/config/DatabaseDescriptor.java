@@ -39,6 +39,8 @@ import org.apache.cassandra.db.SystemKeyspace;
 import org.apache.cassandra.dht.IPartitioner;
 import org.apache.cassandra.exceptions.ConfigurationException;
 import org.apache.cassandra.io.FSWriteError;
+import org.apache.cassandra.io.compress.CompressionParameters;
+import org.apache.cassandra.io.compress.ICompressor;
 import org.apache.cassandra.io.sstable.IndexSummaryManager;
 import org.apache.cassandra.io.util.FileUtils;
 import org.apache.cassandra.io.util.IAllocator;
@@ -51,6 +53,7 @@ import org.apache.cassandra.scheduler.IRequestScheduler;
 import org.apache.cassandra.scheduler.NoScheduler;
 import org.apache.cassandra.service.CacheService;
 import org.apache.cassandra.utils.Allocator;
+import org.apache.cassandra.utils.MemtablePool;
 import org.apache.cassandra.utils.FBUtilities;
 
 //重点关注applyConfig、loadSchemas两个方法
@@ -69,6 +72,8 @@ public class DatabaseDescriptor
     private static InetAddress broadcastAddress;
     private static InetAddress rpcAddress;
     private static SeedProvider seedProvider;
+    private static ICompressor commitLogCompressor;
+    private static ICompressor hintsCompressor;
 
     //实现类只有org.apache.cassandra.auth.AllowAllInternodeAuthenticator，什么都不做
     private static IInternodeAuthenticator internodeAuthenticator;
@@ -89,6 +94,8 @@ public class DatabaseDescriptor
     private static RequestSchedulerOptions requestSchedulerOptions; //未见使用
 
     private static long keyCacheSizeInMB;
+    private static long counterCacheSizeInMB;
+    private static long chunkCacheSizeInMB;
     //实现类有:
     //org.apache.cassandra.io.util.NativeAllocator
     //org.apache.cassandra.io.util.JEMallocAllocator
@@ -146,13 +153,9 @@ public class DatabaseDescriptor
         return loader.loadConfig();
     }
 
-    private static void applyConfig(Config config) throws ConfigurationException
+    @VisibleForTesting
+    static void validateCommitLogSync(Config conf) throws ConfigurationException
     {
-        conf = config;
-
-        logger.info("Data files directories: {}", Arrays.toString(conf.data_file_directories));
-        logger.info("Commit log directory: {}", conf.commitlog_directory);
-
         if (conf.commitlog_sync == null) //必须配置commitlog_sync参数
         {
             throw new ConfigurationException("Missing required directive CommitLogSync");
@@ -165,28 +168,62 @@ public class DatabaseDescriptor
             {
                 throw new ConfigurationException("Missing value for commitlog_sync_batch_window_in_ms: Double expected.");
             }
-            else if (conf.commitlog_sync_period_in_ms != null)
+            else if (conf.commitlog_sync_period_in_ms != null || conf.commitlog_sync_group_window_in_ms != null)
             {
-                throw new ConfigurationException("Batch sync specified, but commitlog_sync_period_in_ms found. Only specify commitlog_sync_batch_window_in_ms when using batch sync");
+                throw new ConfigurationException("Batch sync specified, but commitlog_sync_period_in_ms or commitlog_sync_group_window_in_ms found. Only specify commitlog_sync_batch_window_in_ms when using batch sync");
             }
             logger.debug("Syncing log with a batch window of {}", conf.commitlog_sync_batch_window_in_ms);
         }
+        else if (conf.commitlog_sync == Config.CommitLogSync.group)
+        {
+            if (conf.commitlog_sync_group_window_in_ms == null)
+            {
+                throw new ConfigurationException("Missing value for commitlog_sync_group_window_in_ms: Double expected.");
+            }
+            else if (conf.commitlog_sync_period_in_ms != null || conf.commitlog_sync_batch_window_in_ms != null)
+            {
+                throw new ConfigurationException("Group sync specified, but commitlog_sync_period_in_ms or commitlog_sync_batch_window_in_ms found. Only specify commitlog_sync_group_window_in_ms when using group sync");
+            }
+            logger.debug("Syncing log with a group window of {}", conf.commitlog_sync_group_window_in_ms);
+        }
         else
         {
             if (conf.commitlog_sync_period_in_ms == null)
             {
                 throw new ConfigurationException("Missing value for commitlog_sync_period_in_ms: Integer expected");
             }
-            else if (conf.commitlog_sync_batch_window_in_ms != null)
+            else if (conf.commitlog_sync_batch_window_in_ms != null || conf.commitlog_sync_group_window_in_ms != null)
             {
-                throw new ConfigurationException("commitlog_sync_period_in_ms specified, but commitlog_sync_batch_window_in_ms found.  Only specify commitlog_sync_period_in_ms when using periodic sync.");
+                throw new ConfigurationException("commitlog_sync_period_in_ms specified, but commitlog_sync_batch_window_in_ms or commitlog_sync_group_window_in_ms found.  Only specify commitlog_sync_period_in_ms when using periodic sync.");
             }
             logger.debug("Syncing log with a period of {}", conf.commitlog_sync_period_in_ms);
         }
+    }
+
+    private static void applyConfig(Config config) throws ConfigurationException
+    {
+        conf = config;
+
+        logger.info("Data files directories: {}", Arrays.toString(conf.data_file_directories));
+        logger.info("Commit log directory: {}", conf.commitlog_directory);
+
+        validateCommitLogSync(conf);
 
         if (conf.commitlog_total_space_in_mb == null)
             conf.commitlog_total_space_in_mb = System.getProperty("os.arch").contains("64") ? 1024 : 32;
 
+        if (conf.commitlog_compressor != null && !conf.commitlog_compressor.isEmpty())
+        {
+            commitLogCompressor = new CompressionParameters(conf.commitlog_compressor, null, Collections.<String, String>emptyMap()).sstableCompressor;
+            logger.info("Compressing commit log segments with {}", commitLogCompressor.getClass().getSimpleName());
+        }
+
+        if (conf.hints_compressor != null && !conf.hints_compressor.isEmpty())
+        {
+            hintsCompressor = new CompressionParameters(conf.hints_compressor, null, Collections.<String, String>emptyMap()).sstableCompressor;
+            logger.info("Compressing hints with {}", hintsCompressor.getClass().getSimpleName());
+        }
+
         /* evaluate the DiskAccessMode Config directive, which also affects indexAccessMode selection */
         //自动侦测，64位系统使用mmap
         if (conf.disk_access_mode == Config.DiskAccessMode.auto)
@@ -289,6 +326,11 @@ public class DatabaseDescriptor
             conf.memtable_flush_writers = conf.data_file_directories.length;
         }
 
+        if (conf.memtable_cleanup_threshold == null)
+            conf.memtable_cleanup_threshold = 1.0 / (1 + conf.memtable_flush_writers);
+        if (conf.memtable_cleanup_threshold <= 0 || conf.memtable_cleanup_threshold > 1)
+            throw new ConfigurationException("memtable_cleanup_threshold must be greater than 0 and at most 1");
+
         /* Local IP or hostname to bind services to */
         if (conf.listen_address != null)
         {
@@ -345,6 +387,12 @@ public class DatabaseDescriptor
         if (conf.native_transport_max_frame_size_in_mb <= 0)
             throw new ConfigurationException("native_transport_max_frame_size_in_mb must be positive");
 
+        if (conf.internode_send_queue_size <= 0)
+            throw new ConfigurationException("internode_send_queue_size must be positive");
+
+        if (conf.internode_coalescing_window_us <= 0)
+            throw new ConfigurationException("internode_coalescing_window_us must be positive");
+
         /* end point snitch */
         if (conf.endpoint_snitch == null)
         {
@@ -421,6 +469,9 @@ public class DatabaseDescriptor
         if (conf.concurrent_compactors <= 0)
             throw new ConfigurationException("concurrent_compactors should be strictly greater than 0");
 
+        if (conf.concurrent_validators <= 0)
+            throw new ConfigurationException("concurrent_validators should be strictly greater than 0");
+
         /* data file and commit log directories. they get created later, when they're needed. */
         //这三个参数不能指向同一目录
         if (conf.commitlog_directory != null && conf.data_file_directories != null && conf.saved_caches_directory != null)
@@ -469,6 +520,31 @@ public class DatabaseDescriptor
                     + conf.key_cache_size_in_mb + "', supported values are <integer> >= 0.");
         }
 
+        try
+        {
+            // if counter_cache_size_in_mb option was set to "auto" then size of the cache should be "min(2.5% of Heap (in MB), 50MB)
+            counterCacheSizeInMB = (conf.counter_cache_size_in_mb == null)
+                ? Math.min(Math.max(1, (int) (Runtime.getRuntime().totalMemory() * 0.025 / 1024 / 1024)), 50)
+                : conf.counter_cache_size_in_mb;
+
+            if (counterCacheSizeInMB < 0)
+                throw new NumberFormatException(); // to escape duplicating error message
+        }
+        catch (NumberFormatException e)
+        {
+            throw new ConfigurationException("counter_cache_size_in_mb option was set incorrectly to '"
+                    + conf.counter_cache_size_in_mb + "', supported values are <integer> >= 0.");
+        }
+
+        // if set to empty/"auto" then use min(5% of Heap (in MB), 100MB), like the key cache
+        chunkCacheSizeInMB = (conf.chunk_cache_size_in_mb == null)
+            ? Math.min(Math.max(1, (int) (Runtime.getRuntime().totalMemory() * 0.05 / 1024 / 1024)), 100)
+            : conf.chunk_cache_size_in_mb;
+
+        if (chunkCacheSizeInMB < 0)
+            throw new ConfigurationException("chunk_cache_size_in_mb option was set incorrectly to '"
+                    + conf.chunk_cache_size_in_mb + "', supported values are <integer> >= 0.");
+
         // if set to empty/"auto" then use 5% of Heap size
         indexSummaryCapacityInMB = (conf.index_summary_capacity_in_mb == null)
             ? Math.max(1, (int) (Runtime.getRuntime().totalMemory() * 0.05 / 1024 / 1024))
@@ -622,6 +698,8 @@ public class DatabaseDescriptor
                 throw new ConfigurationException("saved_caches_directory must be specified");
 
             FileUtils.createDirectory(conf.saved_caches_directory);
+
+            FileUtils.createDirectory(getHintsDirectory());
         }
         catch (ConfigurationException e)
         {
@@ -905,6 +983,11 @@ public class DatabaseDescriptor
         return conf.concurrent_compactors;
     }
 
+    public static int getConcurrentValidators()
+    {
+        return conf.concurrent_validators;
+    }
+
     public static int getCompactionThroughputMbPerSec()
     {
         return conf.compaction_throughput_mb_per_sec;
@@ -925,6 +1008,11 @@ public class DatabaseDescriptor
         conf.stream_throughput_outbound_megabits_per_sec = value;
     }
 
+    public static boolean streamEntireSSTables()
+    {
+        return conf.stream_entire_sstables;
+    }
+
     public static String[] getAllDataFileLocations()
     {
         return conf.data_file_directories;
@@ -963,11 +1051,44 @@ public class DatabaseDescriptor
         return conf.commitlog_segment_size_in_mb * 1024 * 1024;
     }
 
+    /**
+     * @return the compressor applied to commit log segments, or null if they are written uncompressed
+     */
+    public static ICompressor getCommitLogCompressor()
+    {
+        return commitLogCompressor;
+    }
+
+    @VisibleForTesting
+    public static void setCommitLogCompressor(ICompressor compressor)
+    {
+        commitLogCompressor = compressor;
+    }
+
     public static String getSavedCachesLocation()
     {
         return conf.saved_caches_directory;
     }
 
+    /**
+     * @return the directory hints are stored in, which defaults to a hints directory next to the commit log one
+     */
+    public static String getHintsDirectory()
+    {
+        if (conf.hints_directory != null)
+            return conf.hints_directory;
+        File parent = new File(conf.commitlog_directory).getAbsoluteFile().getParentFile();
+        return new File(parent, "hints").getPath();
+    }
+
+    /**
+     * @return the compressor applied to hints files, or null if they are written uncompressed
+     */
+    public static ICompressor getHintsCompressor()
+    {
+        return hintsCompressor;
+    }
+
     public static Set<InetAddress> getSeeds()
     {
         return ImmutableSet.<InetAddress>builder().addAll(seedProvider.getSeeds()).build();
@@ -1070,7 +1191,10 @@ public class DatabaseDescriptor
 
     public static double getCommitLogSyncBatchWindow()
     {
-        return conf.commitlog_sync_batch_window_in_ms;
+        // group is an alias of batch, whose window has its own key
+        return conf.commitlog_sync == Config.CommitLogSync.group
+             ? conf.commitlog_sync_group_window_in_ms
+             : conf.commitlog_sync_batch_window_in_ms;
     }
 
     public static int getCommitLogSyncPeriod()
@@ -1078,6 +1202,12 @@ public class DatabaseDescriptor
         return conf.commitlog_sync_period_in_ms;
     }
 
+    @VisibleForTesting
+    public static void setCommitLogSyncGroupWindow(double windowMillis)
+    {
+        conf.commitlog_sync_group_window_in_ms = windowMillis;
+    }
+
     public static int getCommitLogPeriodicQueueSize()
     {
         return conf.commitlog_periodic_queue_size;
@@ -1088,6 +1218,12 @@ public class DatabaseDescriptor
         return conf.commitlog_sync;
     }
 
+    @VisibleForTesting
+    public static void setCommitLogSync(Config.CommitLogSync sync)
+    {
+        conf.commitlog_sync = sync;
+    }
+
     public static Config.DiskAccessMode getDiskAccessMode()
     {
         return conf.disk_access_mode;
@@ -1196,6 +1332,11 @@ public class DatabaseDescriptor
         return conf.hinted_handoff_throttle_in_kb;
     }
 
+    public static int getBatchlogReplayThrottleInKB()
+    {
+        return conf.batchlog_replay_throttle_in_kb;
+    }
+
     public static int getMaxHintsThread()
     {
         return conf.max_hints_delivery_threads;
@@ -1233,6 +1374,11 @@ public class DatabaseDescriptor
         return conf.memtable_total_space_in_mb;
     }
 
+    public static double getMemtableCleanupThreshold()
+    {
+        return conf.memtable_cleanup_threshold;
+    }
+
     public static long getTotalCommitlogSpaceInMB()
     {
         return conf.commitlog_total_space_in_mb;
@@ -1253,6 +1399,11 @@ public class DatabaseDescriptor
         return keyCacheSizeInMB;
     }
 
+    public static long getChunkCacheSizeInMB()
+    {
+        return chunkCacheSizeInMB;
+    }
+
     public static long getIndexSummaryCapacityInMB()
     {
         return indexSummaryCapacityInMB;
@@ -1278,6 +1429,11 @@ public class DatabaseDescriptor
         conf.key_cache_keys_to_save = keyCacheKeysToSave;
     }
 
+    public static boolean getKeyCacheOffHeap()
+    {
+        return conf.key_cache_off_heap;
+    }
+
     public static long getRowCacheSizeInMB()
     {
         return conf.row_cache_size_in_mb;
@@ -1308,6 +1464,31 @@ public class DatabaseDescriptor
         conf.row_cache_keys_to_save = rowCacheKeysToSave;
     }
 
+    public static long getCounterCacheSizeInMB()
+    {
+        return counterCacheSizeInMB;
+    }
+
+    public static int getCounterCacheSavePeriod()
+    {
+        return conf.counter_cache_save_period;
+    }
+
+    public static void setCounterCacheSavePeriod(int counterCacheSavePeriod)
+    {
+        conf.counter_cache_save_period = counterCacheSavePeriod;
+    }
+
+    public static int getCounterCacheKeysToSave()
+    {
+        return conf.counter_cache_keys_to_save;
+    }
+
+    public static void setCounterCacheKeysToSave(int counterCacheKeysToSave)
+    {
+        conf.counter_cache_keys_to_save = counterCacheKeysToSave;
+    }
+
     public static int getStreamingSocketTimeout()
     {
         return conf.streaming_socket_timeout_in_ms;
@@ -1328,6 +1509,26 @@ public class DatabaseDescriptor
         return conf.internode_compression;
     }
 
+    public static Config.InternodeTransport getInternodeTransport()
+    {
+        return conf.internode_transport;
+    }
+
+    public static int getInternodeSendQueueSize()
+    {
+        return conf.internode_send_queue_size;
+    }
+
+    public static Config.InternodeCoalescing getInternodeCoalescing()
+    {
+        return conf.internode_coalescing;
+    }
+
+    public static int getInternodeCoalescingWindow()
+    {
+        return conf.internode_coalescing_window_us;
+    }
+
     public static boolean getInterDCTcpNoDelay()
     {
         return conf.inter_dc_tcp_nodelay;
@@ -1338,11 +1539,19 @@ public class DatabaseDescriptor
         return conf.preheat_kernel_page_cache;
     }
 
-    public static Allocator getMemtableAllocator()
+    @VisibleForTesting
+    public static void setMemtableAllocator(Class<? extends Allocator> allocatorClass)
+    {
+        memtableAllocator = allocatorClass;
+    }
+
+    public static Allocator getMemtableAllocator(MemtablePool.SubPool pool)
     {
         try
         {
-            return memtableAllocator.newInstance();
+            Allocator allocator = memtableAllocator.newInstance();
+            allocator.setPool(pool);
+            return allocator;
         }
         catch (InstantiationException | IllegalAccessException e)
         {
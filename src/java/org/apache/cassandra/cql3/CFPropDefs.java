@@ -25,6 +25,7 @@ import org.apache.cassandra.db.compaction.AbstractCompactionStrategy;
 import org.apache.cassandra.exceptions.ConfigurationException;
 import org.apache.cassandra.exceptions.SyntaxException;
 import org.apache.cassandra.io.compress.CompressionParameters;
+import org.apache.cassandra.utils.FilterFactory;
 
 public class CFPropDefs extends PropertyDefinitions
 {
@@ -42,6 +43,8 @@ public class CFPropDefs extends PropertyDefinitions
     public static final String KW_POPULATE_IO_CACHE_ON_FLUSH = "populate_io_cache_on_flush";
     public static final String KW_BF_FP_CHANCE = "bloom_filter_fp_chance";
     public static final String KW_MEMTABLE_FLUSH_PERIOD = "memtable_flush_period_in_ms";
+    public static final String KW_ROWS_PER_PARTITION_TO_CACHE = "rows_per_partition_to_cache";
+    public static final String KW_BF_TYPE = "bloom_filter_type";
 
     //这两个属性的值是一个map，上面的都不是
     public static final String KW_COMPACTION = "compaction";
@@ -55,7 +58,7 @@ public class CFPropDefs extends PropertyDefinitions
 
     static
     {
-        //总共14个选项
+        //总共16个选项
         //不包含上面的KW_MINCOMPACTIONTHRESHOLD、KW_MAXCOMPACTIONTHRESHOLD
         //所以这样的用法是错误的:  WITH min_threshold=2 (Unknown property 'min_threshold')
         //KW_MINCOMPACTIONTHRESHOLD、KW_MAXCOMPACTIONTHRESHOLD只用在KW_COMPACTION对应的map中，
@@ -74,6 +77,8 @@ public class CFPropDefs extends PropertyDefinitions
         keywords.add(KW_COMPACTION);
         keywords.add(KW_COMPRESSION);
         keywords.add(KW_MEMTABLE_FLUSH_PERIOD);
+        keywords.add(KW_ROWS_PER_PARTITION_TO_CACHE);
+        keywords.add(KW_BF_TYPE);
     }
 
     private Class<? extends AbstractCompactionStrategy> compactionStrategyClass = null;
@@ -123,8 +128,11 @@ public class CFPropDefs extends PropertyDefinitions
         validateMinimumInt(KW_DEFAULT_TIME_TO_LIVE, 0, CFMetaData.DEFAULT_DEFAULT_TIME_TO_LIVE);
         //index_interval不能小于最小值1
         validateMinimumInt(KW_INDEX_INTERVAL, 1, CFMetaData.DEFAULT_INDEX_INTERVAL);
+        //rows_per_partition_to_cache不能小于最小值1
+        validateMinimumInt(KW_ROWS_PER_PARTITION_TO_CACHE, 1, CFMetaData.DEFAULT_ROWS_PER_PARTITION_TO_CACHE);
 
         SpeculativeRetry.fromString(getString(KW_SPECULATIVE_RETRY, SpeculativeRetry.RetryType.NONE.name()));
+        FilterFactory.Type.fromString(getString(KW_BF_TYPE, CFMetaData.DEFAULT_BLOOM_FILTER_TYPE.toString()));
     }
 
     public Class<? extends AbstractCompactionStrategy> getCompactionStrategy()
@@ -169,6 +177,8 @@ public class CFPropDefs extends PropertyDefinitions
         cfm.memtableFlushPeriod(getInt(KW_MEMTABLE_FLUSH_PERIOD, cfm.getMemtableFlushPeriod()));
         cfm.populateIoCacheOnFlush(getBoolean(KW_POPULATE_IO_CACHE_ON_FLUSH, cfm.populateIoCacheOnFlush()));
         cfm.indexInterval(getInt(KW_INDEX_INTERVAL, cfm.getIndexInterval()));
+        cfm.rowsPerPartitionToCache(getInt(KW_ROWS_PER_PARTITION_TO_CACHE, cfm.getRowsPerPartitionToCache()));
+        cfm.bloomFilterType(FilterFactory.Type.fromString(getString(KW_BF_TYPE, cfm.getBloomFilterType().toString())));
 
         if (compactionStrategyClass != null)
         {
@@ -0,0 +1,500 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.db;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+
+import com.google.common.base.Function;
+import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.Collections2;
+
+import org.apache.cassandra.config.CFMetaData;
+import org.apache.cassandra.db.composites.CellName;
+import org.apache.cassandra.db.composites.CellNameType;
+import org.apache.cassandra.db.composites.Composite;
+import org.apache.cassandra.db.filter.ColumnSlice;
+import org.apache.cassandra.db.index.SecondaryIndexManager;
+import org.apache.cassandra.utils.Allocator;
+import org.apache.cassandra.utils.Pair;
+import org.apache.cassandra.utils.btree.BTree;
+import org.apache.cassandra.utils.btree.UpdateFunction;
+
+/**
+ * A thread-safe and atomic ColumnFamily implementation, used by memtables.
+ * Operations (in particular addAll) on this implementation are atomic and
+ * isolated (in the sense of ACID): no other thread can see the state where
+ * only some of the cells of an addAll have been added.
+ *
+ * The cells are kept in an immutable BTree which, together with the deletion
+ * info, is swapped in with a single compare-and-swap. An update copies only
+ * the nodes on the paths to the cells it touches, so its cost is proportional
+ * to the size of the update rather than to the size of the partition, and
+ * readers iterate over a consistent snapshot without any locking.
+ *
+ * Updates that keep losing the race on a hot partition fall back to
+ * serializing on the partition, so they stop burning CPU and garbage on work
+ * that is thrown away.
+ */
+public class AtomicBTreeColumns extends ColumnFamily
+{
+    // failed compare-and-swaps after which we consider the partition contended and start serializing updates to it
+    private static final int MAX_OPTIMISTIC_ATTEMPTS = 3;
+
+    private static final AtomicReferenceFieldUpdater<AtomicBTreeColumns, Holder> refUpdater
+        = AtomicReferenceFieldUpdater.newUpdater(AtomicBTreeColumns.class, Holder.class, "ref");
+
+    private static final Function<Cell, CellName> NAME = new Function<Cell, CellName>()
+    {
+        public CellName apply(Cell cell)
+        {
+            return cell.name();
+        }
+    };
+
+    public static final ColumnFamily.Factory<AtomicBTreeColumns> factory = new Factory<AtomicBTreeColumns>()
+    {
+        public AtomicBTreeColumns create(CFMetaData metadata, boolean insertReversed)
+        {
+            return new AtomicBTreeColumns(metadata);
+        }
+    };
+
+    private final CellNameType comparator;
+    // compares cells and cell names alike, so slices can be looked up by name
+    private final Comparator<Object> cellComparator;
+
+    private volatile Holder ref;
+    private volatile boolean contended;
+
+    private AtomicBTreeColumns(CFMetaData metadata)
+    {
+        this(metadata, metadata.comparator, Holder.EMPTY);
+    }
+
+    private AtomicBTreeColumns(CFMetaData metadata, CellNameType comparator, Holder holder)
+    {
+        super(metadata);
+        this.comparator = comparator;
+        this.cellComparator = cellComparator(comparator);
+        this.ref = holder;
+    }
+
+    private static Comparator<Object> cellComparator(final CellNameType comparator)
+    {
+        return new Comparator<Object>()
+        {
+            public int compare(Object o1, Object o2)
+            {
+                return comparator.compare(nameOf(o1), nameOf(o2));
+            }
+        };
+    }
+
+    private static Composite nameOf(Object o)
+    {
+        return o instanceof Cell ? ((Cell) o).name() : (Composite) o;
+    }
+
+    public CellNameType getComparator()
+    {
+        return comparator;
+    }
+
+    public ColumnFamily.Factory getFactory()
+    {
+        return factory;
+    }
+
+    public ColumnFamily cloneMe()
+    {
+        // both the tree and the deletion info of a holder are never modified once published, so they can be shared
+        return new AtomicBTreeColumns(metadata, comparator, ref);
+    }
+
+    public DeletionInfo deletionInfo()
+    {
+        return ref.deletionInfo;
+    }
+
+    public void delete(DeletionTime delTime)
+    {
+        delete(new DeletionInfo(delTime));
+    }
+
+    protected void delete(RangeTombstone tombstone)
+    {
+        delete(new DeletionInfo(tombstone, getComparator()));
+    }
+
+    public void delete(DeletionInfo info)
+    {
+        if (info.isLive())
+            return;
+
+        // Keeping deletion info for max markedForDeleteAt value
+        while (true)
+        {
+            Holder current = ref;
+            DeletionInfo newDelInfo = current.deletionInfo.copy().add(info);
+            if (refUpdater.compareAndSet(this, current, current.with(newDelInfo)))
+                break;
+        }
+    }
+
+    public void setDeletionInfo(DeletionInfo newInfo)
+    {
+        ref = ref.with(newInfo);
+    }
+
+    public void purgeTombstones(int gcBefore)
+    {
+        while (true)
+        {
+            Holder current = ref;
+            if (!current.deletionInfo.hasPurgeableTombstones(gcBefore))
+                break;
+
+            DeletionInfo purgedInfo = current.deletionInfo.copy();
+            purgedInfo.purge(gcBefore);
+            if (refUpdater.compareAndSet(this, current, current.with(purgedInfo)))
+                break;
+        }
+    }
+
+    public void addColumn(Cell cell, Allocator allocator)
+    {
+        addAllWithSizeDelta(null, Collections.singletonList(cell), allocator, SecondaryIndexManager.nullUpdater);
+    }
+
+    public void addAll(ColumnFamily cm, Allocator allocator, Function<Cell, Cell> transformation)
+    {
+        addAllWithSizeDelta(cm, allocator, transformation, SecondaryIndexManager.nullUpdater);
+    }
+
+    /**
+     *  This is only called by Memtable.resolve, so only AtomicBTreeColumns needs to implement it.
+     *
+     *  @return the difference in size seen after merging the given columns, and the number of cells that were
+     *  inserted rather than reconciled with an existing one
+     */
+    public Pair<Long, Integer> addAllWithSizeDelta(ColumnFamily cm, Allocator allocator, Function<Cell, Cell> transformation, SecondaryIndexManager.Updater indexer)
+    {
+        // The transformation copies the cells into the memtable's allocator, so it must only be applied once
+        // however many times we have to retry.
+        return addAllWithSizeDelta(cm.deletionInfo(), sortedUpdates(cm, allocator, transformation), allocator, indexer);
+    }
+
+    private Pair<Long, Integer> addAllWithSizeDelta(DeletionInfo deletionInfo, List<Cell> updates, Allocator allocator, SecondaryIndexManager.Updater indexer)
+    {
+        ColumnUpdater updater = new ColumnUpdater(allocator, indexer);
+
+        if (!contended)
+        {
+            for (int attempt = 0; attempt < MAX_OPTIMISTIC_ATTEMPTS; attempt++)
+            {
+                if (tryAddAll(deletionInfo, updates, updater))
+                    return updater.finish();
+            }
+            contended = true;
+        }
+
+        // Other updaters may still be racing us optimistically, so we keep using compare-and-swap, but we at least
+        // stop competing with the updaters that are serialized behind us.
+        synchronized (this)
+        {
+            while (!tryAddAll(deletionInfo, updates, updater));
+        }
+        return updater.finish();
+    }
+
+    private boolean tryAddAll(DeletionInfo deletionInfo, List<Cell> updates, ColumnUpdater updater)
+    {
+        Holder current = ref;
+        updater.reset(current);
+
+        DeletionInfo newDelInfo = current.deletionInfo;
+        if (deletionInfo != null && !deletionInfo.isLive())
+        {
+            newDelInfo = current.deletionInfo.copy().add(deletionInfo);
+            if (deletionInfo.hasRanges())
+            {
+                for (Cell currentCell : getSortedColumns(current.tree))
+                {
+                    if (deletionInfo.isDeleted(currentCell))
+                        updater.indexer.remove(currentCell);
+                }
+                for (Cell cell : updates)
+                {
+                    if (deletionInfo.isDeleted(cell))
+                        updater.indexer.remove(cell);
+                }
+            }
+        }
+
+        Object[] tree = BTree.update(current.tree, cellComparator, updates, updater);
+        return tree != null && refUpdater.compareAndSet(this, current, new Holder(tree, newDelInfo));
+    }
+
+    /**
+     * @return the transformed cells of cm, in comparator order and without duplicates
+     */
+    private List<Cell> sortedUpdates(ColumnFamily cm, Allocator allocator, Function<Cell, Cell> transformation)
+    {
+        List<Cell> cells = new ArrayList<>(cm.getColumnCount());
+        boolean sorted = true;
+        for (Cell cell : cm)
+        {
+            Cell transformed = transformation.apply(cell);
+            if (sorted && !cells.isEmpty() && cellComparator.compare(cells.get(cells.size() - 1), transformed) >= 0)
+                sorted = false;
+            cells.add(transformed);
+        }
+        if (sorted)
+            return cells;
+
+        // mutations are usually deserialized into UnsortedColumns, which may also hold several versions of a cell
+        Collections.sort(cells, cellComparator);
+        List<Cell> deduplicated = new ArrayList<>(cells.size());
+        for (Cell cell : cells)
+        {
+            int last = deduplicated.size() - 1;
+            if (last >= 0 && cellComparator.compare(deduplicated.get(last), cell) == 0)
+                deduplicated.set(last, cell.reconcile(deduplicated.get(last), allocator));
+            else
+                deduplicated.add(cell);
+        }
+        return deduplicated;
+    }
+
+    public boolean replace(Cell oldCell, Cell newCell)
+    {
+        if (!oldCell.name().equals(newCell.name()))
+            throw new IllegalArgumentException();
+
+        while (true)
+        {
+            Holder current = ref;
+            Cell existing = BTree.find(current.tree, cellComparator, oldCell.name());
+            if (existing == null || !existing.equals(oldCell))
+                return false;
+
+            Object[] tree = BTree.update(current.tree, cellComparator, Collections.singletonList(newCell), null);
+            if (refUpdater.compareAndSet(this, current, current.with(tree)))
+                return true;
+        }
+    }
+
+    public void clear()
+    {
+        // There is no point in copying the tree to clear it afterwards.
+        ref = Holder.EMPTY;
+    }
+
+    public Cell getColumn(CellName name)
+    {
+        return BTree.find(ref.tree, cellComparator, name);
+    }
+
+    public Iterable<CellName> getColumnNames()
+    {
+        return Collections2.transform(getSortedColumns(), NAME);
+    }
+
+    public Collection<Cell> getSortedColumns()
+    {
+        return getSortedColumns(ref.tree);
+    }
+
+    private static Collection<Cell> getSortedColumns(final Object[] tree)
+    {
+        return new AbstractCollection<Cell>()
+        {
+            public Iterator<Cell> iterator()
+            {
+                return BTree.slice(tree, true);
+            }
+
+            public int size()
+            {
+                return BTree.size(tree);
+            }
+        };
+    }
+
+    public Collection<Cell> getReverseSortedColumns()
+    {
+        final Object[] tree = ref.tree;
+        return new AbstractCollection<Cell>()
+        {
+            public Iterator<Cell> iterator()
+            {
+                return BTree.slice(tree, false);
+            }
+
+            public int size()
+            {
+                return BTree.size(tree);
+            }
+        };
+    }
+
+    public int getColumnCount()
+    {
+        return BTree.size(ref.tree);
+    }
+
+    public Iterator<Cell> iterator(ColumnSlice[] slices)
+    {
+        return new SliceIterator(ref.tree, cellComparator, slices, true);
+    }
+
+    public Iterator<Cell> reverseIterator(ColumnSlice[] slices)
+    {
+        return new SliceIterator(ref.tree, cellComparator, slices, false);
+    }
+
+    public boolean isInsertReversed()
+    {
+        return false;
+    }
+
+    private static class Holder
+    {
+        // DeletionInfo is mutable, but we know that we will always copy it in that class,
+        // so we can safely alias one DeletionInfo.live() reference and avoid some allocations.
+        static final Holder EMPTY = new Holder(BTree.empty(), DeletionInfo.live());
+
+        final Object[] tree;
+        final DeletionInfo deletionInfo;
+
+        Holder(Object[] tree, DeletionInfo deletionInfo)
+        {
+            this.tree = tree;
+            this.deletionInfo = deletionInfo;
+        }
+
+        Holder with(DeletionInfo info)
+        {
+            return new Holder(tree, info);
+        }
+
+        Holder with(Object[] newTree)
+        {
+            return new Holder(newTree, deletionInfo);
+        }
+    }
+
+    /**
+     * Reconciles the cells being added with the existing ones, maintains the secondary indexes and the size delta,
+     * and aborts the update as soon as we know we have been beaten by another thread.
+     */
+    private final class ColumnUpdater implements UpdateFunction<Cell>
+    {
+        final Allocator allocator;
+        final SecondaryIndexManager.Updater indexer;
+        Holder current;
+        long sizeDelta;
+        int inserted;
+
+        ColumnUpdater(Allocator allocator, SecondaryIndexManager.Updater indexer)
+        {
+            this.allocator = allocator;
+            this.indexer = indexer;
+        }
+
+        void reset(Holder current)
+        {
+            this.current = current;
+            this.sizeDelta = 0;
+            this.inserted = 0;
+        }
+
+        Pair<Long, Integer> finish()
+        {
+            indexer.updateRowLevelIndexes();
+            return Pair.create(sizeDelta, inserted);
+        }
+
+        public Cell apply(Cell insert)
+        {
+            indexer.insert(insert);
+            sizeDelta += insert.dataSize();
+            inserted++;
+            return insert;
+        }
+
+        public Cell apply(Cell existing, Cell update)
+        {
+            Cell reconciled = update.reconcile(existing, allocator);
+            // for memtable updates we only care about oldcolumn, reconciledcolumn, but when compacting
+            // we need to make sure we update indexes no matter the order we merge
+            if (reconciled == update)
+                indexer.update(existing, reconciled);
+            else
+                indexer.update(update, reconciled);
+            sizeDelta += reconciled.dataSize() - existing.dataSize();
+            return reconciled;
+        }
+
+        public boolean abortEarly()
+        {
+            return ref != current;
+        }
+    }
+
+    private static class SliceIterator extends AbstractIterator<Cell>
+    {
+        private final Object[] tree;
+        private final Comparator<Object> comparator;
+        private final ColumnSlice[] slices;
+        private final boolean forwards;
+
+        private int idx = 0;
+        private Iterator<Cell> currentSlice;
+
+        SliceIterator(Object[] tree, Comparator<Object> comparator, ColumnSlice[] slices, boolean forwards)
+        {
+            this.tree = tree;
+            this.comparator = comparator;
+            this.slices = slices;
+            this.forwards = forwards;
+        }
+
+        protected Cell computeNext()
+        {
+            while (currentSlice == null || !currentSlice.hasNext())
+            {
+                if (idx >= slices.length)
+                    return endOfData();
+
+                // An empty start or finish always extends to the beginning or end of the partition. When iterating
+                // in reverse, the slices are reversed too: start is the upper bound and finish the lower one.
+                ColumnSlice slice = slices[idx++];
+                Composite lower = forwards ? slice.start : slice.finish;
+                Composite upper = forwards ? slice.finish : slice.start;
+                currentSlice = BTree.slice(tree,
+                                           comparator,
+                                           lower.isEmpty() ? null : lower,
+                                           upper.isEmpty() ? null : upper,
+                                           forwards);
+            }
+            return currentSlice.next();
+        }
+    }
+}
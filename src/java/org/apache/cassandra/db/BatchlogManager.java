@@ -26,6 +26,7 @@ import java.nio.ByteBuffer;
 import java.util.*;
 import java.util.concurrent.CopyOnWriteArraySet;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -33,8 +34,9 @@ import java.util.concurrent.atomic.AtomicLong;
 import javax.management.MBeanServer;
 import javax.management.ObjectName;
 
+import com.google.common.annotations.VisibleForTesting;
 import com.google.common.collect.Iterables;
-import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.RateLimiter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -67,11 +69,13 @@ public class BatchlogManager implements BatchlogManagerMBean
     private static final int VERSION = MessagingService.VERSION_12;
     private static final long TIMEOUT = 2 * DatabaseDescriptor.getWriteRpcTimeout();
     private static final long REPLAY_INTERVAL = 60 * 1000; // milliseconds
+    private static final int PAGE_SIZE = 128; // same as HHOM; the most batches per page, fewer if they are large
 
     private static final Logger logger = LoggerFactory.getLogger(BatchlogManager.class);
     public static final BatchlogManager instance = new BatchlogManager();
 
     private final AtomicLong totalBatchesReplayed = new AtomicLong();
+    private final AtomicLong batchesReplayedInCurrentReplay = new AtomicLong();
     private final AtomicBoolean isReplaying = new AtomicBoolean();
 
     private static final ScheduledExecutorService batchlogTasks = new DebuggableScheduledThreadPoolExecutor("BatchlogTasks");
@@ -109,7 +113,22 @@ public class BatchlogManager implements BatchlogManagerMBean
         return totalBatchesReplayed.longValue();
     }
 
+    public boolean isReplayInProgress()
+    {
+        return isReplaying.get();
+    }
+
+    public long getBatchesReplayedInCurrentReplay()
+    {
+        return batchesReplayedInCurrentReplay.longValue();
+    }
+
     public void forceBatchlogReplay()
+    {
+        startBatchlogReplay();
+    }
+
+    public Future<?> startBatchlogReplay()
     {
         Runnable runnable = new WrappedRunnable()
         {
@@ -118,12 +137,17 @@ public class BatchlogManager implements BatchlogManagerMBean
                 replayAllFailedBatches();
             }
         };
-        batchlogTasks.execute(runnable);
+        return batchlogTasks.submit(runnable);
     }
 
     public static Mutation getBatchlogMutationFor(Collection<Mutation> mutations, UUID uuid)
     {
-        long timestamp = FBUtilities.timestampMicros();
+        return getBatchlogMutationFor(mutations, uuid, FBUtilities.timestampMicros());
+    }
+
+    @VisibleForTesting
+    static Mutation getBatchlogMutationFor(Collection<Mutation> mutations, UUID uuid, long timestamp)
+    {
         ByteBuffer writtenAt = LongType.instance.decompose(timestamp / 1000);
         ByteBuffer data = serializeMutations(mutations);
 
@@ -161,11 +185,36 @@ public class BatchlogManager implements BatchlogManagerMBean
 
         logger.debug("Started replayAllFailedBatches");
 
+        // rate limit is in bytes per second. Uses Double.MAX_VALUE if disabled (set to 0 in cassandra.yaml).
+        // max rate is scaled by the number of nodes in the cluster (same as for HHOM - see CASSANDRA-5272).
+        int throttleInKB = DatabaseDescriptor.getBatchlogReplayThrottleInKB()
+                           / Math.max(1, StorageService.instance.getTokenMetadata().getAllEndpoints().size());
+        RateLimiter rateLimiter = RateLimiter.create(throttleInKB == 0 ? Double.MAX_VALUE : throttleInKB * 1024);
+
+        int pageSize = calculatePageSize();
+        batchesReplayedInCurrentReplay.set(0);
         try
         {
-            for (UntypedResultSet.Row row : process("SELECT id, written_at FROM %s.%s", Keyspace.SYSTEM_KS, SystemKeyspace.BATCHLOG_CF))
-                if (System.currentTimeMillis() > row.getLong("written_at") + TIMEOUT)
-                    replayBatch(row.getUUID("id"));
+            // pages through the batchlog in token order, so that each page picks up where the previous one ended
+            UntypedResultSet page = process("SELECT id, data, written_at FROM %s.%s LIMIT %d",
+                                            Keyspace.SYSTEM_KS,
+                                            SystemKeyspace.BATCHLOG_CF,
+                                            pageSize);
+
+            while (!page.isEmpty())
+            {
+                UUID id = processBatchlogPage(page, rateLimiter);
+
+                if (page.size() < pageSize)
+                    break; // we've exhausted the batchlog, next query would be empty.
+
+                page = process("SELECT id, data, written_at FROM %s.%s WHERE token(id) > token(%s) LIMIT %d",
+                               Keyspace.SYSTEM_KS,
+                               SystemKeyspace.BATCHLOG_CF,
+                               id,
+                               pageSize);
+            }
+
             cleanup();
         }
         finally
@@ -176,108 +225,208 @@ public class BatchlogManager implements BatchlogManagerMBean
         logger.debug("Finished replayAllFailedBatches");
     }
 
-    private void replayBatch(UUID id)
+    /*
+     * A page is held in memory, and its mutations in flight, all at once: read fewer batches per page if they are
+     * large, as HHOM does for hints.
+     */
+    private int calculatePageSize()
     {
-        logger.debug("Replaying batch {}", id);
+        ColumnFamilyStore store = Keyspace.open(Keyspace.SYSTEM_KS).getColumnFamilyStore(SystemKeyspace.BATCHLOG_CF);
+        long averageBatchSize = store.getMeanRowSize();
+        if (averageBatchSize <= 0)
+            return PAGE_SIZE;
+        return (int) Math.max(1, Math.min(PAGE_SIZE, DatabaseDescriptor.getInMemoryCompactionLimit() / averageBatchSize));
+    }
 
-        UntypedResultSet result = process("SELECT written_at, data FROM %s.%s WHERE id = %s", Keyspace.SYSTEM_KS, SystemKeyspace.BATCHLOG_CF, id);
-        if (result.isEmpty())
-            return;
+    /*
+     * The mutations of all the batches of the page are sent before waiting for any of them to be acknowledged,
+     * which bounds the number of batches in flight to the page size.  The batches are only deleted once the
+     * whole page has been delivered (or hinted).
+     *
+     * @return the id of the last batch of the page
+     */
+    private UUID processBatchlogPage(UntypedResultSet page, RateLimiter rateLimiter)
+    {
+        UUID id = null;
+        List<Batch> batches = new ArrayList<Batch>(page.size());
 
-        try
+        for (UntypedResultSet.Row row : page)
         {
-            UntypedResultSet.Row batch = result.one();
-            replaySerializedMutations(batch.getBytes("data"), batch.getLong("written_at"));
+            id = row.getUUID("id");
+            long writtenAt = row.getLong("written_at");
+            // enough time for the actual write + batchlog entry mutation delivery (two separate requests).
+            if (System.currentTimeMillis() < writtenAt + TIMEOUT)
+                continue; // not ready to replay yet, might still get deleted.
+
+            Batch batch = new Batch(id, writtenAt, row.getBytes("data"));
+            try
+            {
+                batch.replay(rateLimiter);
+                batches.add(batch);
+            }
+            catch (IOException e)
+            {
+                logger.warn("Skipped batch replay of {} due to {}", id, e);
+                deleteBatch(id);
+            }
         }
-        catch (IOException e)
+
+        for (Batch batch : batches)
         {
-            logger.warn("Skipped batch replay of {} due to {}", id, e);
+            batch.finish();
+            deleteBatch(batch.id);
         }
 
-        process("DELETE FROM %s.%s WHERE id = %s", Keyspace.SYSTEM_KS, SystemKeyspace.BATCHLOG_CF, id);
+        totalBatchesReplayed.addAndGet(batches.size());
+        batchesReplayedInCurrentReplay.addAndGet(batches.size());
 
-        totalBatchesReplayed.incrementAndGet();
+        return id;
     }
 
-    private void replaySerializedMutations(ByteBuffer data, long writtenAt) throws IOException
+    private static void deleteBatch(UUID id)
     {
-        DataInputStream in = new DataInputStream(ByteBufferUtil.inputStream(data));
-        int size = in.readInt();
-        for (int i = 0; i < size; i++)
-            replaySerializedMutation(Mutation.serializer.deserialize(in, VERSION), writtenAt);
+        Mutation mutation = new Mutation(Keyspace.SYSTEM_KS, UUIDType.instance.decompose(id));
+        mutation.delete(SystemKeyspace.BATCHLOG_CF, FBUtilities.timestampMicros());
+        mutation.apply();
     }
 
-    /*
-     * We try to deliver the mutations to the replicas ourselves if they are alive and only resort to writing hints
-     * when a replica is down or a write request times out.
-     */
-    private void replaySerializedMutation(Mutation mutation, long writtenAt)
+    private static class Batch
     {
-        int ttl = calculateHintTTL(mutation, writtenAt);
-        if (ttl <= 0)
-            return; // the mutation isn't safe to replay.
-
-        Set<InetAddress> liveEndpoints = new HashSet<InetAddress>();
-        String ks = mutation.getKeyspaceName();
-        Token<?> tk = StorageService.getPartitioner().getToken(mutation.key());
-        for (InetAddress endpoint : Iterables.concat(StorageService.instance.getNaturalEndpoints(ks, tk),
-                                                     StorageService.instance.getTokenMetadata().pendingEndpointsFor(tk, ks)))
+        private final UUID id;
+        private final long writtenAt;
+        private final ByteBuffer data;
+
+        private List<ReplayedMutation> replayedMutations = Collections.emptyList();
+
+        public Batch(UUID id, long writtenAt, ByteBuffer data)
         {
-            if (endpoint.equals(FBUtilities.getBroadcastAddress()))
-                mutation.apply();
-            else if (FailureDetector.instance.isAlive(endpoint))
-                liveEndpoints.add(endpoint); // will try delivering directly instead of writing a hint.
-            else
-                StorageProxy.writeHintForMutation(mutation, ttl, endpoint);
+            this.id = id;
+            this.writtenAt = writtenAt;
+            this.data = data;
         }
 
-        if (!liveEndpoints.isEmpty())
-            attemptDirectDelivery(mutation, writtenAt, liveEndpoints);
+        public void replay(RateLimiter rateLimiter) throws IOException
+        {
+            logger.debug("Replaying batch {}", id);
+
+            DataInputStream in = new DataInputStream(ByteBufferUtil.inputStream(data));
+            int size = in.readInt();
+            List<Mutation> mutations = new ArrayList<Mutation>(size);
+            for (int i = 0; i < size; i++)
+                mutations.add(Mutation.serializer.deserialize(in, VERSION));
+
+            replayedMutations = new ArrayList<ReplayedMutation>(size);
+            for (Mutation mutation : mutations)
+            {
+                ReplayedMutation replayed = ReplayedMutation.send(mutation, writtenAt);
+                if (replayed != null)
+                    replayedMutations.add(replayed);
+            }
+
+            rateLimiter.acquire(data.remaining()); // acquire afterwards, to not mess up ttl calculation.
+        }
+
+        /*
+         * Waits for the mutations of the batch to be acknowledged, and hints those that were not.
+         */
+        public void finish()
+        {
+            for (ReplayedMutation replayed : replayedMutations)
+                replayed.finish();
+        }
     }
 
-    private void attemptDirectDelivery(Mutation mutation, long writtenAt, Set<InetAddress> endpoints)
+    /*
+     * We try to deliver the mutations to the replicas ourselves if they are alive and only resort to writing hints
+     * when a replica is down or a write request times out.
+     */
+    private static class ReplayedMutation
     {
-        List<WriteResponseHandler> handlers = Lists.newArrayList();
-        final CopyOnWriteArraySet<InetAddress> undelivered = new CopyOnWriteArraySet<InetAddress>(endpoints);
-        for (final InetAddress ep : endpoints)
+        private final Mutation mutation;
+        private final long writtenAt;
+        private final Set<InetAddress> undelivered;
+        private final List<WriteResponseHandler> handlers;
+
+        private ReplayedMutation(Mutation mutation, long writtenAt, Set<InetAddress> undelivered, List<WriteResponseHandler> handlers)
         {
-            Runnable callback = new Runnable()
-            {
-                public void run()
-                {
-                    undelivered.remove(ep);
-                }
-            };
-            WriteResponseHandler handler = new WriteResponseHandler(ep, WriteType.UNLOGGED_BATCH, callback);
-            MessagingService.instance().sendRR(mutation.createMessage(), ep, handler);
-            handlers.add(handler);
+            this.mutation = mutation;
+            this.writtenAt = writtenAt;
+            this.undelivered = undelivered;
+            this.handlers = handlers;
         }
 
-        // Wait for all the requests to complete.
-        for (WriteResponseHandler handler : handlers)
+        /**
+         * @return the mutation being delivered to the live replicas, or null if there are none
+         */
+        public static ReplayedMutation send(Mutation mutation, long writtenAt)
         {
-            try
+            int ttl = calculateHintTTL(mutation, writtenAt);
+            if (ttl <= 0)
+                return null; // the mutation isn't safe to replay.
+
+            Set<InetAddress> liveEndpoints = new HashSet<InetAddress>();
+            String ks = mutation.getKeyspaceName();
+            Token<?> tk = StorageService.getPartitioner().getToken(mutation.key());
+            for (InetAddress endpoint : Iterables.concat(StorageService.instance.getNaturalEndpoints(ks, tk),
+                                                         StorageService.instance.getTokenMetadata().pendingEndpointsFor(tk, ks)))
             {
-                handler.get();
+                if (endpoint.equals(FBUtilities.getBroadcastAddress()))
+                    mutation.apply();
+                else if (FailureDetector.instance.isAlive(endpoint))
+                    liveEndpoints.add(endpoint); // will try delivering directly instead of writing a hint.
+                else
+                    StorageProxy.writeHintForMutation(mutation, ttl, endpoint);
             }
-            catch (WriteTimeoutException e)
+
+            if (liveEndpoints.isEmpty())
+                return null;
+
+            final Set<InetAddress> undelivered = new CopyOnWriteArraySet<InetAddress>(liveEndpoints);
+            List<WriteResponseHandler> handlers = new ArrayList<WriteResponseHandler>(liveEndpoints.size());
+            for (final InetAddress ep : liveEndpoints)
             {
-                logger.debug("Timed out replaying a batched mutation to a node, will write a hint");
+                Runnable callback = new Runnable()
+                {
+                    public void run()
+                    {
+                        undelivered.remove(ep);
+                    }
+                };
+                WriteResponseHandler handler = new WriteResponseHandler(ep, WriteType.UNLOGGED_BATCH, callback);
+                MessagingService.instance().sendRR(mutation.createMessage(), ep, handler);
+                handlers.add(handler);
             }
+            return new ReplayedMutation(mutation, writtenAt, undelivered, handlers);
         }
 
-        if (!undelivered.isEmpty())
+        public void finish()
         {
-            int ttl = calculateHintTTL(mutation, writtenAt); // recalculate ttl
-            if (ttl > 0)
-                for (InetAddress endpoint : undelivered)
-                    StorageProxy.writeHintForMutation(mutation, ttl, endpoint);
+            // Wait for all the requests to complete.
+            for (WriteResponseHandler handler : handlers)
+            {
+                try
+                {
+                    handler.get();
+                }
+                catch (WriteTimeoutException e)
+                {
+                    logger.debug("Timed out replaying a batched mutation to a node, will write a hint");
+                }
+            }
+
+            if (!undelivered.isEmpty())
+            {
+                int ttl = calculateHintTTL(mutation, writtenAt); // recalculate ttl
+                if (ttl > 0)
+                    for (InetAddress endpoint : undelivered)
+                        StorageProxy.writeHintForMutation(mutation, ttl, endpoint);
+            }
         }
     }
 
     // calculate ttl for the mutation's hint (and reduce ttl by the time the mutation spent in the batchlog).
     // this ensures that deletes aren't "undone" by an old batch replay.
-    private int calculateHintTTL(Mutation mutation, long writtenAt)
+    private static int calculateHintTTL(Mutation mutation, long writtenAt)
     {
         return (int) ((HintedHandOffManager.calculateHintTTL(mutation) * 1000 - (System.currentTimeMillis() - writtenAt)) / 1000);
     }
@@ -35,4 +35,14 @@ public interface BatchlogManagerMBean
      * Forces batchlog replay. Returns immediately if replay is already in progress.
      */
     public void forceBatchlogReplay();
+
+    /**
+     * @return true if the batchlog is being replayed
+     */
+    public boolean isReplayInProgress();
+
+    /**
+     * @return count of batches replayed so far by the replay in progress, or by the last one if none is
+     */
+    public long getBatchesReplayedInCurrentReplay();
 }
@@ -60,7 +60,7 @@ import org.apache.cassandra.utils.*;
 //  EmptyColumns
 //  TreeMapBackedSortedColumns
 //  UnsortedColumns
-//AtomicSortedColumns (线程安全)
+//AtomicBTreeColumns (线程安全)
 
 //注意: 每个ColumnFamily的子类实例都只是存放一行记录
 public abstract class ColumnFamily implements Iterable<Cell>, IRowCacheEntry
@@ -176,7 +176,7 @@ public abstract class ColumnFamily implements Iterable<Cell>, IRowCacheEntry
      * Returns a {@link DeletionInfo.InOrderTester} for the deletionInfo() of
      * this column family. Please note that for ThreadSafe implementation of ColumnFamily,
      * this tester will remain valid even if new tombstones are added to this ColumnFamily
-     * *as long as said addition is done in comparator order*. For AtomicSortedColumns,
+     * *as long as said addition is done in comparator order*. For AtomicBTreeColumns,
      * the tester will correspond to the state of when this method is called.
      */
     public DeletionInfo.InOrderTester inOrderDeletionTester()
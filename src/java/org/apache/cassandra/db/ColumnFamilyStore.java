@@ -24,7 +24,6 @@ import java.nio.ByteBuffer;
 import java.util.*;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicInteger;
-import java.util.concurrent.atomic.AtomicLong;
 import java.util.regex.Pattern;
 import javax.management.*;
 
@@ -36,6 +35,7 @@ import com.google.common.util.concurrent.Uninterruptibles;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import org.apache.cassandra.cache.CounterCacheKey;
 import org.apache.cassandra.cache.IRowCacheEntry;
 import org.apache.cassandra.cache.RowCacheKey;
 import org.apache.cassandra.cache.RowCacheSentinel;
@@ -49,7 +49,9 @@ import org.apache.cassandra.db.columniterator.OnDiskAtomIterator;
 import org.apache.cassandra.db.commitlog.CommitLog;
 import org.apache.cassandra.db.commitlog.ReplayPosition;
 import org.apache.cassandra.db.compaction.*;
+import org.apache.cassandra.db.context.CounterContext;
 import org.apache.cassandra.db.filter.*;
+import org.apache.cassandra.db.composites.CellName;
 import org.apache.cassandra.db.composites.CellNameType;
 import org.apache.cassandra.db.composites.Composite;
 import org.apache.cassandra.db.index.SecondaryIndex;
@@ -100,11 +102,6 @@ public class ColumnFamilyStore implements ColumnFamilyStoreMBean
 
     public final Directories directories;
 
-    /** ratio of in-memory memtable size, to serialized size */
-    volatile double liveRatio = 10.0; // reasonable default until we compute what it is based on actual data
-    /** ops count last time we computed liveRatio */
-    private final AtomicLong liveRatioComputedAt = new AtomicLong(32);
-
     public final ColumnFamilyMetrics metric;
     public volatile long sampleLatencyNanos;
 
@@ -338,6 +335,7 @@ public class ColumnFamilyStore implements ColumnFamilyStoreMBean
         for (RowCacheKey key : CacheService.instance.rowCache.getKeySet())
             if (key.cfId == metadata.cfId)
                 invalidateCachedRow(key);
+        invalidateCounterCache();
     }
 
     /**
@@ -568,6 +566,23 @@ public class ColumnFamilyStore implements ColumnFamilyStoreMBean
                         name);
     }
 
+    // must be called after the commit log has been replayed, as it holds counter updates made on this node
+    public void initCounterCache()
+    {
+        if (!metadata.getDefaultValidator().isCommutative() || CacheService.instance.counterCache.getCapacity() == 0)
+            return;
+
+        long start = System.nanoTime();
+
+        int cachedCountersRead = CacheService.instance.counterCache.loadSaved(this);
+        if (cachedCountersRead > 0)
+            logger.info("completed loading ({} ms; {} keys) counter cache for {}.{}",
+                        TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start),
+                        cachedCountersRead,
+                        keyspace.getName(),
+                        name);
+    }
+
     /**
      * See #{@code StorageService.loadNewSSTables(String, String)} for more info
      *
@@ -651,6 +666,8 @@ public class ColumnFamilyStore implements ColumnFamilyStoreMBean
         logger.info("Loading new SSTables and building secondary indexes for {}/{}: {}", keyspace.getName(), name, newSSTables);
         SSTableReader.acquireReferences(newSSTables);
         data.addSSTables(newSSTables);
+        // the new sstables may hold local counter shards
+        invalidateCounterCache();
         try
         {
             indexManager.maybeBuildSecondaryIndexes(newSSTables, indexManager.allIndexesNames());
@@ -835,6 +852,43 @@ public class ColumnFamilyStore implements ColumnFamilyStoreMBean
         FBUtilities.waitOnFuture(forceFlush());
     }
 
+    /**
+     * Cleaner for the global memtable pool: flushes the column family whose live memtables (including its
+     * secondary index memtables) hold the most memory.  The flush marks that memory as being reclaimed,
+     * so the pool stops asking for more cleaning once enough is on its way out.
+     */
+    public static class FlushLargestColumnFamily implements Callable<Boolean>
+    {
+        public Boolean call()
+        {
+            ColumnFamilyStore largest = null;
+            long largestSize = 0;
+            for (ColumnFamilyStore cfs : ColumnFamilyStore.all())
+            {
+                if (!cfs.getCompactionStrategy().isAffectedByMemtableCleaner())
+                    continue;
+
+                long size = cfs.getTotalMemtableLiveSize();
+                if (size > largestSize)
+                {
+                    largest = cfs;
+                    largestSize = size;
+                }
+            }
+
+            if (largest == null)
+            {
+                logger.debug("No memtable to flush to free up room in the memtable pool");
+                return false;
+            }
+
+            logger.info("Flushing largest {} ({} bytes) to free up room. Used total: {}, being flushed: {}, limit: {}",
+                        largest, largestSize, Memtable.memoryPool.allocated(), Memtable.memoryPool.reclaiming(), Memtable.memoryPool.limit);
+            largest.forceFlush();
+            return true;
+        }
+    }
+
     public void maybeUpdateRowCache(DecoratedKey key)
     {
         if (!isRowCacheEnabled())
@@ -844,6 +898,32 @@ public class ColumnFamilyStore implements ColumnFamilyStoreMBean
         invalidateCachedRow(cacheKey);
     }
 
+    /**
+     * Drops the cached local shards this update may change: those of the counters it increments on this node, or
+     * deletes.  Counter updates replicated from other nodes carry no delta, and so leave the local shard alone.
+     */
+    private void maybeInvalidateCounterCache(DecoratedKey key, ColumnFamily columnFamily)
+    {
+        if (!metadata.getDefaultValidator().isCommutative() || CacheService.instance.counterCache.getCapacity() == 0)
+            return;
+
+        if (columnFamily.isMarkedForDelete())
+        {
+            // deleting counters is rare enough to afford a scan of the cache
+            for (CounterCacheKey cacheKey : CacheService.instance.counterCache.getKeySet())
+            {
+                if (cacheKey.cfId.equals(metadata.cfId) && Arrays.equals(cacheKey.partitionKey, ByteBufferUtil.getArray(key.key)))
+                    CacheService.instance.counterCache.remove(cacheKey);
+            }
+        }
+
+        for (Cell cell : columnFamily)
+        {
+            if (!(cell instanceof CounterCell) || CounterContext.instance().hasDelta(cell.value()))
+                CacheService.instance.counterCache.remove(CounterCacheKey.create(metadata.cfId, key.key, cell.name()));
+        }
+    }
+
     /**
      * Insert/Update the column family for this key.
      * Caller is responsible for acquiring Keyspace.switchLock
@@ -858,21 +938,8 @@ public class ColumnFamilyStore implements ColumnFamilyStoreMBean
         Memtable mt = getMemtableThreadSafe();
         mt.put(key, columnFamily, indexer);
         maybeUpdateRowCache(key);
+        maybeInvalidateCounterCache(key, columnFamily);
         metric.writeLatency.addNano(System.nanoTime() - start);
-
-        // recompute liveRatio, if we have doubled the number of ops since last calculated
-        while (true)
-        {
-            long last = liveRatioComputedAt.get();
-            long operations = metric.writeLatency.latency.count();
-            if (operations < 2 * last)
-                break;
-            if (liveRatioComputedAt.compareAndSet(last, operations))
-            {
-                logger.debug("computing liveRatio of {} at {} ops", this, operations);
-                mt.updateLiveRatio();
-            }
-        }
     }
 
     /**
@@ -1278,8 +1345,16 @@ public class ColumnFamilyStore implements ColumnFamilyStoreMBean
                 Tracing.trace("Row cache miss (race)");
                 return getTopLevelColumns(filter, Integer.MIN_VALUE);
             }
-            Tracing.trace("Row cache hit");
-            return (ColumnFamily) cached;
+            ColumnFamily cachedCf = (ColumnFamily) cached;
+            if (isFilterFullyCoveredBy(filter.filter, cachedCf, filter.timestamp))
+            {
+                Tracing.trace("Row cache hit");
+                return cachedCf;
+            }
+
+            // the query goes past the cached head of the partition
+            Tracing.trace("Row cache hit, but the cached partition head doesn't cover the query");
+            return getTopLevelColumns(filter, Integer.MIN_VALUE);
         }
 
         Tracing.trace("Row cache miss");
@@ -1288,11 +1363,12 @@ public class ColumnFamilyStore implements ColumnFamilyStoreMBean
 
         try
         {
-            ColumnFamily data = getTopLevelColumns(QueryFilter.getIdentityFilter(filter.key, name, filter.timestamp),
-                                                   Integer.MIN_VALUE);
+            ColumnFamily data = getTopLevelColumns(getRowCacheFilter(filter.key, filter.timestamp), Integer.MIN_VALUE);
             if (sentinelSuccess && data != null)
                 CacheService.instance.rowCache.replace(key, sentinel, data);
 
+            if (data != null && !isFilterFullyCoveredBy(filter.filter, data, filter.timestamp))
+                return getTopLevelColumns(filter, Integer.MIN_VALUE);
             return data;
         }
         finally
@@ -1302,6 +1378,40 @@ public class ColumnFamilyStore implements ColumnFamilyStoreMBean
         }
     }
 
+    /**
+     * @return the filter reading what the row cache holds of a partition: all of it, or only its first
+     * rows_per_partition_to_cache rows
+     */
+    public QueryFilter getRowCacheFilter(DecoratedKey key, long timestamp)
+    {
+        if (metadata.cachesFullPartitions())
+            return QueryFilter.getIdentityFilter(key, name, timestamp);
+
+        return new QueryFilter(key, name, rowCacheHeadFilter(), timestamp);
+    }
+
+    private SliceQueryFilter rowCacheHeadFilter()
+    {
+        int toGroup = metadata.comparator.isDense() ? -1 : metadata.clusteringColumns().size();
+        return new SliceQueryFilter(ColumnSlice.ALL_COLUMNS_ARRAY, false, metadata.getRowsPerPartitionToCache(), toGroup);
+    }
+
+    /**
+     * @return whether a row cache entry holds everything filter selects from its partition
+     */
+    public boolean isFilterFullyCoveredBy(IDiskAtomFilter filter, ColumnFamily cachedCf, long now)
+    {
+        if (metadata.cachesFullPartitions())
+            return true;
+
+        // if the cached head has fewer rows than we cache, it is the whole partition. Cells that expired since they
+        // were cached must still be counted, as they were live when the head was cut
+        if (rowCacheHeadFilter().getLiveCount(cachedCf, Long.MIN_VALUE) < metadata.getRowsPerPartitionToCache())
+            return true;
+
+        return filter.isFullyCoveredBy(cachedCf, now);
+    }
+
     public int gcBefore(long now)
     {
         return (int) (now / 1000) - metadata.getGcGraceSeconds();
@@ -1423,11 +1533,16 @@ public class ColumnFamilyStore implements ColumnFamilyStoreMBean
     private ViewFragment markReferenced(AbstractViewSSTableFinder finder)
     {
         List<SSTableReader> sstables;
-        DataTracker.View view;
+        List<Memtable> memtables;
 
         while (true)
         {
-            view = data.getView();
+            DataTracker.View view = data.getView();
+
+            // the memtables are referenced too, so that off-heap ones are not freed while we read them
+            memtables = ImmutableList.<Memtable>builder().add(view.memtable).addAll(view.memtablesPendingFlush).build();
+            if (!Memtable.acquireReferences(memtables))
+                continue; // retry w/ new view
 
             if (view.intervalTree.isEmpty())
             {
@@ -1438,10 +1553,11 @@ public class ColumnFamilyStore implements ColumnFamilyStoreMBean
             sstables = finder.findSSTables(view);
             if (SSTableReader.acquireReferences(sstables))
                 break;
+            Memtable.releaseReferences(memtables);
             // retry w/ new view
         }
 
-        return new ViewFragment(sstables, Iterables.concat(Collections.singleton(view.memtable), view.memtablesPendingFlush));
+        return new ViewFragment(sstables, memtables);
     }
 
     /**
@@ -1511,7 +1627,7 @@ public class ColumnFamilyStore implements ColumnFamilyStoreMBean
         }
         finally
         {
-            SSTableReader.releaseReferences(view.sstables);
+            view.release();
         }
     }
 
@@ -1587,7 +1703,7 @@ public class ColumnFamilyStore implements ColumnFamilyStoreMBean
 
                 public void close() throws IOException
                 {
-                    SSTableReader.releaseReferences(view.sstables);
+                    view.release();
                     iterator.close();
                 }
             };
@@ -1595,7 +1711,7 @@ public class ColumnFamilyStore implements ColumnFamilyStoreMBean
         catch (RuntimeException e)
         {
             // In case getIterator() throws, otherwise the iteror close method releases the references.
-            SSTableReader.releaseReferences(view.sstables);
+            view.release();
             throw e;
         }
     }
@@ -1898,6 +2014,29 @@ public class ColumnFamilyStore implements ColumnFamilyStoreMBean
         invalidateCachedRow(new RowCacheKey(cfId, key));
     }
 
+    public ClockAndCount getCachedCounter(ByteBuffer partitionKey, CellName cellName)
+    {
+        if (CacheService.instance.counterCache.getCapacity() == 0L) // counter cache disabled.
+            return null;
+        return CacheService.instance.counterCache.get(CounterCacheKey.create(metadata.cfId, partitionKey, cellName));
+    }
+
+    public void putCachedCounter(ByteBuffer partitionKey, CellName cellName, ClockAndCount clockAndCount)
+    {
+        if (CacheService.instance.counterCache.getCapacity() == 0L) // counter cache disabled.
+            return;
+        CacheService.instance.counterCache.put(CounterCacheKey.create(metadata.cfId, partitionKey, cellName), clockAndCount);
+    }
+
+    public void invalidateCounterCache()
+    {
+        for (CounterCacheKey key : CacheService.instance.counterCache.getKeySet())
+        {
+            if (key.cfId.equals(metadata.cfId))
+                CacheService.instance.counterCache.remove(key);
+        }
+    }
+
     public void forceMajorCompaction() throws InterruptedException, ExecutionException
     {
         CompactionManager.instance.performMaximal(this);
@@ -2013,6 +2152,7 @@ public class ColumnFamilyStore implements ColumnFamilyStoreMBean
                     if (key.cfId == metadata.cfId)
                         invalidateCachedRow(key);
                 }
+                invalidateCounterCache();
             }
         };
 
@@ -2296,13 +2436,22 @@ public class ColumnFamilyStore implements ColumnFamilyStoreMBean
     public static class ViewFragment
     {
         public final List<SSTableReader> sstables;
-        public final Iterable<Memtable> memtables;
+        public final List<Memtable> memtables;
 
-        public ViewFragment(List<SSTableReader> sstables, Iterable<Memtable> memtables)
+        public ViewFragment(List<SSTableReader> sstables, List<Memtable> memtables)
         {
             this.sstables = sstables;
             this.memtables = memtables;
         }
+
+        /**
+         * Releases the references acquired by markReferenced on both the sstables and the memtables.
+         */
+        public void release()
+        {
+            SSTableReader.releaseReferences(sstables);
+            Memtable.releaseReferences(memtables);
+        }
     }
 
     /**
@@ -21,30 +21,49 @@ import java.io.DataInput;
 import java.io.DataOutput;
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.SortedSet;
 import java.util.TreeSet;
 import java.util.UUID;
+import java.util.concurrent.locks.Lock;
 
 import com.google.common.collect.Iterables;
+import com.google.common.util.concurrent.Striped;
 
+import org.apache.cassandra.cache.CounterCacheKey;
+import org.apache.cassandra.config.DatabaseDescriptor;
 import org.apache.cassandra.db.composites.CellName;
+import org.apache.cassandra.db.context.CounterContext;
 import org.apache.cassandra.db.filter.NamesQueryFilter;
+import org.apache.cassandra.db.filter.QueryFilter;
 import org.apache.cassandra.io.IVersionedSerializer;
 import org.apache.cassandra.net.MessageOut;
 import org.apache.cassandra.net.MessagingService;
+import org.apache.cassandra.service.CacheService;
+import org.apache.cassandra.service.StorageService;
 import org.apache.cassandra.utils.ByteBufferUtil;
+import org.apache.cassandra.utils.CounterId;
 import org.apache.cassandra.utils.HeapAllocator;
 
 public class CounterMutation implements IMutation
 {
     public static final CounterMutationSerializer serializer = new CounterMutationSerializer();
 
+    // serializes the updates of a given counter on its leader, so the counter cache stays in step with the
+    // local shards on disk
+    private static final Striped<Lock> LOCKS = Striped.lazyWeakLock(DatabaseDescriptor.getConcurrentWriters() * 1024);
+
     private final Mutation mutation;
     private final ConsistencyLevel consistency;
 
+    // built by apply() out of the counter cache, if enabled
+    private volatile Mutation replicationMutation;
+
     public CounterMutation(Mutation mutation, ConsistencyLevel consistency)
     {
         this.mutation = mutation;
@@ -78,6 +97,9 @@ public class CounterMutation implements IMutation
 
     public Mutation makeReplicationMutation()
     {
+        if (replicationMutation != null)
+            return replicationMutation;
+
         List<ReadCommand> readCommands = new LinkedList<ReadCommand>();
         long timestamp = System.currentTimeMillis();
         for (ColumnFamily columnFamily : mutation.getColumnFamilies())
@@ -138,7 +160,117 @@ public class CounterMutation implements IMutation
             }
             m.add(cf);
         }
+
+        // Cached local shards are only valid as long as no old shard of this node can be merged into the current
+        // one, which compaction does once the local counter id has been renewed
+        if (CacheService.instance.counterCache.getCapacity() == 0 || !CounterId.getOldLocalCounterIds().isEmpty())
+        {
+            m.apply();
+            return;
+        }
+
+        List<Lock> locks = new ArrayList<>();
+        try
+        {
+            grabCounterLocks(keyspace, locks);
+            applyWithCounterCache(keyspace, m);
+        }
+        finally
+        {
+            for (Lock lock : locks)
+                lock.unlock();
+        }
+    }
+
+    private void grabCounterLocks(Keyspace keyspace, List<Lock> locks)
+    {
+        List<CounterCacheKey> keys = new ArrayList<>();
+        for (ColumnFamily cf : mutation.getColumnFamilies())
+        {
+            ColumnFamilyStore cfs = keyspace.getColumnFamilyStore(cf.id());
+            for (CellName name : cf.getColumnNames())
+                keys.add(CounterCacheKey.create(cfs.metadata.cfId, key(), name));
+        }
+
+        // bulkGet() returns the locks in a consistent order, so concurrent mutations can't deadlock
+        for (Lock lock : LOCKS.bulkGet(keys))
+        {
+            lock.lock();
+            locks.add(lock);
+        }
+    }
+
+    /**
+     * Applies m, and works out the resulting local shard of each updated counter: from the counter cache when it
+     * knows the counter, by reading it back otherwise.  The replication mutation is built out of these shards,
+     * and they are put back in the cache.
+     */
+    private void applyWithCounterCache(Keyspace keyspace, Mutation m)
+    {
+        // the cache must be read before applying m, which invalidates the updated counters
+        List<Map<CellName, ClockAndCount>> shards = new ArrayList<>(m.getColumnFamilies().size());
+        for (ColumnFamily cf : m.getColumnFamilies())
+        {
+            ColumnFamilyStore cfs = keyspace.getColumnFamilyStore(cf.id());
+            Map<CellName, ClockAndCount> cfShards = new HashMap<>();
+            for (Cell cell : cf)
+            {
+                ClockAndCount cached = cfs.getCachedCounter(m.key(), cell.name());
+                if (cached != null)
+                    cfShards.put(cell.name(), cached.add(CounterContext.instance().total(cell.value())));
+            }
+            shards.add(cfShards);
+        }
+
         m.apply();
+
+        Mutation replication = new Mutation(m.getKeyspaceName(), m.key());
+        long now = System.currentTimeMillis();
+        int i = 0;
+        for (ColumnFamily cf : m.getColumnFamilies())
+        {
+            ColumnFamilyStore cfs = keyspace.getColumnFamilyStore(cf.id());
+            Map<CellName, ClockAndCount> cfShards = shards.get(i++);
+
+            // reading back the counters the cache misses is only worth it if they are to be replicated
+            if (cfs.metadata.getReplicateOnWrite() && cfShards.size() < cf.getColumnCount())
+                readLocalShards(cfs, m.key(), cf, cfShards, now);
+
+            ColumnFamily replicationCf = cf.cloneMeShallow();
+            for (Map.Entry<CellName, ClockAndCount> entry : cfShards.entrySet())
+            {
+                ClockAndCount shard = entry.getValue();
+                cfs.putCachedCounter(m.key(), entry.getKey(), shard);
+                // the local shard is all the other replicas need, as they keep the highest clock of each shard
+                replicationCf.addColumn(new CounterCell(entry.getKey(),
+                                                        CounterContext.instance().create(CounterId.getLocalId(), shard.clock, shard.count, false),
+                                                        cf.getColumn(entry.getKey()).timestamp()));
+            }
+
+            if (cfs.metadata.getReplicateOnWrite() && replicationCf.getColumnCount() > 0)
+                replication.add(replicationCf);
+        }
+        replicationMutation = replication;
+    }
+
+    private static void readLocalShards(ColumnFamilyStore cfs, ByteBuffer key, ColumnFamily cf, Map<CellName, ClockAndCount> shards, long now)
+    {
+        SortedSet<CellName> names = new TreeSet<>(cfs.metadata.comparator);
+        for (CellName name : cf.getColumnNames())
+            if (!shards.containsKey(name))
+                names.add(name);
+
+        DecoratedKey dk = StorageService.getPartitioner().decorateKey(key);
+        ColumnFamily current = cfs.getColumnFamily(QueryFilter.getNamesFilter(dk, cfs.name, names, now));
+        if (current == null)
+            return;
+
+        for (CellName name : names)
+        {
+            Cell cell = current.getColumn(name);
+            if (cell != null && cell.isLive(now))
+                shards.put(name, CounterContext.instance().getLocalClockAndCount(cell.value()));
+        }
     }
 
     public void addAll(IMutation m)
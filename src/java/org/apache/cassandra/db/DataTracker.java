@@ -137,6 +137,7 @@ public class DataTracker
             newView = currentView.renewMemtable(newMemtable);
         }
         while (!view.compareAndSet(currentView, newView));
+        currentView.memtable.discard();
         notifyRenewed(currentView.memtable);
     }
 
@@ -155,6 +156,7 @@ public class DataTracker
                     newView = newView.replace(Arrays.asList(sstable), Collections.<SSTableReader>emptyList());
             }
             while (!view.compareAndSet(currentView, newView));
+            memtable.discard();
             return;
         }
 
@@ -169,6 +171,7 @@ public class DataTracker
             newView = currentView.replaceFlushed(memtable, sstable);
         }
         while (!view.compareAndSet(currentView, newView));
+        memtable.discard();
 
         if (sstable != null)
         {
@@ -320,11 +323,14 @@ public class DataTracker
     /** (Re)initializes the tracker, purging all references. */
     void init()
     {
-        view.set(new View(new Memtable(cfstore),
-                          Collections.<Memtable>emptySet(),
-                          Collections.<SSTableReader>emptySet(),
-                          Collections.<SSTableReader>emptySet(),
-                          SSTableIntervalTree.empty()));
+        View previous = view.getAndSet(new View(new Memtable(cfstore),
+                                                Collections.<Memtable>emptySet(),
+                                                Collections.<SSTableReader>emptySet(),
+                                                Collections.<SSTableReader>emptySet(),
+                                                SSTableIntervalTree.empty()));
+        // memtables pending flush give their memory back when the flush completes
+        if (previous != null)
+            previous.memtable.discard();
     }
 
     /**
@@ -469,6 +475,13 @@ public class DataTracker
             subscriber.handleNotification(notification, this);
     }
 
+    public void notifySSTableRepairedStatusChanged(Collection<SSTableReader> repairStatusesChanged)
+    {
+        INotification notification = new SSTableRepairStatusChanged(repairStatusesChanged);
+        for (INotificationConsumer subscriber : subscribers)
+            subscriber.handleNotification(notification, this);
+    }
+
     public void notifyAdded(SSTableReader added)
     {
         INotification notification = new SSTableAddedNotification(added);
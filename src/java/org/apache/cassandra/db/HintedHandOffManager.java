@@ -18,6 +18,7 @@
 package org.apache.cassandra.db;
 
 import java.io.DataInputStream;
+import java.io.File;
 import java.io.IOException;
 import java.lang.management.ManagementFactory;
 import java.net.InetAddress;
@@ -49,15 +50,18 @@ import org.apache.cassandra.db.composites.Composite;
 import org.apache.cassandra.db.composites.Composites;
 import org.apache.cassandra.db.compaction.CompactionManager;
 import org.apache.cassandra.db.filter.*;
+import org.apache.cassandra.db.hints.Hint;
+import org.apache.cassandra.db.hints.HintsReader;
+import org.apache.cassandra.db.hints.HintsStore;
 import org.apache.cassandra.db.marshal.Int32Type;
 import org.apache.cassandra.db.marshal.UUIDType;
 import org.apache.cassandra.dht.IPartitioner;
 import org.apache.cassandra.dht.Range;
-import org.apache.cassandra.dht.Token;
 import org.apache.cassandra.exceptions.WriteTimeoutException;
 import org.apache.cassandra.gms.ApplicationState;
 import org.apache.cassandra.gms.FailureDetector;
 import org.apache.cassandra.gms.Gossiper;
+import org.apache.cassandra.io.FSReadError;
 import org.apache.cassandra.io.sstable.Descriptor;
 import org.apache.cassandra.io.sstable.SSTable;
 import org.apache.cassandra.metrics.HintedHandoffMetrics;
@@ -70,7 +74,15 @@ import org.apache.cassandra.utils.UUIDGen;
 import org.cliffc.high_scale_lib.NonBlockingHashSet;
 
 /**
- * The hint schema looks like this:
+ * Hints are appended to one file per target host at a time, see HintsStore: each hint holds the mutation to
+ * replay along with its creation time and ttl.
+ *
+ * When FailureDetector signals that a node that was down is back up, we close the file its hints are being
+ * written to, so that new hints go to a new one, and stream through its files sequentially, sending each block
+ * of hints over and waiting for it to be acknowledged before the next.  Files are deleted as a whole once all
+ * their hints have been delivered.
+ *
+ * Hints used to be stored in the system.hints table, which looks like this:
  *
  * CREATE TABLE hints (
  *   target_id uuid,
@@ -80,12 +92,7 @@ import org.cliffc.high_scale_lib.NonBlockingHashSet;
  *   PRIMARY KEY (target_id, hint_id, message_version)
  * ) WITH COMPACT STORAGE;
  *
- * Thus, for each node in the cluster we treat its uuid as the partition key; each hint is a logical row
- * (physical composite column) containing the mutation to replay and associated metadata.
- *
- * When FailureDetector signals that a node that was down is back up, we page through
- * the hinted mutations and send them over one at a time, waiting for
- * hinted_handoff_throttle_delay in between each.
+ * Hints found there, left by a previous version or streamed from a decommissioned node, are moved to the files.
  *
  * deliverHints is also exposed to JMX so it can be run manually if FD ever misses
  * its cue somehow.
@@ -98,7 +105,8 @@ public class HintedHandOffManager implements HintedHandOffManagerMBean
 
     private static final Logger logger = LoggerFactory.getLogger(HintedHandOffManager.class);
     private static final int PAGE_SIZE = 128;
-    private static final int LARGE_NUMBER = 65536; // 64k nodes ought to be enough for anybody.
+    // hints buffered in memory are written out to their files at least this often
+    private static final int FLUSH_PERIOD_IN_SECONDS = 10;
 
     public final HintedHandoffMetrics metrics = new HintedHandoffMetrics();
 
@@ -115,13 +123,18 @@ public class HintedHandOffManager implements HintedHandOffManagerMBean
                                                                                  new NamedThreadFactory("HintedHandoff", Thread.MIN_PRIORITY),
                                                                                  "internal");
 
-    private final ColumnFamilyStore hintStore = Keyspace.open(Keyspace.SYSTEM_KS).getColumnFamilyStore(SystemKeyspace.HINTS_CF);
+    @VisibleForTesting
+    final HintsStore hintsStore = new HintsStore(new File(DatabaseDescriptor.getHintsDirectory()), DatabaseDescriptor.getHintsCompressor());
+
+    // the position of the first block of each file that was not acknowledged when its delivery was interrupted
+    private final ConcurrentMap<File, Long> dispatchPositions = new ConcurrentHashMap<File, Long>();
+
+    private final ColumnFamilyStore legacyHintStore = Keyspace.open(Keyspace.SYSTEM_KS).getColumnFamilyStore(SystemKeyspace.HINTS_CF);
 
     /**
-     * Returns a mutation representing a Hint to be sent to <code>targetId</code>
-     * as soon as it becomes available again.
+     * Stores a hint to be sent to <code>targetId</code> as soon as it becomes available again.
      */
-    public Mutation hintFor(Mutation mutation, int ttl, UUID targetId)
+    public void storeHint(Mutation mutation, int ttl, UUID targetId)
     {
         assert ttl > 0;
 
@@ -132,12 +145,30 @@ public class HintedHandOffManager implements HintedHandOffManagerMBean
         else
             logger.warn("Unable to find matching endpoint for target {} when storing a hint", targetId);
 
+        hintsStore.write(targetId, new Hint(mutation, System.currentTimeMillis(), ttl));
+    }
+
+    /**
+     * Writes out the hints buffered so far, which is otherwise done every FLUSH_PERIOD_IN_SECONDS.
+     */
+    public void flushHints()
+    {
+        hintsStore.flush();
+    }
+
+    /**
+     * Returns a mutation storing the hint in the legacy system.hints table, with what is left of its ttl.
+     */
+    @VisibleForTesting
+    static Mutation legacyHintFor(Hint hint, UUID targetId, long now)
+    {
         UUID hintId = UUIDGen.getTimeUUID();
         // serialize the hint with id and version as a composite column name
         CellName name = CFMetaData.HintsCf.comparator.makeCellName(hintId, MessagingService.current_version);
-        ByteBuffer value = ByteBuffer.wrap(FBUtilities.serialize(mutation, Mutation.serializer, MessagingService.current_version));
+        ByteBuffer value = ByteBuffer.wrap(FBUtilities.serialize(hint.mutation, Mutation.serializer, MessagingService.current_version));
         ColumnFamily cf = ArrayBackedSortedColumns.factory.create(Schema.instance.getCFMetaData(Keyspace.SYSTEM_KS, SystemKeyspace.HINTS_CF));
-        cf.addColumn(name, value, System.currentTimeMillis(), ttl);
+        int ttl = (int) Math.max(1, (hint.creationTime + hint.ttl * 1000L - now) / 1000);
+        cf.addColumn(name, value, hint.creationTime, ttl);
         return new Mutation(Keyspace.SYSTEM_KS, UUIDType.instance.decompose(targetId), cf);
     }
 
@@ -177,6 +208,24 @@ public class HintedHandOffManager implements HintedHandOffManagerMBean
             }
         };
         StorageService.optionalTasks.scheduleWithFixedDelay(runnable, 10, 10, TimeUnit.MINUTES);
+
+        Runnable flush = new Runnable()
+        {
+            public void run()
+            {
+                hintsStore.flush();
+            }
+        };
+        StorageService.optionalTasks.scheduleWithFixedDelay(flush, FLUSH_PERIOD_IN_SECONDS, FLUSH_PERIOD_IN_SECONDS, TimeUnit.SECONDS);
+
+        Runnable migration = new Runnable()
+        {
+            public void run()
+            {
+                migrateLegacyHints();
+            }
+        };
+        StorageService.optionalTasks.submit(migration);
     }
 
     private static void deleteHint(ByteBuffer tokenBytes, CellName columnName, long timestamp)
@@ -204,10 +253,7 @@ public class HintedHandOffManager implements HintedHandOffManagerMBean
     {
         if (!StorageService.instance.getTokenMetadata().isMember(endpoint))
             return;
-        UUID hostId = StorageService.instance.getTokenMetadata().getHostId(endpoint);
-        ByteBuffer hostIdBytes = ByteBuffer.wrap(UUIDGen.decompose(hostId));
-        final Mutation mutation = new Mutation(Keyspace.SYSTEM_KS, hostIdBytes);
-        mutation.delete(SystemKeyspace.HINTS_CF, System.currentTimeMillis());
+        final UUID hostId = StorageService.instance.getTokenMetadata().getHostId(endpoint);
 
         // execute asynchronously to avoid blocking caller (which may be processing gossip)
         Runnable runnable = new Runnable()
@@ -217,8 +263,7 @@ public class HintedHandOffManager implements HintedHandOffManagerMBean
                 try
                 {
                     logger.info("Deleting any stored hints for {}", endpoint);
-                    mutation.apply();
-                    compact();
+                    hintsStore.deleteHints(hostId);
                 }
                 catch (Exception e)
                 {
@@ -239,7 +284,8 @@ public class HintedHandOffManager implements HintedHandOffManagerMBean
                 try
                 {
                     logger.info("Truncating all stored hints.");
-                    Keyspace.open(Keyspace.SYSTEM_KS).getColumnFamilyStore(SystemKeyspace.HINTS_CF).truncateBlocking();
+                    hintsStore.deleteAllHints();
+                    legacyHintStore.truncateBlocking();
                 }
                 catch (Exception e)
                 {
@@ -254,11 +300,11 @@ public class HintedHandOffManager implements HintedHandOffManagerMBean
     @VisibleForTesting
     protected Future<?> compact()
     {
-        hintStore.forceBlockingFlush();
+        legacyHintStore.forceBlockingFlush();
         ArrayList<Descriptor> descriptors = new ArrayList<Descriptor>();
-        for (SSTable sstable : hintStore.getSSTables())
+        for (SSTable sstable : legacyHintStore.getSSTables())
             descriptors.add(sstable.descriptor);
-        return CompactionManager.instance.submitUserDefined(hintStore, descriptors, (int) (System.currentTimeMillis() / 1000));
+        return CompactionManager.instance.submitUserDefined(legacyHintStore, descriptors, (int) (System.currentTimeMillis() / 1000));
     }
 
     private static boolean pagingFinished(ColumnFamily hintColumnFamily, Composite startColumn)
@@ -303,7 +349,8 @@ public class HintedHandOffManager implements HintedHandOffManagerMBean
 
     private void deliverHintsToEndpoint(InetAddress endpoint)
     {
-        if (hintStore.isEmpty())
+        UUID hostId = StorageService.instance.getTokenMetadata().getHostId(endpoint);
+        if (hostId == null || !hintsStore.getHostIds().contains(hostId))
             return; // nothing to do, don't confuse users by logging a no-op handoff
 
         // check if hints delivery has been paused
@@ -329,29 +376,19 @@ public class HintedHandOffManager implements HintedHandOffManagerMBean
             return;
         }
 
-        doDeliverHintsToEndpoint(endpoint);
+        doDeliverHintsToEndpoint(endpoint, hostId);
     }
 
     /*
-     * 1. Get the key of the endpoint we need to handoff
-     * 2. For each column, deserialize the mutation and send it to the endpoint
-     * 3. Delete the subcolumn if the write was successful
-     * 4. Force a flush
-     * 5. Do major compaction to clean up all deletes etc.
+     * 1. Close the file the hints for the endpoint are being written to
+     * 2. For each of its files, oldest first, send the hints of each block to the endpoint
+     * 3. Wait for the block to be acknowledged before moving on to the next one
+     * 4. Delete the file once all its blocks have been
      */
-    private void doDeliverHintsToEndpoint(InetAddress endpoint)
+    private void doDeliverHintsToEndpoint(InetAddress endpoint, UUID hostId)
     {
-        // find the hints for the node using its token.
-        UUID hostId = Gossiper.instance.getHostId(endpoint);
         logger.info("Started hinted handoff for host: {} with IP: {}", hostId, endpoint);
-        final ByteBuffer hostIdBytes = ByteBuffer.wrap(UUIDGen.decompose(hostId));
-        DecoratedKey epkey =  StorageService.getPartitioner().decorateKey(hostIdBytes);
-
-        final AtomicInteger rowsReplayed = new AtomicInteger(0);
-        Composite startColumn = Composites.EMPTY;
-
-        int pageSize = calculatePageSize();
-        logger.debug("Using pageSize of {}", pageSize);
+        AtomicInteger rowsReplayed = new AtomicInteger(0);
 
         // rate limit is in bytes per second. Uses Double.MAX_VALUE if disabled (set to 0 in cassandra.yaml).
         // max rate is scaled by the number of nodes in the cluster (CASSANDRA-5272).
@@ -359,7 +396,170 @@ public class HintedHandOffManager implements HintedHandOffManagerMBean
                            / (StorageService.instance.getTokenMetadata().getAllEndpoints().size() - 1);
         RateLimiter rateLimiter = RateLimiter.create(throttleInKB == 0 ? Double.MAX_VALUE : throttleInKB * 1024);
 
-        delivery:
+        // hints stored from now on go to a new file
+        hintsStore.closeWriter(hostId);
+        for (File file : hintsStore.getFiles(hostId))
+        {
+            if (!deliverHintsFile(file, endpoint, rateLimiter, rowsReplayed))
+                return;
+            hintsStore.delete(file);
+            dispatchPositions.remove(file);
+        }
+
+        logger.info("Finished hinted handoff of {} rows to endpoint {}", rowsReplayed, endpoint);
+    }
+
+    /**
+     * @return true if all the hints of the file were delivered, or false if their delivery was interrupted, in
+     * which case it resumes from the first block that was not acknowledged the next time
+     */
+    private boolean deliverHintsFile(File file, InetAddress endpoint, RateLimiter rateLimiter, final AtomicInteger rowsReplayed)
+    {
+        HintsReader reader;
+        try
+        {
+            reader = HintsReader.open(file);
+        }
+        catch (IOException e)
+        {
+            logger.error("Unable to read hints file {}; its hints are dropped", file, e);
+            return true;
+        }
+
+        try
+        {
+            Long position = dispatchPositions.get(file);
+            if (position != null)
+                reader.seek(position);
+
+            while (true)
+            {
+                long blockPosition = reader.getPosition();
+                List<Hint> block = reader.readBlock();
+                if (block == null)
+                    return true;
+
+                // check if hints delivery has been paused during the process
+                if (hintedHandOffPaused)
+                {
+                    logger.debug("Hints delivery process is paused, aborting");
+                    dispatchPositions.put(file, blockPosition);
+                    return false;
+                }
+
+                // check if node is still alive and we should continue delivery process
+                if (!FailureDetector.instance.isAlive(endpoint))
+                {
+                    logger.info("Endpoint {} died during hint delivery; aborting ({} delivered)", endpoint, rowsReplayed);
+                    dispatchPositions.put(file, blockPosition);
+                    return false;
+                }
+
+                List<WriteResponseHandler> responseHandlers = Lists.newArrayList();
+                Map<UUID, Long> truncationTimesCache = new HashMap<UUID, Long>();
+                for (Hint hint : block)
+                {
+                    if (!hint.isLive(System.currentTimeMillis()))
+                        continue;
+
+                    Mutation mutation = hint.mutation;
+                    for (UUID cfId : ImmutableSet.copyOf((mutation.getColumnFamilyIds())))
+                    {
+                        Long truncatedAt = truncationTimesCache.get(cfId);
+                        if (truncatedAt == null)
+                        {
+                            ColumnFamilyStore cfs = Keyspace.open(mutation.getKeyspaceName()).getColumnFamilyStore(cfId);
+                            truncatedAt = cfs.getTruncationTime();
+                            truncationTimesCache.put(cfId, truncatedAt);
+                        }
+
+                        if (hint.creationTime < truncatedAt)
+                        {
+                            logger.debug("Skipping delivery of hint for truncated columnfamily {}", cfId);
+                            mutation = mutation.without(cfId);
+                        }
+                    }
+
+                    if (mutation.isEmpty())
+                        continue;
+
+                    MessageOut<Mutation> message = mutation.createMessage();
+                    final int size = message.serializedSize(MessagingService.current_version);
+                    rateLimiter.acquire(size);
+                    Runnable callback = new Runnable()
+                    {
+                        public void run()
+                        {
+                            rowsReplayed.incrementAndGet();
+                            metrics.hintsDispatched.mark();
+                            metrics.hintBytesDispatched.mark(size);
+                        }
+                    };
+                    WriteResponseHandler responseHandler = new WriteResponseHandler(endpoint, WriteType.UNLOGGED_BATCH, callback);
+                    MessagingService.instance().sendRR(message, endpoint, responseHandler);
+                    responseHandlers.add(responseHandler);
+                }
+
+                for (WriteResponseHandler handler : responseHandlers)
+                {
+                    try
+                    {
+                        handler.get();
+                    }
+                    catch (WriteTimeoutException e)
+                    {
+                        logger.info("Timed out replaying hints to {}; aborting ({} delivered)", endpoint, rowsReplayed);
+                        dispatchPositions.put(file, blockPosition);
+                        return false;
+                    }
+                }
+            }
+        }
+        catch (IOException e)
+        {
+            throw new FSReadError(e, file);
+        }
+        finally
+        {
+            reader.close();
+        }
+    }
+
+    /**
+     * Moves the hints found in the legacy system.hints table to the hints files, deleting them from the table.
+     */
+    private void migrateLegacyHints()
+    {
+        if (legacyHintStore.isEmpty())
+            return;
+
+        logger.info("Moving hints from the {} table to {}", SystemKeyspace.HINTS_CF, DatabaseDescriptor.getHintsDirectory());
+        IPartitioner p = StorageService.getPartitioner();
+        RowPosition minPos = p.getMinimumToken().minKeyBound();
+        Range<RowPosition> range = new Range<RowPosition>(minPos, minPos, p);
+        IDiskAtomFilter filter = new NamesQueryFilter(ImmutableSortedSet.<CellName>of());
+        int migrated = 0;
+        for (Row row : legacyHintStore.getRangeSlice(range, null, filter, Integer.MAX_VALUE, System.currentTimeMillis()))
+            migrated += migrateLegacyHints(row.key);
+        hintsStore.flush();
+        logger.info("Moved {} hints from the {} table", migrated, SystemKeyspace.HINTS_CF);
+
+        try
+        {
+            compact().get();
+        }
+        catch (Exception e)
+        {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private int migrateLegacyHints(DecoratedKey epkey)
+    {
+        UUID hostId = UUIDGen.getUUID(epkey.key);
+        Composite startColumn = Composites.EMPTY;
+        int pageSize = calculatePageSize();
+        int migrated = 0;
         while (true)
         {
             long now = System.currentTimeMillis();
@@ -371,129 +571,90 @@ public class HintedHandOffManager implements HintedHandOffManagerMBean
                                                             pageSize,
                                                             now);
 
-            ColumnFamily hintsPage = ColumnFamilyStore.removeDeleted(hintStore.getColumnFamily(filter), (int) (now / 1000));
+            ColumnFamily hintsPage = ColumnFamilyStore.removeDeleted(legacyHintStore.getColumnFamily(filter), (int) (now / 1000));
 
             if (pagingFinished(hintsPage, startColumn))
                 break;
 
-            // check if node is still alive and we should continue delivery process
-            if (!FailureDetector.instance.isAlive(endpoint))
+            for (Cell hint : hintsPage)
             {
-                logger.info("Endpoint {} died during hint delivery; aborting ({} delivered)", endpoint, rowsReplayed);
-                return;
-            }
-
-            List<WriteResponseHandler> responseHandlers = Lists.newArrayList();
-            Map<UUID, Long> truncationTimesCache = new HashMap<UUID, Long>();
-            for (final Cell hint : hintsPage)
-            {
-                // check if hints delivery has been paused during the process
-                if (hintedHandOffPaused)
-                {
-                    logger.debug("Hints delivery process is paused, aborting");
-                    break delivery;
-                }
-
-                // Skip tombstones:
-                // if we iterate quickly enough, it's possible that we could request a new page in the same millisecond
-                // in which the local deletion timestamp was generated on the last column in the old page, in which
-                // case the hint will have no columns (since it's deleted) but will still be included in the resultset
-                // since (even with gcgs=0) it's still a "relevant" tombstone.
-                if (!hint.isLive(System.currentTimeMillis()))
-                    continue;
-
+                // move past the hints deleted as they are migrated, which are still included in the page as
+                // "relevant" tombstones if they were deleted in the same second
                 startColumn = hint.name();
+                if (!hint.isLive(now))
+                    continue;
 
                 int version = Int32Type.instance.compose(hint.name().get(1));
                 DataInputStream in = new DataInputStream(ByteBufferUtil.inputStream(hint.value()));
-                Mutation mutation;
                 try
                 {
-                    mutation = Mutation.serializer.deserialize(in, version);
+                    Mutation mutation = Mutation.serializer.deserialize(in, version);
+                    int ttl = hint instanceof ExpiringCell ? ((ExpiringCell) hint).getTimeToLive() : calculateHintTTL(mutation);
+                    hintsStore.write(hostId, new Hint(mutation, hint.timestamp(), ttl));
+                    migrated++;
                 }
                 catch (UnknownColumnFamilyException e)
                 {
-                    logger.debug("Skipping delivery of hint for deleted columnfamily", e);
-                    deleteHint(hostIdBytes, hint.name(), hint.maxTimestamp());
-                    continue;
+                    logger.debug("Skipping migration of hint for deleted columnfamily", e);
                 }
                 catch (IOException e)
                 {
                     throw new AssertionError(e);
                 }
+                deleteHint(epkey.key, hint.name(), hint.maxTimestamp());
+            }
+        }
+        return migrated;
+    }
 
-                truncationTimesCache.clear();
-                for (UUID cfId : ImmutableSet.copyOf((mutation.getColumnFamilyIds())))
+    /**
+     * Moves the hints files to the legacy system.hints table, flushed, so that they can be streamed to another node
+     * on decommission; that node then moves them to its own hints files.
+     */
+    public void moveHintsToLegacyTable()
+    {
+        long now = System.currentTimeMillis();
+        for (UUID hostId : hintsStore.getHostIds())
+        {
+            hintsStore.closeWriter(hostId);
+            for (File file : hintsStore.getFiles(hostId))
+            {
+                HintsReader reader = null;
+                try
                 {
-                    Long truncatedAt = truncationTimesCache.get(cfId);
-                    if (truncatedAt == null)
-                    {
-                        ColumnFamilyStore cfs = Keyspace.open(mutation.getKeyspaceName()).getColumnFamilyStore(cfId);
-                        truncatedAt = cfs.getTruncationTime();
-                        truncationTimesCache.put(cfId, truncatedAt);
-                    }
-
-                    if (hint.maxTimestamp() < truncatedAt)
+                    reader = HintsReader.open(file);
+                    List<Hint> block;
+                    while ((block = reader.readBlock()) != null)
                     {
-                        logger.debug("Skipping delivery of hint for truncated columnfamily {}", cfId);
-                        mutation = mutation.without(cfId);
+                        for (Hint hint : block)
+                        {
+                            if (hint.isLive(now))
+                                legacyHintFor(hint, hostId, now).applyUnsafe(); // we flush right after
+                        }
                     }
                 }
-
-                if (mutation.isEmpty())
-                {
-                    deleteHint(hostIdBytes, hint.name(), hint.maxTimestamp());
-                    continue;
-                }
-
-                MessageOut<Mutation> message = mutation.createMessage();
-                rateLimiter.acquire(message.serializedSize(MessagingService.current_version));
-                Runnable callback = new Runnable()
-                {
-                    public void run()
-                    {
-                        rowsReplayed.incrementAndGet();
-                        deleteHint(hostIdBytes, hint.name(), hint.maxTimestamp());
-                    }
-                };
-                WriteResponseHandler responseHandler = new WriteResponseHandler(endpoint, WriteType.UNLOGGED_BATCH, callback);
-                MessagingService.instance().sendRR(message, endpoint, responseHandler);
-                responseHandlers.add(responseHandler);
-            }
-
-            for (WriteResponseHandler handler : responseHandlers)
-            {
-                try
+                catch (IOException e)
                 {
-                    handler.get();
+                    logger.error("Unable to read hints file {}; its hints are dropped", file, e);
                 }
-                catch (WriteTimeoutException e)
+                finally
                 {
-                    logger.info("Timed out replaying hints to {}; aborting ({} delivered)", endpoint, rowsReplayed);
-                    return;
+                    if (reader != null)
+                        reader.close();
                 }
+                hintsStore.delete(file);
             }
         }
-
-        logger.info("Finished hinted handoff of {} rows to endpoint {}", rowsReplayed, endpoint);
-
-        try
-        {
-            compact().get();
-        }
-        catch (Exception e)
-        {
-            throw new RuntimeException(e);
-        }
+        legacyHintStore.forceBlockingFlush();
     }
 
     private int calculatePageSize()
     {
         // read less columns (mutations) per page if they are very large
-        int meanColumnCount = hintStore.getMeanColumns();
+        int meanColumnCount = legacyHintStore.getMeanColumns();
         if (meanColumnCount > 0)
         {
-            int averageColumnSize = (int) (hintStore.getMeanRowSize() / meanColumnCount);
+            int averageColumnSize = (int) (legacyHintStore.getMeanRowSize() / meanColumnCount);
             // page size of 1 does not allow actual paging b/c of >= behavior on startColumn
             return Math.max(2, Math.min(PAGE_SIZE, DatabaseDescriptor.getInMemoryCompactionLimit() / averageColumnSize));
         }
@@ -512,16 +673,13 @@ public class HintedHandOffManager implements HintedHandOffManagerMBean
         if (logger.isDebugEnabled())
           logger.debug("Started scheduleAllDeliveries");
 
-        IPartitioner p = StorageService.getPartitioner();
-        RowPosition minPos = p.getMinimumToken().minKeyBound();
-        Range<RowPosition> range = new Range<RowPosition>(minPos, minPos, p);
-        IDiskAtomFilter filter = new NamesQueryFilter(ImmutableSortedSet.<CellName>of());
-        List<Row> rows = hintStore.getRangeSlice(range, null, filter, Integer.MAX_VALUE, System.currentTimeMillis());
-        for (Row row : rows)
+        // hints may have been streamed to the legacy table since we last looked
+        migrateLegacyHints();
+
+        for (UUID hostId : hintsStore.getHostIds())
         {
-            UUID hostId = UUIDGen.getUUID(row.key.key);
             InetAddress target = StorageService.instance.getTokenMetadata().getEndpointForHostId(hostId);
-            // token may have since been removed (in which case we have just read back a tombstone)
+            // token may have since been removed
             if (target != null)
                 scheduleHintDelivery(target);
         }
@@ -571,46 +729,12 @@ public class HintedHandOffManager implements HintedHandOffManagerMBean
 
     public List<String> listEndpointsPendingHints()
     {
-        Token.TokenFactory tokenFactory = StorageService.getPartitioner().getTokenFactory();
-
-        // Extract the keys as strings to be reported.
-        LinkedList<String> result = new LinkedList<String>();
-        for (Row row : getHintsSlice(1))
+        List<String> result = new ArrayList<String>();
+        for (UUID hostId : hintsStore.getHostIds())
         {
-            if (row.cf != null) //ignore removed rows
-                result.addFirst(tokenFactory.toString(row.key.token));
+            InetAddress endpoint = StorageService.instance.getTokenMetadata().getEndpointForHostId(hostId);
+            result.add(endpoint == null ? hostId.toString() : endpoint.getHostAddress());
         }
         return result;
     }
-
-    private List<Row> getHintsSlice(int columnCount)
-    {
-        // Get count # of columns...
-        SliceQueryFilter predicate = new SliceQueryFilter(ColumnSlice.ALL_COLUMNS_ARRAY,
-                                                          false,
-                                                          columnCount);
-
-        // From keys "" to ""...
-        IPartitioner<?> partitioner = StorageService.getPartitioner();
-        RowPosition minPos = partitioner.getMinimumToken().minKeyBound();
-        Range<RowPosition> range = new Range<RowPosition>(minPos, minPos);
-
-        try
-        {
-            RangeSliceCommand cmd = new RangeSliceCommand(Keyspace.SYSTEM_KS,
-                                                          SystemKeyspace.HINTS_CF,
-                                                          System.currentTimeMillis(),
-                                                          predicate,
-                                                          range,
-                                                          null,
-                                                          LARGE_NUMBER);
-            return StorageProxy.getRangeSlice(cmd, ConsistencyLevel.ONE);
-        }
-        catch (Exception e)
-        {
-            logger.info("HintsCF getEPPendingHints timed out.");
-            throw new RuntimeException(e);
-        }
-    }
-
 }
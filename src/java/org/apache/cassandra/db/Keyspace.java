@@ -344,6 +344,14 @@ public class Keyspace
      */
     public void apply(Mutation mutation, boolean writeCommitLog, boolean updateIndexes)
     {
+        // apply back-pressure while memtables hold all the memory they are allowed to.  This must happen before
+        // acquiring the switchLock, since freeing memory requires switching memtables out for flushing
+        if (Memtable.memoryPool.isExhausted())
+        {
+            Tracing.trace("Waiting for room in the memtable pool");
+            Memtable.memoryPool.awaitRoom();
+        }
+
         // write the mutation to the commitlog and memtables
         Tracing.trace("Acquiring switchLock read lock");
         switchLock.readLock().lock();
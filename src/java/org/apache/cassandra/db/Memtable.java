@@ -18,13 +18,14 @@
 package org.apache.cassandra.db;
 
 import java.io.File;
+import java.io.IOException;
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 
 import com.google.common.base.Function;
 import com.google.common.base.Throwables;
-import org.cliffc.high_scale_lib.NonBlockingHashSet;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -33,6 +34,7 @@ import org.apache.cassandra.concurrent.NamedThreadFactory;
 import org.apache.cassandra.concurrent.StageManager;
 import org.apache.cassandra.config.DatabaseDescriptor;
 import org.apache.cassandra.db.composites.CellNameType;
+import org.apache.cassandra.db.columniterator.OnDiskAtomIterator;
 import org.apache.cassandra.db.commitlog.ReplayPosition;
 import org.apache.cassandra.db.index.SecondaryIndexManager;
 import org.apache.cassandra.io.sstable.SSTableReader;
@@ -40,7 +42,10 @@ import org.apache.cassandra.io.sstable.SSTableWriter;
 import org.apache.cassandra.io.sstable.metadata.MetadataCollector;
 import org.apache.cassandra.io.util.DiskAwareRunnable;
 import org.apache.cassandra.utils.Allocator;
-import org.github.jamm.MemoryMeter;
+import org.apache.cassandra.utils.HeapAllocator;
+import org.apache.cassandra.utils.MemtablePool;
+import org.apache.cassandra.utils.ObjectSizes;
+import org.apache.cassandra.utils.Pair;
 
 public class Memtable
 {
@@ -66,41 +71,49 @@ public class Memtable
                                                new NamedThreadFactory("FlushWriter"),
                                                "internal");
 
-    // size in memory can never be less than serialized size
-    private static final double MIN_SANE_LIVE_RATIO = 1.0;
-    // max liveratio seen w/ 1-byte columns on a 64-bit jvm was 19. If it gets higher than 64 something is probably broken.
-    private static final double MAX_SANE_LIVE_RATIO = 64.0;
-
-    // We need to take steps to avoid retaining inactive membtables in memory, because counting is slow (can be
-    // minutes, for a large memtable and a busy server).  A strictly FIFO Memtable queue could keep memtables
-    // alive waiting for metering after they're flushed and would otherwise be GC'd.  Instead, the approach we take
-    // is to enqueue the CFS instead of the memtable, and to meter whatever the active memtable is when the executor
-    // starts to work on it.  We use a Set to make sure we don't enqueue redundant tasks for the same CFS.
-    private static final Set<ColumnFamilyStore> meteringInProgress = new NonBlockingHashSet<ColumnFamilyStore>();
-    private static final ExecutorService meterExecutor = new JMXEnabledThreadPoolExecutor(1,
-                                                                                          Integer.MAX_VALUE,
-                                                                                          TimeUnit.MILLISECONDS,
-                                                                                          new LinkedBlockingQueue<Runnable>(),
-                                                                                          new NamedThreadFactory("MemoryMeter"),
-                                                                                          "internal");
-    private final MemoryMeter meter;
-
-    volatile static ColumnFamilyStore activelyMeasuring;
+    /**
+     * The memory budget shared by all memtables.  Once the memtables not already being flushed hold more than the
+     * cleanup threshold, the largest one is flushed; writers are blocked while the budget is exhausted.
+     */
+    public static final MemtablePool memoryPool = new MemtablePool(DatabaseDescriptor.getTotalMemtableSpaceInMB() * 1048576L,
+                                                                   DatabaseDescriptor.getMemtableCleanupThreshold(),
+                                                                   new ColumnFamilyStore.FlushLargestColumnFamily());
+
+    // Cell names, values and keys are reserved from the pool by the allocator as it copies them.  The objects
+    // pointing at them have a fixed layout, so we charge those per cell and per partition instead of metering
+    // the memtable.
+    private static final long BUFFER_HEAP_OVERHEAD = ObjectSizes.getFieldSize(4 * 4 + 8 + 8 + 3 * ObjectSizes.getReferenceSize());
+    private static final long CELL_HEAP_OVERHEAD = ObjectSizes.getFieldSize(2 * ObjectSizes.getReferenceSize() + 8) // cell
+                                                   + ObjectSizes.getFieldSize(2 * ObjectSizes.getReferenceSize()) // name
+                                                   + 2 * BUFFER_HEAP_OVERHEAD // name and value buffers
+                                                   + 2 * ObjectSizes.getReferenceSize(); // b-tree slot, nodes being at least half full
+    private static final long ROW_HEAP_OVERHEAD = ObjectSizes.getFieldSize(2 * ObjectSizes.getReferenceSize()) // key
+                                                  + BUFFER_HEAP_OVERHEAD // key buffer
+                                                  + ObjectSizes.getFieldSize(3 * ObjectSizes.getReferenceSize()) // skip list node
+                                                  + ObjectSizes.getFieldSize(4 * ObjectSizes.getReferenceSize() + 1) // columns
+                                                  + ObjectSizes.getFieldSize(ObjectSizes.getReferenceSize()) // cell comparator
+                                                  + ObjectSizes.getFieldSize(2 * ObjectSizes.getReferenceSize()); // holder
+
+    private final MemtablePool.SubPool pool = memoryPool.newSubPool();
 
     private final AtomicLong currentSize = new AtomicLong(0);
     private final AtomicLong currentOperations = new AtomicLong(0);
 
+    // one reference per read going through the memtable, plus the one released when it is discarded; the memory
+    // of the allocator is freed along with the last one
+    private final AtomicInteger references = new AtomicInteger(1);
+
     // We index the memtable by RowPosition only for the purpose of being able
     // to select key range using Token.KeyBound. However put() ensures that we
     // actually only store DecoratedKey.
 
-    //AtomicSortedColumns只是针对一行的，代表某行中的所有列
-    private final ConcurrentNavigableMap<RowPosition, AtomicSortedColumns> rows = new ConcurrentSkipListMap<RowPosition, AtomicSortedColumns>();
+    //AtomicBTreeColumns只是针对一行的，代表某行中的所有列
+    private final ConcurrentNavigableMap<RowPosition, AtomicBTreeColumns> rows = new ConcurrentSkipListMap<RowPosition, AtomicBTreeColumns>();
     public final ColumnFamilyStore cfs;
     private final long creationTime = System.currentTimeMillis();
     private final long creationNano = System.nanoTime();
 
-    private final Allocator allocator = DatabaseDescriptor.getMemtableAllocator();
+    private final Allocator allocator = DatabaseDescriptor.getMemtableAllocator(pool);
     // We really only need one column by allocator but one by memtable is not a big waste and avoids needing allocators to know about CFS
     private final Function<Cell, Cell> localCopyFunction = new Function<Cell, Cell>()
     {
@@ -120,29 +133,14 @@ public class Memtable
         this.cfs = cfs;
         this.initialComparator = cfs.metadata.comparator;
         this.cfs.scheduleFlush();
-
-        Callable<Set<Object>> provider = new Callable<Set<Object>>()
-        {
-            public Set<Object> call() throws Exception
-            {
-                // avoid counting this once for each row
-                Set<Object> set = Collections.newSetFromMap(new IdentityHashMap<Object, Boolean>());
-                set.add(Memtable.this.cfs.metadata);
-                return set;
-            }
-        };
-        meter = new MemoryMeter().omitSharedBufferOverhead().withTrackerProvider(provider);
     }
 
+    /**
+     * @return the number of bytes this memtable has reserved from the memtable pool
+     */
     public long getLiveSize()
     {
-        long estimatedSize = (long) (currentSize.get() * cfs.liveRatio);
-
-        // liveRatio is just an estimate; we can get a lower bound directly from the allocator
-        if (estimatedSize < allocator.getMinimumSize())
-            return allocator.getMinimumSize();
-
-        return estimatedSize;
+        return pool.owns();
     }
 
     public long getOperations()
@@ -160,42 +158,27 @@ public class Memtable
         resolve(key, columnFamily, indexer);
     }
 
-    public void updateLiveRatio() throws RuntimeException
-    {
-        if (!MemoryMeter.isInitialized())
-        {
-            // hack for openjdk.  we log a warning about this in the startup script too.
-            logger.error("MemoryMeter uninitialized (jamm not specified as java agent); assuming liveRatio of {}.  "
-                         + " Usually this means cassandra-env.sh disabled jamm because you are using a buggy JRE; "
-                         + " upgrade to the Sun JRE instead", cfs.liveRatio);
-            return;
-        }
-
-        if (!meteringInProgress.add(cfs))
-        {
-            logger.debug("Metering already pending or active for {}; skipping liveRatio update", cfs);
-            return;
-        }
-
-        meterExecutor.submit(new MeteringRunnable(cfs));
-    }
-
     private void resolve(DecoratedKey key, ColumnFamily cf, SecondaryIndexManager.Updater indexer)
     {
         //会触发DecoratedKey的compareTo方法
-        AtomicSortedColumns previous = rows.get(key);
+        AtomicBTreeColumns previous = rows.get(key);
 
         if (previous == null)
         {
-            AtomicSortedColumns empty = cf.cloneMeShallow(AtomicSortedColumns.factory, false);
+            AtomicBTreeColumns empty = cf.cloneMeShallow(AtomicBTreeColumns.factory, false);
             // We'll add the columns later. This avoids wasting works if we get beaten in the putIfAbsent
             previous = rows.putIfAbsent(new DecoratedKey(key.token, allocator.clone(key.key)), empty);
             if (previous == null)
+            {
                 previous = empty;
+                pool.allocate(ROW_HEAP_OVERHEAD);
+            }
         }
 
-        long sizeDelta = previous.addAllWithSizeDelta(cf, allocator, localCopyFunction, indexer);
-        currentSize.addAndGet(sizeDelta);
+        Pair<Long, Integer> added = previous.addAllWithSizeDelta(cf, allocator, localCopyFunction, indexer);
+        currentSize.addAndGet(added.left);
+        // cells reconciled with an existing one replace it in the tree, so only the new ones add heap objects
+        pool.allocate(added.right * CELL_HEAP_OVERHEAD);
         currentOperations.addAndGet((cf.getColumnCount() == 0)
                                     ? cf.isMarkedForDelete() ? 1 : 0
                                     : cf.getColumnCount());
@@ -206,7 +189,7 @@ public class Memtable
     {
         StringBuilder builder = new StringBuilder();
         builder.append("{");
-        for (Map.Entry<RowPosition, AtomicSortedColumns> entry : rows.entrySet())
+        for (Map.Entry<RowPosition, AtomicBTreeColumns> entry : rows.entrySet())
         {
             builder.append(entry.getKey()).append(": ").append(entry.getValue()).append(", ");
         }
@@ -216,6 +199,7 @@ public class Memtable
 
     public void flushAndSignal(final CountDownLatch latch, final Future<ReplayPosition> context)
     {
+        pool.markReclaiming();
         flushWriter.execute(new FlushRunnable(latch, context));
     }
 
@@ -229,29 +213,29 @@ public class Memtable
      * @param startWith Include data in the result from and including this key and to the end of the memtable
      * @return An iterator of entries with the data from the start key
      */
-    public Iterator<Map.Entry<DecoratedKey, AtomicSortedColumns>> getEntryIterator(final RowPosition startWith, final RowPosition stopAt)
+    public Iterator<Map.Entry<DecoratedKey, AtomicBTreeColumns>> getEntryIterator(final RowPosition startWith, final RowPosition stopAt)
     {
-        return new Iterator<Map.Entry<DecoratedKey, AtomicSortedColumns>>()
+        return new Iterator<Map.Entry<DecoratedKey, AtomicBTreeColumns>>()
         {
-            private Iterator<Map.Entry<RowPosition, AtomicSortedColumns>> iter = stopAt.isMinimum(cfs.partitioner)
+            private Iterator<Map.Entry<RowPosition, AtomicBTreeColumns>> iter = stopAt.isMinimum(cfs.partitioner)
                                                                                ? rows.tailMap(startWith).entrySet().iterator()
                                                                                : rows.subMap(startWith, true, stopAt, true).entrySet().iterator();
-            private Map.Entry<RowPosition, AtomicSortedColumns> currentEntry;
+            private Map.Entry<RowPosition, AtomicBTreeColumns> currentEntry;
 
             public boolean hasNext()
             {
                 return iter.hasNext();
             }
 
-            public Map.Entry<DecoratedKey, AtomicSortedColumns> next()
+            public Map.Entry<DecoratedKey, AtomicBTreeColumns> next()
             {
-                Map.Entry<RowPosition, AtomicSortedColumns> entry = iter.next();
+                Map.Entry<RowPosition, AtomicBTreeColumns> entry = iter.next();
                 // Store the reference to the current entry so that remove() can update the current size.
                 currentEntry = entry;
                 // Actual stored key should be true DecoratedKey
                 assert entry.getKey() instanceof DecoratedKey;
                 // Object cast is required since otherwise we can't turn RowPosition into DecoratedKey
-                return (Map.Entry<DecoratedKey, AtomicSortedColumns>) (Object)entry;
+                return (Map.Entry<DecoratedKey, AtomicBTreeColumns>) (Object)entry;
             }
 
             public void remove()
@@ -287,6 +271,126 @@ public class Memtable
         return creationTime;
     }
 
+    /**
+     * Hands the memory reserved by this memtable back to the memtable pool.  Called once the memtable has been
+     * flushed or thrown away; it must not be written to afterwards.  Off-heap memory is freed as soon as the reads
+     * still going through the memtable are done.
+     */
+    public void discard()
+    {
+        pool.release();
+        releaseReference();
+    }
+
+    /**
+     * Reads must hold a reference on the memtables they go through (see ColumnFamilyStore.markReferenced), so
+     * that off-heap memtables are not freed under them.
+     *
+     * @return false if the memtable has been discarded and every read has let go of it
+     */
+    public boolean acquireReference()
+    {
+        while (true)
+        {
+            int n = references.get();
+            if (n <= 0)
+                return false;
+            if (references.compareAndSet(n, n + 1))
+                return true;
+        }
+    }
+
+    public void releaseReference()
+    {
+        int n = references.decrementAndGet();
+        assert n >= 0 : "Reference counter " + n + " for " + this;
+        if (n == 0)
+            allocator.free();
+    }
+
+    public static boolean acquireReferences(Iterable<Memtable> memtables)
+    {
+        Memtable failed = null;
+        for (Memtable memtable : memtables)
+        {
+            if (!memtable.acquireReference())
+            {
+                failed = memtable;
+                break;
+            }
+        }
+
+        if (failed == null)
+            return true;
+
+        for (Memtable memtable : memtables)
+        {
+            if (memtable == failed)
+                break;
+            memtable.releaseReference();
+        }
+        return false;
+    }
+
+    public static void releaseReferences(Iterable<Memtable> memtables)
+    {
+        for (Memtable memtable : memtables)
+            memtable.releaseReference();
+    }
+
+    /**
+     * The cells of an off-heap memtable point into memory that is freed with it, so reads copy them on heap as
+     * they go: what they return may be used after they have released the memtable.
+     */
+    public OnDiskAtomIterator copyOnHeap(final OnDiskAtomIterator iter)
+    {
+        if (!allocator.isOffHeap())
+            return iter;
+
+        return new OnDiskAtomIterator()
+        {
+            public ColumnFamily getColumnFamily()
+            {
+                return iter.getColumnFamily();
+            }
+
+            public DecoratedKey getKey()
+            {
+                return iter.getKey();
+            }
+
+            public boolean hasNext()
+            {
+                return iter.hasNext();
+            }
+
+            public OnDiskAtom next()
+            {
+                OnDiskAtom atom = iter.next();
+                // range tombstones come from the deletion info, which stays on heap
+                return atom instanceof Cell ? ((Cell) atom).localCopy(cfs, HeapAllocator.instance) : atom;
+            }
+
+            public void remove()
+            {
+                throw new UnsupportedOperationException();
+            }
+
+            public void close() throws IOException
+            {
+                iter.close();
+            }
+        };
+    }
+
+    /**
+     * @return key, copied on heap if it was read from an off-heap memtable; see copyOnHeap(OnDiskAtomIterator)
+     */
+    public DecoratedKey copyOnHeap(DecoratedKey key)
+    {
+        return allocator.isOffHeap() ? new DecoratedKey(key.token, HeapAllocator.instance.clone(key.key)) : key;
+    }
+
     class FlushRunnable extends DiskAwareRunnable
     {
         private final CountDownLatch latch;
@@ -342,7 +446,7 @@ public class Memtable
             {
                 // (we can't clear out the map as-we-go to free up memory,
                 //  since the memtable is being used for queries in the "pending flush" category)
-                for (Map.Entry<RowPosition, AtomicSortedColumns> entry : rows.entrySet())
+                for (Map.Entry<RowPosition, AtomicBTreeColumns> entry : rows.entrySet())
                 {
                     ColumnFamily cf = entry.getValue();
                     if (cf.isMarkedForDelete())
@@ -392,63 +496,4 @@ public class Memtable
                                      sstableMetadataCollector);
         }
     }
-
-    private static class MeteringRunnable implements Runnable
-    {
-        // we might need to wait in the meter queue for a while.  measure whichever memtable is active at that point,
-        // rather than keeping the original memtable referenced (and thus un-freeable) until this runs.
-        private final ColumnFamilyStore cfs;
-
-        public MeteringRunnable(ColumnFamilyStore cfs)
-        {
-            this.cfs = cfs;
-        }
-
-        public void run()
-        {
-            try
-            {
-                activelyMeasuring = cfs;
-                Memtable memtable = cfs.getMemtableThreadSafe();
-
-                long start = System.nanoTime();
-                // ConcurrentSkipListMap has cycles, so measureDeep will have to track a reference to EACH object it visits.
-                // So to reduce the memory overhead of doing a measurement, we break it up to row-at-a-time.
-                long deepSize = memtable.meter.measure(memtable.rows);
-                int objects = 0;
-                for (Map.Entry<RowPosition, AtomicSortedColumns> entry : memtable.rows.entrySet())
-                {
-                    deepSize += memtable.meter.measureDeep(entry.getKey()) + memtable.meter.measureDeep(entry.getValue());
-                    objects += entry.getValue().getColumnCount();
-                }
-                double newRatio = (double) deepSize / memtable.currentSize.get();
-
-                if (newRatio < MIN_SANE_LIVE_RATIO)
-                {
-                    logger.debug("setting live ratio to minimum of {} instead of {}", MIN_SANE_LIVE_RATIO, newRatio);
-                    newRatio = MIN_SANE_LIVE_RATIO;
-                }
-                if (newRatio > MAX_SANE_LIVE_RATIO)
-                {
-                    logger.warn("setting live ratio to maximum of {} instead of {}", MAX_SANE_LIVE_RATIO, newRatio);
-                    newRatio = MAX_SANE_LIVE_RATIO;
-                }
-
-                // we want to be very conservative about our estimate, since the penalty for guessing low is OOM
-                // death.  thus, higher estimates are believed immediately; lower ones are averaged w/ the old
-                if (newRatio > cfs.liveRatio)
-                    cfs.liveRatio = newRatio;
-                else
-                    cfs.liveRatio = (cfs.liveRatio + newRatio) / 2.0;
-
-                logger.info("{} liveRatio is {} (just-counted was {}).  calculation took {}ms for {} cells",
-                            cfs, cfs.liveRatio, newRatio, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), objects);
-            }
-            finally
-            {
-                activelyMeasuring = null;
-                meteringInProgress.remove(cfs);
-            }
-        }
-    }
 }
@@ -20,18 +20,23 @@ package org.apache.cassandra.db;
 import java.io.DataInput;
 import java.io.DataOutput;
 import java.io.IOException;
+import java.util.AbstractList;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.RandomAccess;
 
 import com.google.common.primitives.Ints;
 
 import org.apache.cassandra.cache.IMeasurableMemory;
 import org.apache.cassandra.db.composites.CType;
 import org.apache.cassandra.io.ISerializer;
+import org.apache.cassandra.io.sstable.CorruptSSTableException;
 import org.apache.cassandra.io.sstable.Descriptor;
 import org.apache.cassandra.io.sstable.IndexHelper;
+import org.apache.cassandra.io.util.FileDataInput;
 import org.apache.cassandra.io.util.FileUtils;
+import org.apache.cassandra.io.util.SegmentedFile;
 import org.apache.cassandra.utils.ObjectSizes;
 
 public class RowIndexEntry implements IMeasurableMemory
@@ -69,7 +74,7 @@ public class RowIndexEntry implements IMeasurableMemory
      */
     public boolean isIndexed()
     {
-        return !columnsIndex().isEmpty();
+        return false;
     }
 
     public DeletionTime deletionTime()
@@ -77,11 +82,26 @@ public class RowIndexEntry implements IMeasurableMemory
         throw new UnsupportedOperationException();
     }
 
-    public List<IndexHelper.IndexInfo> columnsIndex()
+    /**
+     * Use {@link org.apache.cassandra.io.sstable.SSTableReader#getColumnsIndex(RowIndexEntry)} rather than this.
+     *
+     * @param ifile the primary index of the sstable this entry is from
+     * @return the column index, read lazily from {@code ifile} if it was not deserialized along with this entry
+     */
+    public List<IndexHelper.IndexInfo> columnsIndex(SegmentedFile ifile, CType type)
     {
         return Collections.emptyList();
     }
 
+    /**
+     * @return the column index of an entry deserialized along with it
+     */
+    private static List<IndexHelper.IndexInfo> inMemoryColumnsIndex(RowIndexEntry rie)
+    {
+        assert !(rie instanceof ShallowIndexedEntry) : "column index of " + rie + " is not in memory";
+        return rie instanceof IndexedEntry ? ((IndexedEntry) rie).columnsIndex : Collections.<IndexHelper.IndexInfo>emptyList();
+    }
+
     public long memorySize()
     {
         return ObjectSizes.getFieldSize(TypeSizes.NATIVE.sizeof(position));
@@ -103,14 +123,28 @@ public class RowIndexEntry implements IMeasurableMemory
 
             if (rie.isIndexed())
             {
+                List<IndexHelper.IndexInfo> columnsIndex = inMemoryColumnsIndex(rie);
                 DeletionTime.serializer.serialize(rie.deletionTime(), out);
-                out.writeInt(rie.columnsIndex().size());
+                out.writeInt(columnsIndex.size());
                 ISerializer<IndexHelper.IndexInfo> idxSerializer = type.indexSerializer();
-                for (IndexHelper.IndexInfo info : rie.columnsIndex())
+                int[] offsets = new int[columnsIndex.size()];
+                long offset = 0;
+                for (int i = 0; i < offsets.length; i++)
+                {
+                    IndexHelper.IndexInfo info = columnsIndex.get(i);
+                    offsets[i] = Ints.checkedCast(offset);
                     idxSerializer.serialize(info, out);
+                    offset += idxSerializer.serializedSize(info, TypeSizes.NATIVE);
+                }
+                for (int i = 0; i < offsets.length; i++)
+                    out.writeInt(offsets[i]);
             }
         }
 
+        /**
+         * Deserializes an entry of the primary index.  If the sstable has offsets for its column indexes and
+         * {@code in} is a file, the column index is left there, to be read by {@link #columnsIndex(SegmentedFile, CType)}.
+         */
         public RowIndexEntry deserialize(DataInput in, Descriptor.Version version) throws IOException
         {
             long position = in.readLong();
@@ -118,13 +152,24 @@ public class RowIndexEntry implements IMeasurableMemory
             int size = in.readInt();
             if (size > 0)
             {
+                long start = in instanceof FileDataInput ? ((FileDataInput) in).getFilePointer() : -1;
                 DeletionTime deletionTime = DeletionTime.serializer.deserialize(in);
 
                 int entries = in.readInt();
+                if (version.hasColumnIndexOffsets && start >= 0)
+                {
+                    long indexPosition = ((FileDataInput) in).getFilePointer();
+                    long offsetsPosition = start + size - entries * TypeSizes.NATIVE.sizeof(0);
+                    FileUtils.skipBytesFully(in, Ints.checkedCast(start + size - indexPosition));
+                    return new ShallowIndexedEntry(position, deletionTime, entries, indexPosition, offsetsPosition);
+                }
+
                 ISerializer<IndexHelper.IndexInfo> idxSerializer = type.indexSerializer();
                 List<IndexHelper.IndexInfo> columnsIndex = new ArrayList<IndexHelper.IndexInfo>(entries);
                 for (int i = 0; i < entries; i++)
                     columnsIndex.add(idxSerializer.deserialize(in));
+                if (version.hasColumnIndexOffsets)
+                    FileUtils.skipBytesFully(in, entries * TypeSizes.NATIVE.sizeof(0));
 
                 return new IndexedEntry(position, deletionTime, columnsIndex);
             }
@@ -134,6 +179,127 @@ public class RowIndexEntry implements IMeasurableMemory
             }
         }
 
+        /**
+         * @param serializedPosition where {@code rie} was serialized in the primary index
+         * @return the entry reading {@code rie} back from there would give
+         */
+        public RowIndexEntry onDisk(RowIndexEntry rie, long serializedPosition)
+        {
+            if (!rie.isIndexed())
+                return rie;
+
+            TypeSizes typeSizes = TypeSizes.NATIVE;
+            long start = serializedPosition + typeSizes.sizeof(rie.position) + typeSizes.sizeof(0);
+            int entries = inMemoryColumnsIndex(rie).size();
+            long indexPosition = start + DeletionTime.serializer.serializedSize(rie.deletionTime(), typeSizes) + typeSizes.sizeof(entries);
+            long offsetsPosition = start + rie.promotedSize(type) - entries * typeSizes.sizeof(0);
+            return new ShallowIndexedEntry(rie.position, rie.deletionTime(), entries, indexPosition, offsetsPosition);
+        }
+
+        /**
+         * Serializes an entry for the saved key cache: unlike in the primary index, the column index of an entry
+         * deserialized without it is saved as its position.
+         */
+        public void serializeForCache(RowIndexEntry rie, DataOutput out) throws IOException
+        {
+            if (!(rie instanceof ShallowIndexedEntry))
+            {
+                // entries of sstables without column index offsets, saved as they were before those
+                out.writeLong(rie.position);
+                out.writeInt(cachedPromotedSize(rie));
+                if (rie.isIndexed())
+                {
+                    List<IndexHelper.IndexInfo> columnsIndex = inMemoryColumnsIndex(rie);
+                    DeletionTime.serializer.serialize(rie.deletionTime(), out);
+                    out.writeInt(columnsIndex.size());
+                    ISerializer<IndexHelper.IndexInfo> idxSerializer = type.indexSerializer();
+                    for (IndexHelper.IndexInfo info : columnsIndex)
+                        idxSerializer.serialize(info, out);
+                }
+                return;
+            }
+
+            ShallowIndexedEntry entry = (ShallowIndexedEntry) rie;
+            out.writeLong(entry.position);
+            out.writeInt(cachedPromotedSize(entry));
+            DeletionTime.serializer.serialize(entry.deletionTime, out);
+            out.writeInt(entry.columnsCount);
+            out.writeLong(entry.indexPosition);
+            out.writeLong(entry.offsetsPosition);
+        }
+
+        private int cachedPromotedSize(RowIndexEntry rie)
+        {
+            if (rie instanceof ShallowIndexedEntry)
+                return rie.promotedSize(type);
+            return rie.isIndexed() ? rie.promotedSize(type) - inMemoryColumnsIndex(rie).size() * TypeSizes.NATIVE.sizeof(0) : 0;
+        }
+
+        public long serializedSizeForCache(RowIndexEntry rie, TypeSizes typeSizes)
+        {
+            long size = typeSizes.sizeof(rie.position) + typeSizes.sizeof(cachedPromotedSize(rie));
+            if (!rie.isIndexed())
+                return size;
+
+            size += DeletionTime.serializer.serializedSize(rie.deletionTime(), typeSizes);
+            if (rie instanceof ShallowIndexedEntry)
+            {
+                ShallowIndexedEntry entry = (ShallowIndexedEntry) rie;
+                return size + typeSizes.sizeof(entry.columnsCount) + typeSizes.sizeof(entry.indexPosition) + typeSizes.sizeof(entry.offsetsPosition);
+            }
+
+            List<IndexHelper.IndexInfo> columnsIndex = inMemoryColumnsIndex(rie);
+            size += typeSizes.sizeof(columnsIndex.size());
+            ISerializer<IndexHelper.IndexInfo> idxSerializer = type.indexSerializer();
+            for (IndexHelper.IndexInfo info : columnsIndex)
+                size += idxSerializer.serializedSize(info, typeSizes);
+            return size;
+        }
+
+        /**
+         * @return a serializer of the entries of sstables of the given version in the form they are saved in
+         * the key cache
+         */
+        public ISerializer<RowIndexEntry> forCache(final Descriptor.Version version)
+        {
+            return new ISerializer<RowIndexEntry>()
+            {
+                public void serialize(RowIndexEntry rie, DataOutput out) throws IOException
+                {
+                    serializeForCache(rie, out);
+                }
+
+                public RowIndexEntry deserialize(DataInput in) throws IOException
+                {
+                    return deserializeForCache(in, version);
+                }
+
+                public long serializedSize(RowIndexEntry rie, TypeSizes typeSizes)
+                {
+                    return serializedSizeForCache(rie, typeSizes);
+                }
+            };
+        }
+
+        /**
+         * Deserializes an entry saved by {@link #serializeForCache(RowIndexEntry, DataOutput)} for an sstable of the
+         * given version.
+         */
+        public RowIndexEntry deserializeForCache(DataInput in, Descriptor.Version version) throws IOException
+        {
+            if (!version.hasColumnIndexOffsets)
+                return deserialize(in, version);
+
+            long position = in.readLong();
+            int size = in.readInt();
+            if (size <= 0)
+                return new RowIndexEntry(position);
+
+            DeletionTime deletionTime = DeletionTime.serializer.deserialize(in);
+            int entries = in.readInt();
+            return new ShallowIndexedEntry(position, deletionTime, entries, in.readLong(), in.readLong());
+        }
+
         public static void skip(DataInput in) throws IOException
         {
             in.readLong();
@@ -173,6 +339,12 @@ public class RowIndexEntry implements IMeasurableMemory
             this.columnsIndex = columnsIndex;
         }
 
+        @Override
+        public boolean isIndexed()
+        {
+            return true;
+        }
+
         @Override
         public DeletionTime deletionTime()
         {
@@ -180,7 +352,7 @@ public class RowIndexEntry implements IMeasurableMemory
         }
 
         @Override
-        public List<IndexHelper.IndexInfo> columnsIndex()
+        public List<IndexHelper.IndexInfo> columnsIndex(SegmentedFile ifile, CType type)
         {
             return columnsIndex;
         }
@@ -194,6 +366,7 @@ public class RowIndexEntry implements IMeasurableMemory
             ISerializer<IndexHelper.IndexInfo> idxSerializer = type.indexSerializer();
             for (IndexHelper.IndexInfo info : columnsIndex)
                 size += idxSerializer.serializedSize(info, typeSizes);
+            size += columnsIndex.size() * typeSizes.sizeof(0); // offsets
 
             return Ints.checkedCast(size);
         }
@@ -214,4 +387,123 @@ public class RowIndexEntry implements IMeasurableMemory
                    + ObjectSizes.getArraySize(columnsIndex.size(), ObjectSizes.getReferenceSize()) + entrySize + 4;
         }
     }
+
+    /**
+     * An entry in the row index for a row whose columns are indexed, read from a primary index that has the
+     * offset of each entry of the column index: those are read from the file only when looked up, so that
+     * neither a read nor the key cache ever holds the whole column index of a wide row.
+     */
+    private static class ShallowIndexedEntry extends RowIndexEntry
+    {
+        private final DeletionTime deletionTime;
+        private final int columnsCount;
+        // position in the primary index of the first entry of the column index
+        private final long indexPosition;
+        // position in the primary index of the offsets of the entries of the column index, relative to the first one
+        private final long offsetsPosition;
+
+        private ShallowIndexedEntry(long position, DeletionTime deletionTime, int columnsCount, long indexPosition, long offsetsPosition)
+        {
+            super(position);
+            assert deletionTime != null;
+            assert columnsCount > 1;
+            this.deletionTime = deletionTime;
+            this.columnsCount = columnsCount;
+            this.indexPosition = indexPosition;
+            this.offsetsPosition = offsetsPosition;
+        }
+
+        @Override
+        public boolean isIndexed()
+        {
+            return true;
+        }
+
+        @Override
+        public DeletionTime deletionTime()
+        {
+            return deletionTime;
+        }
+
+        @Override
+        public List<IndexHelper.IndexInfo> columnsIndex(SegmentedFile ifile, CType type)
+        {
+            return new OnDiskColumnsIndex(ifile, type.indexSerializer());
+        }
+
+        /**
+         * The size of the entry as saved in the key cache.
+         */
+        @Override
+        public int promotedSize(CType type)
+        {
+            TypeSizes typeSizes = TypeSizes.NATIVE;
+            long size = DeletionTime.serializer.serializedSize(deletionTime, typeSizes);
+            size += typeSizes.sizeof(columnsCount);
+            size += typeSizes.sizeof(indexPosition);
+            size += typeSizes.sizeof(offsetsPosition);
+            return Ints.checkedCast(size);
+        }
+
+        @Override
+        public long memorySize()
+        {
+            return ObjectSizes.getSuperClassFieldSize(TypeSizes.NATIVE.sizeof(position))
+                   + ObjectSizes.getFieldSize(// deletionTime
+                                              ObjectSizes.getReferenceSize() +
+                                              TypeSizes.NATIVE.sizeof(columnsCount) +
+                                              TypeSizes.NATIVE.sizeof(indexPosition) +
+                                              TypeSizes.NATIVE.sizeof(offsetsPosition))
+                   + deletionTime.memorySize();
+        }
+
+        @Override
+        public String toString()
+        {
+            return String.format("ShallowIndexedEntry(position=%d, columnsCount=%d, indexPosition=%d)", position, columnsCount, indexPosition);
+        }
+
+        /**
+         * The column index of the entry, each element of which is deserialized from the primary index when got,
+         * so that binary searching it reads O(log n) of them.
+         */
+        private class OnDiskColumnsIndex extends AbstractList<IndexHelper.IndexInfo> implements RandomAccess
+        {
+            private final SegmentedFile ifile;
+            private final ISerializer<IndexHelper.IndexInfo> serializer;
+
+            private OnDiskColumnsIndex(SegmentedFile ifile, ISerializer<IndexHelper.IndexInfo> serializer)
+            {
+                this.ifile = ifile;
+                this.serializer = serializer;
+            }
+
+            public IndexHelper.IndexInfo get(int index)
+            {
+                if (index < 0 || index >= columnsCount)
+                    throw new IndexOutOfBoundsException(index + " not in [0, " + columnsCount + ")");
+
+                FileDataInput in = ifile.getSegment(offsetsPosition + index * TypeSizes.NATIVE.sizeof(0));
+                try
+                {
+                    int offset = in.readInt();
+                    in.seek(indexPosition + offset);
+                    return serializer.deserialize(in);
+                }
+                catch (IOException e)
+                {
+                    throw new CorruptSSTableException(e, in.getPath());
+                }
+                finally
+                {
+                    FileUtils.closeQuietly(in);
+                }
+            }
+
+            public int size()
+            {
+                return columnsCount;
+            }
+        }
+    }
 }
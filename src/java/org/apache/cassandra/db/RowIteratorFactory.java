@@ -61,7 +61,7 @@ public class RowIteratorFactory
         // memtables
         for (Memtable memtable : memtables)
         {
-            iterators.add(new ConvertToColumnIterator<AtomicSortedColumns>(range, memtable.getEntryIterator(range.startKey(), range.stopKey())));
+            iterators.add(new ConvertToColumnIterator(range, memtable));
         }
 
         for (SSTableReader sstable : sstables)
@@ -95,9 +95,9 @@ public class RowIteratorFactory
             {
                 // First check if this row is in the rowCache. If it is we can skip the rest
                 ColumnFamily cached = cfs.getRawCachedRow(key);
-                if (cached == null)
+                if (cached == null || !cfs.isFilterFullyCoveredBy(range.columnFilter(key.key), cached, now))
                 {
-                    // not cached: collate
+                    // not cached, or only partially: collate
                     QueryFilter.collateOnDiskAtom(returnCF, colIters, range.columnFilter(key.key), gcBefore, now);
                 }
                 else
@@ -117,15 +117,17 @@ public class RowIteratorFactory
     /**
      * Get a ColumnIterator for a specific key in the memtable.
      */
-    private static class ConvertToColumnIterator<T extends ColumnFamily> implements CloseableIterator<OnDiskAtomIterator>
+    private static class ConvertToColumnIterator implements CloseableIterator<OnDiskAtomIterator>
     {
         private final DataRange range;
-        private final Iterator<Map.Entry<DecoratedKey, T>> iter;
+        private final Memtable memtable;
+        private final Iterator<Map.Entry<DecoratedKey, AtomicBTreeColumns>> iter;
 
-        public ConvertToColumnIterator(DataRange range, Iterator<Map.Entry<DecoratedKey, T>> iter)
+        public ConvertToColumnIterator(DataRange range, Memtable memtable)
         {
             this.range = range;
-            this.iter = iter;
+            this.memtable = memtable;
+            this.iter = memtable.getEntryIterator(range.startKey(), range.stopKey());
         }
 
         public boolean hasNext()
@@ -142,12 +144,13 @@ public class RowIteratorFactory
          */
         public OnDiskAtomIterator next()
         {
-            final Map.Entry<DecoratedKey, T> entry = iter.next();
-            return new LazyColumnIterator(entry.getKey(), new IColumnIteratorFactory()
+            final Map.Entry<DecoratedKey, AtomicBTreeColumns> entry = iter.next();
+            final DecoratedKey key = memtable.copyOnHeap(entry.getKey());
+            return new LazyColumnIterator(key, new IColumnIteratorFactory()
             {
                 public OnDiskAtomIterator create()
                 {
-                    return range.columnFilter(entry.getKey().key).getColumnFamilyIterator(entry.getKey(), entry.getValue());
+                    return memtable.copyOnHeap(range.columnFilter(key.key).getColumnFamilyIterator(key, entry.getValue()));
                 }
             });
         }
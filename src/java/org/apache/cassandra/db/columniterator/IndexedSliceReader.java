@@ -76,7 +76,7 @@ class IndexedSliceReader extends AbstractIterator<OnDiskAtom> implements OnDiskA
 
         try
         {
-            this.indexes = indexEntry.columnsIndex();
+            this.indexes = sstable.getColumnsIndex(indexEntry);
             emptyColumnFamily = EmptyColumns.factory.create(sstable.metadata);
             if (indexes.isEmpty())
             {
@@ -113,7 +113,7 @@ public class SSTableNamesIterator extends AbstractIterator<OnDiskAtom> implement
                 file.readLong();
         }
 
-        indexList = indexEntry.columnsIndex();
+        indexList = sstable.getColumnsIndex(indexEntry);
 
         if (!indexEntry.isIndexed())
         {
@@ -22,6 +22,7 @@ import org.slf4j.*;
 
 import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 
 import static org.apache.cassandra.db.commitlog.CommitLogSegment.Allocation;
@@ -41,6 +42,9 @@ public abstract class AbstractCommitLogService
     private final AtomicLong written = new AtomicLong(0);
     protected final AtomicLong pending = new AtomicLong(0);
 
+    // count of writers that started waiting for a sync since the last one began
+    private final AtomicInteger awaitingSync = new AtomicInteger(0);
+
     // signal that writers can wait on to be notified of a completed sync
     protected final WaitQueue syncComplete = new WaitQueue();
     private final Semaphore haveWork = new Semaphore(1);
@@ -78,11 +82,14 @@ public abstract class AbstractCommitLogService
 
                         // sync and signal
                         long syncStarted = System.currentTimeMillis();
+                        int writers = awaitingSync.getAndSet(0);
                         commitLog.sync(shutdown);
                         lastSyncedAt = syncStarted;
+                        // recorded before the writers are released, so they can see the sync they waited on
+                        commitLog.metrics.syncLatency.update(System.currentTimeMillis() - syncStarted, TimeUnit.MILLISECONDS);
+                        commitLog.metrics.writersPerSync.update(writers);
                         syncComplete.signalAll();
 
-
                         // sleep any time we have left before the next one is due
                         long now = System.currentTimeMillis();
                         long sleep = syncStarted + pollIntervalMillis - now;
@@ -153,6 +160,17 @@ public abstract class AbstractCommitLogService
 
     protected abstract void maybeWaitForSync(Allocation alloc);
 
+    /**
+     * Block until @param alloc has been sync'd, counting the writer among those waiting on the next sync
+     */
+    protected void awaitDiskSync(Allocation alloc)
+    {
+        pending.incrementAndGet();
+        awaitingSync.incrementAndGet();
+        alloc.awaitDiskSync();
+        pending.decrementAndGet();
+    }
+
     /**
      * Sync immediately, but don't block for the sync to cmplete
      */
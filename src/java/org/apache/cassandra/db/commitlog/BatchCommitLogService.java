@@ -29,8 +29,6 @@ class BatchCommitLogService extends AbstractCommitLogService
     protected void maybeWaitForSync(CommitLogSegment.Allocation alloc)
     {
         // wait until record has been safely persisted to disk
-        pending.incrementAndGet();
-        alloc.awaitDiskSync();
-        pending.decrementAndGet();
+        awaitDiskSync(alloc);
     }
 }
\ No newline at end of file
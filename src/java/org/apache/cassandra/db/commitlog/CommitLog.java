@@ -29,7 +29,6 @@ import javax.management.ObjectName;
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.apache.cassandra.config.Config;
 import org.apache.cassandra.config.DatabaseDescriptor;
 import org.apache.cassandra.db.*;
 import org.apache.cassandra.io.FSWriteError;
@@ -61,7 +60,7 @@ public class CommitLog implements CommitLogMBean
 
     public final CommitLogSegmentManager allocator;
     public final CommitLogArchiver archiver = new CommitLogArchiver();
-    private final CommitLogMetrics metrics;
+    final CommitLogMetrics metrics;
     final AbstractCommitLogService executor;
 
     private CommitLog()
@@ -69,10 +68,17 @@ public class CommitLog implements CommitLogMBean
         DatabaseDescriptor.createAllDirectories();
 
         allocator = new CommitLogSegmentManager();
+        metrics = new CommitLogMetrics();
 
-        executor = DatabaseDescriptor.getCommitLogSync() == Config.CommitLogSync.batch
-                 ? new BatchCommitLogService(this)
-                 : new PeriodicCommitLogService(this);
+        switch (DatabaseDescriptor.getCommitLogSync())
+        {
+            case batch:
+            case group: // an alias of batch
+                executor = new BatchCommitLogService(this);
+                break;
+            default:
+                executor = new PeriodicCommitLogService(this);
+        }
 
         MBeanServer mbs = ManagementFactory.getPlatformMBeanServer();
         try
@@ -85,7 +91,7 @@ public class CommitLog implements CommitLogMBean
         }
 
         // register metrics
-        metrics = new CommitLogMetrics(executor, allocator);
+        metrics.attach(executor, allocator);
     }
 
     /**
@@ -20,10 +20,20 @@
  */
 package org.apache.cassandra.db.commitlog;
 
+import java.io.DataInput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
+import org.apache.cassandra.exceptions.ConfigurationException;
+import org.apache.cassandra.io.compress.CompressionParameters;
+import org.apache.cassandra.io.compress.ICompressor;
 import org.apache.cassandra.net.MessagingService;
+import org.apache.cassandra.utils.FBUtilities;
+import org.apache.cassandra.utils.PureJavaCrc32;
 
 public class CommitLogDescriptor
 {
@@ -36,24 +46,103 @@ public class CommitLogDescriptor
     public static final int VERSION_12 = 2;
     public static final int VERSION_20 = 3;
     public static final int VERSION_21 = 4;
+    // segments start with a header recording their id and compressor, if any
+    public static final int VERSION_22 = 5;
     /**
      * Increment this number if there is a changes in the commit log disc layout or MessagingVersion changes.
      * Note: make sure to handle {@link #getMessagingVersion()}
      */
-    public static final int current_version = VERSION_21;
+    public static final int current_version = VERSION_22;
 
-    private final int version;
+    public final int version;
     public final long id;
+    // the class name of the compressor the segment is written with, or null if it is uncompressed
+    public final String compressorClass;
 
-    public CommitLogDescriptor(int version, long id)
+    public CommitLogDescriptor(int version, long id, String compressorClass)
     {
         this.version = version;
         this.id = id;
+        this.compressorClass = compressorClass;
+    }
+
+    public CommitLogDescriptor(int version, long id)
+    {
+        this(version, id, null);
+    }
+
+    public CommitLogDescriptor(long id, String compressorClass)
+    {
+        this(current_version, id, compressorClass);
     }
 
     public CommitLogDescriptor(long id)
     {
-        this(current_version, id);
+        this(current_version, id, null);
+    }
+
+    /**
+     * @return the size of the header starting the segments this describes
+     */
+    public int headerSize()
+    {
+        // int: version + long: id + short: compressor length + compressor + int: checksum
+        return 4 + 8 + 2 + compressorClassBytes().length + 4;
+    }
+
+    private byte[] compressorClassBytes()
+    {
+        return compressorClass == null ? new byte[0] : compressorClass.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Writes the header of a segment at the buffer's position, and advances it past the header.
+     */
+    public static void writeHeader(ByteBuffer out, CommitLogDescriptor descriptor)
+    {
+        byte[] compressorClass = descriptor.compressorClassBytes();
+        out.putInt(descriptor.version);
+        out.putLong(descriptor.id);
+        out.putShort((short) compressorClass.length);
+        out.put(compressorClass);
+        out.putInt((int) headerChecksum(descriptor.version, descriptor.id, compressorClass));
+    }
+
+    /**
+     * Reads a header written by writeHeader.
+     *
+     * @return the descriptor of the segment, or null if the header was not fully written
+     */
+    public static CommitLogDescriptor readHeader(DataInput input) throws IOException
+    {
+        int version = input.readInt();
+        long id = input.readLong();
+        int length = input.readShort() & 0xFFFF;
+        byte[] compressorClass = new byte[length];
+        input.readFully(compressorClass);
+        if ((int) headerChecksum(version, id, compressorClass) != input.readInt())
+            return null;
+        return new CommitLogDescriptor(version, id, length == 0 ? null : new String(compressorClass, StandardCharsets.UTF_8));
+    }
+
+    private static long headerChecksum(int version, long id, byte[] compressorClass)
+    {
+        PureJavaCrc32 crc = new PureJavaCrc32();
+        FBUtilities.updateChecksumInt(crc, version);
+        FBUtilities.updateChecksumInt(crc, (int) (id & 0xFFFFFFFFL));
+        FBUtilities.updateChecksumInt(crc, (int) (id >>> 32));
+        crc.update(compressorClass, 0, compressorClass.length);
+        return crc.getValue();
+    }
+
+    /**
+     * @return a compressor able to read the segment, or null if it is uncompressed
+     */
+    public ICompressor createCompressor() throws ConfigurationException
+    {
+        if (compressorClass == null)
+            return null;
+        return new CompressionParameters(compressorClass, null, Collections.<String, String>emptyMap()).sstableCompressor;
     }
 
     public static CommitLogDescriptor fromFileName(String name)
@@ -88,6 +177,7 @@ public class CommitLogDescriptor
             case VERSION_20:
                 return MessagingService.VERSION_20;
             case VERSION_21:
+            case VERSION_22:
                 return MessagingService.VERSION_21;
             default:
                 throw new IllegalStateException("Unknown commitlog version " + version);
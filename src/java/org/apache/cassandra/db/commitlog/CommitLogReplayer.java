@@ -19,7 +19,12 @@
 package org.apache.cassandra.db.commitlog;
 
 import java.io.*;
+import java.nio.ByteBuffer;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.zip.Checksum;
@@ -33,41 +38,61 @@ import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import org.apache.cassandra.concurrent.Stage;
-import org.apache.cassandra.concurrent.StageManager;
+import org.apache.cassandra.concurrent.DebuggableThreadPoolExecutor;
 import org.apache.cassandra.config.Schema;
 import org.apache.cassandra.db.*;
+import org.apache.cassandra.exceptions.ConfigurationException;
+import org.apache.cassandra.io.compress.ICompressor;
 import org.apache.cassandra.io.util.FastByteArrayInputStream;
+import org.apache.cassandra.io.util.FileDataInput;
 import org.apache.cassandra.io.util.FileUtils;
+import org.apache.cassandra.io.util.MappedFileDataInput;
 import org.apache.cassandra.io.util.RandomAccessReader;
 import org.apache.cassandra.utils.*;
 
 import org.cliffc.high_scale_lib.NonBlockingHashSet;
 
+/**
+ * Replays commit log segments in the order they are given.  The calling thread only reads the sync sections
+ * of the segments: they are checksummed, uncompressed and deserialized concurrently by a pool of decoders,
+ * and their mutations then applied in replay order by as many appliers, each in charge of a fixed share of
+ * the partitions, so that the mutations of a partition are still applied in the order of their ReplayPosition.
+ */
 public class CommitLogReplayer
 {
     private static final Logger logger = LoggerFactory.getLogger(CommitLogReplayer.class);
     private static final int MAX_OUTSTANDING_REPLAY_COUNT = 1024;
+    // sync sections may be as large as a segment, so those read ahead of the one being applied are bounded in size
+    private static final long MAX_OUTSTANDING_SECTION_BYTES = 64L << 20;
+    private static final int REPLAY_THREADS = Integer.getInteger("cassandra.commitlog_replay_threads", FBUtilities.getAvailableProcessors());
     private static final int LEGACY_END_OF_SEGMENT_MARKER = 0;
 
     private final Set<Keyspace> keyspacesRecovered;
     private final List<Future<?>> futures;
-    private final Map<UUID, AtomicInteger> invalidMutations;
+    private final ConcurrentMap<UUID, AtomicInteger> invalidMutations;
     private final AtomicInteger replayedCount;
     private final Map<UUID, ReplayPosition> cfPositions;
     private final ReplayPosition globalPosition;
-    private final Checksum checksum;
-    private byte[] buffer;
+    private final ExecutorService decoder;
+    private final ExecutorService[] appliers;
+    private final Deque<Pair<SyncSection, Future<SyncSection>>> pendingSections;
+    private long pendingSectionBytes;
+    // segments that a sync section was found incomplete in, whose later sections must be ignored
+    private final Set<Long> truncatedSegments;
 
     public CommitLogReplayer()
     {
         this.keyspacesRecovered = new NonBlockingHashSet<Keyspace>();
         this.futures = new ArrayList<Future<?>>();
-        this.buffer = new byte[4096];
-        this.invalidMutations = new HashMap<UUID, AtomicInteger>();
+        this.invalidMutations = new ConcurrentHashMap<UUID, AtomicInteger>();
         // count the number of replayed mutation. We don't really care about atomicity, but we need it to be a reference.
         this.replayedCount = new AtomicInteger();
-        this.checksum = new PureJavaCrc32();
+        this.decoder = DebuggableThreadPoolExecutor.createWithFixedPoolSize("CommitLogReplayDecoder", REPLAY_THREADS);
+        this.appliers = new ExecutorService[REPLAY_THREADS];
+        for (int i = 0; i < appliers.length; i++)
+            appliers[i] = DebuggableThreadPoolExecutor.createWithFixedPoolSize("CommitLogReplayApplier-" + i, 1);
+        this.pendingSections = new ArrayDeque<Pair<SyncSection, Future<SyncSection>>>();
+        this.truncatedSegments = new HashSet<Long>();
 
         // compute per-CF and global replay positions
         cfPositions = new HashMap<UUID, ReplayPosition>();
@@ -94,17 +119,43 @@ public class CommitLogReplayer
 
     public void recover(File[] clogs) throws IOException
     {
+        ReplayFilter replayFilter = ReplayFilter.create();
+        for (File file : clogs)
+            CommitLog.instance.metrics.replayBytesRemaining.inc(file.length());
         for (final File file : clogs)
-            recover(file);
+            recover(file, replayFilter);
+    }
+
+    public void recover(File file) throws IOException
+    {
+        recover(new File[]{ file });
     }
 
     public int blockForWrites()
     {
+        try
+        {
+            while (!pendingSections.isEmpty())
+                applyNextSection();
+        }
+        finally
+        {
+            decoder.shutdown();
+        }
+
         for (Map.Entry<UUID, AtomicInteger> entry : invalidMutations.entrySet())
             logger.info(String.format("Skipped %d mutations from unknown (probably removed) CF with id %s", entry.getValue().intValue(), entry.getKey()));
 
-        // wait for all the writes to finish on the mutation stage
-        FBUtilities.waitOnFutures(futures);
+        // wait for all the writes to finish on the appliers
+        try
+        {
+            FBUtilities.waitOnFutures(futures);
+        }
+        finally
+        {
+            for (ExecutorService applier : appliers)
+                applier.shutdown();
+        }
         logger.debug("Finished waiting on mutations from recovery");
 
         // flush replayed keyspaces
@@ -115,7 +166,7 @@ public class CommitLogReplayer
         return replayedCount.get();
     }
 
-    private int readHeader(long segmentId, int offset, RandomAccessReader reader) throws IOException
+    private int readSyncMarker(long segmentId, int offset, RandomAccessReader reader) throws IOException
     {
         if (offset > reader.length() - CommitLogSegment.SYNC_MARKER_SIZE)
         {
@@ -147,12 +198,12 @@ public class CommitLogReplayer
         return end;
     }
 
-    private int getStartOffset(long segmentId, int version, File file)
+    private int getStartOffset(long segmentId, int version, int firstSyncMarker)
     {
         if (globalPosition.segment < segmentId)
         {
             if (version >= CommitLogDescriptor.VERSION_21)
-                return CommitLogSegment.SYNC_MARKER_SIZE;
+                return firstSyncMarker + CommitLogSegment.SYNC_MARKER_SIZE;
             else
                 return 0;
         }
@@ -224,210 +275,425 @@ public class CommitLogReplayer
         }
     }
 
-    public void recover(File file) throws IOException
+    private void recover(File file, ReplayFilter replayFilter) throws IOException
     {
-        final ReplayFilter replayFilter = ReplayFilter.create();
         logger.info("Replaying {}", file.getPath());
         CommitLogDescriptor desc = CommitLogDescriptor.fromFileName(file.getName());
-        final long segmentId = desc.id;
-        int version = desc.getMessagingVersion();
         RandomAccessReader reader = RandomAccessReader.open(new File(file.getAbsolutePath()));
 
         try
         {
             assert reader.length() <= Integer.MAX_VALUE;
-            int offset = getStartOffset(segmentId, version, file);
+            if (desc.version >= CommitLogDescriptor.VERSION_22)
+            {
+                // the header takes precedence over the file name, since restoring an archived segment renames it
+                // with a new id while its sync markers still carry the one it was written with
+                desc = readDescriptor(reader);
+                if (desc == null)
+                {
+                    logger.warn("Skipping commit log {} with no complete header; nothing can have been synced to it", file);
+                    return;
+                }
+            }
+
+            // positions within a segment are those of the buffer it was written from, where the first sync
+            // marker immediately follows the header, as it does in the file
+            int firstSyncMarker = (int) reader.getFilePointer();
+            int offset = getStartOffset(desc.id, desc.version, firstSyncMarker);
             if (offset < 0)
             {
                 logger.debug("skipping replay of fully-flushed {}", file);
                 return;
             }
 
-            int prevEnd = 0;
-            main: while (true)
+            ICompressor compressor;
+            try
             {
+                compressor = desc.createCompressor();
+            }
+            catch (ConfigurationException e)
+            {
+                throw new IOException(String.format("Cannot replay %s, compressed with %s", file, desc.compressorClass), e);
+            }
 
-                int end = prevEnd;
-                if (version < CommitLogDescriptor.VERSION_21)
-                    end = Integer.MAX_VALUE;
-                else
-                {
-                    do { end = readHeader(segmentId, end, reader); }
-                    while (end < offset && end > prevEnd);
-                }
+            if (compressor == null)
+                readUncompressed(reader, desc, offset, firstSyncMarker, replayFilter);
+            else
+                readCompressed(reader, desc, compressor, offset, firstSyncMarker, replayFilter);
+        }
+        finally
+        {
+            CommitLog.instance.metrics.replayBytesRemaining.dec(file.length());
+            FileUtils.closeQuietly(reader);
+            logger.info("Finished reading {}", file);
+        }
+    }
 
-                if (end < prevEnd)
-                    break;
+    private CommitLogDescriptor readDescriptor(RandomAccessReader reader) throws IOException
+    {
+        try
+        {
+            return CommitLogDescriptor.readHeader(reader);
+        }
+        catch (EOFException e)
+        {
+            return null;
+        }
+    }
 
-                if (logger.isDebugEnabled())
-                    logger.debug("Replaying {} between {} and {}", file, offset, end);
+    private void readUncompressed(RandomAccessReader reader, CommitLogDescriptor desc, int offset, int prevEnd, ReplayFilter replayFilter) throws IOException
+    {
+        while (true)
+        {
+            int end = prevEnd;
+            if (desc.version < CommitLogDescriptor.VERSION_21)
+                end = Integer.MAX_VALUE;
+            else
+            {
+                do { end = readSyncMarker(desc.id, end, reader); }
+                while (end < offset && end > prevEnd);
+            }
+
+            if (end < prevEnd)
+                break;
 
+            if (logger.isDebugEnabled())
+                logger.debug("Replaying {} between {} and {}", reader.getPath(), offset, end);
+
+            int length = (int) Math.min(end, reader.length()) - offset;
+            if (length > 0)
+            {
+                byte[] section = new byte[length];
                 reader.seek(offset);
+                reader.readFully(section);
+                submit(new SyncSection(desc, reader.getPath(), section, null, length, offset, offset, end, replayFilter));
+            }
+
+            if (desc.version < CommitLogDescriptor.VERSION_21)
+                break;
+
+            offset = end + CommitLogSegment.SYNC_MARKER_SIZE;
+            prevEnd = end;
+        }
+    }
+
+    /**
+     * Each section of a compressed segment is a sync marker pointing to the next one in the file, followed by
+     * the position the section ends at in the segment and by its compressed content; see CompressedSegment.
+     */
+    private void readCompressed(RandomAccessReader reader, CommitLogDescriptor desc, ICompressor compressor, int offset, int firstSyncMarker, ReplayFilter replayFilter) throws IOException
+    {
+        int syncMarker = firstSyncMarker;
+        int sectionEnd = firstSyncMarker;
+        while (true)
+        {
+            int nextSyncMarker = readSyncMarker(desc.id, syncMarker, reader);
+            if (nextSyncMarker < syncMarker + CompressedSegment.COMPRESSED_MARKER_SIZE)
+                break;
+
+            int sectionStart = sectionEnd + CommitLogSegment.SYNC_MARKER_SIZE;
+            sectionEnd = reader.readInt();
+            int uncompressedLength = sectionEnd - sectionStart;
+            if (uncompressedLength < 0)
+            {
+                logger.warn("Encountered bad compressed section at position {} of commit log {}, ending before it starts", syncMarker, reader.getPath());
+                break;
+            }
+
+            // sections entirely before the replay position need not even be uncompressed
+            if (sectionEnd > offset)
+            {
+                if (logger.isDebugEnabled())
+                    logger.debug("Replaying {} between {} and {}", reader.getPath(), Math.max(offset, sectionStart), sectionEnd);
+
+                byte[] compressed = new byte[nextSyncMarker - (int) reader.getFilePointer()];
+                reader.readFully(compressed);
+                submit(new SyncSection(desc, reader.getPath(), compressed, compressor, uncompressedLength, sectionStart, Math.max(offset, sectionStart), sectionEnd, replayFilter));
+            }
+
+            syncMarker = nextSyncMarker;
+        }
+    }
+
+    /**
+     * Hands the section to the decoders, first applying the oldest pending sections if too many are read ahead.
+     */
+    private void submit(SyncSection section)
+    {
+        while (!pendingSections.isEmpty()
+               && (pendingSections.size() >= MAX_OUTSTANDING_REPLAY_COUNT || pendingSectionBytes + section.length > MAX_OUTSTANDING_SECTION_BYTES))
+            applyNextSection();
+
+        pendingSections.add(Pair.create(section, decoder.submit(section)));
+        pendingSectionBytes += section.length;
+    }
+
+    /**
+     * Waits for the oldest pending section to be decoded, and dispatches its mutations to the appliers.
+     */
+    private void applyNextSection()
+    {
+        Pair<SyncSection, Future<SyncSection>> next = pendingSections.poll();
+        pendingSectionBytes -= next.left.length;
+        SyncSection section = FBUtilities.waitOnFuture(next.right);
+        CommitLog.instance.metrics.replayedBytes.mark(section.length);
+
+        // as when the segment was read sequentially, nothing past a section that was not completely written is replayed
+        if (truncatedSegments.contains(section.desc.id))
+            return;
+        if (!section.complete)
+            truncatedSegments.add(section.desc.id);
+
+        for (int i = 0; i < section.mutations.size(); i++)
+        {
+            Mutation mutation = section.mutations.get(i);
+            // ByteBuffer hashes its content, so all the mutations of a partition go to the same applier
+            ExecutorService applier = appliers[(mutation.key().hashCode() & Integer.MAX_VALUE) % appliers.length];
+            futures.add(applier.submit(new MutationReplay(section.desc, mutation, section.positions.get(i), section.replayFilter)));
+            if (futures.size() > MAX_OUTSTANDING_REPLAY_COUNT)
+            {
+                FBUtilities.waitOnFutures(futures);
+                futures.clear();
+            }
+        }
+    }
+
+    /**
+     * A sync section read from a segment, which decoding checksums and deserializes the mutations of.
+     */
+    private final class SyncSection implements Callable<SyncSection>
+    {
+        final CommitLogDescriptor desc;
+        final String path;
+        final ReplayFilter replayFilter;
+        // the content of the section, compressed if compressor isn't null
+        private final byte[] data;
+        private final ICompressor compressor;
+        // the uncompressed length of data, starting at the position in the segment given by start
+        final int length;
+        private final int start;
+        // the range of positions to replay the mutations of
+        private final int offset;
+        private final int end;
+
+        final List<Mutation> mutations = new ArrayList<Mutation>();
+        // the position following each mutation
+        final List<Integer> positions = new ArrayList<Integer>();
+        // false if a mutation was not completely written, in which case nothing more of the segment is replayed
+        boolean complete = true;
+
+        SyncSection(CommitLogDescriptor desc, String path, byte[] data, ICompressor compressor, int length, int start, int offset, int end, ReplayFilter replayFilter)
+        {
+            this.desc = desc;
+            this.path = path;
+            this.data = data;
+            this.compressor = compressor;
+            this.length = length;
+            this.start = start;
+            this.offset = offset;
+            this.end = end;
+            this.replayFilter = replayFilter;
+        }
 
-                 /* read the logs populate Mutation and apply */
-                while (reader.getPosition() < end && !reader.isEOF())
+        public SyncSection call() throws IOException
+        {
+            byte[] content = data;
+            if (compressor != null)
+            {
+                content = new byte[length];
+                try
                 {
-                    if (logger.isDebugEnabled())
-                        logger.debug("Reading mutation at {}", reader.getFilePointer());
+                    int count = compressor.uncompress(data, 0, data.length, content, 0);
+                    if (count != length)
+                        throw new IOException(String.format("expected %d uncompressed bytes but got %d", length, count));
+                }
+                catch (IOException e)
+                {
+                    logger.warn("Encountered bad compressed section at position {} of commit log {}: {}", start, path, e.getMessage());
+                    complete = false;
+                    return this;
+                }
+            }
 
-                    long claimedCRC32;
-                    int serializedSize;
-                    try
-                    {
-                        // any of the reads may hit EOF
-                        serializedSize = reader.readInt();
-                        if (serializedSize == LEGACY_END_OF_SEGMENT_MARKER)
-                        {
-                            logger.debug("Encountered end of segment marker at {}", reader.getFilePointer());
-                            break main;
-                        }
-
-                        // Mutation must be at LEAST 10 bytes:
-                        // 3 each for a non-empty Keyspace and Key (including the
-                        // 2-byte length from writeUTF/writeWithShortLength) and 4 bytes for column count.
-                        // This prevents CRC by being fooled by special-case garbage in the file; see CASSANDRA-2128
-                        if (serializedSize < 10)
-                            break main;
-
-                        long claimedSizeChecksum = reader.readLong();
-                        checksum.reset();
-                        if (version < CommitLogDescriptor.VERSION_20)
-                            checksum.update(serializedSize);
-                        else
-                            FBUtilities.updateChecksumInt(checksum, serializedSize);
-
-                        if (checksum.getValue() != claimedSizeChecksum)
-                            break main; // entry wasn't synced correctly/fully. that's
-                        // ok.
-
-                        if (serializedSize > buffer.length)
-                            buffer = new byte[(int) (1.2 * serializedSize)];
-                        reader.readFully(buffer, 0, serializedSize);
-                        claimedCRC32 = reader.readLong();
-                    }
-                    catch (EOFException eof)
-                    {
-                        break main; // last CL entry didn't get completely written. that's ok.
-                    }
+            FileDataInput reader = new MappedFileDataInput(ByteBuffer.wrap(content, 0, length).slice(), path, start, 0);
+            if (offset > start)
+                reader.seek(offset);
+            complete = decode(reader);
+            return this;
+        }
 
-                    checksum.update(buffer, 0, serializedSize);
-                    if (claimedCRC32 != checksum.getValue())
-                    {
-                        // this entry must not have been fsynced. probably the rest is bad too,
-                        // but just in case there is no harm in trying them (since we still read on an entry boundary)
-                        continue;
-                    }
+        /**
+         * Decodes the mutations from the reader's position up to the end of the section.
+         *
+         * @return false if a mutation was not completely written
+         */
+        private boolean decode(FileDataInput reader) throws IOException
+        {
+            Checksum checksum = new PureJavaCrc32();
+            byte[] buffer = new byte[4096];
 
-                    /* deserialize the commit log entry */
-                    FastByteArrayInputStream bufIn = new FastByteArrayInputStream(buffer, 0, serializedSize);
-                    final Mutation mutation;
-                    try
+            /* read the logs populate Mutation and apply */
+            while (reader.getFilePointer() < end && !reader.isEOF())
+            {
+                if (logger.isDebugEnabled())
+                    logger.debug("Reading mutation at {}", reader.getFilePointer());
+
+                long claimedCRC32;
+                int serializedSize;
+                try
+                {
+                    // any of the reads may hit EOF
+                    serializedSize = reader.readInt();
+                    if (serializedSize == LEGACY_END_OF_SEGMENT_MARKER)
                     {
-                        // assuming version here. We've gone to lengths to make sure what gets written to the CL is in
-                        // the current version. so do make sure the CL is drained prior to upgrading a node.
-                        mutation = Mutation.serializer.deserialize(new DataInputStream(bufIn), version, ColumnSerializer.Flag.LOCAL);
-                        // doublecheck that what we read is [still] valid for the current schema
-                        for (ColumnFamily cf : mutation.getColumnFamilies())
-                            for (Cell cell : cf)
-                                cf.getComparator().validate(cell.name());
+                        logger.debug("Encountered end of segment marker at {}", reader.getFilePointer());
+                        return false;
                     }
-                    catch (UnknownColumnFamilyException ex)
+
+                    // Mutation must be at LEAST 10 bytes:
+                    // 3 each for a non-empty Keyspace and Key (including the
+                    // 2-byte length from writeUTF/writeWithShortLength) and 4 bytes for column count.
+                    // This prevents CRC by being fooled by special-case garbage in the file; see CASSANDRA-2128
+                    if (serializedSize < 10)
+                        return false;
+
+                    long claimedSizeChecksum = reader.readLong();
+                    checksum.reset();
+                    if (desc.version < CommitLogDescriptor.VERSION_20)
+                        checksum.update(serializedSize);
+                    else
+                        FBUtilities.updateChecksumInt(checksum, serializedSize);
+
+                    if (checksum.getValue() != claimedSizeChecksum)
+                        return false; // entry wasn't synced correctly/fully. that's
+                    // ok.
+
+                    if (serializedSize > buffer.length)
+                        buffer = new byte[(int) (1.2 * serializedSize)];
+                    reader.readFully(buffer, 0, serializedSize);
+                    claimedCRC32 = reader.readLong();
+                }
+                catch (EOFException eof)
+                {
+                    return false; // last CL entry didn't get completely written. that's ok.
+                }
+
+                checksum.update(buffer, 0, serializedSize);
+                if (claimedCRC32 != checksum.getValue())
+                {
+                    // this entry must not have been fsynced. probably the rest is bad too,
+                    // but just in case there is no harm in trying them (since we still read on an entry boundary)
+                    continue;
+                }
+
+                /* deserialize the commit log entry */
+                FastByteArrayInputStream bufIn = new FastByteArrayInputStream(buffer, 0, serializedSize);
+                final Mutation mutation;
+                try
+                {
+                    // assuming version here. We've gone to lengths to make sure what gets written to the CL is in
+                    // the current version. so do make sure the CL is drained prior to upgrading a node.
+                    mutation = Mutation.serializer.deserialize(new DataInputStream(bufIn), desc.getMessagingVersion(), ColumnSerializer.Flag.LOCAL);
+                    // doublecheck that what we read is [still] valid for the current schema
+                    for (ColumnFamily cf : mutation.getColumnFamilies())
+                        for (Cell cell : cf)
+                            cf.getComparator().validate(cell.name());
+                }
+                catch (UnknownColumnFamilyException ex)
+                {
+                    if (ex.cfId == null)
+                        continue;
+                    AtomicInteger i = invalidMutations.get(ex.cfId);
+                    if (i == null)
                     {
-                        if (ex.cfId == null)
-                            continue;
-                        AtomicInteger i = invalidMutations.get(ex.cfId);
+                        i = invalidMutations.putIfAbsent(ex.cfId, new AtomicInteger(1));
                         if (i == null)
-                        {
-                            i = new AtomicInteger(1);
-                            invalidMutations.put(ex.cfId, i);
-                        }
-                        else
-                            i.incrementAndGet();
-                        continue;
+                            continue;
                     }
-                    catch (Throwable t)
+                    i.incrementAndGet();
+                    continue;
+                }
+                catch (Throwable t)
+                {
+                    File f = File.createTempFile("mutation", "dat");
+                    DataOutputStream out = new DataOutputStream(new FileOutputStream(f));
+                    try
                     {
-                        File f = File.createTempFile("mutation", "dat");
-                        DataOutputStream out = new DataOutputStream(new FileOutputStream(f));
-                        try
-                        {
-                            out.write(buffer, 0, serializedSize);
-                        }
-                        finally
-                        {
-                            out.close();
-                        }
-                        String st = String.format("Unexpected error deserializing mutation; saved to %s and ignored.  This may be caused by replaying a mutation against a table with the same name but incompatible schema.  Exception follows: ",
-                                                  f.getAbsolutePath());
-                        logger.error(st, t);
-                        continue;
+                        out.write(buffer, 0, serializedSize);
                     }
-
-                    if (logger.isDebugEnabled())
-                        logger.debug("replaying mutation for {}.{}: {}", mutation.getKeyspaceName(), ByteBufferUtil.bytesToHex(mutation.key()), "{" + StringUtils.join(mutation.getColumnFamilies().iterator(), ", ") + "}");
-
-                    final long entryLocation = reader.getFilePointer();
-                    Runnable runnable = new WrappedRunnable()
-                    {
-                        public void runMayThrow() throws IOException
-                        {
-                            if (Schema.instance.getKSMetaData(mutation.getKeyspaceName()) == null)
-                                return;
-                            if (pointInTimeExceeded(mutation))
-                                return;
-
-                            final Keyspace keyspace = Keyspace.open(mutation.getKeyspaceName());
-
-                            // Rebuild the mutation, omitting column families that
-                            //    a) the user has requested that we ignore,
-                            //    b) have already been flushed,
-                            // or c) are part of a cf that was dropped.
-                            // Keep in mind that the cf.name() is suspect. do every thing based on the cfid instead.
-                            Mutation newMutation = null;
-                            for (ColumnFamily columnFamily : replayFilter.filter(mutation))
-                            {
-                                if (Schema.instance.getCF(columnFamily.id()) == null)
-                                    continue; // dropped
-
-                                ReplayPosition rp = cfPositions.get(columnFamily.id());
-
-                                // replay if current segment is newer than last flushed one or,
-                                // if it is the last known segment, if we are after the replay position
-                                if (segmentId > rp.segment || (segmentId == rp.segment && entryLocation > rp.position))
-                                {
-                                    if (newMutation == null)
-                                        newMutation = new Mutation(mutation.getKeyspaceName(), mutation.key());
-                                    newMutation.add(columnFamily);
-                                    replayedCount.incrementAndGet();
-                                }
-                            }
-                            if (newMutation != null)
-                            {
-                                assert !newMutation.isEmpty();
-                                Keyspace.open(newMutation.getKeyspaceName()).apply(newMutation, false);
-                                keyspacesRecovered.add(keyspace);
-                            }
-                        }
-                    };
-                    futures.add(StageManager.getStage(Stage.MUTATION).submit(runnable));
-                    if (futures.size() > MAX_OUTSTANDING_REPLAY_COUNT)
+                    finally
                     {
-                        FBUtilities.waitOnFutures(futures);
-                        futures.clear();
+                        out.close();
                     }
+                    String st = String.format("Unexpected error deserializing mutation; saved to %s and ignored.  This may be caused by replaying a mutation against a table with the same name but incompatible schema.  Exception follows: ",
+                                              f.getAbsolutePath());
+                    logger.error(st, t);
+                    continue;
                 }
 
-                if (version < CommitLogDescriptor.VERSION_21)
-                    break;
+                if (logger.isDebugEnabled())
+                    logger.debug("replaying mutation for {}.{}: {}", mutation.getKeyspaceName(), ByteBufferUtil.bytesToHex(mutation.key()), "{" + StringUtils.join(mutation.getColumnFamilies().iterator(), ", ") + "}");
 
-                offset = end + CommitLogSegment.SYNC_MARKER_SIZE;
-                prevEnd = end;
+                mutations.add(mutation);
+                positions.add((int) reader.getFilePointer());
             }
+            return true;
         }
-        finally
+    }
+
+    private final class MutationReplay extends WrappedRunnable
+    {
+        private final CommitLogDescriptor desc;
+        private final Mutation mutation;
+        private final long entryLocation;
+        private final ReplayFilter replayFilter;
+
+        MutationReplay(CommitLogDescriptor desc, Mutation mutation, long entryLocation, ReplayFilter replayFilter)
         {
-            FileUtils.closeQuietly(reader);
-            logger.info("Finished reading {}", file);
+            this.desc = desc;
+            this.mutation = mutation;
+            this.entryLocation = entryLocation;
+            this.replayFilter = replayFilter;
+        }
+
+        public void runMayThrow() throws IOException
+        {
+            if (Schema.instance.getKSMetaData(mutation.getKeyspaceName()) == null)
+                return;
+            if (pointInTimeExceeded(mutation))
+                return;
+
+            final Keyspace keyspace = Keyspace.open(mutation.getKeyspaceName());
+
+            // Rebuild the mutation, omitting column families that
+            //    a) the user has requested that we ignore,
+            //    b) have already been flushed,
+            // or c) are part of a cf that was dropped.
+            // Keep in mind that the cf.name() is suspect. do every thing based on the cfid instead.
+            Mutation newMutation = null;
+            for (ColumnFamily columnFamily : replayFilter.filter(mutation))
+            {
+                if (Schema.instance.getCF(columnFamily.id()) == null)
+                    continue; // dropped
+
+                ReplayPosition rp = cfPositions.get(columnFamily.id());
+
+                // replay if current segment is newer than last flushed one or,
+                // if it is the last known segment, if we are after the replay position
+                if (desc.id > rp.segment || (desc.id == rp.segment && entryLocation > rp.position))
+                {
+                    if (newMutation == null)
+                        newMutation = new Mutation(mutation.getKeyspaceName(), mutation.key());
+                    newMutation.add(columnFamily);
+                    replayedCount.incrementAndGet();
+                }
+            }
+            if (newMutation != null)
+            {
+                assert !newMutation.isEmpty();
+                Keyspace.open(newMutation.getKeyspaceName()).apply(newMutation, false);
+                keyspacesRecovered.add(keyspace);
+            }
         }
     }
 
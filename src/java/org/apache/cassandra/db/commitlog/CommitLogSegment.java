@@ -21,7 +21,6 @@ import java.io.File;
 import java.io.IOException;
 import java.io.RandomAccessFile;
 import java.nio.ByteBuffer;
-import java.nio.MappedByteBuffer;
 import java.nio.channels.FileChannel;
 import java.util.ArrayList;
 import java.util.Collection;
@@ -48,6 +47,7 @@ import org.apache.cassandra.config.Schema;
 import org.apache.cassandra.db.ColumnFamily;
 import org.apache.cassandra.db.Mutation;
 import org.apache.cassandra.io.FSWriteError;
+import org.apache.cassandra.io.compress.ICompressor;
 import org.apache.cassandra.io.util.FileUtils;
 import org.apache.cassandra.utils.PureJavaCrc32;
 import org.apache.cassandra.utils.WaitQueue;
@@ -56,8 +56,11 @@ import org.apache.cassandra.utils.WaitQueue;
  * A single commit log file on disk. Manages creation of the file and writing mutations to disk,
  * as well as tracking the last mutation position of any "dirty" CFs covered by the segment file. Segment
  * files are initially allocated to a fixed size and can grow to accomidate a larger value if necessary.
+ *
+ * Mutations are always appended to a buffer of the segment size, so that positions within a segment are
+ * offsets in that buffer whichever way it reaches the disk; see MemoryMappedSegment and CompressedSegment.
  */
-public class CommitLogSegment
+public abstract class CommitLogSegment
 {
     private static final Logger logger = LoggerFactory.getLogger(CommitLogSegment.class);
 
@@ -96,18 +99,20 @@ public class CommitLogSegment
     public final long id;
 
     private final File logFile;
-    private final RandomAccessFile logFileAccessor;
+    protected final RandomAccessFile logFileAccessor;
+    protected final FileChannel channel;
 
-    private final MappedByteBuffer buffer;
+    protected final ByteBuffer buffer;
 
     public final CommitLogDescriptor descriptor;
 
     /**
-     * @return a newly minted segment file
+     * @return a newly minted segment file, compressed if commitlog_compressor is set
      */
     static CommitLogSegment freshSegment()
     {
-        return new CommitLogSegment(null);
+        ICompressor compressor = DatabaseDescriptor.getCommitLogCompressor();
+        return compressor == null ? new MemoryMappedSegment(null) : new CompressedSegment(compressor);
     }
 
     static long getNextId()
@@ -119,11 +124,12 @@ public class CommitLogSegment
      * Constructs a new segment file.
      *
      * @param filePath  if not null, recycles the existing file by renaming it and truncating it to CommitLog.SEGMENT_SIZE.
+     * @param compressor the compressor the segment is written with, recorded in its header; null if uncompressed
      */
-    CommitLogSegment(String filePath)
+    CommitLogSegment(String filePath, ICompressor compressor)
     {
         id = getNextId();
-        descriptor = new CommitLogDescriptor(id);
+        descriptor = new CommitLogDescriptor(id, compressor == null ? null : compressor.getClass().getName());
         logFile = new File(DatabaseDescriptor.getCommitLogLocation(), descriptor.fileName());
         boolean isCreating = true;
 
@@ -144,20 +150,20 @@ public class CommitLogSegment
 
             // Open the initial the segment file
             logFileAccessor = new RandomAccessFile(logFile, "rw");
+            channel = logFileAccessor.getChannel();
 
             if (isCreating)
                 logger.debug("Creating new commit log segment {}", logFile.getPath());
 
-            // Map the segment, extending or truncating it to the standard segment size.
-            // (We may have restarted after a segment size configuration change, leaving "incorrectly"
-            // sized segments on disk.)
-            logFileAccessor.setLength(DatabaseDescriptor.getCommitLogSegmentSize());
-
-            buffer = logFileAccessor.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, DatabaseDescriptor.getCommitLogSegmentSize());
-            // mark the initial header as uninitialised
-            buffer.putInt(0, 0);
-            buffer.putLong(4, 0);
-            allocatePosition.set(SYNC_MARKER_SIZE);
+            buffer = createBuffer();
+            // write the descriptor header, and mark the initial sync marker following it as uninitialised;
+            // subclasses are responsible for getting the header to disk
+            CommitLogDescriptor.writeHeader(buffer, descriptor);
+            int headerEnd = buffer.position();
+            buffer.putInt(headerEnd, 0);
+            buffer.putLong(headerEnd + 4, 0);
+            allocatePosition.set(headerEnd + SYNC_MARKER_SIZE);
+            lastSyncedOffset = headerEnd;
         }
         catch (IOException e)
         {
@@ -165,6 +171,22 @@ public class CommitLogSegment
         }
     }
 
+    /**
+     * @return the buffer of the segment size mutations are appended to, positioned at 0
+     */
+    abstract ByteBuffer createBuffer() throws IOException;
+
+    /**
+     * Writes the section of the buffer between the two sync markers to disk, along with the sync marker
+     * starting it, and forces it to disk.
+     */
+    abstract void write(int startMarker, int nextMarker) throws IOException;
+
+    /**
+     * @return a new segment taking over whatever this closed one allows to reuse
+     */
+    abstract CommitLogSegment reuse();
+
     /**
      * allocate space in this buffer for the provided mutation, and populate the provided
      * Allocation object, returning true on success. False indicates there is not enough room in
@@ -276,26 +298,8 @@ public class CommitLogSegment
             appendLock.set(new AppendLock());
             curAppendLock.expireAndWaitForCompletion();
 
-            // write previous sync marker to point to next sync marker
-            // we don't chain the crcs here to ensure this method is idempotent if it fails
-            int offset = lastSyncedOffset;
-            final PureJavaCrc32 crc = new PureJavaCrc32();
-            crc.update((int) (id & 0xFFFFFFFFL));
-            crc.update((int) (id >>> 32));
-            crc.update(offset);
-            buffer.putInt(offset, nextMarker);
-            buffer.putLong(offset + 4, crc.getValue());
-
-            // zero out the next sync marker so replayer can cleanly exit
-            if (nextMarker < buffer.capacity())
-            {
-                buffer.putInt(nextMarker, 0);
-                buffer.putLong(nextMarker + 4, 0);
-            }
-
-            // actually perform the sync and signal those waiting for it
-            buffer.force();
-            syncComplete.signalAll();
+            // write out the section along with the sync marker pointing past it
+            write(lastSyncedOffset, nextMarker);
 
             if (close)
             {
@@ -303,7 +307,10 @@ public class CommitLogSegment
                 nextMarker = buffer.capacity();
             }
 
+            // publish the new offset before signalling, or a writer checking it in between would wait for
+            // a sync that has nothing left to write
             lastSyncedOffset = nextMarker;
+            syncComplete.signalAll();
         }
         catch (Exception e) // MappedByteBuffer.force() does not declare IOException but can actually throw it
         {
@@ -311,6 +318,23 @@ public class CommitLogSegment
         }
     }
 
+    /**
+     * Writes a sync marker at the given offset of the provided buffer.  We don't chain the crcs here to ensure
+     * sync() is idempotent if it fails.
+     *
+     * @param filePosition the position of the marker in the file, which its crc covers
+     * @param nextMarker the position the marker points to, i.e. the end of the section it starts
+     */
+    protected void writeSyncMarker(ByteBuffer out, int offset, int filePosition, int nextMarker)
+    {
+        final PureJavaCrc32 crc = new PureJavaCrc32();
+        crc.update((int) (id & 0xFFFFFFFFL));
+        crc.update((int) (id >>> 32));
+        crc.update(filePosition);
+        out.putInt(offset, nextMarker);
+        out.putLong(offset + 4, crc.getValue());
+    }
+
     public boolean isFullySynced()
     {
         return lastSyncedOffset == buffer.capacity();
@@ -343,7 +367,7 @@ public class CommitLogSegment
 
         close();
 
-        return new CommitLogSegment(getPath());
+        return reuse();
     }
 
     /**
@@ -377,7 +401,6 @@ public class CommitLogSegment
     {
         try
         {
-            FileUtils.clean(buffer);
             logFileAccessor.close();
         }
         catch (IOException e)
@@ -29,6 +29,7 @@ import java.util.UUID;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.Future;
 import java.util.concurrent.FutureTask;
 import java.util.concurrent.LinkedBlockingQueue;
@@ -36,6 +37,7 @@ import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
 
 import com.google.common.collect.Iterables;
+import com.google.common.util.concurrent.Uninterruptibles;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -348,8 +350,10 @@ public class CommitLogSegmentManager
      */
     void recycleSegment(final File file)
     {
+        // compressed segments are written from scratch, so there is nothing to reuse in an old file
         if (isCapExceeded()
-            || CommitLogDescriptor.fromFileName(file.getName()).getMessagingVersion() != MessagingService.current_version)
+            || CommitLogDescriptor.fromFileName(file.getName()).getMessagingVersion() != MessagingService.current_version
+            || DatabaseDescriptor.getCommitLogCompressor() != null)
         {
             // (don't decrease managed size, since this was never a "live" segment)
             logger.debug("(Unopened) segment {} is no longer needed and will be deleted now", file);
@@ -364,7 +368,7 @@ public class CommitLogSegmentManager
         {
             public CommitLogSegment call()
             {
-                return new CommitLogSegment(file.getPath());
+                return new MemoryMappedSegment(file.getPath());
             }
         });
     }
@@ -496,8 +500,18 @@ public class CommitLogSegmentManager
     {
         logger.debug("Closing and clearing existing commit log segments...");
 
-        while (!segmentManagementTasks.isEmpty())
-            Thread.yield();
+        // wait for the task in progress as well as the queued ones, since they may still publish a segment
+        final CountDownLatch tasksDone = new CountDownLatch(1);
+        segmentManagementTasks.add(new Callable<CommitLogSegment>()
+        {
+            public CommitLogSegment call()
+            {
+                tasksDone.countDown();
+                return null;
+            }
+        });
+        if (managerThread.isAlive())
+            Uninterruptibles.awaitUninterruptibly(tasksDone);
 
         activeSegments.clear();
         availableSegments.clear();
@@ -0,0 +1,113 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.db.commitlog;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import org.apache.cassandra.config.DatabaseDescriptor;
+import org.apache.cassandra.io.FSWriteError;
+import org.apache.cassandra.io.compress.ICompressor;
+
+/*
+ * A segment whose sync sections are compressed before being appended to the file.  Mutations are still
+ * appended to an (on-heap) buffer of the segment size, so positions within the segment are unchanged; only
+ * the file is laid out differently.  Each section is written as a sync marker pointing to the file position
+ * of the next one, followed by the buffer offset the section ends at and the compressed content of the section.
+ */
+class CompressedSegment extends CommitLogSegment
+{
+    // the sync marker of a section is followed by the offset in the buffer the section ends at
+    static final int COMPRESSED_MARKER_SIZE = SYNC_MARKER_SIZE + 4;
+
+    // buffers of closed segments kept for new ones, so that each segment does not allocate its own
+    private static final int MAX_POOLED_BUFFERS = 3;
+    private static final Queue<ByteBuffer> bufferPool = new ConcurrentLinkedQueue<>();
+
+    private final ICompressor compressor;
+    private ICompressor.WrappedArray compressed = new ICompressor.WrappedArray(new byte[0]);
+    private boolean bufferReleased;
+
+    CompressedSegment(ICompressor compressor)
+    {
+        super(null, compressor);
+        this.compressor = compressor;
+
+        try
+        {
+            ByteBuffer header = buffer.duplicate();
+            header.flip();
+            channel.write(header);
+        }
+        catch (IOException e)
+        {
+            throw new FSWriteError(e, getPath());
+        }
+    }
+
+    ByteBuffer createBuffer()
+    {
+        ByteBuffer pooled = bufferPool.poll();
+        if (pooled == null || pooled.capacity() != DatabaseDescriptor.getCommitLogSegmentSize())
+            return ByteBuffer.allocate(DatabaseDescriptor.getCommitLogSegmentSize());
+        pooled.clear();
+        return pooled;
+    }
+
+    void write(int startMarker, int nextMarker) throws IOException
+    {
+        int contentStart = startMarker + SYNC_MARKER_SIZE;
+        int length = nextMarker - contentStart;
+        int maxLength = COMPRESSED_MARKER_SIZE + compressor.initialCompressedBufferLength(length);
+        if (compressed.buffer.length < maxLength)
+            compressed = new ICompressor.WrappedArray(new byte[maxLength]);
+
+        int compressedLength = compressor.compress(buffer.array(), contentStart, length, compressed, COMPRESSED_MARKER_SIZE);
+        ByteBuffer section = ByteBuffer.wrap(compressed.buffer, 0, COMPRESSED_MARKER_SIZE + compressedLength);
+        int filePosition = (int) channel.position();
+        writeSyncMarker(section, 0, filePosition, filePosition + section.remaining());
+        section.putInt(SYNC_MARKER_SIZE, nextMarker);
+
+        while (section.hasRemaining())
+            channel.write(section);
+        channel.force(true);
+    }
+
+    CommitLogSegment reuse()
+    {
+        // the file is only ever appended to, so there is nothing to gain from reusing it; our buffer
+        // has been released to the pool, which the new segment takes it from
+        delete();
+        return new CompressedSegment(compressor);
+    }
+
+    @Override
+    synchronized void close()
+    {
+        // close() may be called more than once, but the buffer must only be handed to a single new segment
+        if (!bufferReleased)
+        {
+            bufferReleased = true;
+            if (bufferPool.size() < MAX_POOLED_BUFFERS)
+                bufferPool.add(buffer);
+        }
+        super.close();
+    }
+}
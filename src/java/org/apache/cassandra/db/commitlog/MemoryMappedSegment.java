@@ -0,0 +1,93 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.db.commitlog;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+import org.apache.cassandra.config.DatabaseDescriptor;
+import org.apache.cassandra.io.FSWriteError;
+import org.apache.cassandra.io.util.FileUtils;
+
+/*
+ * An uncompressed segment, written through a mapping of the whole preallocated file: positions in the
+ * buffer are positions in the file.
+ */
+class MemoryMappedSegment extends CommitLogSegment
+{
+    /**
+     * Constructs a new segment file.
+     *
+     * @param filePath  if not null, recycles the existing file by renaming it and truncating it to CommitLog.SEGMENT_SIZE.
+     */
+    MemoryMappedSegment(String filePath)
+    {
+        super(filePath, null);
+
+        // a recycled file still starts with the header of its previous segment, whose sync markers would
+        // then pass for ours on replay: make sure our header replaces it before anything is synced
+        try
+        {
+            ((MappedByteBuffer) buffer).force();
+        }
+        catch (Exception e) // MappedByteBuffer.force() does not declare IOException but can actually throw it
+        {
+            throw new FSWriteError(e, getPath());
+        }
+    }
+
+    ByteBuffer createBuffer() throws IOException
+    {
+        // Map the segment, extending or truncating it to the standard segment size.
+        // (We may have restarted after a segment size configuration change, leaving "incorrectly"
+        // sized segments on disk.)
+        logFileAccessor.setLength(DatabaseDescriptor.getCommitLogSegmentSize());
+
+        return channel.map(FileChannel.MapMode.READ_WRITE, 0, DatabaseDescriptor.getCommitLogSegmentSize());
+    }
+
+    void write(int startMarker, int nextMarker)
+    {
+        // write previous sync marker to point to next sync marker
+        writeSyncMarker(buffer, startMarker, startMarker, nextMarker);
+
+        // zero out the next sync marker so replayer can cleanly exit
+        if (nextMarker < buffer.capacity())
+        {
+            buffer.putInt(nextMarker, 0);
+            buffer.putLong(nextMarker + 4, 0);
+        }
+
+        // actually perform the sync
+        ((MappedByteBuffer) buffer).force();
+    }
+
+    CommitLogSegment reuse()
+    {
+        return new MemoryMappedSegment(getPath());
+    }
+
+    @Override
+    void close()
+    {
+        FileUtils.clean((MappedByteBuffer) buffer);
+        super.close();
+    }
+}
@@ -32,6 +32,7 @@ import org.apache.cassandra.dht.Token;
 import org.apache.cassandra.exceptions.ConfigurationException;
 import org.apache.cassandra.io.sstable.Component;
 import org.apache.cassandra.io.sstable.SSTableReader;
+import org.apache.cassandra.utils.Pair;
 
 /**
  * Pluggable compaction strategy determines how SSTables get merged.
@@ -185,9 +186,9 @@ public abstract class AbstractCompactionStrategy
     }
 
     /**
-     * @return whether or not MeteredFlusher should be able to trigger memtable flushes for this CF.
+     * @return whether or not the memtable pool cleaner should be able to trigger memtable flushes for this CF.
      */
-    public boolean isAffectedByMeteredFlusher()
+    public boolean isAffectedByMemtableCleaner()
     {
         return true;
     }
@@ -230,6 +231,26 @@ public abstract class AbstractCompactionStrategy
         });
     }
 
+    /**
+     * Splits the given SSTables by repair status: repaired and unrepaired data must not be compacted together,
+     * or the repaired data would have to be repaired again.
+     *
+     * @return the repaired SSTables on the left, the unrepaired ones on the right
+     */
+    public static Pair<List<SSTableReader>, List<SSTableReader>> splitByRepairStatus(Iterable<SSTableReader> sstables)
+    {
+        List<SSTableReader> repaired = new ArrayList<>();
+        List<SSTableReader> unrepaired = new ArrayList<>();
+        for (SSTableReader sstable : sstables)
+        {
+            if (sstable.isRepaired())
+                repaired.add(sstable);
+            else
+                unrepaired.add(sstable);
+        }
+        return Pair.create(repaired, unrepaired);
+    }
+
     /**
      * Returns a list of KeyScanners given sstables and a range on which to scan.
      * The default implementation simply grab one SSTableScanner per-sstable, but overriding this method
@@ -50,6 +50,7 @@ import org.apache.cassandra.io.sstable.metadata.MetadataCollector;
 import org.apache.cassandra.io.util.FileUtils;
 import org.apache.cassandra.metrics.CompactionMetrics;
 import org.apache.cassandra.repair.Validator;
+import org.apache.cassandra.service.ActiveRepairService;
 import org.apache.cassandra.service.StorageService;
 import org.apache.cassandra.utils.*;
 
@@ -410,6 +411,150 @@ public class CompactionManager implements CompactionManagerMBean
         return validationExecutor.submit(callable);
     }
 
+    /**
+     * Splits the sstables validated by a successful incremental repair of the given range into the data
+     * within the range, which is marked repaired at {@code repairedAt}, and the rest, which stays unrepaired.
+     */
+    public Future<?> submitAntiCompaction(final ColumnFamilyStore cfs,
+                                          final Range<Token> range,
+                                          final Collection<SSTableReader> validatedSSTables,
+                                          final long repairedAt)
+    {
+        Runnable runnable = new WrappedRunnable()
+        {
+            protected void runMayThrow() throws IOException
+            {
+                performAntiCompaction(cfs, range, validatedSSTables, repairedAt);
+            }
+        };
+        return executor.submit(runnable);
+    }
+
+    public void performAntiCompaction(ColumnFamilyStore cfs, Range<Token> range, Collection<SSTableReader> validatedSSTables, long repairedAt) throws IOException
+    {
+        // the sstables compacted since they were validated, or being compacted, are left alone: their data
+        // ends up in new sstables, which are unrepaired, and will simply be validated again by the next repair
+        Set<SSTableReader> sstables;
+        do
+        {
+            sstables = new HashSet<>(validatedSSTables);
+            sstables.retainAll(cfs.getDataTracker().getSSTables());
+            sstables.removeAll(cfs.getDataTracker().getCompacting());
+            if (sstables.isEmpty())
+            {
+                logger.info("No sstable left to anticompact for {}.{} after the repair of {}", cfs.keyspace.getName(), cfs.name, range);
+                return;
+            }
+        }
+        while (!cfs.getDataTracker().markCompacting(sstables));
+
+        try
+        {
+            logger.info("Anticompacting {} for the repair of {}", sstables, range);
+            List<SSTableReader> mutated = new ArrayList<>();
+            for (SSTableReader sstable : sstables)
+            {
+                // an sstable whose data was all repaired is simply marked so, but older versions can't record it
+                if (sstable.descriptor.version.hasRepairedAt && isFullyContained(range, sstable))
+                {
+                    sstable.descriptor.getMetadataSerializer().mutateRepairedAt(sstable.descriptor, repairedAt);
+                    sstable.reloadSSTableMetadata();
+                    mutated.add(sstable);
+                }
+                else
+                {
+                    doAntiCompaction(cfs, range, sstable, repairedAt);
+                }
+            }
+            if (!mutated.isEmpty())
+                cfs.getDataTracker().notifySSTableRepairedStatusChanged(mutated);
+        }
+        finally
+        {
+            cfs.getDataTracker().unmarkCompacting(sstables);
+        }
+    }
+
+    private static boolean isFullyContained(Range<Token> range, SSTableReader sstable)
+    {
+        Token first = sstable.first.token;
+        Token last = sstable.last.token;
+        return range.contains(first) && (first.equals(last) || range.contains(new Range<>(first, last)));
+    }
+
+    /**
+     * Rewrites the sstable as two: one with the rows within the range, marked repaired, and one with the others.
+     */
+    private void doAntiCompaction(ColumnFamilyStore cfs, Range<Token> range, SSTableReader sstable, long repairedAt) throws IOException
+    {
+        logger.info("Anticompacting {}", sstable);
+
+        int expectedBloomFilterSize = Math.max(cfs.metadata.getIndexInterval(),
+                                               (int) (SSTableReader.getApproximateKeyCount(Arrays.asList(sstable))));
+        File compactionFileLocation = cfs.directories.getDirectoryForNewSSTables();
+        if (compactionFileLocation == null)
+            throw new IOException("disk full");
+
+        CompactionController controller = new CompactionController(cfs, Collections.singleton(sstable), getDefaultGcBefore(cfs));
+        ICompactionScanner scanner = sstable.getScanner(getRateLimiter());
+        CleanupInfo ci = new CleanupInfo(sstable, scanner, OperationType.ANTICOMPACTION);
+
+        metrics.beginCompaction(ci);
+        // the repaired rows join the repaired sstables, which they may overlap, so they start over at level 0
+        SSTableWriter repairedWriter = createWriter(cfs, compactionFileLocation, expectedBloomFilterSize, sstable, 0, repairedAt);
+        SSTableWriter unrepairedWriter = createWriter(cfs, compactionFileLocation, expectedBloomFilterSize, sstable, sstable.getSSTableLevel(), ActiveRepairService.UNREPAIRED_SSTABLE);
+        List<SSTableReader> results = new ArrayList<>(2);
+        try
+        {
+            long repairedKeys = 0;
+            long unrepairedKeys = 0;
+            while (scanner.hasNext())
+            {
+                if (ci.isStopRequested())
+                    throw new CompactionInterruptedException(ci.getCompactionInfo());
+                SSTableIdentityIterator row = (SSTableIdentityIterator) scanner.next();
+                AbstractCompactedRow compactedRow = new LazilyCompactedRow(controller, Collections.singletonList(row));
+                if (range.contains(row.getKey().token))
+                {
+                    if (repairedWriter.append(compactedRow) != null)
+                        repairedKeys++;
+                }
+                else
+                {
+                    if (unrepairedWriter.append(compactedRow) != null)
+                        unrepairedKeys++;
+                }
+            }
+
+            if (repairedKeys > 0)
+                results.add(repairedWriter.closeAndOpenReader(sstable.maxDataAge));
+            else
+                repairedWriter.abort();
+            if (unrepairedKeys > 0)
+                results.add(unrepairedWriter.closeAndOpenReader(sstable.maxDataAge));
+            else
+                unrepairedWriter.abort();
+            logger.info("Anticompacted {} into {} repaired and {} unrepaired keys", sstable, repairedKeys, unrepairedKeys);
+        }
+        catch (Throwable e)
+        {
+            repairedWriter.abort();
+            unrepairedWriter.abort();
+            for (SSTableReader result : results)
+                result.markObsolete();
+            SSTableReader.releaseReferences(results);
+            throw Throwables.propagate(e);
+        }
+        finally
+        {
+            controller.close();
+            scanner.close();
+            metrics.finishCompaction(ci);
+        }
+
+        cfs.replaceCompactedSSTables(Arrays.asList(sstable), results, OperationType.ANTICOMPACTION);
+    }
+
     /* Used in tests. */
     public void disableAutoCompaction()
     {
@@ -562,7 +707,7 @@ public class CompactionManager implements CompactionManagerMBean
                 throw new IOException("disk full");
 
             ICompactionScanner scanner = cleanupStrategy.getScanner(sstable, getRateLimiter());
-            CleanupInfo ci = new CleanupInfo(sstable, scanner);
+            CleanupInfo ci = new CleanupInfo(sstable, scanner, OperationType.CLEANUP);
 
             metrics.beginCompaction(ci);
             SSTableWriter writer = createWriter(cfs,
@@ -734,20 +879,30 @@ public class CompactionManager implements CompactionManagerMBean
                                              File compactionFileLocation,
                                              int expectedBloomFilterSize,
                                              SSTableReader sstable)
+    {
+        return createWriter(cfs, compactionFileLocation, expectedBloomFilterSize, sstable, sstable.getSSTableLevel(), sstable.getRepairedAt());
+    }
+
+    private static SSTableWriter createWriter(ColumnFamilyStore cfs,
+                                              File compactionFileLocation,
+                                              int expectedBloomFilterSize,
+                                              SSTableReader sstable,
+                                              int sstableLevel,
+                                              long repairedAt)
     {
         FileUtils.createDirectory(compactionFileLocation);
         return new SSTableWriter(cfs.getTempSSTablePath(compactionFileLocation),
                                  expectedBloomFilterSize,
                                  cfs.metadata,
                                  cfs.partitioner,
-                                 new MetadataCollector(Collections.singleton(sstable), cfs.metadata.comparator, sstable.getSSTableLevel()));
+                                 new MetadataCollector(Collections.singleton(sstable), cfs.metadata.comparator, sstableLevel).repairedAt(repairedAt));
     }
 
     /**
      * Performs a readonly "compaction" of all sstables in order to validate complete rows,
      * but without writing the merge result
      */
-    private void doValidationCompaction(ColumnFamilyStore cfs, Validator validator) throws IOException
+    private void doValidationCompaction(final ColumnFamilyStore cfs, Validator validator) throws IOException
     {
         // this isn't meant to be race-proof, because it's not -- it won't cause bugs for a CFS to be dropped
         // mid-validation, or to attempt to validate a droped CFS.  this is just a best effort to avoid useless work,
@@ -771,6 +926,12 @@ public class CompactionManager implements CompactionManagerMBean
             // time of the snapshot, which should give us roughtly the same time on each replica (roughtly being in that case
             // 'as good as in the non-snapshot' case)
             gcBefore = cfs.gcBefore(cfs.getSnapshotCreationTime(snapshotName));
+            if (validator.incremental)
+            {
+                Collection<SSTableReader> repaired = removeRepaired(sstables);
+                for (SSTableReader sstable : repaired)
+                    FileUtils.closeQuietly(sstable);
+            }
         }
         else
         {
@@ -780,31 +941,52 @@ public class CompactionManager implements CompactionManagerMBean
             // we don't mark validating sstables as compacting in DataTracker, so we have to mark them referenced
             // instead so they won't be cleaned up if they do get compacted during the validation
             sstables = cfs.markCurrentSSTablesReferenced();
+            if (validator.incremental)
+            {
+                sstables = new ArrayList<>(sstables);
+                SSTableReader.releaseReferences(removeRepaired(sstables));
+            }
             if (validator.gcBefore > 0)
                 gcBefore = validator.gcBefore;
             else
                 gcBefore = getDefaultGcBefore(cfs);
         }
 
-        CompactionIterable ci = new ValidationCompactionIterable(cfs, sstables, validator.desc.range, gcBefore);
-        CloseableIterator<AbstractCompactedRow> iter = ci.iterator();
-        metrics.beginCompaction(ci);
+        // the sstables of a snapshot have the generation of the live ones they link to
+        if (validator.incremental)
+            ActiveRepairService.instance.recordValidatedSSTables(validator.desc, sstables);
+
         try
         {
-            // validate the CF as we iterate over it
             validator.prepare(cfs);
-            while (iter.hasNext())
+            List<Validator.Segment> segments = validator.segments(DatabaseDescriptor.getConcurrentValidators());
+            if (segments.size() == 1)
             {
-                if (ci.isStopRequested())
-                    throw new CompactionInterruptedException(ci.getCompactionInfo());
-                AbstractCompactedRow row = iter.next();
-                validator.add(row);
+                validateSegment(cfs, sstables, segments.get(0), gcBefore);
+            }
+            else
+            {
+                // each segment builds its own leaves of the tree, so they can be validated concurrently
+                List<Future<?>> futures = new ArrayList<>(segments.size());
+                for (final Validator.Segment segment : segments)
+                {
+                    final Collection<SSTableReader> validated = sstables;
+                    final int segmentGcBefore = gcBefore;
+                    futures.add(validationExecutor.submit(new Callable<Object>()
+                    {
+                        public Object call() throws IOException
+                        {
+                            validateSegment(cfs, validated, segment, segmentGcBefore);
+                            return this;
+                        }
+                    }));
+                }
+                waitForSegments(futures);
             }
             validator.complete();
         }
         finally
         {
-            iter.close();
             if (isSnapshotValidation)
             {
                 for (SSTableReader sstable : sstables)
@@ -815,11 +997,84 @@ public class CompactionManager implements CompactionManagerMBean
             {
                 SSTableReader.releaseReferences(sstables);
             }
+        }
+    }
 
+    private void validateSegment(ColumnFamilyStore cfs, Collection<SSTableReader> sstables, Validator.Segment segment, int gcBefore) throws IOException
+    {
+        CompactionIterable ci = new ValidationCompactionIterable(cfs, sstables, segment.range, gcBefore);
+        CloseableIterator<AbstractCompactedRow> iter = ci.iterator();
+        metrics.beginCompaction(ci);
+        try
+        {
+            // validate the CF as we iterate over it
+            while (iter.hasNext())
+            {
+                if (ci.isStopRequested())
+                    throw new CompactionInterruptedException(ci.getCompactionInfo());
+                AbstractCompactedRow row = iter.next();
+                segment.add(row);
+            }
+        }
+        finally
+        {
+            iter.close();
             metrics.finishCompaction(ci);
         }
     }
 
+    /**
+     * Waits for all the segments to be validated, even when one of them failed, since their sstables are
+     * released once we return.
+     */
+    private static void waitForSegments(List<Future<?>> futures) throws IOException
+    {
+        Throwable failure = null;
+        for (Future<?> future : futures)
+        {
+            try
+            {
+                future.get();
+            }
+            catch (ExecutionException e)
+            {
+                if (failure == null)
+                    failure = e.getCause();
+            }
+            catch (InterruptedException e)
+            {
+                if (failure == null)
+                    failure = e;
+            }
+        }
+
+        if (failure == null)
+            return;
+        if (failure instanceof IOException)
+            throw (IOException) failure;
+        throw Throwables.propagate(failure);
+    }
+
+    /**
+     * Removes the sstables that have already been repaired from the given (mutable) collection.
+     *
+     * @return the removed sstables
+     */
+    private static Collection<SSTableReader> removeRepaired(Collection<SSTableReader> sstables)
+    {
+        List<SSTableReader> repaired = new ArrayList<>();
+        for (Iterator<SSTableReader> iter = sstables.iterator(); iter.hasNext(); )
+        {
+            SSTableReader sstable = iter.next();
+            if (sstable.isRepaired())
+            {
+                repaired.add(sstable);
+                iter.remove();
+            }
+        }
+        return repaired;
+    }
+
     /**
      * Is not scheduled, because it is performing disjoint work from sstable compaction.
      */
@@ -1055,11 +1310,13 @@ public class CompactionManager implements CompactionManagerMBean
     {
         private final SSTableReader sstable;
         private final ICompactionScanner scanner;
+        private final OperationType type;
 
-        public CleanupInfo(SSTableReader sstable, ICompactionScanner scanner)
+        public CleanupInfo(SSTableReader sstable, ICompactionScanner scanner, OperationType type)
         {
             this.sstable = sstable;
             this.scanner = scanner;
+            this.type = type;
         }
 
         public CompactionInfo getCompactionInfo()
@@ -1067,7 +1324,7 @@ public class CompactionManager implements CompactionManagerMBean
             try
             {
                 return new CompactionInfo(sstable.metadata,
-                                          OperationType.CLEANUP,
+                                          type,
                                           scanner.getCurrentPosition(),
                                           scanner.getLengthInBytes());
             }
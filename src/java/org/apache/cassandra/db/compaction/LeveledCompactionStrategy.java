@@ -37,14 +37,19 @@ import org.apache.cassandra.notifications.INotification;
 import org.apache.cassandra.notifications.INotificationConsumer;
 import org.apache.cassandra.notifications.SSTableAddedNotification;
 import org.apache.cassandra.notifications.SSTableListChangedNotification;
+import org.apache.cassandra.notifications.SSTableRepairStatusChanged;
+import org.apache.cassandra.utils.Pair;
 
 public class LeveledCompactionStrategy extends AbstractCompactionStrategy implements INotificationConsumer
 {
     private static final Logger logger = LoggerFactory.getLogger(LeveledCompactionStrategy.class);
     private static final String SSTABLE_SIZE_OPTION = "sstable_size_in_mb";
 
+    // repaired and unrepaired sstables are leveled separately, so that they are never compacted together
     @VisibleForTesting
     final LeveledManifest manifest;
+    @VisibleForTesting
+    final LeveledManifest repairedManifest;
     private final int maxSSTableSizeInMB;
 
     public LeveledCompactionStrategy(ColumnFamilyStore cfs, Map<String, String> options)
@@ -73,8 +78,10 @@ public class LeveledCompactionStrategy extends AbstractCompactionStrategy implem
         cfs.getDataTracker().subscribe(this);
         logger.debug("{} subscribed to the data tracker.", this);
 
-        manifest = LeveledManifest.create(cfs, this.maxSSTableSizeInMB, cfs.getSSTables(), localOptions);
-        logger.debug("Created {}", manifest);
+        Pair<List<SSTableReader>, List<SSTableReader>> byRepairStatus = splitByRepairStatus(cfs.getSSTables());
+        repairedManifest = LeveledManifest.create(cfs, this.maxSSTableSizeInMB, byRepairStatus.left, localOptions);
+        manifest = LeveledManifest.create(cfs, this.maxSSTableSizeInMB, byRepairStatus.right, localOptions);
+        logger.debug("Created {} and {} for the repaired sstables", manifest, repairedManifest);
     }
 
     public void shutdown()
@@ -85,12 +92,21 @@ public class LeveledCompactionStrategy extends AbstractCompactionStrategy implem
 
     public int getLevelSize(int i)
     {
-        return manifest.getLevelSize(i);
+        return manifest.getLevelSize(i) + repairedManifest.getLevelSize(i);
     }
 
     public int[] getAllLevelSize()
     {
-        return manifest.getAllLevelSize();
+        int[] counts = manifest.getAllLevelSize();
+        int[] repairedCounts = repairedManifest.getAllLevelSize();
+        for (int i = 0; i < counts.length; i++)
+            counts[i] += repairedCounts[i];
+        return counts;
+    }
+
+    private LeveledManifest manifestFor(SSTableReader sstable)
+    {
+        return sstable.isRepaired() ? repairedManifest : manifest;
     }
 
     /**
@@ -110,7 +126,7 @@ public class LeveledCompactionStrategy extends AbstractCompactionStrategy implem
         while (true)
         {
             OperationType op;
-            LeveledManifest.CompactionCandidate candidate = manifest.getCompactionCandidates();
+            LeveledManifest.CompactionCandidate candidate = getCompactionCandidates();
             if (candidate == null)
             {
                 // if there is no sstable to compact in standard way, try compacting based on droppable tombstone ratio
@@ -139,6 +155,18 @@ public class LeveledCompactionStrategy extends AbstractCompactionStrategy implem
         }
     }
 
+    /**
+     * @return the candidates of whichever of the repaired and unrepaired sstables are the furthest behind,
+     * or of the others if there is nothing to compact there
+     */
+    private LeveledManifest.CompactionCandidate getCompactionCandidates()
+    {
+        LeveledManifest first = repairedManifest.getEstimatedTasks() > manifest.getEstimatedTasks() ? repairedManifest : manifest;
+        LeveledManifest second = first == manifest ? repairedManifest : manifest;
+        LeveledManifest.CompactionCandidate candidate = first.getCompactionCandidates();
+        return candidate == null ? second.getCompactionCandidates() : candidate;
+    }
+
     public AbstractCompactionTask getUserDefinedTask(Collection<SSTableReader> sstables, int gcBefore)
     {
         throw new UnsupportedOperationException("LevelDB compaction strategy does not allow user-specified compactions");
@@ -146,7 +174,7 @@ public class LeveledCompactionStrategy extends AbstractCompactionStrategy implem
 
     public int getEstimatedRemainingTasks()
     {
-        return manifest.getEstimatedTasks();
+        return manifest.getEstimatedTasks() + repairedManifest.getEstimatedTasks();
     }
 
     public void handleNotification(INotification notification, Object sender)
@@ -154,12 +182,39 @@ public class LeveledCompactionStrategy extends AbstractCompactionStrategy implem
         if (notification instanceof SSTableAddedNotification)
         {
             SSTableAddedNotification flushedNotification = (SSTableAddedNotification) notification;
-            manifest.add(flushedNotification.added);
+            manifestFor(flushedNotification.added).add(flushedNotification.added);
         }
         else if (notification instanceof SSTableListChangedNotification)
         {
             SSTableListChangedNotification listChangedNotification = (SSTableListChangedNotification) notification;
-            manifest.replace(listChangedNotification.removed, listChangedNotification.added);
+            Pair<List<SSTableReader>, List<SSTableReader>> removed = splitByRepairStatus(listChangedNotification.removed);
+            Pair<List<SSTableReader>, List<SSTableReader>> added = splitByRepairStatus(listChangedNotification.added);
+            replace(repairedManifest, removed.left, added.left);
+            replace(manifest, removed.right, added.right);
+        }
+        else if (notification instanceof SSTableRepairStatusChanged)
+        {
+            for (SSTableReader sstable : ((SSTableRepairStatusChanged) notification).sstables)
+            {
+                LeveledManifest to = manifestFor(sstable);
+                LeveledManifest from = to == manifest ? repairedManifest : manifest;
+                from.remove(sstable);
+                to.addFromOtherManifest(sstable);
+            }
+        }
+    }
+
+    // anticompaction removes unrepaired sstables, and adds repaired ones
+    private static void replace(LeveledManifest manifest, Collection<SSTableReader> removed, Collection<SSTableReader> added)
+    {
+        if (!removed.isEmpty())
+        {
+            manifest.replace(removed, added);
+        }
+        else
+        {
+            for (SSTableReader sstable : added)
+                manifest.add(sstable);
         }
     }
 
@@ -169,12 +224,21 @@ public class LeveledCompactionStrategy extends AbstractCompactionStrategy implem
     }
 
     public List<ICompactionScanner> getScanners(Collection<SSTableReader> sstables, Range<Token> range)
+    {
+        // the repaired and unrepaired sstables of a level are leveled separately, and so may overlap
+        Pair<List<SSTableReader>, List<SSTableReader>> byRepairStatus = splitByRepairStatus(sstables);
+        List<ICompactionScanner> scanners = new ArrayList<ICompactionScanner>(sstables.size());
+        addScanners(scanners, byRepairStatus.left, range);
+        addScanners(scanners, byRepairStatus.right, range);
+        return scanners;
+    }
+
+    private static void addScanners(List<ICompactionScanner> scanners, Collection<SSTableReader> sstables, Range<Token> range)
     {
         Multimap<Integer, SSTableReader> byLevel = ArrayListMultimap.create();
         for (SSTableReader sstable : sstables)
             byLevel.get(sstable.getSSTableLevel()).add(sstable);
 
-        List<ICompactionScanner> scanners = new ArrayList<ICompactionScanner>(sstables.size());
         for (Integer level : byLevel.keySet())
         {
             // level can be -1 when sstables are added to DataTracker but not to LeveledManifest
@@ -193,8 +257,6 @@ public class LeveledCompactionStrategy extends AbstractCompactionStrategy implem
                     scanners.add(new LeveledScanner(intersecting, range));
             }
         }
-
-        return scanners;
     }
 
     // Lazily creates SSTableBoundedScanner for sstable that are assumed to be from the
@@ -304,7 +366,13 @@ public class LeveledCompactionStrategy extends AbstractCompactionStrategy implem
         return String.format("LCS@%d(%s)", hashCode(), cfs.name);
     }
 
-    private SSTableReader findDroppableSSTable(final int gcBefore)
+    private SSTableReader findDroppableSSTable(int gcBefore)
+    {
+        SSTableReader sstable = findDroppableSSTable(manifest, gcBefore);
+        return sstable == null ? findDroppableSSTable(repairedManifest, gcBefore) : sstable;
+    }
+
+    private SSTableReader findDroppableSSTable(LeveledManifest manifest, final int gcBefore)
     {
         level:
         for (int i = manifest.getLevelCount(); i >= 0; i--)
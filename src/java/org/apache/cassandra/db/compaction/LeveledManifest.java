@@ -138,12 +138,12 @@ public class LeveledManifest
             int thisLevel = remove(sstable);
             minLevel = Math.min(minLevel, thisLevel);
         }
-        lastCompactedKeys[minLevel] = SSTableReader.sstableOrdering.max(added).last;
-
         // it's valid to do a remove w/o an add (e.g. on truncate)
         if (added.isEmpty())
             return;
 
+        lastCompactedKeys[minLevel] = SSTableReader.sstableOrdering.max(added).last;
+
         if (logger.isDebugEnabled())
             logger.debug("Adding [{}]", toString(added));
 
@@ -151,6 +151,17 @@ public class LeveledManifest
             add(ssTableReader);
     }
 
+    /**
+     * Adds an sstable that was in another manifest until now, like when it gets repaired: it keeps its
+     * level unless it overlaps the sstables already there, in which case it is sent back to L0.
+     */
+    public synchronized void addFromOtherManifest(SSTableReader reader)
+    {
+        add(reader);
+        if (reader.getSSTableLevel() > 0)
+            repairOverlappingSSTables(reader.getSSTableLevel());
+    }
+
     public synchronized void repairOverlappingSSTables(int level)
     {
         SSTableReader previous = null;
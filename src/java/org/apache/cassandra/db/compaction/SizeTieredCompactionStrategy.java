@@ -80,7 +80,10 @@ public class SizeTieredCompactionStrategy extends AbstractCompactionStrategy
         Iterable<SSTableReader> candidates = filterSuspectSSTables(cfs.getUncompactingSSTables());
         candidates = filterColdSSTables(Lists.newArrayList(candidates), options.coldReadsToOmit);
 
-        List<List<SSTableReader>> buckets = getBuckets(createSSTableAndLengthPairs(candidates), options.bucketHigh, options.bucketLow, options.minSSTableSize);
+        Pair<List<SSTableReader>, List<SSTableReader>> byRepairStatus = splitByRepairStatus(candidates);
+        List<List<SSTableReader>> buckets = new ArrayList<>();
+        buckets.addAll(getBuckets(createSSTableAndLengthPairs(byRepairStatus.left), options.bucketHigh, options.bucketLow, options.minSSTableSize));
+        buckets.addAll(getBuckets(createSSTableAndLengthPairs(byRepairStatus.right), options.bucketHigh, options.bucketLow, options.minSSTableSize));
         logger.debug("Compaction buckets are {}", buckets);
         updateEstimatedCompactionsByTasks(buckets);
         List<SSTableReader> mostInteresting = mostInterestingBucket(buckets, minThreshold, maxThreshold);
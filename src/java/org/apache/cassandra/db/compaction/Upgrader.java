@@ -63,7 +63,7 @@ public class Upgrader
 
     private SSTableWriter createCompactionWriter()
     {
-        MetadataCollector sstableMetadataCollector = new MetadataCollector(cfs.getComparator());
+        MetadataCollector sstableMetadataCollector = new MetadataCollector(cfs.getComparator()).repairedAt(sstable.getRepairedAt());
 
         // Get the max timestamp of the precompacted sstables
         // and adds generation of live ancestors
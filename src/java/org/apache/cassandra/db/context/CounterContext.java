@@ -27,6 +27,7 @@ import org.apache.cassandra.serializers.MarshalException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import org.apache.cassandra.db.ClockAndCount;
 import org.apache.cassandra.db.TypeSizes;
 import org.apache.cassandra.db.compaction.CompactionManager;
 import org.apache.cassandra.utils.*;
@@ -106,7 +107,10 @@ public class CounterContext implements IContext
         return context;
     }
 
-    // Provided for use by unit tests
+    /**
+     * Creates a context made of a single shard.  Used by unit tests, and to replicate the local shard of a counter
+     * known from the counter cache.
+     */
     public ByteBuffer create(CounterId id, long clock, long value, boolean isDelta)
     {
         ByteBuffer context = ByteBuffer.allocate(HEADER_SIZE_LENGTH + (isDelta ? HEADER_ELT_LENGTH : 0) + STEP_LENGTH);
@@ -568,6 +572,29 @@ public class CounterContext implements IContext
         return false;
     }
 
+    /**
+     * Returns the clock and the count of the shard of the local counter id, or (0, 0) if the context has none.
+     */
+    public ClockAndCount getLocalClockAndCount(ByteBuffer context)
+    {
+        CounterId localId = CounterId.getLocalId();
+        for (int offset = context.position() + headerLength(context); offset < context.limit(); offset += STEP_LENGTH)
+        {
+            if (localId.equals(CounterId.wrap(context, offset)))
+                return ClockAndCount.create(context.getLong(offset + CounterId.LENGTH),
+                                            context.getLong(offset + CounterId.LENGTH + CLOCK_LENGTH));
+        }
+        return ClockAndCount.BLANK;
+    }
+
+    /**
+     * Checks whether the context has delta shards, i.e. whether it may update the local shard of the counter.
+     */
+    public boolean hasDelta(ByteBuffer context)
+    {
+        return headerLength(context) > HEADER_SIZE_LENGTH;
+    }
+
     /**
      * Compute a new context such that if applied to context yields the same
      * total but with old local counter ids nulified and there content merged to
@@ -81,6 +81,12 @@ public interface IDiskAtomFilter
 
     boolean shouldInclude(SSTableReader sstable);
 
+    /**
+     * Whether cf, which holds the head of a partition (i.e. all the partition cells up to its last one), contains
+     * everything this filter would select from the whole partition.
+     */
+    public boolean isFullyCoveredBy(ColumnFamily cf, long now);
+
     public static class Serializer implements IVersionedSerializer<IDiskAtomFilter>
     {
         private final CellNameType type;
@@ -147,6 +147,17 @@ public class NamesQueryFilter implements IDiskAtomFilter
         return true;
     }
 
+    public boolean isFullyCoveredBy(ColumnFamily cf, long now)
+    {
+        // cf is the head of a partition, so it holds every requested column that sorts before its last cell
+        if (columns.isEmpty())
+            return true;
+        if (cf.getColumnCount() == 0)
+            return false;
+
+        return cf.getComparator().compare(columns.last(), cf.reverseIterator().next().name()) <= 0;
+    }
+
     public boolean countCQL3Rows()
     {
         return countCQL3Rows;
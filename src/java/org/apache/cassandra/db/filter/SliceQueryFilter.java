@@ -340,6 +340,32 @@ public class SliceQueryFilter implements IDiskAtomFilter
         return false;
     }
 
+    public boolean isHeadFilter()
+    {
+        return slices.length == 1 && slices[0].start.isEmpty() && !reversed;
+    }
+
+    public boolean isFullyCoveredBy(ColumnFamily cf, long now)
+    {
+        // cf is the head of a partition: it covers a filter that only wants its first rows, as long as it holds
+        // enough of them, or one whose slices all end before the last cached cell
+        if (isHeadFilter() && count <= getLiveCount(cf, now))
+            return true;
+
+        if (cf.getColumnCount() == 0)
+            return false;
+
+        CellNameType comparator = cf.getComparator();
+        Composite lastCached = cf.reverseIterator().next().name();
+        for (ColumnSlice slice : slices)
+        {
+            Composite high = reversed ? slice.start : slice.finish;
+            if (high.isEmpty() || comparator.compare(high, lastCached) > 0)
+                return false;
+        }
+        return true;
+    }
+
     public static class Serializer implements IVersionedSerializer<SliceQueryFilter>
     {
         private CType type;
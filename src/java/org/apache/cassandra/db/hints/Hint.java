@@ -0,0 +1,82 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.db.hints;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+import org.apache.cassandra.db.Mutation;
+import org.apache.cassandra.db.TypeSizes;
+import org.apache.cassandra.io.IVersionedSerializer;
+
+/**
+ * A mutation to deliver to a host once it is back up, along with when it was created and for how long it
+ * may be delivered.
+ */
+public class Hint
+{
+    public static final IVersionedSerializer<Hint> serializer = new HintSerializer();
+
+    public final Mutation mutation;
+    // when the hint was created, in milliseconds
+    public final long creationTime;
+    // how long after its creation the hint may still be delivered, in seconds
+    public final int ttl;
+
+    public Hint(Mutation mutation, long creationTime, int ttl)
+    {
+        assert ttl > 0;
+        this.mutation = mutation;
+        this.creationTime = creationTime;
+        this.ttl = ttl;
+    }
+
+    /**
+     * @return true if the hint may still be delivered; past its ttl, delivering it could undo a delete whose
+     * tombstone has been purged since
+     */
+    public boolean isLive(long now)
+    {
+        return now < creationTime + ttl * 1000L;
+    }
+
+    private static class HintSerializer implements IVersionedSerializer<Hint>
+    {
+        public void serialize(Hint hint, DataOutput out, int version) throws IOException
+        {
+            out.writeLong(hint.creationTime);
+            out.writeInt(hint.ttl);
+            Mutation.serializer.serialize(hint.mutation, out, version);
+        }
+
+        public Hint deserialize(DataInput in, int version) throws IOException
+        {
+            long creationTime = in.readLong();
+            int ttl = in.readInt();
+            return new Hint(Mutation.serializer.deserialize(in, version), creationTime, ttl);
+        }
+
+        public long serializedSize(Hint hint, int version)
+        {
+            return TypeSizes.NATIVE.sizeof(hint.creationTime)
+                   + TypeSizes.NATIVE.sizeof(hint.ttl)
+                   + Mutation.serializer.serializedSize(hint.mutation, version);
+        }
+    }
+}
@@ -0,0 +1,172 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.db.hints;
+
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.apache.cassandra.db.UnknownColumnFamilyException;
+import org.apache.cassandra.exceptions.ConfigurationException;
+import org.apache.cassandra.io.compress.CompressionParameters;
+import org.apache.cassandra.io.compress.ICompressor;
+import org.apache.cassandra.io.util.FastByteArrayInputStream;
+import org.apache.cassandra.io.util.FileUtils;
+import org.apache.cassandra.io.util.RandomAccessReader;
+import org.apache.cassandra.utils.FBUtilities;
+import org.apache.cassandra.utils.PureJavaCrc32;
+
+/**
+ * Reads back the blocks of hints of a file written by HintsWriter, in the order they were written.
+ */
+public class HintsReader implements Closeable
+{
+    private static final Logger logger = LoggerFactory.getLogger(HintsReader.class);
+
+    private final RandomAccessReader reader;
+    private final int version;
+    private final ICompressor compressor;
+    private byte[] stored = new byte[0];
+
+    private HintsReader(RandomAccessReader reader, int version, ICompressor compressor)
+    {
+        this.reader = reader;
+        this.version = version;
+        this.compressor = compressor;
+    }
+
+    public static HintsReader open(File file) throws IOException
+    {
+        RandomAccessReader reader = RandomAccessReader.open(file);
+        try
+        {
+            int version = reader.readInt();
+            String compressorClass = reader.readUTF();
+            ICompressor compressor = compressorClass.isEmpty()
+                                   ? null
+                                   : new CompressionParameters(compressorClass, null, Collections.<String, String>emptyMap()).sstableCompressor;
+            return new HintsReader(reader, version, compressor);
+        }
+        catch (ConfigurationException e)
+        {
+            FileUtils.closeQuietly(reader);
+            throw new IOException("Cannot read hints from " + file, e);
+        }
+        catch (IOException e)
+        {
+            FileUtils.closeQuietly(reader);
+            throw e;
+        }
+    }
+
+    /**
+     * @return the position of the next block in the file
+     */
+    public long getPosition()
+    {
+        return reader.getFilePointer();
+    }
+
+    public void seek(long position)
+    {
+        reader.seek(position);
+    }
+
+    /**
+     * Reads the next block of hints, skipping those for column families that have been dropped since.
+     *
+     * @return the hints of the block, or null if there are no more complete blocks in the file
+     */
+    public List<Hint> readBlock() throws IOException
+    {
+        if (reader.isEOF())
+            return null;
+
+        long blockStart = reader.getFilePointer();
+        byte[] content;
+        int length;
+        try
+        {
+            length = reader.readInt();
+            int storedLength = reader.readInt();
+            PureJavaCrc32 crc = new PureJavaCrc32();
+            FBUtilities.updateChecksumInt(crc, length);
+            FBUtilities.updateChecksumInt(crc, storedLength);
+            if (reader.readLong() != crc.getValue() || storedLength > reader.bytesRemaining())
+                return corrupted(blockStart);
+
+            if (stored.length < storedLength)
+                stored = new byte[storedLength];
+            reader.readFully(stored, 0, storedLength);
+            crc.reset();
+            crc.update(stored, 0, storedLength);
+            if (reader.readLong() != crc.getValue())
+                return corrupted(blockStart);
+
+            content = stored;
+            if (compressor != null)
+            {
+                content = new byte[length];
+                if (compressor.uncompress(stored, 0, storedLength, content, 0) != length)
+                    return corrupted(blockStart);
+            }
+        }
+        catch (EOFException e)
+        {
+            // the last block was not completely written
+            return corrupted(blockStart);
+        }
+
+        List<Hint> hints = new ArrayList<Hint>();
+        DataInputStream in = new DataInputStream(new FastByteArrayInputStream(content, 0, length));
+        while (in.available() > 0)
+        {
+            int size = in.readInt();
+            byte[] hint = new byte[size];
+            in.readFully(hint);
+            try
+            {
+                hints.add(Hint.serializer.deserialize(new DataInputStream(new FastByteArrayInputStream(hint)), version));
+            }
+            catch (UnknownColumnFamilyException e)
+            {
+                logger.debug("Skipping delivery of hint for deleted columnfamily", e);
+            }
+        }
+        return hints;
+    }
+
+    private List<Hint> corrupted(long blockStart)
+    {
+        logger.warn("Skipping the rest of hints file {} from position {}, which was not completely written or is corrupted", reader.getPath(), blockStart);
+        return null;
+    }
+
+    public void close()
+    {
+        FileUtils.closeQuietly(reader);
+    }
+}
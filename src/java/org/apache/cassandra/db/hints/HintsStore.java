@@ -0,0 +1,184 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.db.hints;
+
+import java.io.File;
+import java.io.FilenameFilter;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.cassandra.io.compress.ICompressor;
+import org.apache.cassandra.io.util.FileUtils;
+
+/**
+ * The hints files of all the hosts, in a single directory.  Hints for a host are appended to a single file at a
+ * time, named after the host id and the time the file was created.  That file is closed when the hints of the
+ * host are about to be delivered, so that new hints go to a new one meanwhile, and the files delivered are then
+ * deleted as a whole.
+ */
+public class HintsStore
+{
+    private static final Pattern FILE_PATTERN = Pattern.compile("(\\p{XDigit}{8}-\\p{XDigit}{4}-\\p{XDigit}{4}-\\p{XDigit}{4}-\\p{XDigit}{12})-(\\d+)\\.hints");
+
+    private final File directory;
+    private final ICompressor compressor;
+    private final ConcurrentMap<UUID, HintsWriter> writers = new ConcurrentHashMap<UUID, HintsWriter>();
+    private long lastCreationTime;
+
+    public HintsStore(File directory, ICompressor compressor)
+    {
+        this.directory = directory;
+        this.compressor = compressor;
+    }
+
+    public void write(UUID hostId, Hint hint)
+    {
+        // the writer may be closed concurrently, in which case a new one takes its place
+        while (!writerFor(hostId).append(hint));
+    }
+
+    private HintsWriter writerFor(UUID hostId)
+    {
+        HintsWriter writer = writers.get(hostId);
+        if (writer != null)
+            return writer;
+
+        HintsWriter created = new HintsWriter(new File(directory, hostId + "-" + nextCreationTime() + ".hints"), compressor);
+        writer = writers.putIfAbsent(hostId, created);
+        if (writer == null)
+            return created;
+
+        created.close();
+        FileUtils.deleteWithConfirm(created.file);
+        return writer;
+    }
+
+    // file names have to be unique even when a host's file is closed and another created in the same millisecond
+    private synchronized long nextCreationTime()
+    {
+        lastCreationTime = Math.max(System.currentTimeMillis(), lastCreationTime + 1);
+        return lastCreationTime;
+    }
+
+    /**
+     * Writes out the hints buffered for every host.
+     */
+    public void flush()
+    {
+        for (HintsWriter writer : writers.values())
+            writer.flush();
+    }
+
+    /**
+     * Closes the file the hints for the host are being written to, if any, so that it can be delivered.
+     */
+    public void closeWriter(UUID hostId)
+    {
+        HintsWriter writer = writers.remove(hostId);
+        if (writer != null)
+            writer.close();
+    }
+
+    /**
+     * @return the files of hints for the host that are not being written to, oldest first
+     */
+    public List<File> getFiles(UUID hostId)
+    {
+        HintsWriter current = writers.get(hostId);
+        File writing = current == null ? null : current.file;
+        List<File> files = new ArrayList<File>();
+        for (Map.Entry<File, UUID> entry : listFiles().entrySet())
+        {
+            if (entry.getValue().equals(hostId) && !entry.getKey().equals(writing))
+                files.add(entry.getKey());
+        }
+        Collections.sort(files, new Comparator<File>()
+        {
+            public int compare(File f1, File f2)
+            {
+                return Long.compare(creationTime(f1), creationTime(f2));
+            }
+        });
+        return files;
+    }
+
+    /**
+     * @return the ids of the hosts that there are hints for, written out or not
+     */
+    public Set<UUID> getHostIds()
+    {
+        Set<UUID> hostIds = new HashSet<UUID>(listFiles().values());
+        hostIds.addAll(writers.keySet());
+        return hostIds;
+    }
+
+    public void delete(File file)
+    {
+        // the file may have been deleted concurrently, by deleteHints()
+        if (file.exists())
+            FileUtils.deleteWithConfirm(file);
+    }
+
+    /**
+     * Deletes all the hints for the host, including those that were not written out yet.
+     */
+    public void deleteHints(UUID hostId)
+    {
+        closeWriter(hostId);
+        for (File file : getFiles(hostId))
+            delete(file);
+    }
+
+    public void deleteAllHints()
+    {
+        for (UUID hostId : getHostIds())
+            deleteHints(hostId);
+    }
+
+    private Map<File, UUID> listFiles()
+    {
+        Map<File, UUID> files = new HashMap<File, UUID>();
+        File[] listed = directory.listFiles(new FilenameFilter()
+        {
+            public boolean accept(File dir, String name)
+            {
+                return FILE_PATTERN.matcher(name).matches();
+            }
+        });
+        if (listed == null)
+            return files;
+
+        for (File file : listed)
+        {
+            Matcher matcher = FILE_PATTERN.matcher(file.getName());
+            matcher.matches();
+            files.put(file, UUID.fromString(matcher.group(1)));
+        }
+        return files;
+    }
+
+    private static long creationTime(File file)
+    {
+        Matcher matcher = FILE_PATTERN.matcher(file.getName());
+        matcher.matches();
+        return Long.parseLong(matcher.group(2));
+    }
+}
@@ -0,0 +1,170 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.db.hints;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+import org.apache.cassandra.io.FSWriteError;
+import org.apache.cassandra.io.compress.ICompressor;
+import org.apache.cassandra.io.util.DataOutputBuffer;
+import org.apache.cassandra.io.util.FileUtils;
+import org.apache.cassandra.net.MessagingService;
+import org.apache.cassandra.utils.FBUtilities;
+import org.apache.cassandra.utils.PureJavaCrc32;
+
+/**
+ * Appends the hints for a host to a new file.  The file starts with the messaging version the hints are
+ * serialized with and the class name of the compressor they are compressed with, empty if none.  Hints are then
+ * buffered, each prefixed with its size, and written out a block at a time: the uncompressed and stored lengths of
+ * the block and a checksum of both, followed by the (possibly compressed) content of the block and its checksum.
+ */
+class HintsWriter
+{
+    // blocks are written once they reach this size, or when the writer is flushed
+    static final int BLOCK_SIZE = 64 * 1024;
+    static final int BLOCK_HEADER_SIZE = 4 + 4 + 8;
+
+    final File file;
+    private final FileChannel channel;
+    private final ICompressor compressor;
+    private DataOutputBuffer buffer = new DataOutputBuffer(BLOCK_SIZE);
+    private ICompressor.WrappedArray compressed = new ICompressor.WrappedArray(new byte[0]);
+    private boolean closed;
+
+    HintsWriter(File file, ICompressor compressor)
+    {
+        this.file = file;
+        this.compressor = compressor;
+        try
+        {
+            channel = new FileOutputStream(file).getChannel();
+            DataOutputBuffer header = new DataOutputBuffer();
+            header.writeInt(MessagingService.current_version);
+            header.writeUTF(compressor == null ? "" : compressor.getClass().getName());
+            write(ByteBuffer.wrap(header.getData(), 0, header.getLength()));
+        }
+        catch (IOException e)
+        {
+            throw new FSWriteError(e, file);
+        }
+    }
+
+    /**
+     * @return false if the writer has been closed, in which case the hint has to go to a new file
+     */
+    synchronized boolean append(Hint hint)
+    {
+        if (closed)
+            return false;
+
+        try
+        {
+            buffer.writeInt((int) Hint.serializer.serializedSize(hint, MessagingService.current_version));
+            Hint.serializer.serialize(hint, buffer, MessagingService.current_version);
+            if (buffer.getLength() >= BLOCK_SIZE)
+                writeBlock();
+        }
+        catch (IOException e)
+        {
+            throw new FSWriteError(e, file);
+        }
+        return true;
+    }
+
+    /**
+     * Writes out and syncs the hints buffered so far.
+     */
+    synchronized void flush()
+    {
+        if (closed)
+            return;
+
+        try
+        {
+            if (writeBlock())
+                channel.force(false);
+        }
+        catch (IOException e)
+        {
+            throw new FSWriteError(e, file);
+        }
+    }
+
+    /**
+     * Flushes the writer and closes its file, which no more hints can then be appended to.
+     */
+    synchronized void close()
+    {
+        if (closed)
+            return;
+
+        flush();
+        closed = true;
+        FileUtils.closeQuietly(channel);
+    }
+
+    private boolean writeBlock() throws IOException
+    {
+        int length = buffer.getLength();
+        if (length == 0)
+            return false;
+
+        byte[] stored = buffer.getData();
+        int storedLength = length;
+        if (compressor != null)
+        {
+            int maxLength = compressor.initialCompressedBufferLength(length);
+            if (compressed.buffer.length < maxLength)
+                compressed = new ICompressor.WrappedArray(new byte[maxLength]);
+            storedLength = compressor.compress(stored, 0, length, compressed, 0);
+            stored = compressed.buffer;
+        }
+
+        PureJavaCrc32 crc = new PureJavaCrc32();
+        ByteBuffer header = ByteBuffer.allocate(BLOCK_HEADER_SIZE);
+        header.putInt(length);
+        header.putInt(storedLength);
+        FBUtilities.updateChecksumInt(crc, length);
+        FBUtilities.updateChecksumInt(crc, storedLength);
+        header.putLong(crc.getValue());
+        header.flip();
+
+        crc.reset();
+        crc.update(stored, 0, storedLength);
+        ByteBuffer trailer = ByteBuffer.allocate(8);
+        trailer.putLong(crc.getValue());
+        trailer.flip();
+
+        write(header);
+        write(ByteBuffer.wrap(stored, 0, storedLength));
+        write(trailer);
+
+        buffer = new DataOutputBuffer(BLOCK_SIZE);
+        return true;
+    }
+
+    private void write(ByteBuffer bytes) throws IOException
+    {
+        while (bytes.hasRemaining())
+            channel.write(bytes);
+    }
+}
@@ -470,7 +470,7 @@ public class SecondaryIndexManager
      * This helper acts as a closure around the indexManager
      * and updated cf data to ensure that down in
      * Memtable's ColumnFamily implementation, the index
-     * can get updated. Note: only a CF backed by AtomicSortedColumns implements
+     * can get updated. Note: only a CF backed by AtomicBTreeColumns implements
      * this behaviour fully, other types simply ignore the index updater.
      */
     public Updater updaterFor(DecoratedKey key, ColumnFamily cf)
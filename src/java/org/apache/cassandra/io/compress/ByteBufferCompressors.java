@@ -0,0 +1,105 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.io.compress;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Uncompresses between ByteBuffers with any ICompressor.  Compressors implementing IByteBufferCompressor are
+ * used as is; the others get the buffers' arrays, or copies of their content if they are direct.
+ */
+public final class ByteBufferCompressors
+{
+    // scratch arrays for direct buffers handed to array-only compressors
+    private static final ThreadLocal<byte[][]> scratch = new ThreadLocal<byte[][]>()
+    {
+        @Override
+        protected byte[][] initialValue()
+        {
+            return new byte[2][];
+        }
+    };
+
+    private ByteBufferCompressors()
+    {
+    }
+
+    /**
+     * @return true if the compressor can uncompress between direct buffers without copying them on heap
+     */
+    public static boolean supportsDirectBuffers(ICompressor compressor)
+    {
+        return compressor instanceof IByteBufferCompressor && ((IByteBufferCompressor) compressor).supportsDirectBuffers();
+    }
+
+    /**
+     * Uncompresses the remaining bytes of input into output, starting at output's position.  The positions of
+     * both buffers are left untouched.
+     *
+     * @return the number of bytes written to output
+     */
+    public static int uncompress(ICompressor compressor, ByteBuffer input, ByteBuffer output) throws IOException
+    {
+        if (compressor instanceof IByteBufferCompressor)
+            return ((IByteBufferCompressor) compressor).uncompress(input, output);
+        return uncompressWithArrays(compressor, input, output);
+    }
+
+    /**
+     * Same as uncompress(), but always through the array method of the compressor.
+     */
+    public static int uncompressWithArrays(ICompressor compressor, ByteBuffer input, ByteBuffer output) throws IOException
+    {
+        if (input.hasArray() && output.hasArray())
+            return compressor.uncompress(input.array(), input.arrayOffset() + input.position(), input.remaining(),
+                                         output.array(), output.arrayOffset() + output.position());
+
+        byte[][] arrays = scratch.get();
+        byte[] in;
+        int inOffset;
+        if (input.hasArray())
+        {
+            in = input.array();
+            inOffset = input.arrayOffset() + input.position();
+        }
+        else
+        {
+            in = arrays[0] = ensureCapacity(arrays[0], input.remaining());
+            inOffset = 0;
+            input.duplicate().get(in, 0, input.remaining());
+        }
+
+        if (output.hasArray())
+            return compressor.uncompress(in, inOffset, input.remaining(), output.array(), output.arrayOffset() + output.position());
+
+        // compressors size their output by the length of the array, so it must match what output can take
+        if (arrays[1] == null || arrays[1].length != output.remaining())
+            arrays[1] = new byte[output.remaining()];
+        byte[] out = arrays[1];
+        int length = compressor.uncompress(in, inOffset, input.remaining(), out, 0);
+        ByteBuffer target = output.duplicate();
+        target.put(out, 0, length);
+        return length;
+    }
+
+    private static byte[] ensureCapacity(byte[] array, int length)
+    {
+        return array != null && array.length >= length ? array : new byte[length];
+    }
+}
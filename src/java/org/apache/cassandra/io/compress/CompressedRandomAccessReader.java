@@ -19,12 +19,17 @@ package org.apache.cassandra.io.compress;
 
 import java.io.*;
 import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.util.Map;
+import java.util.TreeMap;
 import java.util.zip.Adler32;
 import java.util.zip.CRC32;
 import java.util.zip.Checksum;
 
+import org.apache.cassandra.cache.ChunkCache;
 import org.apache.cassandra.io.FSReadError;
 import org.apache.cassandra.io.sstable.CorruptSSTableException;
+import org.apache.cassandra.io.util.CompressedMmappedSegmentedFile;
 import org.apache.cassandra.io.util.CompressedPoolingSegmentedFile;
 import org.apache.cassandra.io.util.PoolingSegmentedFile;
 import org.apache.cassandra.io.util.RandomAccessReader;
@@ -33,6 +38,10 @@ import org.apache.cassandra.utils.FBUtilities;
 /**
  * CRAR extends RAR to transparently uncompress blocks from the file into RAR.buffer.  Most of the RAR
  * "read bytes from the buffer, rebuffering when necessary" machinery works unchanged after that.
+ *
+ * When the compressor supports it, chunks are read into a direct buffer and uncompressed straight into the
+ * (direct) RAR.buffer, so the data never goes through the heap.  If the file has been mapped, chunks are
+ * uncompressed from the mapping instead, without any read syscall.
  */
 public class CompressedRandomAccessReader extends RandomAccessReader
 {
@@ -48,6 +57,21 @@ public class CompressedRandomAccessReader extends RandomAccessReader
         }
     }
 
+    public static CompressedRandomAccessReader open(String path,
+                                                    CompressionMetadata metadata,
+                                                    TreeMap<Long, MappedByteBuffer> chunkSegments,
+                                                    CompressedMmappedSegmentedFile owner)
+    {
+        try
+        {
+            return new CompressedRandomAccessReader(path, metadata, chunkSegments, owner);
+        }
+        catch (FileNotFoundException e)
+        {
+            throw new RuntimeException(e);
+        }
+    }
+
     public static CompressedRandomAccessReader open(String dataFilePath, CompressionMetadata metadata)
     {
         try
@@ -60,23 +84,39 @@ public class CompressedRandomAccessReader extends RandomAccessReader
         }
     }
 
+    private static final int CHECKSUM_LENGTH = 4;
+
     private final CompressionMetadata metadata;
 
-    // we read the raw compressed bytes into this buffer, then move the uncompressed ones into super.buffer.
+    // we read the raw compressed bytes, followed by the chunk checksum, into this buffer, then uncompress them
+    // into super.buffer.  Both are direct if the compressor can work on them without copying.
     private ByteBuffer compressed;
 
+    // mapped segments of the file, keyed by their offset, each holding whole chunks along with their checksums;
+    // null if the file isn't mapped
+    private final TreeMap<Long, MappedByteBuffer> chunkSegments;
+
     // re-use single crc object
     private final Checksum checksum;
 
-    // raw checksum bytes
-    private final ByteBuffer checksumBytes = ByteBuffer.wrap(new byte[4]);
-
     protected CompressedRandomAccessReader(String dataFilePath, CompressionMetadata metadata, PoolingSegmentedFile owner) throws FileNotFoundException
     {
-        super(new File(dataFilePath), metadata.chunkLength(), owner);
+        this(dataFilePath, metadata, null, owner);
+    }
+
+    protected CompressedRandomAccessReader(String dataFilePath,
+                                           CompressionMetadata metadata,
+                                           TreeMap<Long, MappedByteBuffer> chunkSegments,
+                                           PoolingSegmentedFile owner) throws FileNotFoundException
+    {
+        super(new File(dataFilePath), metadata.chunkLength(), ByteBufferCompressors.supportsDirectBuffers(metadata.compressor()), owner);
         this.metadata = metadata;
+        this.chunkSegments = chunkSegments;
         checksum = metadata.hasPostCompressionAdlerChecksums ? new Adler32() : new CRC32();
-        compressed = ByteBuffer.wrap(new byte[metadata.compressor().initialCompressedBufferLength(metadata.chunkLength())]);
+        // mapped chunks can be handed to a compressor supporting direct buffers as is
+        if (chunkSegments == null || !buffer.isDirect())
+            compressed = allocateBuffer(metadata.compressor().initialCompressedBufferLength(metadata.chunkLength()) + CHECKSUM_LENGTH,
+                                        buffer.isDirect());
     }
 
     @Override
@@ -84,7 +124,27 @@ public class CompressedRandomAccessReader extends RandomAccessReader
     {
         try
         {
-            decompressChunk(metadata.chunkFor(current));
+            CompressionMetadata.Chunk chunk = metadata.chunkFor(current);
+            // only readers serving queries go through the chunk cache: compaction, streaming and the like would
+            // evict the hot chunks to cache ones that are read once
+            if (owner == null)
+            {
+                decompressChunk(chunk);
+            }
+            else
+            {
+                buffer.clear();
+                validBufferBytes = ChunkCache.instance.read(getPath(), chunk.offset, buffer);
+                if (validBufferBytes < 0)
+                {
+                    decompressChunk(chunk);
+                    buffer.position(0).limit(validBufferBytes);
+                    ChunkCache.instance.put(getPath(), chunk.offset, buffer);
+                }
+            }
+
+            // buffer offset is always aligned
+            bufferOffset = current & ~(buffer.capacity() - 1);
         }
         catch (CorruptBlockException e)
         {
@@ -96,26 +156,63 @@ public class CompressedRandomAccessReader extends RandomAccessReader
         }
     }
 
-    private void decompressChunk(CompressionMetadata.Chunk chunk) throws IOException
+    /**
+     * @return a buffer positioned at the start of the chunk, and holding the chunk followed by its checksum
+     */
+    private ByteBuffer readChunk(CompressionMetadata.Chunk chunk) throws IOException
     {
-        if (channel.position() != chunk.offset)
-            channel.position(chunk.offset);
+        int length = chunk.length + CHECKSUM_LENGTH;
+        if (chunkSegments != null)
+        {
+            Map.Entry<Long, MappedByteBuffer> segment = chunkSegments.floorEntry(chunk.offset);
+            ByteBuffer mapped = segment.getValue().duplicate();
+            int position = (int) (chunk.offset - segment.getKey());
+            if (position + length > mapped.capacity())
+                throw new CorruptBlockException(getPath(), chunk);
+            mapped.limit(position + length).position(position);
+
+            if (buffer.isDirect())
+                return mapped;
+
+            // the compressor needs an array: copy the chunk out of the mapping
+            ensureCompressedCapacity(length);
+            compressed.put(mapped);
+            compressed.flip();
+            return compressed;
+        }
+
+        // the checksum directly follows the chunk, so we get both with a single read
+        ensureCompressedCapacity(length);
+        compressed.limit(length);
+        if (readFromChannel(compressed, chunk.offset) != length)
+            throw new CorruptBlockException(getPath(), chunk);
+        compressed.flip();
+        return compressed;
+    }
 
-        if (compressed.capacity() < chunk.length)
-            compressed = ByteBuffer.wrap(new byte[chunk.length]);
+    private void ensureCompressedCapacity(int length)
+    {
+        if (compressed.capacity() < length)
+        {
+            freeBuffer(compressed);
+            compressed = allocateBuffer(length, buffer.isDirect());
+        }
         else
+        {
             compressed.clear();
-        compressed.limit(chunk.length);
+        }
+    }
 
-        if (channel.read(compressed) != chunk.length)
-            throw new CorruptBlockException(getPath(), chunk);
+    private void decompressChunk(CompressionMetadata.Chunk chunk) throws IOException
+    {
+        ByteBuffer source = readChunk(chunk);
+        int storedChecksum = source.getInt(source.position() + chunk.length);
+        source.limit(source.position() + chunk.length);
 
-        // technically flip() is unnecessary since all the remaining work uses the raw array, but if that changes
-        // in the future this will save a lot of hair-pulling
-        compressed.flip();
+        buffer.clear();
         try
         {
-            validBufferBytes = metadata.compressor().uncompress(compressed.array(), 0, chunk.length, buffer, 0);
+            validBufferBytes = ByteBufferCompressors.uncompress(metadata.compressor(), source, buffer);
         }
         catch (IOException e)
         {
@@ -124,39 +221,35 @@ public class CompressedRandomAccessReader extends RandomAccessReader
 
         if (metadata.parameters.getCrcCheckChance() > FBUtilities.threadLocalRandom().nextDouble())
         {
-
             if (metadata.hasPostCompressionAdlerChecksums)
             {
-                checksum.update(compressed.array(), 0, chunk.length);
+                FBUtilities.updateChecksum(checksum, source);
             }
             else
             {
-                checksum.update(buffer, 0, validBufferBytes);
+                buffer.limit(validBufferBytes);
+                FBUtilities.updateChecksum(checksum, buffer);
             }
 
-            if (checksum(chunk) != (int) checksum.getValue())
+            if (storedChecksum != (int) checksum.getValue())
                 throw new CorruptBlockException(getPath(), chunk);
 
             // reset checksum object back to the original (blank) state
             checksum.reset();
         }
-
-        // buffer offset is always aligned
-        bufferOffset = current & ~(buffer.length - 1);
     }
 
-    private int checksum(CompressionMetadata.Chunk chunk) throws IOException
+    @Override
+    public void deallocate()
     {
-        assert channel.position() == chunk.offset + chunk.length;
-        checksumBytes.clear();
-        if (channel.read(checksumBytes) != checksumBytes.capacity())
-            throw new CorruptBlockException(getPath(), chunk);
-        return checksumBytes.getInt(0);
+        freeBuffer(compressed);
+        compressed = null;
+        super.deallocate();
     }
 
     public int getTotalBufferSize()
     {
-        return super.getTotalBufferSize() + compressed.capacity();
+        return super.getTotalBufferSize() + (compressed == null ? 0 : compressed.capacity());
     }
 
     @Override
@@ -0,0 +1,43 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.io.compress;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Optionally implemented by compressors that can uncompress between ByteBuffers, and in particular between
+ * direct ones, without going through arrays.  Readers find out through ByteBufferCompressors, which falls back
+ * to the array methods of ICompressor for the compressors that don't implement it.
+ */
+public interface IByteBufferCompressor extends ICompressor
+{
+    /**
+     * Uncompresses the remaining bytes of input into output, starting at output's position.  The positions of
+     * both buffers are left untouched.  Any mix of heap and direct buffers must be accepted.
+     *
+     * @return the number of bytes written to output
+     */
+    public int uncompress(ByteBuffer input, ByteBuffer output) throws IOException;
+
+    /**
+     * @return true if uncompress(ByteBuffer, ByteBuffer) works directly on off-heap buffers, so that readers can
+     * hand it data straight from the file channel without copying it on heap first
+     */
+    public boolean supportsDirectBuffers();
+}
@@ -18,6 +18,7 @@
 package org.apache.cassandra.io.compress;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.Collections;
 import java.util.Map;
 import java.util.Set;
@@ -27,7 +28,7 @@ import org.slf4j.LoggerFactory;
 import org.xerial.snappy.Snappy;
 import org.xerial.snappy.SnappyError;
 
-public class SnappyCompressor implements ICompressor
+public class SnappyCompressor implements IByteBufferCompressor
 {
     public static final SnappyCompressor instance = new SnappyCompressor();
 
@@ -93,4 +94,19 @@ public class SnappyCompressor implements ICompressor
     {
         return Snappy.rawUncompress(input, inputOffset, inputLength, output, outputOffset);
     }
+
+    public int uncompress(ByteBuffer input, ByteBuffer output) throws IOException
+    {
+        // Snappy only works between two direct buffers, or two arrays
+        if (!input.isDirect() || !output.isDirect())
+            return ByteBufferCompressors.uncompressWithArrays(this, input, output);
+
+        // Snappy moves the output limit to the end of the uncompressed data
+        return Snappy.uncompress(input, output.duplicate());
+    }
+
+    public boolean supportsDirectBuffers()
+    {
+        return true;
+    }
 }
@@ -41,6 +41,8 @@ public class Component
         DATA("Data.db"),
         // index of the row keys with pointers to their positions in the data file
         PRIMARY_INDEX("Index.db"),
+        // position in the primary index of each row key, in order, so that it can be binary searched
+        PARTITION_INDEX("Partitions.db"),
         // serialized bloom filter for the row keys in the sstable
         FILTER("Filter.db"),
         // file to hold information about uncompressed data length, chunk offsets etc.
@@ -76,6 +78,7 @@ public class Component
     // singleton components for types that don't need ids
     public final static Component DATA = new Component(Type.DATA);
     public final static Component PRIMARY_INDEX = new Component(Type.PRIMARY_INDEX);
+    public final static Component PARTITION_INDEX = new Component(Type.PARTITION_INDEX);
     public final static Component FILTER = new Component(Type.FILTER);
     public final static Component COMPRESSION_INFO = new Component(Type.COMPRESSION_INFO);
     public final static Component STATS = new Component(Type.STATS);
@@ -145,6 +148,7 @@ public class Component
         {
             case DATA:              component = Component.DATA;                         break;
             case PRIMARY_INDEX:     component = Component.PRIMARY_INDEX;                break;
+            case PARTITION_INDEX:   component = Component.PARTITION_INDEX;              break;
             case FILTER:            component = Component.FILTER;                       break;
             case COMPRESSION_INFO:  component = Component.COMPRESSION_INFO;             break;
             case STATS:             component = Component.STATS;                        break;
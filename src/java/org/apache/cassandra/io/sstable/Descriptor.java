@@ -48,7 +48,7 @@ public class Descriptor
     {
         // This needs to be at the begining for initialization sake
         //之前的版本号是用字符串表示的(可查看2013-4-27的git提交记录)，现在大大地简化了，只判断一下ka和ja就可以了
-        public static final String current_version = "ka";
+        public static final String current_version = "kc";
 
         // ic (1.2.5): omits per-row bloom filter of column names
         // ja (2.0.0): super columns are serialized as composites (note that there is no real format change,
@@ -63,6 +63,8 @@ public class Descriptor
         //             checksum the compressed data
         // ka (2.1.0): new Statistics.db file format
         //             index summaries can be downsampled and the sampling level is persisted
+        // kb (2.1.0): tracks the time the data of the sstable was repaired at, if it was (incremental repair)
+        // kc (2.1.0): column indexes in the primary index are followed by the offset of each of their entries
 
         public static final Version CURRENT = new Version(current_version);
 
@@ -78,6 +80,8 @@ public class Descriptor
         public final boolean hasPostCompressionAdlerChecksums;
         public final boolean hasSamplingLevel;
         public final boolean newStatsFile;
+        public final boolean hasRepairedAt;
+        public final boolean hasColumnIndexOffsets;
 
         public Version(String version)
         {
@@ -92,6 +96,8 @@ public class Descriptor
             hasPostCompressionAdlerChecksums = version.compareTo("jb") >= 0;
             hasSamplingLevel = version.compareTo("ka") >= 0;
             newStatsFile = version.compareTo("ka") >= 0;
+            hasRepairedAt = version.compareTo("kb") >= 0;
+            hasColumnIndexOffsets = version.compareTo("kc") >= 0;
         }
 
         /**
@@ -188,6 +188,21 @@ public class IndexSummary implements Closeable
         return Downsampling.getEffectiveIndexIntervalAfterIndex(index, samplingLevel, indexInterval);
     }
 
+    /**
+     * @param index the index of an index summary entry, or -1 for the partitions before the first entry
+     *
+     * @return the number of partitions in the primary (on-disk) index before the partition of entry `index`
+     */
+    public long getPartitionOrdinal(int index)
+    {
+        if (index == -1)
+            return 0;
+
+        long originalIndex = (long) (index / samplingLevel) * BASE_SAMPLING_LEVEL
+                             + Downsampling.getOriginalIndexes(samplingLevel).get(index % samplingLevel);
+        return originalIndex * indexInterval;
+    }
+
     public static class IndexSummarySerializer
     {
         public void serialize(IndexSummary t, DataOutputStream out, boolean withSamplingLevel) throws IOException
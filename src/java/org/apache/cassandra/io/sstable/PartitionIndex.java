@@ -0,0 +1,206 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.io.sstable;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import org.apache.cassandra.db.DecoratedKey;
+import org.apache.cassandra.db.RowPosition;
+import org.apache.cassandra.dht.IPartitioner;
+import org.apache.cassandra.io.util.FileDataInput;
+import org.apache.cassandra.io.util.FileUtils;
+import org.apache.cassandra.io.util.MmappedSegmentedFile;
+import org.apache.cassandra.io.util.SegmentedFile;
+import org.apache.cassandra.utils.ByteBufferUtil;
+
+/**
+ * The Partitions.db component: the position in the primary index of every partition of the sstable, in order,
+ * as fixed size entries.
+ *
+ * Since the n-th partition's entry is found without reading any other, the primary index can be binary searched
+ * on disk between the partitions the in-memory index summary narrows a key down to: finding it takes
+ * O(log index_interval) reads of one key each, instead of a scan of up to index_interval entries.
+ */
+public class PartitionIndex
+{
+    public static final int ENTRY_SIZE = 8;
+
+    private final SegmentedFile file;
+    private final SegmentedFile ifile;
+    private final IPartitioner partitioner;
+
+    /** the number of partitions in the sstable */
+    public final long size;
+
+    public PartitionIndex(SegmentedFile file, SegmentedFile ifile, IPartitioner partitioner)
+    {
+        this.file = file;
+        this.ifile = ifile;
+        this.partitioner = partitioner;
+        this.size = file.length / ENTRY_SIZE;
+    }
+
+    /**
+     * Maps the partition index of {@code desc}, without reading it: entries have a fixed size, so the segment
+     * boundaries need not be recorded anywhere.
+     */
+    public static SegmentedFile open(Descriptor desc, SegmentedFile.Builder builder)
+    {
+        String path = desc.filenameFor(Component.PARTITION_INDEX);
+        long length = new File(path).length();
+        long step = MmappedSegmentedFile.MAX_SEGMENT_SIZE - MmappedSegmentedFile.MAX_SEGMENT_SIZE % ENTRY_SIZE;
+        for (long boundary = step; boundary < length; boundary += step)
+            builder.addPotentialBoundary(boundary);
+        return builder.complete(path);
+    }
+
+    /**
+     * @return the position in the primary index of the entry of the {@code ordinal}-th partition
+     */
+    public long indexPosition(long ordinal)
+    {
+        assert ordinal >= 0 && ordinal < size : ordinal + " not in [0, " + size + ")";
+        FileDataInput in = file.getSegment(ordinal * ENTRY_SIZE);
+        try
+        {
+            return in.readLong();
+        }
+        catch (IOException e)
+        {
+            throw new CorruptSSTableException(e, in.getPath());
+        }
+        finally
+        {
+            FileUtils.closeQuietly(in);
+        }
+    }
+
+    /**
+     * @return the key of the {@code ordinal}-th partition
+     */
+    public DecoratedKey keyAt(long ordinal)
+    {
+        FileDataInput in = ifile.getSegment(indexPosition(ordinal));
+        try
+        {
+            return partitioner.decorateKey(ByteBufferUtil.readWithShortLength(in));
+        }
+        catch (IOException e)
+        {
+            throw new CorruptSSTableException(e, in.getPath());
+        }
+        finally
+        {
+            FileUtils.closeQuietly(in);
+        }
+    }
+
+    /**
+     * Binary searches the partitions in [{@code from}, {@code to}) for {@code key}, through one input on each file
+     * and without decorating the keys compared.
+     *
+     * @param inclusive whether a partition equal to {@code key} qualifies
+     * @param from a partition no partition before which qualifies, or 0
+     * @param to a partition known to qualify, or {@link #size}
+     * @return the ordinal of the first partition greater than {@code key} (or equal to it if inclusive), or
+     * {@link #size} if there is none
+     */
+    public long ceiling(RowPosition key, boolean inclusive, long from, long to)
+    {
+        assert from >= 0 && from <= to && to <= size : String.format("[%d, %d) not in [0, %d]", from, to, size);
+        Reader positions = new Reader(file);
+        Reader keys = new Reader(ifile);
+        try
+        {
+            long low = from;
+            long high = to - 1;
+            while (low <= high)
+            {
+                long mid = (low + high) >>> 1;
+                long indexPosition = positions.seek(mid * ENTRY_SIZE).readLong();
+                ByteBuffer indexKey = ByteBufferUtil.readWithShortLength(keys.seek(indexPosition));
+                int cmp = DecoratedKey.compareTo(partitioner, indexKey, key);
+                if (cmp < 0 || (cmp == 0 && !inclusive))
+                    low = mid + 1;
+                else
+                    high = mid - 1;
+            }
+            return low;
+        }
+        catch (IOException e)
+        {
+            throw new CorruptSSTableException(e, getPath());
+        }
+        finally
+        {
+            positions.close();
+            keys.close();
+        }
+    }
+
+    /**
+     * An input on a segmented file, sought to each position read rather than reopened, unless the position is
+     * outside of what the segment it was opened on covers.
+     */
+    private static class Reader
+    {
+        private final SegmentedFile file;
+        private FileDataInput in;
+        // the positions in.seek() is known to reach
+        private long start;
+        private long end;
+
+        private Reader(SegmentedFile file)
+        {
+            this.file = file;
+        }
+
+        private FileDataInput seek(long position) throws IOException
+        {
+            if (in != null && position >= start && position < end)
+            {
+                in.seek(position);
+                return in;
+            }
+
+            close();
+            in = file.getSegment(position);
+            start = position;
+            end = position + in.bytesRemaining();
+            return in;
+        }
+
+        private void close()
+        {
+            FileUtils.closeQuietly(in);
+            in = null;
+        }
+    }
+
+    public String getPath()
+    {
+        return file.path;
+    }
+
+    public void cleanup()
+    {
+        file.cleanup();
+    }
+}
@@ -52,6 +52,7 @@ import org.apache.cassandra.io.compress.CompressionMetadata;
 import org.apache.cassandra.io.sstable.metadata.*;
 import org.apache.cassandra.io.util.*;
 import org.apache.cassandra.metrics.RestorableMeter;
+import org.apache.cassandra.service.ActiveRepairService;
 import org.apache.cassandra.service.CacheService;
 import org.apache.cassandra.service.StorageService;
 import org.apache.cassandra.tracing.Tracing;
@@ -106,6 +107,8 @@ public class SSTableReader extends SSTable implements Closeable
 
     // indexfile and datafile: might be null before a call to load()
     private SegmentedFile ifile;
+    // null if the sstable was written without one
+    private PartitionIndex partitionIndex;
     private SegmentedFile dfile;
 
     private IndexSummary indexSummary;
@@ -284,6 +287,7 @@ public class SSTableReader extends SSTable implements Closeable
             sstable.buildSummary(false, ibuilder, dbuilder, false, Downsampling.BASE_SAMPLING_LEVEL);
         sstable.ifile = ibuilder.complete(sstable.descriptor.filenameFor(Component.PRIMARY_INDEX));
         sstable.dfile = dbuilder.complete(sstable.descriptor.filenameFor(Component.DATA));
+        sstable.openPartitionIndex(new BufferedSegmentedFile.Builder());
         sstable.bf = FilterFactory.AlwaysPresent;
 
         return sstable;
@@ -396,6 +400,7 @@ public class SSTableReader extends SSTable implements Closeable
                                       CFMetaData metadata,
                                       IPartitioner partitioner,
                                       SegmentedFile ifile,
+                                      PartitionIndex partitionIndex,
                                       SegmentedFile dfile,
                                       IndexSummary isummary,
                                       IFilter bf,
@@ -407,7 +412,7 @@ public class SSTableReader extends SSTable implements Closeable
                                  components,
                                  metadata,
                                  partitioner,
-                                 ifile, dfile,
+                                 ifile, partitionIndex, dfile,
                                  isummary,
                                  bf,
                                  maxDataAge,
@@ -457,6 +462,7 @@ public class SSTableReader extends SSTable implements Closeable
                           CFMetaData metadata,
                           IPartitioner partitioner,
                           SegmentedFile ifile,
+                          PartitionIndex partitionIndex,
                           SegmentedFile dfile,
                           IndexSummary indexSummary,
                           IFilter bloomFilter,
@@ -466,6 +472,7 @@ public class SSTableReader extends SSTable implements Closeable
         this(desc, components, metadata, partitioner, maxDataAge, sstableMetadata);
 
         this.ifile = ifile;
+        this.partitionIndex = partitionIndex;
         this.dfile = dfile;
         this.indexSummary = indexSummary;
         this.bf = bloomFilter;
@@ -497,6 +504,8 @@ public class SSTableReader extends SSTable implements Closeable
         {
             // Force finalizing mmapping if necessary
             ifile.cleanup();
+            if (partitionIndex != null)
+                partitionIndex.cleanup();
             dfile.cleanup();
             // close the BF so it can be opened later.
             bf.close();
@@ -569,7 +578,7 @@ public class SSTableReader extends SSTable implements Closeable
         SegmentedFile.Builder ibuilder = SegmentedFile.getBuilder(DatabaseDescriptor.getIndexAccessMode());
         //数据构建器
         SegmentedFile.Builder dbuilder = compression
-                                         ? SegmentedFile.getCompressedBuilder()
+                                         ? SegmentedFile.getCompressedBuilder(DatabaseDescriptor.getDiskAccessMode())
                                          : SegmentedFile.getBuilder(DatabaseDescriptor.getDiskAccessMode());
 
         boolean summaryLoaded = loadSummary(ibuilder, dbuilder);
@@ -578,10 +587,17 @@ public class SSTableReader extends SSTable implements Closeable
 
         ifile = ibuilder.complete(descriptor.filenameFor(Component.PRIMARY_INDEX));
         dfile = dbuilder.complete(descriptor.filenameFor(Component.DATA));
+        openPartitionIndex(SegmentedFile.getBuilder(DatabaseDescriptor.getIndexAccessMode()));
         if (saveSummaryIfCreated && (recreateBloomFilter || !summaryLoaded)) // save summary information to disk
             saveSummary(ibuilder, dbuilder);
     }
 
+    private void openPartitionIndex(SegmentedFile.Builder builder)
+    {
+        if (components.contains(Component.PARTITION_INDEX))
+            partitionIndex = new PartitionIndex(PartitionIndex.open(descriptor, builder), ifile, partitioner);
+    }
+
     /**
      * Build index summary(and optionally bloom filter) by reading through Index.db file.
      *
@@ -605,7 +621,7 @@ public class SSTableReader extends SSTable implements Closeable
                                : estimateRowsFromIndex(primaryIndex); // statistics is supposed to be optional
 
             if (recreateBloomFilter)
-                bf = FilterFactory.getFilter(estimatedKeys, metadata.getBloomFilterFpChance(), true);
+                bf = FilterFactory.getFilter(estimatedKeys, metadata.getBloomFilterFpChance(), true, metadata.getBloomFilterType());
 
             IndexSummaryBuilder summaryBuilder = null;
             if (!summaryLoaded)
@@ -622,7 +638,7 @@ public class SSTableReader extends SSTable implements Closeable
                 last = decoratedKey;
 
                 if (recreateBloomFilter)
-                    bf.add(decoratedKey.key);
+                    bf.add(decoratedKey);
 
                 // if summary was already read from disk we don't want to re-populate it using primary index
                 if (!summaryLoaded)
@@ -747,7 +763,7 @@ public class SSTableReader extends SSTable implements Closeable
 
             SegmentedFile.Builder ibuilder = SegmentedFile.getBuilder(DatabaseDescriptor.getIndexAccessMode());
             SegmentedFile.Builder dbuilder = compression
-                                           ? SegmentedFile.getCompressedBuilder()
+                                           ? SegmentedFile.getCompressedBuilder(DatabaseDescriptor.getDiskAccessMode())
                                            : SegmentedFile.getBuilder(DatabaseDescriptor.getDiskAccessMode());
             saveSummary(ibuilder, dbuilder, newSummary);
         }
@@ -764,7 +780,7 @@ public class SSTableReader extends SSTable implements Closeable
         if (readMeterSyncFuture != null)
             readMeterSyncFuture.cancel(false);
 
-        SSTableReader replacement = new SSTableReader(descriptor, components, metadata, partitioner, ifile, dfile, newSummary, bf, maxDataAge, sstableMetadata);
+        SSTableReader replacement = new SSTableReader(descriptor, components, metadata, partitioner, ifile, partitionIndex, dfile, newSummary, bf, maxDataAge, sstableMetadata);
         replacement.readMeter = this.readMeter;
         replacement.first = this.first;
         replacement.last = this.last;
@@ -1049,6 +1065,14 @@ public class SSTableReader extends SSTable implements Closeable
         return positions;
     }
 
+    /**
+     * @return the column index of the row of {@code indexEntry}, an entry of this sstable
+     */
+    public List<IndexHelper.IndexInfo> getColumnsIndex(RowIndexEntry indexEntry)
+    {
+        return indexEntry.columnsIndex(ifile, metadata.comparator);
+    }
+
     public void cacheKey(DecoratedKey key, RowIndexEntry info)
     {
         CFMetaData.Caching caching = metadata.getCaching();
@@ -1135,7 +1159,7 @@ public class SSTableReader extends SSTable implements Closeable
         if (op == Operator.EQ)
         {
             assert key instanceof DecoratedKey; // EQ only make sense if the key is a valid row key
-            if (!bf.isPresent(((DecoratedKey)key).key))
+            if (!bf.isPresent((DecoratedKey)key))
             {
                 Tracing.trace("Bloom filter allows skipping sstable {}", descriptor.generation);
                 return null;
@@ -1168,6 +1192,9 @@ public class SSTableReader extends SSTable implements Closeable
             }
         }
 
+        if (partitionIndex != null)
+            return getPositionFromPartitionIndex(key, op, updateCacheAndStats);
+
         int binarySearchResult = indexSummary.binarySearch(key);
         long sampledPosition = getIndexScanPositionFromBinarySearchResult(binarySearchResult, indexSummary);
         int sampledIndex = getIndexSummaryIndexFromBinarySearchResult(binarySearchResult);
@@ -1219,32 +1246,7 @@ public class SSTableReader extends SSTable implements Closeable
                     }
 
                     if (opSatisfied)
-                    {
-                        // read data position from index entry
-                        RowIndexEntry indexEntry = metadata.comparator.rowIndexEntrySerializer().deserialize(in, descriptor.version);
-                        if (exactMatch && updateCacheAndStats)
-                        {
-                            assert key instanceof DecoratedKey; // key can be == to the index key only if it's a true row key
-                            DecoratedKey decoratedKey = (DecoratedKey)key;
-
-                            if (logger.isTraceEnabled())
-                            {
-                                // expensive sanity check!  see CASSANDRA-4687
-                                FileDataInput fdi = dfile.getSegment(indexEntry.position);
-                                DecoratedKey keyInDisk = partitioner.decorateKey(ByteBufferUtil.readWithShortLength(fdi));
-                                if (!keyInDisk.equals(key))
-                                    throw new AssertionError(String.format("%s != %s in %s", keyInDisk, key, fdi.getPath()));
-                                fdi.close();
-                            }
-
-                            // store exact match for the key
-                            cacheKey(decoratedKey, indexEntry);
-                        }
-                        if (op == Operator.EQ && updateCacheAndStats)
-                            bloomFilterTracker.addTruePositive();
-                        Tracing.trace("Partition index with {} entries found for sstable {}", indexEntry.columnsIndex().size(), descriptor.generation);
-                        return indexEntry;
-                    }
+                        return readIndexEntry(in, key, op, exactMatch, updateCacheAndStats);
 
                     RowIndexEntry.Serializer.skip(in);
                 }
@@ -1266,11 +1268,120 @@ public class SSTableReader extends SSTable implements Closeable
         return null;
     }
 
+    /**
+     * Binary searches the partition index for the first key matching {@code op}, so that only the index entry
+     * of that key is read, however far it is from the nearest key of the index summary.
+     */
+    private RowIndexEntry getPositionFromPartitionIndex(RowPosition key, Operator op, boolean updateCacheAndStats)
+    {
+        // EQ and GE both look for the first key that is not less than the one asked for
+        long ordinal = partitionCeiling(key, op != Operator.GT);
+
+        if (ordinal < partitionIndex.size)
+        {
+            FileDataInput in = ifile.getSegment(partitionIndex.indexPosition(ordinal));
+            try
+            {
+                ByteBuffer indexKey = ByteBufferUtil.readWithShortLength(in);
+                boolean exactMatch = op != Operator.GT
+                                     && key instanceof DecoratedKey
+                                     && indexKey.equals(((DecoratedKey) key).key);
+                if (op != Operator.EQ || exactMatch)
+                    return readIndexEntry(in, key, op, exactMatch, updateCacheAndStats);
+            }
+            catch (IOException e)
+            {
+                markSuspect();
+                throw new CorruptSSTableException(e, in.getPath());
+            }
+            finally
+            {
+                FileUtils.closeQuietly(in);
+            }
+        }
+
+        if (op != Operator.EQ)
+        {
+            Tracing.trace("Partition index lookup allows skipping sstable {}", descriptor.generation);
+            return null;
+        }
+        if (updateCacheAndStats)
+            bloomFilterTracker.addFalsePositive();
+        Tracing.trace("Partition index lookup complete (bloom filter false positive) for sstable {}", descriptor.generation);
+        return null;
+    }
+
+    /**
+     * @return the ordinal of the first partition greater than {@code key}, or equal to it if inclusive, found in
+     * the partition index between the partitions of the index summary entries surrounding {@code key}
+     */
+    private long partitionCeiling(RowPosition key, boolean inclusive)
+    {
+        int sampledIndex = getIndexSummaryIndexFromBinarySearchResult(indexSummary.binarySearch(key));
+        long from = indexSummary.getPartitionOrdinal(sampledIndex);
+        // the partition of the next summary entry, if any, is greater than key
+        long to = Math.min(from + indexSummary.getEffectiveIndexIntervalAfterIndex(sampledIndex), partitionIndex.size);
+        try
+        {
+            return partitionIndex.ceiling(key, inclusive, from, to);
+        }
+        catch (CorruptSSTableException e)
+        {
+            markSuspect();
+            throw e;
+        }
+    }
+
+    /**
+     * Reads the index entry {@code in} is positioned at, the one {@code op} selected for {@code key}.
+     */
+    private RowIndexEntry readIndexEntry(FileDataInput in, RowPosition key, Operator op, boolean exactMatch, boolean updateCacheAndStats) throws IOException
+    {
+        // read data position from index entry
+        RowIndexEntry indexEntry = metadata.comparator.rowIndexEntrySerializer().deserialize(in, descriptor.version);
+        if (exactMatch && updateCacheAndStats)
+        {
+            assert key instanceof DecoratedKey; // key can be == to the index key only if it's a true row key
+            DecoratedKey decoratedKey = (DecoratedKey)key;
+
+            if (logger.isTraceEnabled())
+            {
+                // expensive sanity check!  see CASSANDRA-4687
+                FileDataInput fdi = dfile.getSegment(indexEntry.position);
+                DecoratedKey keyInDisk = partitioner.decorateKey(ByteBufferUtil.readWithShortLength(fdi));
+                if (!keyInDisk.equals(key))
+                    throw new AssertionError(String.format("%s != %s in %s", keyInDisk, key, fdi.getPath()));
+                fdi.close();
+            }
+
+            // store exact match for the key
+            cacheKey(decoratedKey, indexEntry);
+        }
+        if (op == Operator.EQ && updateCacheAndStats)
+            bloomFilterTracker.addTruePositive();
+        Tracing.trace("Partition index with {} entries found for sstable {}", getColumnsIndex(indexEntry).size(), descriptor.generation);
+        return indexEntry;
+    }
+
     /**
      * Finds and returns the first key beyond a given token in this SSTable or null if no such key exists.
      */
     public DecoratedKey firstKeyBeyond(RowPosition token)
     {
+        if (partitionIndex != null)
+        {
+            try
+            {
+                long ordinal = partitionCeiling(token, false);
+                return ordinal < partitionIndex.size ? partitionIndex.keyAt(ordinal) : null;
+            }
+            catch (CorruptSSTableException e)
+            {
+                markSuspect();
+                throw e;
+            }
+        }
+
         long sampledPosition = getIndexScanPosition(token);
         if (sampledPosition == -1)
             sampledPosition = 0;
@@ -1599,10 +1710,23 @@ public class SSTableReader extends SSTable implements Closeable
         return sstableMetadata.sstableLevel;
     }
 
+    /**
+     * @return the time the data of this sstable was repaired at, or ActiveRepairService.UNREPAIRED_SSTABLE
+     */
+    public long getRepairedAt()
+    {
+        return sstableMetadata.repairedAt;
+    }
+
+    public boolean isRepaired()
+    {
+        return sstableMetadata.repairedAt != ActiveRepairService.UNREPAIRED_SSTABLE;
+    }
+
     /**
      * Reloads the sstable metadata from disk.
      *
-     * Called after level is changed on sstable, for example if the sstable is dropped to L0
+     * Called after level or repairedAt is changed on sstable, for example if the sstable is dropped to L0
      *
      * Might be possible to remove in future versions
      *
@@ -1703,6 +1827,8 @@ public class SSTableReader extends SSTable implements Closeable
     {
         dropPageCache(dfile.path);
         dropPageCache(ifile.path);
+        if (partitionIndex != null)
+            dropPageCache(partitionIndex.getPath());
     }
 
     private void dropPageCache(String filePath)
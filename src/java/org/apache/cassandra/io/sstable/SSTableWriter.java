@@ -77,6 +77,7 @@ public class SSTableWriter extends SSTable
     {
         Set<Component> components = new HashSet<Component>(Arrays.asList(Component.DATA,
                                                                          Component.PRIMARY_INDEX,
+                                                                         Component.PARTITION_INDEX,
                                                                          Component.STATS,
                                                                          Component.SUMMARY,
                                                                          Component.TOC));
@@ -112,7 +113,7 @@ public class SSTableWriter extends SSTable
 
         if (compression)
         {
-            dbuilder = SegmentedFile.getCompressedBuilder();
+            dbuilder = SegmentedFile.getCompressedBuilder(DatabaseDescriptor.getDiskAccessMode());
             dataFile = CompressedSequentialWriter.open(getFilename(),
                                                        descriptor.filenameFor(Component.COMPRESSION_INFO),
                                                        !metadata.populateIoCacheOnFlush(),
@@ -152,7 +153,7 @@ public class SSTableWriter extends SSTable
         return (lastWrittenKey == null) ? 0 : dataFile.getFilePointer();
     }
 
-    private void afterAppend(DecoratedKey decoratedKey, long dataPosition, RowIndexEntry index)
+    private RowIndexEntry afterAppend(DecoratedKey decoratedKey, long dataPosition, RowIndexEntry index)
     {
         sstableMetadataCollector.addKey(decoratedKey.key);
         lastWrittenKey = decoratedKey;
@@ -162,8 +163,9 @@ public class SSTableWriter extends SSTable
 
         if (logger.isTraceEnabled())
             logger.trace("wrote " + decoratedKey + " at " + dataPosition);
-        iwriter.append(decoratedKey, index);
+        RowIndexEntry entry = iwriter.append(decoratedKey, index);
         dbuilder.addPotentialBoundary(dataPosition);
+        return entry;
     }
 
     /**
@@ -186,8 +188,7 @@ public class SSTableWriter extends SSTable
             throw new FSWriteError(e, dataFile.getPath());
         }
         sstableMetadataCollector.update(dataFile.getFilePointer() - currentPosition, row.columnStats());
-        afterAppend(row.key, currentPosition, entry);
-        return entry;
+        return afterAppend(row.key, currentPosition, entry);
     }
 
     public void append(DecoratedKey decoratedKey, ColumnFamily cf)
@@ -330,12 +331,14 @@ public class SSTableWriter extends SSTable
 
         // finalize in-memory state for the reader
         SegmentedFile ifile = iwriter.builder.complete(newdesc.filenameFor(Component.PRIMARY_INDEX));
+        SegmentedFile pfile = iwriter.partitionBuilder.complete(newdesc.filenameFor(Component.PARTITION_INDEX));
         SegmentedFile dfile = dbuilder.complete(newdesc.filenameFor(Component.DATA));
         SSTableReader sstable = SSTableReader.internalOpen(newdesc,
                                                            components,
                                                            metadata,
                                                            partitioner,
                                                            ifile,
+                                                           new PartitionIndex(pfile, ifile, partitioner),
                                                            dfile,
                                                            iwriter.summary.build(partitioner),
                                                            iwriter.bf,
@@ -424,27 +427,38 @@ public class SSTableWriter extends SSTable
     class IndexWriter implements Closeable
     {
         private final SequentialWriter indexFile;
+        private final SequentialWriter partitionFile;
         public final SegmentedFile.Builder builder;
+        public final SegmentedFile.Builder partitionBuilder;
         public final IndexSummaryBuilder summary;
         public final IFilter bf;
         private FileMark mark;
+        private FileMark partitionMark;
 
         IndexWriter(long keyCount)
         {
             indexFile = SequentialWriter.open(new File(descriptor.filenameFor(Component.PRIMARY_INDEX)),
                                               !metadata.populateIoCacheOnFlush());
+            partitionFile = SequentialWriter.open(new File(descriptor.filenameFor(Component.PARTITION_INDEX)),
+                                                  !metadata.populateIoCacheOnFlush());
             builder = SegmentedFile.getBuilder(DatabaseDescriptor.getIndexAccessMode());
+            partitionBuilder = SegmentedFile.getBuilder(DatabaseDescriptor.getIndexAccessMode());
             summary = new IndexSummaryBuilder(keyCount, metadata.getIndexInterval(), Downsampling.BASE_SAMPLING_LEVEL);
-            bf = FilterFactory.getFilter(keyCount, metadata.getBloomFilterFpChance(), true);
+            bf = FilterFactory.getFilter(keyCount, metadata.getBloomFilterFpChance(), true, metadata.getBloomFilterType());
         }
 
-        public void append(DecoratedKey key, RowIndexEntry indexEntry)
+        /**
+         * @return the index entry as the readers of the sstable will deserialize it
+         */
+        public RowIndexEntry append(DecoratedKey key, RowIndexEntry indexEntry)
         {
-            bf.add(key.key);
+            bf.add(key);
             long indexPosition = indexFile.getFilePointer();
+            long entryPosition;
             try
             {
                 ByteBufferUtil.writeWithShortLength(key.key, indexFile.stream);
+                entryPosition = indexFile.getFilePointer();
                 metadata.comparator.rowIndexEntrySerializer().serialize(indexEntry, indexFile.stream);
             }
             catch (IOException e)
@@ -452,11 +466,23 @@ public class SSTableWriter extends SSTable
                 throw new FSWriteError(e, indexFile.getPath());
             }
 
+            long partitionPosition = partitionFile.getFilePointer();
+            try
+            {
+                partitionFile.stream.writeLong(indexPosition);
+            }
+            catch (IOException e)
+            {
+                throw new FSWriteError(e, partitionFile.getPath());
+            }
+
             if (logger.isTraceEnabled())
                 logger.trace("wrote index entry: " + indexEntry + " at " + indexPosition);
 
             summary.maybeAddEntry(key, indexPosition);
             builder.addPotentialBoundary(indexPosition);
+            partitionBuilder.addPotentialBoundary(partitionPosition);
+            return metadata.comparator.rowIndexEntrySerializer().onDisk(indexEntry, entryPosition);
         }
 
         /**
@@ -487,11 +513,16 @@ public class SSTableWriter extends SSTable
             long position = indexFile.getFilePointer();
             indexFile.close(); // calls force
             FileUtils.truncate(indexFile.getPath(), position);
+
+            position = partitionFile.getFilePointer();
+            partitionFile.close();
+            FileUtils.truncate(partitionFile.getPath(), position);
         }
 
         public void mark()
         {
             mark = indexFile.mark();
+            partitionMark = partitionFile.mark();
         }
 
         public void resetAndTruncate()
@@ -500,6 +531,7 @@ public class SSTableWriter extends SSTable
             // we can't reset dbuilder either, but that is the last thing called in afterappend so
             // we assume that if that worked then we won't be trying to reset.
             indexFile.resetAndTruncate(mark);
+            partitionFile.resetAndTruncate(partitionMark);
         }
 
         @Override
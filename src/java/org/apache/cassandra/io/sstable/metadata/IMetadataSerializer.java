@@ -65,4 +65,13 @@ public interface IMetadataSerializer
      * @throws IOException
      */
     void mutateLevel(Descriptor descriptor, int newLevel) throws IOException;
+
+    /**
+     * Mutate the time the SSTable was repaired at
+     *
+     * @param descriptor SSTable descriptor
+     * @param newRepairedAt new repairedAt time, or ActiveRepairService.UNREPAIRED_SSTABLE
+     * @throws IOException
+     */
+    void mutateRepairedAt(Descriptor descriptor, long newRepairedAt) throws IOException;
 }
@@ -28,6 +28,7 @@ import com.google.common.collect.Maps;
 import org.apache.cassandra.db.commitlog.ReplayPosition;
 import org.apache.cassandra.db.composites.CellNameType;
 import org.apache.cassandra.io.sstable.*;
+import org.apache.cassandra.service.ActiveRepairService;
 import org.apache.cassandra.utils.EstimatedHistogram;
 import org.apache.cassandra.utils.MurmurHash;
 import org.apache.cassandra.utils.StreamingHistogram;
@@ -64,6 +65,7 @@ public class MetadataCollector
                                  NO_COMPRESSION_RATIO,
                                  defaultTombstoneDropTimeHistogram(),
                                  0,
+                                 ActiveRepairService.UNREPAIRED_SSTABLE,
                                  Collections.<ByteBuffer>emptyList(),
                                  Collections.<ByteBuffer>emptyList());
     }
@@ -78,6 +80,7 @@ public class MetadataCollector
     protected Set<Integer> ancestors = new HashSet<>();
     protected StreamingHistogram estimatedTombstoneDropTime = defaultTombstoneDropTimeHistogram();
     protected int sstableLevel;
+    protected long repairedAt = ActiveRepairService.UNREPAIRED_SSTABLE;
     protected List<ByteBuffer> minColumnNames = Collections.emptyList();
     protected List<ByteBuffer> maxColumnNames = Collections.emptyList();
     /**
@@ -100,6 +103,7 @@ public class MetadataCollector
 
         replayPosition(ReplayPosition.getReplayPosition(sstables));
         sstableLevel(level);
+        repairedAt(getRepairedAt(sstables));
         // Get the max timestamp of the precompacted sstables
         // and adds generation of live ancestors
         for (SSTableReader sstable : sstables)
@@ -113,6 +117,22 @@ public class MetadataCollector
         }
     }
 
+    /**
+     * @return the time the data of the sstables was all repaired at, which is the earliest time any of them was
+     * repaired at, or UNREPAIRED_SSTABLE if any of them is unrepaired
+     */
+    private static long getRepairedAt(Collection<SSTableReader> sstables)
+    {
+        long repairedAt = Long.MAX_VALUE;
+        for (SSTableReader sstable : sstables)
+        {
+            if (!sstable.isRepaired())
+                return ActiveRepairService.UNREPAIRED_SSTABLE;
+            repairedAt = Math.min(repairedAt, sstable.getRepairedAt());
+        }
+        return sstables.isEmpty() ? ActiveRepairService.UNREPAIRED_SSTABLE : repairedAt;
+    }
+
     public void addKey(ByteBuffer key)
     {
         long hashed = MurmurHash.hash2_64(key, key.position(), key.remaining(), 0);
@@ -200,6 +220,12 @@ public class MetadataCollector
         return this;
     }
 
+    public MetadataCollector repairedAt(long repairedAt)
+    {
+        this.repairedAt = repairedAt;
+        return this;
+    }
+
     public MetadataCollector updateMinColumnNames(List<ByteBuffer> minColumnNames)
     {
         if (minColumnNames.size() > 0)
@@ -227,6 +253,7 @@ public class MetadataCollector
                                                              compressionRatio,
                                                              estimatedTombstoneDropTime,
                                                              sstableLevel,
+                                                             repairedAt,
                                                              minColumnNames,
                                                              maxColumnNames));
         components.put(MetadataType.COMPACTION, new CompactionMetadata(ancestors, cardinality));
@@ -0,0 +1,134 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.io.util;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.TreeMap;
+
+import com.google.common.annotations.VisibleForTesting;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.apache.cassandra.cache.ChunkCache;
+import org.apache.cassandra.io.FSReadError;
+import org.apache.cassandra.io.compress.CompressedRandomAccessReader;
+import org.apache.cassandra.io.compress.CompressionMetadata;
+
+/**
+ * A compressed file mapped in segments of at most MmappedSegmentedFile.MAX_SEGMENT_SIZE.  Segments are aligned on
+ * chunk boundaries, so that each chunk (and its checksum) can be uncompressed straight from a single mapping.
+ */
+public class CompressedMmappedSegmentedFile extends PoolingSegmentedFile implements ICompressedFile
+{
+    private static final Logger logger = LoggerFactory.getLogger(CompressedMmappedSegmentedFile.class);
+
+    // size of the checksum following each chunk
+    private static final int CHECKSUM_LENGTH = 4;
+
+    public final CompressionMetadata metadata;
+    private final TreeMap<Long, MappedByteBuffer> chunkSegments;
+
+    public CompressedMmappedSegmentedFile(String path, CompressionMetadata metadata, TreeMap<Long, MappedByteBuffer> chunkSegments)
+    {
+        super(path, metadata.dataLength, metadata.compressedFileLength);
+        this.metadata = metadata;
+        this.chunkSegments = chunkSegments;
+    }
+
+    public static class Builder extends SegmentedFile.Builder
+    {
+        public void addPotentialBoundary(long boundary)
+        {
+            // segments are derived from the chunk boundaries
+        }
+
+        public SegmentedFile complete(String path)
+        {
+            CompressionMetadata metadata = CompressionMetadata.create(path);
+            return new CompressedMmappedSegmentedFile(path, metadata, createSegments(path, metadata));
+        }
+    }
+
+    /**
+     * Maps the file in segments made of whole chunks, each followed by its checksum.
+     */
+    @VisibleForTesting
+    public static TreeMap<Long, MappedByteBuffer> createSegments(String path, CompressionMetadata metadata)
+    {
+        TreeMap<Long, MappedByteBuffer> segments = new TreeMap<>();
+        try (RandomAccessFile raf = new RandomAccessFile(path, "r"))
+        {
+            FileChannel channel = raf.getChannel();
+            long segmentStart = 0;
+            long segmentEnd = 0;
+            for (long position = 0; position < metadata.dataLength; position += metadata.chunkLength())
+            {
+                CompressionMetadata.Chunk chunk = metadata.chunkFor(position);
+                long chunkEnd = chunk.offset + chunk.length + CHECKSUM_LENGTH;
+                if (chunkEnd - segmentStart > MmappedSegmentedFile.MAX_SEGMENT_SIZE && segmentEnd > segmentStart)
+                {
+                    segments.put(segmentStart, channel.map(FileChannel.MapMode.READ_ONLY, segmentStart, segmentEnd - segmentStart));
+                    segmentStart = chunk.offset;
+                }
+                segmentEnd = chunkEnd;
+            }
+            if (segmentEnd > segmentStart)
+                segments.put(segmentStart, channel.map(FileChannel.MapMode.READ_ONLY, segmentStart, segmentEnd - segmentStart));
+        }
+        catch (IOException e)
+        {
+            throw new FSReadError(e, path);
+        }
+        return segments;
+    }
+
+    protected RandomAccessReader createReader(String path)
+    {
+        return CompressedRandomAccessReader.open(path, metadata, chunkSegments, this);
+    }
+
+    public CompressionMetadata getMetadata()
+    {
+        return metadata;
+    }
+
+    @Override
+    public void cleanup()
+    {
+        super.cleanup();
+        ChunkCache.instance.invalidate(path);
+        metadata.close();
+
+        if (!FileUtils.isCleanerAvailable())
+            return;
+
+        // see MmappedSegmentedFile.cleanup: if this fails, the mappings will be released by the GC
+        try
+        {
+            for (MappedByteBuffer segment : chunkSegments.values())
+                FileUtils.clean(segment);
+        }
+        catch (Exception e)
+        {
+            logger.error("Error while unmapping segments", e);
+        }
+    }
+}
@@ -17,6 +17,7 @@
 */
 package org.apache.cassandra.io.util;
 
+import org.apache.cassandra.cache.ChunkCache;
 import org.apache.cassandra.io.compress.CompressedRandomAccessReader;
 import org.apache.cassandra.io.compress.CompressionMetadata;
 
@@ -58,6 +59,7 @@ public class CompressedPoolingSegmentedFile extends PoolingSegmentedFile impleme
     public void cleanup()
     {
         super.cleanup();
+        ChunkCache.instance.invalidate(path);
         metadata.close();
     }
 }
@@ -0,0 +1,82 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.io.util;
+
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Recycles the direct buffers used by readers.  Allocating direct memory is expensive, and it is only given back
+ * once the GC gets around to collecting the buffer, so short-lived readers (compaction scanners, streaming,
+ * index scans) return their buffers here instead.  Buffers beyond the pool capacity are simply left to the GC.
+ */
+public class DirectBufferPool
+{
+    private static final long MAX_POOLED_BYTES = Long.getLong("cassandra.direct_buffer_pool_size_in_mb", 64) * 1024 * 1024;
+
+    private static final ConcurrentMap<Integer, Queue<ByteBuffer>> pools = new ConcurrentHashMap<>();
+    private static final AtomicLong pooledBytes = new AtomicLong();
+
+    /**
+     * @return a cleared direct buffer of exactly the requested capacity
+     */
+    public static ByteBuffer get(int capacity)
+    {
+        Queue<ByteBuffer> pool = pools.get(capacity);
+        ByteBuffer buffer = pool == null ? null : pool.poll();
+        if (buffer == null)
+            return ByteBuffer.allocateDirect(capacity);
+
+        pooledBytes.addAndGet(-capacity);
+        buffer.clear();
+        return buffer;
+    }
+
+    /**
+     * Gives back a buffer obtained from get(); it must not be used by the caller afterwards.
+     */
+    public static void put(ByteBuffer buffer)
+    {
+        assert buffer.isDirect();
+        int capacity = buffer.capacity();
+        if (pooledBytes.addAndGet(capacity) > MAX_POOLED_BYTES)
+        {
+            pooledBytes.addAndGet(-capacity);
+            return;
+        }
+
+        Queue<ByteBuffer> pool = pools.get(capacity);
+        if (pool == null)
+        {
+            Queue<ByteBuffer> newPool = new ConcurrentLinkedQueue<>();
+            pool = pools.putIfAbsent(capacity, newPool);
+            if (pool == null)
+                pool = newPool;
+        }
+        pool.offer(buffer);
+    }
+
+    public static long pooledBytes()
+    {
+        return pooledBytes.get();
+    }
+}
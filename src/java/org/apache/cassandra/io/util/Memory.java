@@ -17,6 +17,9 @@
  */
 package org.apache.cassandra.io.util;
 
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+
 import sun.misc.Unsafe;
 
 import org.apache.cassandra.config.DatabaseDescriptor;
@@ -44,6 +47,24 @@ public class Memory
     //    public native int arrayBaseOffset(Class arrayClass);
     private static final long BYTE_ARRAY_BASE_OFFSET = unsafe.arrayBaseOffset(byte[].class);
 
+    // offsets of the native address and of the capacity of direct buffers
+    private static final long DIRECT_BUFFER_ADDRESS_OFFSET;
+    private static final long DIRECT_BUFFER_CAPACITY_OFFSET;
+    // duplicated to create the buffers returned by asByteBuffer
+    private static final ByteBuffer DIRECT_BUFFER_TEMPLATE = ByteBuffer.allocateDirect(0);
+    static
+    {
+        try
+        {
+            DIRECT_BUFFER_ADDRESS_OFFSET = unsafe.objectFieldOffset(Buffer.class.getDeclaredField("address"));
+            DIRECT_BUFFER_CAPACITY_OFFSET = unsafe.objectFieldOffset(Buffer.class.getDeclaredField("capacity"));
+        }
+        catch (NoSuchFieldException e)
+        {
+            throw new AssertionError(e);
+        }
+    }
+
     protected long peer;
     // size of the memory region
     private final long size;
@@ -114,6 +135,26 @@ public class Memory
         unsafe.copyMemory(buffer, BYTE_ARRAY_BASE_OFFSET + bufferOffset, null, peer + memoryOffset, count);
     }
 
+    /**
+     * Transfers the remaining bytes of buffer to Memory, leaving the buffer position untouched
+     *
+     * @param memoryOffset start offset in the memory
+     * @param buffer the data buffer, either direct or backed by an array
+     */
+    public void setBytes(long memoryOffset, ByteBuffer buffer)
+    {
+        int count = buffer.remaining();
+        if (count == 0)
+            return;
+
+        checkPosition(memoryOffset);
+        checkPosition(memoryOffset + count - 1);
+        if (buffer.hasArray())
+            unsafe.copyMemory(buffer.array(), BYTE_ARRAY_BASE_OFFSET + buffer.arrayOffset() + buffer.position(), null, peer + memoryOffset, count);
+        else
+            unsafe.copyMemory(null, address(buffer) + buffer.position(), null, peer + memoryOffset, count);
+    }
+
     public byte getByte(long offset)
     {
         checkPosition(offset);
@@ -156,6 +197,53 @@ public class Memory
         unsafe.copyMemory(null, peer + memoryOffset, buffer, BYTE_ARRAY_BASE_OFFSET + bufferOffset, count);
     }
 
+    /**
+     * Transfers buffer.remaining() bytes from Memory starting at memoryOffset to buffer, leaving the buffer
+     * position untouched
+     *
+     * @param memoryOffset start offset in the memory
+     * @param buffer the data buffer, either direct or backed by an array
+     */
+    public void getBytes(long memoryOffset, ByteBuffer buffer)
+    {
+        int count = buffer.remaining();
+        if (count == 0)
+            return;
+        if (buffer.isReadOnly())
+            throw new IllegalArgumentException("Read only buffer");
+
+        checkPosition(memoryOffset);
+        checkPosition(memoryOffset + count - 1);
+        if (buffer.hasArray())
+            unsafe.copyMemory(null, peer + memoryOffset, buffer.array(), BYTE_ARRAY_BASE_OFFSET + buffer.arrayOffset() + buffer.position(), count);
+        else
+            unsafe.copyMemory(null, peer + memoryOffset, null, address(buffer) + buffer.position(), count);
+    }
+
+    /**
+     * @return a direct buffer over length bytes of this Memory starting at offset, sharing its content.  The
+     * buffer must not be used once the Memory has been freed.
+     */
+    public ByteBuffer asByteBuffer(long offset, int length)
+    {
+        checkPosition(offset);
+        if (length > 0)
+            checkPosition(offset + length - 1);
+
+        ByteBuffer buffer = DIRECT_BUFFER_TEMPLATE.duplicate();
+        unsafe.putLong(buffer, DIRECT_BUFFER_ADDRESS_OFFSET, peer + offset);
+        unsafe.putInt(buffer, DIRECT_BUFFER_CAPACITY_OFFSET, length);
+        buffer.clear();
+        return buffer;
+    }
+
+    private static long address(ByteBuffer buffer)
+    {
+        if (!buffer.isDirect())
+            throw new IllegalArgumentException("Buffer is neither direct nor backed by an array");
+        return unsafe.getLong(buffer, DIRECT_BUFFER_ADDRESS_OFFSET);
+    }
+
     private void checkPosition(long offset)
     {
         assert peer != 0 : "Memory was freed";
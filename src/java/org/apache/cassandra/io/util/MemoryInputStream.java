@@ -22,11 +22,17 @@ import java.io.IOException;
 public class MemoryInputStream extends AbstractDataInput
 {
     private final Memory mem;
-    private int position = 0;
+    private int position;
 
     public MemoryInputStream(Memory mem)
+    {
+        this(mem, 0);
+    }
+
+    public MemoryInputStream(Memory mem, int position)
     {
         this.mem = mem;
+        this.position = position;
     }
 
     public int read() throws IOException
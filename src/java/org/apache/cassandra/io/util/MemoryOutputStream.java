@@ -27,11 +27,17 @@ public class MemoryOutputStream extends OutputStream
 {
 
     private final Memory mem;
-    private int position = 0;
+    private int position;
 
     public MemoryOutputStream(Memory mem)
+    {
+        this(mem, 0);
+    }
+
+    public MemoryOutputStream(Memory mem, int position)
     {
         this.mem = mem;
+        this.position = position;
     }
 
     public void write(int b)
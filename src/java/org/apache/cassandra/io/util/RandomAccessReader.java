@@ -35,8 +35,8 @@ public class RandomAccessReader extends RandomAccessFile implements FileDataInpu
     // absolute filesystem path to the file
     private final String filePath;
 
-    // buffer which will cache file blocks
-    protected byte[] buffer;
+    // buffer which will cache file blocks; direct, so that the channel reads straight into it
+    protected ByteBuffer buffer;
 
     // `current` as current position in file
     // `bufferOffset` is the offset of the beginning of the buffer
@@ -54,6 +54,11 @@ public class RandomAccessReader extends RandomAccessFile implements FileDataInpu
     protected final PoolingSegmentedFile owner;
 
     protected RandomAccessReader(File file, int bufferSize, PoolingSegmentedFile owner) throws FileNotFoundException
+    {
+        this(file, bufferSize, true, owner);
+    }
+
+    protected RandomAccessReader(File file, int bufferSize, boolean useDirectBuffer, PoolingSegmentedFile owner) throws FileNotFoundException
     {
         super(file, "r");
 
@@ -66,7 +71,7 @@ public class RandomAccessReader extends RandomAccessFile implements FileDataInpu
         if (bufferSize <= 0)
             throw new IllegalArgumentException("bufferSize must be positive");
 
-        buffer = new byte[bufferSize];
+        buffer = allocateBuffer(bufferSize, useDirectBuffer);
 
         // we can cache file length in read-only mode
         try
@@ -109,6 +114,17 @@ public class RandomAccessReader extends RandomAccessFile implements FileDataInpu
         return open(new File(writer.getPath()), DEFAULT_BUFFER_SIZE, null);
     }
 
+    protected static ByteBuffer allocateBuffer(int size, boolean direct)
+    {
+        return direct ? DirectBufferPool.get(size) : ByteBuffer.allocate(size);
+    }
+
+    protected static void freeBuffer(ByteBuffer buffer)
+    {
+        if (buffer != null && buffer.isDirect())
+            DirectBufferPool.put(buffer);
+    }
+
     /**
      * Read data from file starting from current currentOffset to populate buffer.
      */
@@ -121,19 +137,8 @@ public class RandomAccessReader extends RandomAccessFile implements FileDataInpu
             if (bufferOffset >= channel.size())
                 return;
 
-            channel.position(bufferOffset); // setting channel position
-
-            int read = 0;
-
-            while (read < buffer.length)
-            {
-                int n = super.read(buffer, read, buffer.length - read);
-                if (n < 0)
-                    break;
-                read += n;
-            }
-
-            validBufferBytes = read;
+            buffer.clear();
+            validBufferBytes = readFromChannel(buffer, bufferOffset);
         }
         catch (IOException e)
         {
@@ -141,6 +146,25 @@ public class RandomAccessReader extends RandomAccessFile implements FileDataInpu
         }
     }
 
+    /**
+     * Fills the remaining space of dst with the file content starting at the given position, stopping early at
+     * the end of the file.  Uses positional reads, which leave the channel position alone.
+     *
+     * @return the number of bytes read
+     */
+    protected int readFromChannel(ByteBuffer dst, long position) throws IOException
+    {
+        int read = 0;
+        while (dst.hasRemaining())
+        {
+            int n = channel.read(dst, position + read);
+            if (n < 0)
+                break;
+            read += n;
+        }
+        return read;
+    }
+
     @Override
     public long getFilePointer()
     {
@@ -154,7 +178,7 @@ public class RandomAccessReader extends RandomAccessFile implements FileDataInpu
 
     public int getTotalBufferSize()
     {
-        return buffer.length;
+        return buffer.capacity();
     }
 
     public void reset()
@@ -233,6 +257,7 @@ public class RandomAccessReader extends RandomAccessFile implements FileDataInpu
 
     public void deallocate()
     {
+        freeBuffer(buffer);
         buffer = null; // makes sure we don't use this after it's ostensibly closed
 
         try
@@ -291,12 +316,12 @@ public class RandomAccessReader extends RandomAccessFile implements FileDataInpu
         if (isEOF())
             return -1; // required by RandomAccessFile
 
-        if (current >= bufferOffset + buffer.length || validBufferBytes == -1)
+        if (current >= bufferOffset + buffer.capacity() || validBufferBytes == -1)
             reBuffer();
 
         assert current >= bufferOffset && current < bufferOffset + validBufferBytes;
 
-        return ((int) buffer[(int) (current++ - bufferOffset)]) & 0xff;
+        return ((int) buffer.get((int) (current++ - bufferOffset))) & 0xff;
     }
 
     @Override
@@ -319,7 +344,7 @@ public class RandomAccessReader extends RandomAccessFile implements FileDataInpu
         if (isEOF())
             return -1;
 
-        if (current >= bufferOffset + buffer.length || validBufferBytes == -1)
+        if (current >= bufferOffset + buffer.capacity() || validBufferBytes == -1)
             reBuffer();
 
         assert current >= bufferOffset && current < bufferOffset + validBufferBytes
@@ -331,7 +356,8 @@ public class RandomAccessReader extends RandomAccessFile implements FileDataInpu
 
         int toCopy = Math.min(length, validBufferBytes - bufferCursor());
 
-        System.arraycopy(buffer, bufferCursor(), buff, offset, toCopy);
+        buffer.limit(validBufferBytes).position(bufferCursor());
+        buffer.get(buff, offset, toCopy);
         current += toCopy;
 
         return toCopy;
@@ -47,10 +47,11 @@ import org.apache.cassandra.utils.Pair;
 //PoolingSegmentedFile (抽象类)
 //    BufferedPoolingSegmentedFile
 //    CompressedPoolingSegmentedFile
+//    CompressedMmappedSegmentedFile
 //其中BufferedSegmentedFile和CompressedSegmentedFile在SSTableReader.openForBatch中使用
 //其余的都在此类中使用，
 //在cassandra.yaml中配置disk_access_mode为mmap时使用MmappedSegmentedFile，其他的使用BufferedPoolingSegmentedFile，
-//如果使用了压缩，那么使用CompressedPoolingSegmentedFile(通过调用getCompressedBuilder()，而不管disk_access_mode参数)
+//如果使用了压缩，那么通过调用getCompressedBuilder()，disk_access_mode为mmap时使用CompressedMmappedSegmentedFile，其他的使用CompressedPoolingSegmentedFile
 
 //子类要实现的抽象方法有两个: getSegment、cleanup
 public abstract class SegmentedFile
@@ -87,9 +88,11 @@ public abstract class SegmentedFile
                : new BufferedPoolingSegmentedFile.Builder();
     }
 
-    public static Builder getCompressedBuilder()
+    public static Builder getCompressedBuilder(Config.DiskAccessMode mode)
     {
-        return new CompressedPoolingSegmentedFile.Builder();
+        return mode == Config.DiskAccessMode.mmap
+               ? new CompressedMmappedSegmentedFile.Builder()
+               : new CompressedPoolingSegmentedFile.Builder();
     }
 
     //注意并不是返回Segment类的实例，而是FileDataInput
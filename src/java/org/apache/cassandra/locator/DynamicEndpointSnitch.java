@@ -24,23 +24,28 @@ import java.net.UnknownHostException;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import javax.management.MBeanServer;
 import javax.management.ObjectName;
 
 import org.apache.cassandra.config.DatabaseDescriptor;
 import org.apache.cassandra.net.MessagingService;
 import org.apache.cassandra.service.StorageService;
+import org.apache.cassandra.utils.DecayingHistogram;
 import org.apache.cassandra.utils.FBUtilities;
 
-import com.yammer.metrics.stats.ExponentiallyDecayingSample;
-
 /**
  * A dynamic snitch that sorts endpoints by latency with an adapted phi failure detector
+ *
+ * The latencies of each endpoint go to a decaying histogram, whose percentile is only recomputed for the
+ * endpoints that replied since the last update.  That latency is weighted by the number of requests in flight
+ * to the endpoint when sorting, so that an endpoint which stops replying (during a GC pause, say) falls behind
+ * the others as soon as requests to it pile up, without waiting for its latencies to catch up.
  */
 public class DynamicEndpointSnitch extends AbstractEndpointSnitch implements ILatencySubscriber, DynamicEndpointSnitchMBean
 {
-    private static final double ALPHA = 0.75; // set to 0.75 to make EDS more biased to towards the newer values
-    private static final int WINDOW_SIZE = 100;
+    private static final double ALPHA = 0.75; // the weight of a latency is divided by e^0.75 every second
+    private static final double LATENCY_PERCENTILE = 0.9;
 
     private int UPDATE_INTERVAL_IN_MS = DatabaseDescriptor.getDynamicUpdateInterval();
     private int RESET_INTERVAL_IN_MS = DatabaseDescriptor.getDynamicResetInterval();
@@ -48,9 +53,8 @@ public class DynamicEndpointSnitch extends AbstractEndpointSnitch implements ILa
     private String mbeanName;
     private boolean registered = false;
 
-    private final ConcurrentHashMap<InetAddress, Double> scores = new ConcurrentHashMap<InetAddress, Double>();
-    private final ConcurrentHashMap<InetAddress, Long> lastReceived = new ConcurrentHashMap<InetAddress, Long>();
-    private final ConcurrentHashMap<InetAddress, ExponentiallyDecayingSample> samples = new ConcurrentHashMap<InetAddress, ExponentiallyDecayingSample>();
+    private final ConcurrentHashMap<InetAddress, EndpointStats> stats = new ConcurrentHashMap<InetAddress, EndpointStats>();
+    private long lastUpdate = System.nanoTime();
 
     public final IEndpointSnitch subsnitch;
 
@@ -150,7 +154,17 @@ public class DynamicEndpointSnitch extends AbstractEndpointSnitch implements ILa
 
     private void sortByProximityWithScore(final InetAddress address, List<InetAddress> addresses)
     {
-        super.sortByProximity(address, addresses);
+        // the requests in flight change the scores at any time, so sort on a snapshot of them
+        final Map<InetAddress, Double> snapshot = new HashMap<InetAddress, Double>(addresses.size());
+        for (InetAddress addr : addresses)
+            snapshot.put(addr, scoreOrDefault(addr));
+        Collections.sort(addresses, new Comparator<InetAddress>()
+        {
+            public int compare(InetAddress a1, InetAddress a2)
+            {
+                return compareEndpoints(address, a1, a2, snapshot.get(a1), snapshot.get(a2));
+            }
+        });
     }
 
     private void sortByProximityWithBadness(final InetAddress address, List<InetAddress> addresses)
@@ -158,12 +172,12 @@ public class DynamicEndpointSnitch extends AbstractEndpointSnitch implements ILa
         if (addresses.size() < 2)
             return;
         subsnitch.sortByProximity(address, addresses);
-        Double first = scores.get(addresses.get(0));
+        Double first = score(addresses.get(0));
         if (first == null)
             return;
         for (InetAddress addr : addresses)
         {
-            Double next = scores.get(addr);
+            Double next = score(addr);
             if (next == null)
                 return;
             if ((first - next) / first > BADNESS_THRESHOLD)
@@ -176,21 +190,22 @@ public class DynamicEndpointSnitch extends AbstractEndpointSnitch implements ILa
 
     public int compareEndpoints(InetAddress target, InetAddress a1, InetAddress a2)
     {
-        Double scored1 = scores.get(a1);
-        Double scored2 = scores.get(a2);
-        
-        if (scored1 == null)
-        {
-            scored1 = 0.0;
-            receiveTiming(a1, 0);
-        }
+        return compareEndpoints(target, a1, a2, scoreOrDefault(a1), scoreOrDefault(a2));
+    }
 
-        if (scored2 == null)
+    private Double scoreOrDefault(InetAddress host)
+    {
+        Double score = score(host);
+        if (score == null)
         {
-            scored2 = 0.0;
-            receiveTiming(a2, 0);
+            score = 0.0;
+            addTiming(host, 0);
         }
+        return score;
+    }
 
+    private int compareEndpoints(InetAddress target, InetAddress a1, InetAddress a2, Double scored1, Double scored2)
+    {
         if (scored1.equals(scored2))
             return subsnitch.compareEndpoints(target, a1, a2);
         if (scored1 < scored2)
@@ -199,22 +214,55 @@ public class DynamicEndpointSnitch extends AbstractEndpointSnitch implements ILa
             return 1;
     }
 
+    public void requestSent(InetAddress host) // this is cheap
+    {
+        stats(host).pending.incrementAndGet();
+    }
+
     public void receiveTiming(InetAddress host, long latency) // this is cheap
     {
-        lastReceived.put(host, System.nanoTime());
+        EndpointStats endpoint = addTiming(host, latency);
+        // the request is over; we may not have counted it if it started before we registered
+        while (true)
+        {
+            int pending = endpoint.pending.get();
+            if (pending == 0 || endpoint.pending.compareAndSet(pending, pending - 1))
+                break;
+        }
+    }
+
+    private EndpointStats addTiming(InetAddress host, long latency)
+    {
+        EndpointStats endpoint = stats(host);
+        endpoint.lastReceived = System.nanoTime();
+        endpoint.latencies.add(latency);
+        endpoint.updated = true;
+        return endpoint;
+    }
 
-        ExponentiallyDecayingSample sample = samples.get(host);
-        if (sample == null)
+    private EndpointStats stats(InetAddress host)
+    {
+        EndpointStats endpoint = stats.get(host);
+        if (endpoint == null)
         {
-            ExponentiallyDecayingSample maybeNewSample = new ExponentiallyDecayingSample(WINDOW_SIZE, ALPHA);
-            sample = samples.putIfAbsent(host, maybeNewSample);
-            if (sample == null)
-                sample = maybeNewSample;
+            EndpointStats maybeNewStats = new EndpointStats();
+            endpoint = stats.putIfAbsent(host, maybeNewStats);
+            if (endpoint == null)
+                endpoint = maybeNewStats;
         }
-        sample.update(latency);
+        return endpoint;
     }
 
-    private void updateScores() // this is expensive
+    /**
+     * @return the current score of {@code host}, or null if it has none yet; lowest is best
+     */
+    private Double score(InetAddress host)
+    {
+        EndpointStats endpoint = stats.get(host);
+        return endpoint == null ? null : endpoint.score();
+    }
+
+    private void updateScores() // this is cheap too: no sorting, and a fixed number of buckets per endpoint
     {
         if (!StorageService.instance.isInitialized()) 
             return;
@@ -227,50 +275,65 @@ public class DynamicEndpointSnitch extends AbstractEndpointSnitch implements ILa
             }
 
         }
-        double maxLatency = 1;
+        long now = System.nanoTime();
+        double decay = Math.exp(-ALPHA * (now - lastUpdate) / TimeUnit.SECONDS.toNanos(1));
+        lastUpdate = now;
+
+        long maxLatency = 1;
         long maxPenalty = 1;
-        HashMap<InetAddress, Long> penalties = new HashMap<InetAddress, Long>(samples.size());
         // We're going to weight the latency and time since last reply for each host against the worst one we see, to arrive at sort of a 'badness percentage' for both of them.
         // first, find the worst for each.
-        for (Map.Entry<InetAddress, ExponentiallyDecayingSample> entry : samples.entrySet())
+        for (EndpointStats endpoint : stats.values())
         {
-            double mean = entry.getValue().getSnapshot().getMedian();
-            if (mean > maxLatency)
-                maxLatency = mean;
-            long timePenalty = lastReceived.containsKey(entry.getKey()) ? lastReceived.get(entry.getKey()) : System.nanoTime();
-            timePenalty = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - timePenalty);
+            if (endpoint.updated)
+            {
+                // decaying all the buckets by the same factor leaves the percentile as it is, so only recompute
+                // it for the hosts that replied since
+                endpoint.updated = false;
+                endpoint.latency = endpoint.latencies.percentile(LATENCY_PERCENTILE);
+            }
+            endpoint.latencies.decay(decay);
+            if (endpoint.latency > maxLatency)
+                maxLatency = endpoint.latency;
+            long timePenalty = TimeUnit.NANOSECONDS.toMillis(now - endpoint.lastReceived);
             timePenalty = timePenalty > UPDATE_INTERVAL_IN_MS ? UPDATE_INTERVAL_IN_MS : timePenalty;
             // a convenient place to remember this since we've already calculated it and need it later
-            penalties.put(entry.getKey(), timePenalty);
+            endpoint.timePenalty = timePenalty;
             if (timePenalty > maxPenalty)
                 maxPenalty = timePenalty;
         }
         // now make another pass to do the weighting based on the maximums we found before
-        for (Map.Entry<InetAddress, ExponentiallyDecayingSample> entry: samples.entrySet())
+        for (Map.Entry<InetAddress, EndpointStats> entry : stats.entrySet())
         {
-            double score = entry.getValue().getSnapshot().getMedian() / maxLatency;
-            if (penalties.containsKey(entry.getKey()))
-                score += penalties.get(entry.getKey()) / ((double) maxPenalty);
-            else
-                // there's a chance a host was added to the samples after our previous loop to get the time penalties.  Add 1.0 to it, or '100% bad' for the time penalty.
-                score += 1; // maxPenalty / maxPenalty
+            EndpointStats endpoint = entry.getValue();
+            // count sub-millisecond latencies as 1, so that the requests in flight still weigh on them
+            double latencyScore = (endpoint.latency + 1) / (double) (maxLatency + 1);
+            double score = endpoint.timePenalty / (double) maxPenalty;
             // finally, add the severity without any weighting, since hosts scale this relative to their own load and the size of the task causing the severity.
             // "Severity" is basically a measure of compaction activity (CASSANDRA-3722).
             score += StorageService.instance.getSeverity(entry.getKey());
-            // lowest score (least amount of badness) wins.
-            scores.put(entry.getKey(), score);            
+            endpoint.setScores(latencyScore, score);
         }
     }
 
-
     private void reset()
     {
-        for (ExponentiallyDecayingSample sample : samples.values())
-            sample.clear();
+        for (EndpointStats endpoint : stats.values())
+        {
+            endpoint.latencies.clear();
+            endpoint.updated = true;
+        }
     }
 
     public Map<InetAddress, Double> getScores()
     {
+        Map<InetAddress, Double> scores = new HashMap<InetAddress, Double>(stats.size());
+        for (Map.Entry<InetAddress, EndpointStats> entry : stats.entrySet())
+        {
+            Double score = entry.getValue().score();
+            if (score != null)
+                scores.put(entry.getKey(), score);
+        }
         return scores;
     }
 
@@ -295,11 +358,11 @@ public class DynamicEndpointSnitch extends AbstractEndpointSnitch implements ILa
     {
         InetAddress host = InetAddress.getByName(hostname);
         ArrayList<Double> timings = new ArrayList<Double>();
-        ExponentiallyDecayingSample sample = samples.get(host);
-        if (sample != null)
+        EndpointStats endpoint = stats.get(host);
+        if (endpoint != null)
         {
-            for (double time: sample.getSnapshot().getValues())
-                timings.add(time);
+            for (long time : endpoint.latencies.values())
+                timings.add((double) time);
         }
         return timings;
     }
@@ -335,7 +398,7 @@ public class DynamicEndpointSnitch extends AbstractEndpointSnitch implements ILa
         double maxScore = -1.0;
         for (InetAddress endpoint : endpoints)
         {
-            Double score = scores.get(endpoint);
+            Double score = score(endpoint);
             if (score == null)
                 continue;
 
@@ -344,4 +407,32 @@ public class DynamicEndpointSnitch extends AbstractEndpointSnitch implements ILa
         }
         return maxScore;
     }
+
+    private static class EndpointStats
+    {
+        final DecayingHistogram latencies = new DecayingHistogram();
+        final AtomicInteger pending = new AtomicInteger();
+        volatile long lastReceived = System.nanoTime();
+        // whether latencies got a new value since latency was computed
+        volatile boolean updated;
+        volatile long latency;
+        long timePenalty;
+
+        // both parts of the score, as of the last update; null until the first one
+        private volatile double[] scores;
+
+        void setScores(double latencyScore, double otherScore)
+        {
+            scores = new double[]{ latencyScore, otherScore };
+        }
+
+        Double score()
+        {
+            double[] current = scores;
+            if (current == null)
+                return null;
+            // every request in flight is one more the host has to get through before answering a new one
+            return current[0] * (1 + pending.get()) + current[1];
+        }
+    }
 }
@@ -21,5 +21,15 @@ import java.net.InetAddress;
 
 public interface ILatencySubscriber
 {
+    /**
+     * Called when a request we will time is sent to {@code address}.
+     */
+    public void requestSent(InetAddress address);
+
+    /**
+     * Called when a reply is received from {@code address}, or when the request times out.
+     *
+     * @param latency in milliseconds
+     */
     public void receiveTiming(InetAddress address, long latency);
 }
@@ -17,8 +17,14 @@
  */
 package org.apache.cassandra.metrics;
 
+import java.util.concurrent.TimeUnit;
+
 import com.yammer.metrics.Metrics;
+import com.yammer.metrics.core.Counter;
 import com.yammer.metrics.core.Gauge;
+import com.yammer.metrics.core.Histogram;
+import com.yammer.metrics.core.Meter;
+import com.yammer.metrics.core.Timer;
 
 import org.apache.cassandra.db.commitlog.AbstractCommitLogService;
 import org.apache.cassandra.db.commitlog.CommitLogSegmentManager;
@@ -31,13 +37,33 @@ public class CommitLogMetrics
     public static final MetricNameFactory factory = new DefaultNameFactory("CommitLog");
 
     /** Number of completed tasks */
-    public final Gauge<Long> completedTasks;
+    public Gauge<Long> completedTasks;
     /** Number of pending tasks */
-    public final Gauge<Long> pendingTasks;
+    public Gauge<Long> pendingTasks;
     /** Current size used by all the commit log segments */
-    public final Gauge<Long> totalCommitLogSize;
+    public Gauge<Long> totalCommitLogSize;
+    /** Time spent by each sync of the commit log to disk */
+    public final Timer syncLatency;
+    /** Number of writers waiting on each sync of the commit log */
+    public final Histogram writersPerSync;
+    /** Bytes of commit log segments replayed, whose rate is the replay throughput */
+    public final Meter replayedBytes;
+    /** Bytes of the commit log segments being replayed that have not been read yet */
+    public final Counter replayBytesRemaining;
+
+    public CommitLogMetrics()
+    {
+        syncLatency = Metrics.newTimer(factory.createMetricName("SyncLatency"), TimeUnit.MICROSECONDS, TimeUnit.SECONDS);
+        writersPerSync = Metrics.newHistogram(factory.createMetricName("WritersPerSync"), true);
+        replayedBytes = Metrics.newMeter(factory.createMetricName("ReplayedBytes"), "bytes", TimeUnit.SECONDS);
+        replayBytesRemaining = Metrics.newCounter(factory.createMetricName("ReplayBytesRemaining"));
+    }
 
-    public CommitLogMetrics(final AbstractCommitLogService service, final CommitLogSegmentManager allocator)
+    /**
+     * Registers the gauges over the state of the given service and segment manager, which are created after
+     * the metrics as the service starts syncing (and recording its syncs) straight away.
+     */
+    public void attach(final AbstractCommitLogService service, final CommitLogSegmentManager allocator)
     {
         completedTasks = Metrics.newGauge(factory.createMetricName("CompletedTasks"), new Gauge<Long>()
         {
@@ -48,6 +48,10 @@ public class ConnectionMetrics
     public final Gauge<Integer> responsePendingTasks;
     /** Completed tasks for Response(GOSSIP & RESPONSE) TCP Connections */
     public final Gauge<Long> responseCompletedTasks;
+    /** Average number of messages per write for Command(Mutations, Read etc) TCP Connections */
+    public final Gauge<Double> commandAverageBatchSize;
+    /** Average number of messages per write for Response(GOSSIP & RESPONSE) TCP Connections */
+    public final Gauge<Double> responseAverageBatchSize;
     /** Number of timeouts for specific IP */
     public final Meter timeouts;
 
@@ -103,6 +107,20 @@ public class ConnectionMetrics
                 return connectionPool.ackCon.getCompletedMesssages();
             }
         });
+        commandAverageBatchSize = Metrics.newGauge(factory.createMetricName("CommandAverageBatchSize"), new Gauge<Double>()
+        {
+            public Double value()
+            {
+                return connectionPool.cmdCon.getAverageBatchSize();
+            }
+        });
+        responseAverageBatchSize = Metrics.newGauge(factory.createMetricName("ResponseAverageBatchSize"), new Gauge<Double>()
+        {
+            public Double value()
+            {
+                return connectionPool.ackCon.getAverageBatchSize();
+            }
+        });
         timeouts = Metrics.newMeter(factory.createMetricName("Timeouts"), "timeouts", TimeUnit.SECONDS);
     }
 
@@ -113,6 +131,8 @@ public class ConnectionMetrics
         Metrics.defaultRegistry().removeMetric(factory.createMetricName("CommandDroppedTasks"));
         Metrics.defaultRegistry().removeMetric(factory.createMetricName("ResponsePendingTasks"));
         Metrics.defaultRegistry().removeMetric(factory.createMetricName("ResponseCompletedTasks"));
+        Metrics.defaultRegistry().removeMetric(factory.createMetricName("CommandAverageBatchSize"));
+        Metrics.defaultRegistry().removeMetric(factory.createMetricName("ResponseAverageBatchSize"));
         Metrics.defaultRegistry().removeMetric(factory.createMetricName("Timeouts"));
     }
 
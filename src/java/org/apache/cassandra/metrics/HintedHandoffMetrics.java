@@ -19,6 +19,7 @@ package org.apache.cassandra.metrics;
 
 import java.net.InetAddress;
 import java.util.Map.Entry;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.cassandra.db.HintedHandOffManager;
 import org.apache.cassandra.db.SystemKeyspace;
@@ -31,6 +32,7 @@ import com.google.common.cache.CacheLoader;
 import com.google.common.cache.LoadingCache;
 import com.yammer.metrics.Metrics;
 import com.yammer.metrics.core.Counter;
+import com.yammer.metrics.core.Meter;
 
 /**
  * Metrics for {@link HintedHandOffManager}.
@@ -59,6 +61,12 @@ public class HintedHandoffMetrics
         }
     });
 
+    /** Hints delivered to their target, whose rate is the dispatch throughput */
+    public final Meter hintsDispatched = Metrics.newMeter(factory.createMetricName("HintsDispatched"), "hints", TimeUnit.SECONDS);
+
+    /** Bytes of the mutations of the hints delivered to their target */
+    public final Meter hintBytesDispatched = Metrics.newMeter(factory.createMetricName("HintBytesDispatched"), "bytes", TimeUnit.SECONDS);
+
     public void incrCreatedHints(InetAddress address)
     {
         createdHintCounts.getUnchecked(address).inc();
@@ -19,9 +19,11 @@ package org.apache.cassandra.metrics;
 
 import java.net.InetAddress;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
 
 import com.yammer.metrics.Metrics;
 import com.yammer.metrics.core.Counter;
+import com.yammer.metrics.core.Meter;
 import org.cliffc.high_scale_lib.NonBlockingHashMap;
 
 /**
@@ -36,6 +38,12 @@ public class StreamingMetrics
     public static final Counter activeStreamsOutbound = Metrics.newCounter(DefaultNameFactory.createMetricName(TYPE_NAME, "ActiveOutboundStreams", null));
     public static final Counter totalIncomingBytes = Metrics.newCounter(DefaultNameFactory.createMetricName(TYPE_NAME, "TotalIncomingBytes", null));
     public static final Counter totalOutgoingBytes = Metrics.newCounter(DefaultNameFactory.createMetricName(TYPE_NAME, "TotalOutgoingBytes", null));
+    /** Rate at which the bytes of incoming files are read off the network */
+    public static final Meter incomingReadRate = Metrics.newMeter(DefaultNameFactory.createMetricName(TYPE_NAME, "IncomingReadRate", null), "bytes", TimeUnit.SECONDS);
+    /** Rate at which the bytes of incoming files are written to SSTables */
+    public static final Meter incomingWriteRate = Metrics.newMeter(DefaultNameFactory.createMetricName(TYPE_NAME, "IncomingWriteRate", null), "bytes", TimeUnit.SECONDS);
+    /** Number of incoming files being written to SSTables */
+    public static final Counter activeInboundWriters = Metrics.newCounter(DefaultNameFactory.createMetricName(TYPE_NAME, "ActiveInboundWriters", null));
     public final Counter incomingBytes;
     public final Counter outgoingBytes;
 
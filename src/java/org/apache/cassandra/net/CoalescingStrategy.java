@@ -0,0 +1,145 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.net;
+
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.util.concurrent.Uninterruptibles;
+
+import org.apache.cassandra.config.DatabaseDescriptor;
+import org.apache.cassandra.net.OutboundTcpConnection.QueuedMessage;
+
+/**
+ * Decides how long OutboundTcpConnection waits for more messages once its backlog is drained, before writing and
+ * flushing what it has: waiting a little lets several messages share a single write and network packet.
+ */
+public abstract class CoalescingStrategy
+{
+    public static CoalescingStrategy newCoalescingStrategy()
+    {
+        long windowNanos = TimeUnit.MICROSECONDS.toNanos(DatabaseDescriptor.getInternodeCoalescingWindow());
+        switch (DatabaseDescriptor.getInternodeCoalescing())
+        {
+            case fixed:
+                return new Fixed(windowNanos);
+            case movingaverage:
+                return new MovingAverage(windowNanos);
+            default:
+                return new Disabled();
+        }
+    }
+
+    /**
+     * Moves up to maxItems messages from the backlog to out, blocking until at least one is available, and then
+     * for as long as the strategy deems worth waiting for more.
+     */
+    public void coalesce(BlockingQueue<QueuedMessage> backlog, List<QueuedMessage> out, int maxItems) throws InterruptedException
+    {
+        if (backlog.drainTo(out, maxItems) == 0)
+        {
+            out.add(backlog.take());
+            backlog.drainTo(out, maxItems - 1);
+        }
+
+        long waitNanos = waitNanos(out, maxItems);
+        if (waitNanos > 0 && out.size() < maxItems)
+        {
+            Uninterruptibles.sleepUninterruptibly(waitNanos, TimeUnit.NANOSECONDS);
+            backlog.drainTo(out, maxItems - out.size());
+        }
+    }
+
+    /**
+     * @param drained the messages drained so far
+     * @return how long to wait for more messages, in nanoseconds
+     */
+    protected abstract long waitNanos(List<QueuedMessage> drained, int maxItems);
+
+    static class Disabled extends CoalescingStrategy
+    {
+        protected long waitNanos(List<QueuedMessage> drained, int maxItems)
+        {
+            return 0;
+        }
+    }
+
+    static class Fixed extends CoalescingStrategy
+    {
+        private final long windowNanos;
+
+        Fixed(long windowNanos)
+        {
+            this.windowNanos = windowNanos;
+        }
+
+        protected long waitNanos(List<QueuedMessage> drained, int maxItems)
+        {
+            return windowNanos;
+        }
+    }
+
+    /**
+     * Keeps track of the average time between the last messages, and only waits if more messages are expected
+     * within the window; then just long enough for the batch to be expected full.
+     */
+    static class MovingAverage extends CoalescingStrategy
+    {
+        private static final int SAMPLES = 16;
+
+        private final long windowNanos;
+        private final long[] gaps = new long[SAMPLES];
+        private long sum;
+        private int index;
+        private long lastArrival = Long.MIN_VALUE;
+
+        MovingAverage(long windowNanos)
+        {
+            this.windowNanos = windowNanos;
+            // until we know better, assume messages are too far apart to be worth waiting for
+            for (int i = 0; i < SAMPLES; i++)
+                gaps[i] = windowNanos;
+            sum = SAMPLES * windowNanos;
+        }
+
+        private void sample(long arrival)
+        {
+            if (lastArrival != Long.MIN_VALUE)
+            {
+                // messages retried after a reconnection may appear to have arrived before their predecessors
+                long gap = Math.min(Math.max(arrival - lastArrival, 0), windowNanos);
+                sum += gap - gaps[index];
+                gaps[index] = gap;
+                index = (index + 1) % SAMPLES;
+            }
+            lastArrival = arrival;
+        }
+
+        protected long waitNanos(List<QueuedMessage> drained, int maxItems)
+        {
+            for (QueuedMessage qm : drained)
+                sample(qm.arrivalNanos);
+
+            long averageGap = sum / SAMPLES;
+            if (averageGap >= windowNanos)
+                return 0;
+            return Math.min(windowNanos, averageGap * (maxItems - drained.size()));
+        }
+    }
+}
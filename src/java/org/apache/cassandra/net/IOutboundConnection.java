@@ -0,0 +1,58 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.net;
+
+/**
+ * A queue of messages to a single peer, together with the connection used to deliver them.
+ *
+ * @see OutboundTcpConnection
+ * @see NettyOutboundConnection
+ */
+public interface IOutboundConnection
+{
+    /**
+     * Queues a message for delivery. Never blocks.
+     */
+    public void enqueue(MessageOut<?> message, int id);
+
+    /**
+     * Closes the current connection, dropping any queued message.
+     *
+     * @param destroy whether the connection is being disposed of for good, in which case it won't reconnect
+     */
+    public void closeSocket(boolean destroy);
+
+    /**
+     * Closes the current connection once the messages queued so far have been written, reconnecting for the
+     * following ones.
+     */
+    public void softCloseSocket();
+
+    public int getTargetVersion();
+
+    public int getPendingMessages();
+
+    public long getCompletedMesssages();
+
+    public long getDroppedMessages();
+
+    /**
+     * @return the average number of messages handed to the socket in a single write
+     */
+    public double getAverageBatchSize();
+}
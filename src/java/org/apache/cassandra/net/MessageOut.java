@@ -22,6 +22,7 @@ import java.io.DataOutputStream;
 import java.io.IOException;
 import java.net.InetAddress;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.Map;
 
 import com.google.common.annotations.VisibleForTesting;
@@ -31,6 +32,7 @@ import org.apache.cassandra.concurrent.Stage;
 import org.apache.cassandra.config.DatabaseDescriptor;
 import org.apache.cassandra.db.TypeSizes;
 import org.apache.cassandra.io.IVersionedSerializer;
+import org.apache.cassandra.io.util.DataOutputBuffer;
 import org.apache.cassandra.tracing.Tracing;
 import org.apache.cassandra.utils.FBUtilities;
 import org.apache.cassandra.utils.UUIDGen;
@@ -45,6 +47,9 @@ public class MessageOut<T>
     public final T payload;
     public final IVersionedSerializer<T> serializer;
     public final Map<String, byte[]> parameters;
+    // the payload serialized for each messaging version, if it is to be serialized once for all the connections
+    // writing this message and its copies
+    private final SerializedPayload<T> serializedPayload;
 
     // we do support messages that just consist of a verb
     public MessageOut(MessagingService.Verb verb)
@@ -68,19 +73,47 @@ public class MessageOut<T>
 
     @VisibleForTesting
     public MessageOut(InetAddress from, MessagingService.Verb verb, T payload, IVersionedSerializer<T> serializer, Map<String, byte[]> parameters)
+    {
+        this(from, verb, payload, serializer, parameters, null);
+    }
+
+    private MessageOut(InetAddress from, MessagingService.Verb verb, T payload, IVersionedSerializer<T> serializer, Map<String, byte[]> parameters, SerializedPayload<T> serializedPayload)
     {
         this.from = from;
         this.verb = verb;
         this.payload = payload;
         this.serializer = serializer;
         this.parameters = parameters;
+        this.serializedPayload = serializedPayload;
     }
 
     public MessageOut<T> withParameter(String key, byte[] value)
     {
         ImmutableMap.Builder<String, byte[]> builder = ImmutableMap.builder();
         builder.putAll(parameters).put(key, value);
-        return new MessageOut<T>(verb, payload, serializer, builder.build());
+        return new MessageOut<T>(FBUtilities.getBroadcastAddress(), verb, payload, serializer, builder.build(), serializedPayload);
+    }
+
+    /**
+     * @return this message, with its payload serialized only once for each messaging version, however many
+     * connections write it or its copies made by {@link #withParameter(String, byte[])}, instead of by each of them
+     */
+    public MessageOut<T> serializeOnce()
+    {
+        if (payload == null || serializedPayload != null)
+            return this;
+        return new MessageOut<T>(from, verb, payload, serializer, parameters, new SerializedPayload<T>(payload, serializer));
+    }
+
+    /**
+     * @return this message without the buffers of {@link #serializeOnce()}, for holding on to it once it has been
+     * written without keeping the payload in memory twice
+     */
+    public MessageOut<T> withoutSerializedPayload()
+    {
+        if (serializedPayload == null)
+            return this;
+        return new MessageOut<T>(from, verb, payload, serializer, parameters, null);
     }
 
     public Stage getStage()
@@ -113,6 +146,14 @@ public class MessageOut<T>
             out.write(entry.getValue());
         }
 
+        if (serializedPayload != null)
+        {
+            DataOutputBuffer buffer = serializedPayload.get(version);
+            out.writeInt(buffer.getLength());
+            out.write(buffer.getData(), 0, buffer.getLength());
+            return;
+        }
+
         long longSize = payload == null ? 0 : serializer.serializedSize(payload, version);
         assert longSize <= Integer.MAX_VALUE; // larger values are supported in sstables but not messages
         out.writeInt((int) longSize);
@@ -128,15 +169,65 @@ public class MessageOut<T>
         size += TypeSizes.NATIVE.sizeof(parameters.size());
         for (Map.Entry<String, byte[]> entry : parameters.entrySet())
         {
-            TypeSizes.NATIVE.sizeof(entry.getKey());
-            TypeSizes.NATIVE.sizeof(entry.getValue().length);
+            size += TypeSizes.NATIVE.sizeof(entry.getKey());
+            size += TypeSizes.NATIVE.sizeof(entry.getValue().length);
             size += entry.getValue().length;
         }
 
-        long longSize = payload == null ? 0 : serializer.serializedSize(payload, version);
+        long longSize = payload == null ? 0 : payloadSize(version);
         assert longSize <= Integer.MAX_VALUE; // larger values are supported in sstables but not messages
         size += TypeSizes.NATIVE.sizeof((int) longSize);
         size += longSize;
         return size;
     }
+
+    private long payloadSize(int version)
+    {
+        if (serializedPayload == null)
+            return serializer.serializedSize(payload, version);
+
+        try
+        {
+            return serializedPayload.get(version).getLength();
+        }
+        catch (IOException e)
+        {
+            throw new AssertionError(e); // DataOutputBuffer does not throw IOE
+        }
+    }
+
+    /**
+     * The payload of a message serialized for each messaging version it is written with.  The buffers are shared
+     * by the copies of the message, and released with the last of them: what outlives the writes, such as write
+     * callbacks, must keep a copy from {@link MessageOut#withoutSerializedPayload()} instead.
+     */
+    private static class SerializedPayload<T>
+    {
+        private final T payload;
+        private final IVersionedSerializer<T> serializer;
+        // rarely more than one version: the nodes of a cluster usually all run the same one
+        private final Map<Integer, DataOutputBuffer> buffers = new HashMap<>(2);
+
+        private SerializedPayload(T payload, IVersionedSerializer<T> serializer)
+        {
+            this.payload = payload;
+            this.serializer = serializer;
+        }
+
+        /**
+         * Serializes the payload the first time a version is asked for: the connections asking for it meanwhile
+         * wait for it rather than serialize it too.
+         */
+        public synchronized DataOutputBuffer get(int version) throws IOException
+        {
+            DataOutputBuffer buffer = buffers.get(version);
+            if (buffer == null)
+            {
+                buffer = new DataOutputBuffer();
+                serializer.serialize(payload, buffer, version);
+                buffers.put(version, buffer);
+            }
+            return buffer;
+        }
+    }
 }
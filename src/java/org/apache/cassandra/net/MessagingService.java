@@ -376,6 +376,19 @@ public final class MessagingService implements MessagingServiceMBean
             subscriber.receiveTiming(address, latency);
     }
 
+    /**
+     * Track the requests in flight for the dynamic snitch; each one ends with the reply or the timeout that
+     * {@link #maybeAddLatency} is called for.
+     */
+    private void maybeAddRequest(IAsyncCallback cb, InetAddress to)
+    {
+        if (cb.isLatencyForSnitch())
+        {
+            for (ILatencySubscriber subscriber : subscribers)
+                subscriber.requestSent(to);
+        }
+    }
+
     /**
      * called from gossiper when it notices a node is not responding.
      */
@@ -503,7 +516,7 @@ public final class MessagingService implements MessagingServiceMBean
     }
     
 
-    public OutboundTcpConnection getConnection(InetAddress to, MessageOut msg)
+    public IOutboundConnection getConnection(InetAddress to, MessageOut msg)
     {
         return getConnectionPool(to).getConnection(msg);
     }
@@ -540,6 +553,7 @@ public final class MessagingService implements MessagingServiceMBean
         int messageId = nextId();
         CallbackInfo previous = callbacks.put(messageId, new CallbackInfo(to, cb, callbackDeserializers.get(message.verb)), timeout);
         assert previous == null : String.format("Callback already exists for id %d! (%s)", messageId, previous);
+        maybeAddRequest(cb, to);
         return messageId;
     }
 
@@ -549,6 +563,7 @@ public final class MessagingService implements MessagingServiceMBean
         int messageId = nextId();
         CallbackInfo previous = callbacks.put(messageId, new WriteCallbackInfo(to, cb, message, callbackDeserializers.get(message.verb), consistencyLevel), timeout);
         assert previous == null : String.format("Callback already exists for id %d! (%s)", messageId, previous);
+        maybeAddRequest(cb, to);
         return messageId;
     }
 
@@ -639,7 +654,7 @@ public final class MessagingService implements MessagingServiceMBean
         }
 
         // get pooled connection (really, connection queue)
-        OutboundTcpConnection connection = getConnection(to, processedMessage);
+        IOutboundConnection connection = getConnection(to, processedMessage);
 
         // write it
         connection.enqueue(processedMessage, id);
@@ -0,0 +1,584 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.net;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.Checksum;
+import javax.net.ssl.SSLEngine;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import net.jpountz.lz4.LZ4BlockOutputStream;
+import net.jpountz.lz4.LZ4Factory;
+import net.jpountz.xxhash.XXHashFactory;
+import org.apache.cassandra.concurrent.NamedThreadFactory;
+import org.apache.cassandra.config.Config;
+import org.apache.cassandra.config.DatabaseDescriptor;
+import org.apache.cassandra.config.EncryptionOptions;
+import org.apache.cassandra.net.OutboundTcpConnection.QueuedMessage;
+import org.apache.cassandra.net.OutboundTcpConnection.RetriedQueuedMessage;
+import org.apache.cassandra.security.SSLFactory;
+import org.apache.cassandra.utils.FBUtilities;
+import org.jboss.netty.bootstrap.ClientBootstrap;
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.jboss.netty.channel.*;
+import org.jboss.netty.channel.socket.nio.NioClientSocketChannelFactory;
+import org.jboss.netty.channel.socket.nio.NioWorkerPool;
+import org.jboss.netty.handler.ssl.SslHandler;
+import org.jboss.netty.util.HashedWheelTimer;
+import org.jboss.netty.util.Timeout;
+import org.jboss.netty.util.Timer;
+import org.jboss.netty.util.TimerTask;
+import org.xerial.snappy.SnappyOutputStream;
+
+/**
+ * An outbound connection driven by a small pool of Netty event loop threads shared by all peers, instead of a
+ * dedicated thread per connection like OutboundTcpConnection.
+ * <p/>
+ * Messages are queued by the sending threads and written by the event loop of the connection, which serializes
+ * everything queued so far into a single buffer and hands it to the socket in one write. Writes stop while the
+ * socket's outbound buffer is full, so a slow peer makes the queue grow instead of the memory held by Netty; once
+ * the queue reaches internode_send_queue_size, droppable messages are dropped right away.
+ * <p/>
+ * The wire protocol, including the version handshake and compression, is the same as OutboundTcpConnection's, so
+ * the receiving side is unaffected.
+ */
+public class NettyOutboundConnection implements IOutboundConnection
+{
+    private static final Logger logger = LoggerFactory.getLogger(NettyOutboundConnection.class);
+
+    // a write stops coalescing messages once its buffer has grown past that size
+    private static final int MAX_COALESCED_BYTES = 1 << 16;
+
+    private static final Timer timer = new HashedWheelTimer(new NamedThreadFactory("MessagingServiceTimer"));
+    private static final ChannelFactory channelFactory = new NioClientSocketChannelFactory(Executors.newCachedThreadPool(new NamedThreadFactory("MessagingServiceBoss")),
+                                                                                           1,
+                                                                                           new NioWorkerPool(Executors.newCachedThreadPool(new NamedThreadFactory("MessagingServiceWorker")),
+                                                                                                             2 * FBUtilities.getAvailableProcessors()),
+                                                                                           timer);
+
+    private static final QueuedMessage CLOSE_SENTINEL = new QueuedMessage(new MessageOut(MessagingService.Verb.INTERNAL_RESPONSE), -1);
+
+    private final OutboundTcpConnectionPool poolReference;
+
+    private final Queue<QueuedMessage> backlog = new ConcurrentLinkedQueue<>();
+    // ConcurrentLinkedQueue.size() is linear
+    private final AtomicInteger backlogSize = new AtomicInteger();
+    private final AtomicLong completed = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong writes = new AtomicLong();
+
+    // the connection messages are written to, once it has completed its handshake
+    private volatile Connection current;
+    // guarded by this
+    private Connection pending;
+    private volatile boolean isStopped = false;
+    private volatile int targetVersion = MessagingService.current_version;
+
+    public NettyOutboundConnection(OutboundTcpConnectionPool pool)
+    {
+        this.poolReference = pool;
+    }
+
+    public void enqueue(MessageOut<?> message, int id)
+    {
+        if (backlogSize.get() >= DatabaseDescriptor.getInternodeSendQueueSize())
+        {
+            expireMessages();
+            if (backlogSize.get() >= DatabaseDescriptor.getInternodeSendQueueSize() && MessagingService.DROPPABLE_VERBS.contains(message.verb))
+            {
+                dropped.incrementAndGet();
+                return;
+            }
+        }
+        add(new QueuedMessage(message, id));
+    }
+
+    private void add(QueuedMessage qm)
+    {
+        backlog.add(qm);
+        backlogSize.incrementAndGet();
+
+        Connection connection = current;
+        if (connection == null)
+            maybeConnect();
+        else
+            scheduleFlush(connection);
+    }
+
+    public void closeSocket(boolean destroy)
+    {
+        clearBacklog();
+        synchronized (this)
+        {
+            isStopped = destroy;
+            for (Connection connection : new Connection[]{ current, pending })
+            {
+                if (connection != null)
+                    connection.channel.close();
+            }
+            current = null;
+            pending = null;
+        }
+    }
+
+    public void softCloseSocket()
+    {
+        add(CLOSE_SENTINEL);
+    }
+
+    public int getTargetVersion()
+    {
+        return targetVersion;
+    }
+
+    public int getPendingMessages()
+    {
+        return backlogSize.get();
+    }
+
+    public long getCompletedMesssages()
+    {
+        return completed.get();
+    }
+
+    public long getDroppedMessages()
+    {
+        return dropped.get();
+    }
+
+    public double getAverageBatchSize()
+    {
+        long n = writes.get();
+        return n == 0 ? 0 : (double) completed.get() / n;
+    }
+
+    private void scheduleFlush(Connection connection)
+    {
+        if (connection.flushScheduled.compareAndSet(false, true))
+            connection.channel.getPipeline().execute(connection);
+    }
+
+    private synchronized void maybeConnect()
+    {
+        if (isStopped || current != null || pending != null)
+            return;
+
+        InetAddress endpoint = poolReference.endPoint();
+        targetVersion = MessagingService.instance().getVersion(endpoint);
+        if (logger.isDebugEnabled())
+            logger.debug("attempting to connect to {}", endpoint);
+
+        final Connection connection = new Connection(targetVersion, OutboundTcpConnection.shouldCompressConnection(endpoint));
+        final boolean encrypted = OutboundTcpConnectionPool.isEncryptedChannel(endpoint);
+        ClientBootstrap bootstrap = new ClientBootstrap(channelFactory);
+        bootstrap.setOption("keepAlive", true);
+        bootstrap.setOption("tcpNoDelay", OutboundTcpConnection.isLocalDC(endpoint) || DatabaseDescriptor.getInterDCTcpNoDelay());
+        bootstrap.setOption("connectTimeoutMillis", DatabaseDescriptor.getRpcTimeout());
+        if (DatabaseDescriptor.getInternodeSendBufferSize() != null)
+            bootstrap.setOption("sendBufferSize", DatabaseDescriptor.getInternodeSendBufferSize());
+        bootstrap.setPipelineFactory(new ChannelPipelineFactory()
+        {
+            public ChannelPipeline getPipeline() throws Exception
+            {
+                ChannelPipeline pipeline = Channels.pipeline();
+                if (encrypted)
+                    pipeline.addLast("ssl", newSslHandler());
+                pipeline.addLast("connection", connection);
+                return pipeline;
+            }
+        });
+
+        InetSocketAddress remote = new InetSocketAddress(endpoint, encrypted ? DatabaseDescriptor.getSSLStoragePort() : DatabaseDescriptor.getStoragePort());
+        ChannelFuture future = Config.getOutboundBindAny()
+                             ? bootstrap.connect(remote)
+                             : bootstrap.connect(remote, new InetSocketAddress(FBUtilities.getLocalAddress(), 0));
+        connection.channel = future.getChannel();
+        pending = connection;
+        future.addListener(new ChannelFutureListener()
+        {
+            public void operationComplete(ChannelFuture future)
+            {
+                if (future.isSuccess())
+                    return;
+
+                if (logger.isTraceEnabled())
+                    logger.trace("unable to connect to " + poolReference.endPoint(), future.getCause());
+                // don't let messages pile up while the peer is unreachable
+                expireMessages();
+                disconnected(connection);
+            }
+        });
+    }
+
+    private static SslHandler newSslHandler() throws IOException
+    {
+        EncryptionOptions options = DatabaseDescriptor.getServerEncryptionOptions();
+        SSLEngine engine = SSLFactory.createSSLContext(options, true).createSSLEngine();
+        engine.setUseClientMode(true);
+        engine.setEnabledCipherSuites(SSLFactory.filterCipherSuites(engine.getSupportedCipherSuites(), options.cipher_suites));
+        SslHandler handler = new SslHandler(engine);
+        handler.setIssueHandshake(true);
+        return handler;
+    }
+
+    private synchronized void connected(Connection connection)
+    {
+        if (pending != connection)
+        {
+            // closed while handshaking
+            connection.channel.close();
+            return;
+        }
+        pending = null;
+        current = connection;
+        scheduleFlush(connection);
+    }
+
+    private synchronized void disconnected(Connection connection)
+    {
+        if (current == connection)
+            current = null;
+        if (pending == connection)
+            pending = null;
+
+        if (current == null && pending == null && !isStopped && !backlog.isEmpty())
+        {
+            timer.newTimeout(new TimerTask()
+            {
+                public void run(Timeout timeout)
+                {
+                    maybeConnect();
+                }
+            }, OutboundTcpConnection.OPEN_RETRY_DELAY, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void clearBacklog()
+    {
+        while (backlog.poll() != null)
+            backlogSize.decrementAndGet();
+    }
+
+    private void expireMessages()
+    {
+        long now = System.currentTimeMillis();
+        Iterator<QueuedMessage> iter = backlog.iterator();
+        while (iter.hasNext())
+        {
+            QueuedMessage qm = iter.next();
+            if (qm == CLOSE_SENTINEL)
+                continue;
+            if (!qm.isTimedOut(now))
+                return;
+            iter.remove();
+            backlogSize.decrementAndGet();
+            dropped.incrementAndGet();
+        }
+    }
+
+    /**
+     * A single connection to the peer. Apart from enqueueing, everything happens on the connection's event loop.
+     */
+    private class Connection extends SimpleChannelUpstreamHandler implements Runnable
+    {
+        private final int version;
+        private final boolean compress;
+        private final ChannelBuffer handshake = ChannelBuffers.buffer(4);
+        // per connection, so that a flush still pending on a connection being replaced does not hold back the next
+        private final AtomicBoolean flushScheduled = new AtomicBoolean();
+        private final FrameBuffer frame = new FrameBuffer();
+        private DataOutputStream out = new DataOutputStream(frame);
+        private volatile boolean established = false;
+
+        private volatile Channel channel;
+
+        Connection(int version, boolean compress)
+        {
+            this.version = version;
+            this.compress = compress;
+        }
+
+        @Override
+        public void channelOpen(ChannelHandlerContext ctx, ChannelStateEvent e)
+        {
+            channel = e.getChannel();
+        }
+
+        @Override
+        public void channelConnected(ChannelHandlerContext ctx, ChannelStateEvent e) throws IOException
+        {
+            out.writeInt(MessagingService.PROTOCOL_MAGIC);
+            OutboundTcpConnection.writeHeader(out, version, compress);
+            channel.write(frame.drain());
+
+            timer.newTimeout(new TimerTask()
+            {
+                public void run(Timeout timeout)
+                {
+                    if (!established)
+                    {
+                        logger.info("Cannot handshake version with {}", poolReference.endPoint());
+                        channel.close();
+                    }
+                }
+            }, OutboundTcpConnection.WAIT_FOR_VERSION_MAX_TIME, TimeUnit.MILLISECONDS);
+        }
+
+        @Override
+        public void messageReceived(ChannelHandlerContext ctx, MessageEvent e) throws IOException
+        {
+            ChannelBuffer buffer = (ChannelBuffer) e.getMessage();
+            if (established)
+            {
+                // the peer sends nothing but its version on this connection
+                buffer.skipBytes(buffer.readableBytes());
+                return;
+            }
+
+            buffer.readBytes(handshake, Math.min(handshake.writableBytes(), buffer.readableBytes()));
+            if (handshake.writable())
+                return;
+
+            InetAddress endpoint = poolReference.endPoint();
+            int maxTargetVersion = handshake.readInt();
+            if (version > maxTargetVersion)
+            {
+                logger.debug("Target max version is {}; will reconnect with that version", maxTargetVersion);
+                MessagingService.instance().setVersion(endpoint, maxTargetVersion);
+                channel.close();
+                return;
+            }
+
+            if (version < maxTargetVersion && version < MessagingService.current_version)
+            {
+                logger.trace("Detected higher max version {} (using {}); will reconnect when queued messages are done",
+                             maxTargetVersion, version);
+                MessagingService.instance().setVersion(endpoint, Math.min(MessagingService.current_version, maxTargetVersion));
+                softCloseSocket();
+            }
+
+            out.writeInt(MessagingService.current_version);
+            CompactEndpointSerializationHelper.serialize(FBUtilities.getBroadcastAddress(), out);
+            channel.write(frame.drain());
+
+            if (compress)
+            {
+                logger.trace("Upgrading OutputStream to be compressed");
+                if (version < MessagingService.VERSION_21)
+                {
+                    out = new DataOutputStream(new SnappyOutputStream(frame));
+                }
+                else
+                {
+                    Checksum checksum = XXHashFactory.fastestInstance().newStreamingHash32(OutboundTcpConnection.LZ4_HASH_SEED).asChecksum();
+                    out = new DataOutputStream(new LZ4BlockOutputStream(frame,
+                                                                        1 << 14,  // 16k block size
+                                                                        LZ4Factory.fastestInstance().fastCompressor(),
+                                                                        checksum,
+                                                                        true)); // no async flushing
+                }
+            }
+
+            established = true;
+            connected(this);
+        }
+
+        @Override
+        public void channelInterestChanged(ChannelHandlerContext ctx, ChannelStateEvent e)
+        {
+            // the socket has drained what we wrote so far; resume writing
+            if (established && channel.isWritable() && !backlog.isEmpty())
+                scheduleFlush(this);
+        }
+
+        @Override
+        public void channelClosed(ChannelHandlerContext ctx, ChannelStateEvent e)
+        {
+            disconnected(this);
+        }
+
+        @Override
+        public void exceptionCaught(ChannelHandlerContext ctx, ExceptionEvent e)
+        {
+            if (e.getCause() instanceof IOException)
+            {
+                if (logger.isDebugEnabled())
+                    logger.debug("error writing to {}", poolReference.endPoint(), e.getCause());
+            }
+            else
+            {
+                logger.error("error writing to {}", poolReference.endPoint(), e.getCause());
+            }
+            channel.close();
+        }
+
+        /**
+         * Writes the queued messages, coalescing them into as few writes as possible.
+         */
+        public void run()
+        {
+            flushScheduled.set(false);
+            while (current == this && channel.isWritable() && !backlog.isEmpty())
+            {
+                if (!writeBatch())
+                    return;
+            }
+        }
+
+        /**
+         * @return false if the connection is being closed
+         */
+        private boolean writeBatch()
+        {
+            final List<QueuedMessage> batch = new ArrayList<>();
+            long now = System.currentTimeMillis();
+            QueuedMessage qm;
+            try
+            {
+                while (frame.size() < MAX_COALESCED_BYTES && (qm = backlog.poll()) != null)
+                {
+                    backlogSize.decrementAndGet();
+                    if (qm == CLOSE_SENTINEL)
+                    {
+                        write(batch);
+                        closeAfterWrites();
+                        return false;
+                    }
+
+                    if (qm.isTimedOut(now))
+                    {
+                        dropped.incrementAndGet();
+                        continue;
+                    }
+
+                    OutboundTcpConnection.traceSending(qm.message, poolReference.endPoint());
+                    batch.add(qm);
+                    OutboundTcpConnection.writeInternal(out, qm.message, qm.id, qm.timestamp, version);
+                }
+                write(batch);
+                return true;
+            }
+            catch (Exception e)
+            {
+                // the stream is now corrupted by a partly written message: start over on a new connection
+                logger.error("error writing to {}", poolReference.endPoint(), e);
+                retry(batch);
+                channel.close();
+                return false;
+            }
+        }
+
+        private void write(final List<QueuedMessage> batch) throws IOException
+        {
+            out.flush();
+            if (frame.size() == 0)
+                return;
+
+            channel.write(frame.drain()).addListener(new ChannelFutureListener()
+            {
+                public void operationComplete(ChannelFuture future)
+                {
+                    if (future.isSuccess())
+                    {
+                        writes.incrementAndGet();
+                        completed.addAndGet(batch.size());
+                    }
+                    else
+                        retry(batch);
+                }
+            });
+        }
+
+        private void closeAfterWrites()
+        {
+            synchronized (NettyOutboundConnection.this)
+            {
+                if (current == this)
+                    current = null;
+            }
+            channel.write(ChannelBuffers.EMPTY_BUFFER).addListener(ChannelFutureListener.CLOSE);
+            if (!backlog.isEmpty())
+                maybeConnect();
+        }
+
+        /**
+         * If a message was important, such as a repair acknowledgement, put it back on the queue to retry after
+         * re-connecting. See CASSANDRA-5393
+         */
+        private void retry(List<QueuedMessage> batch)
+        {
+            for (QueuedMessage qm : batch)
+            {
+                if (qm.shouldRetry())
+                    add(new RetriedQueuedMessage(qm));
+            }
+        }
+    }
+
+    /**
+     * Collects what is written to it until it is drained into a write.
+     */
+    private static class FrameBuffer extends OutputStream
+    {
+        private ChannelBuffer buffer = newBuffer();
+
+        private static ChannelBuffer newBuffer()
+        {
+            return ChannelBuffers.dynamicBuffer(4096);
+        }
+
+        public void write(int b)
+        {
+            buffer.writeByte(b);
+        }
+
+        public void write(byte[] b, int off, int len)
+        {
+            buffer.writeBytes(b, off, len);
+        }
+
+        int size()
+        {
+            return buffer.readableBytes();
+        }
+
+        ChannelBuffer drain()
+        {
+            ChannelBuffer drained = buffer;
+            buffer = newBuffer();
+            return drained;
+        }
+    }
+}
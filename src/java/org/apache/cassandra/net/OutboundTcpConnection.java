@@ -57,22 +57,25 @@ import com.google.common.util.concurrent.Uninterruptibles;
 
 //OutboundTcpConnection负责发消息，MessagingService.SocketThread.run()负责接收消息
 //此类的流程是通过enqueue方法加消息，然后在run()中轮训，最后写往指定的Socket
-public class OutboundTcpConnection extends Thread
+public class OutboundTcpConnection extends Thread implements IOutboundConnection
 {
     private static final Logger logger = LoggerFactory.getLogger(OutboundTcpConnection.class);
 
     private static final MessageOut CLOSE_SENTINEL = new MessageOut(MessagingService.Verb.INTERNAL_RESPONSE);
     private volatile boolean isStopped = false;
 
-    private static final int OPEN_RETRY_DELAY = 100; // ms between retries
-    private static final int WAIT_FOR_VERSION_MAX_TIME = 5000;
+    static final int OPEN_RETRY_DELAY = 100; // ms between retries
+    static final int WAIT_FOR_VERSION_MAX_TIME = 5000;
     private static final int NO_VERSION = Integer.MIN_VALUE;
+    // keeping list (batch) size small for now; that way we don't have an unbounded array (that we never resize)
+    private static final int MAX_BATCH_SIZE = 128;
 
     static final int LZ4_HASH_SEED = 0x9747b28c;
 
     private final BlockingQueue<QueuedMessage> backlog = new LinkedBlockingQueue<>();
 
     private final OutboundTcpConnectionPool poolReference;
+    private final CoalescingStrategy coalescingStrategy = CoalescingStrategy.newCoalescingStrategy();
 
     private DataOutputStream out;
     private Socket socket;
@@ -80,6 +83,10 @@ public class OutboundTcpConnection extends Thread
     private final AtomicLong dropped = new AtomicLong();
     private volatile int currentMsgBufferCount = 0;
     private int targetVersion;
+    // messages written since the last flush, and totals over all flushes
+    private final List<QueuedMessage> unflushed = new ArrayList<>();
+    private volatile long flushes;
+    private volatile long flushedMessages;
 
     public OutboundTcpConnection(OutboundTcpConnectionPool pool)
     {
@@ -87,7 +94,7 @@ public class OutboundTcpConnection extends Thread
         this.poolReference = pool;
     }
 
-    private static boolean isLocalDC(InetAddress targetHost)
+    static boolean isLocalDC(InetAddress targetHost)
     {
         String remoteDC = DatabaseDescriptor.getEndpointSnitch().getDatacenter(targetHost);
         String localDC = DatabaseDescriptor.getEndpointSnitch().getDatacenter(FBUtilities.getBroadcastAddress());
@@ -108,14 +115,14 @@ public class OutboundTcpConnection extends Thread
         }
     }
 
-    void closeSocket(boolean destroyThread)
+    public void closeSocket(boolean destroyThread)
     {
         backlog.clear();
         isStopped = destroyThread; // Exit loop to stop the thread
         enqueue(CLOSE_SENTINEL, -1);
     }
 
-    void softCloseSocket()
+    public void softCloseSocket()
     {
         enqueue(CLOSE_SENTINEL, -1);
     }
@@ -127,22 +134,17 @@ public class OutboundTcpConnection extends Thread
 
     public void run()
     {
-        // keeping list (batch) size small for now; that way we don't have an unbounded array (that we never resize)
-        final List<QueuedMessage> drainedMessages = new ArrayList<>(128);
+        final List<QueuedMessage> drainedMessages = new ArrayList<>(MAX_BATCH_SIZE);
         outer:
         while (true)
         {
-            if (backlog.drainTo(drainedMessages, drainedMessages.size()) == 0)
+            try
             {
-                try
-                {
-                    drainedMessages.add(backlog.take()); //会阻塞
-                }
-                catch (InterruptedException e)
-                {
-                    throw new AssertionError(e);
-                }
-
+                coalescingStrategy.coalesce(backlog, drainedMessages, MAX_BATCH_SIZE); //会阻塞
+            }
+            catch (InterruptedException e)
+            {
+                throw new AssertionError(e);
             }
             currentMsgBufferCount = drainedMessages.size();
 
@@ -154,6 +156,7 @@ public class OutboundTcpConnection extends Thread
                     MessageOut<?> m = qm.message;
                     if (m == CLOSE_SENTINEL)
                     {
+                        flush();
                         disconnect();
                         if (isStopped)
                             break outer;
@@ -164,10 +167,10 @@ public class OutboundTcpConnection extends Thread
                     //qm.timestamp < System.currentTimeMillis() - m.getTimeout()相当于
                     //qm.timestamp+m.getTimeout() < System.currentTimeMillis()
                     //意思就是消息进入队列太久了，都超过超时时间了，所以必须废弃，不再处理
-                    if (qm.timestamp < System.currentTimeMillis() - m.getTimeout())
+                    if (qm.isTimedOut(System.currentTimeMillis()))
                         dropped.incrementAndGet();
                     else if (socket != null || connect())
-                        writeConnected(qm, count == 1 && backlog.size() == 0);
+                        writeConnected(qm);
                     else
                         // clear out the queue, else gossip messages back up.
                         backlog.clear();
@@ -180,6 +183,8 @@ public class OutboundTcpConnection extends Thread
                 }
                 currentMsgBufferCount = --count;
             }
+            // write the whole batch out at once
+            flush();
             drainedMessages.clear();
         }
     }
@@ -199,63 +204,39 @@ public class OutboundTcpConnection extends Thread
         return dropped.get();
     }
 
-    private boolean shouldCompressConnection()
+    public double getAverageBatchSize()
+    {
+        long n = flushes;
+        return n == 0 ? 0 : (double) flushedMessages / n;
+    }
+
+    static boolean shouldCompressConnection(InetAddress endpoint)
     {
         // assumes version >= 1.2
         return DatabaseDescriptor.internodeCompression() == Config.InternodeCompression.all
-               || (DatabaseDescriptor.internodeCompression() == Config.InternodeCompression.dc && !isLocalDC(poolReference.endPoint()));
+               || (DatabaseDescriptor.internodeCompression() == Config.InternodeCompression.dc && !isLocalDC(endpoint));
     }
 
-    private void writeConnected(QueuedMessage qm, boolean flush)
+    private void writeConnected(QueuedMessage qm)
     {
         try
         {
-            byte[] sessionBytes = qm.message.parameters.get(Tracing.TRACE_HEADER);
-            if (sessionBytes != null)
-            {
-                UUID sessionId = UUIDGen.getUUID(ByteBuffer.wrap(sessionBytes));
-                TraceState state = Tracing.instance.get(sessionId);
-                String message = String.format("Sending message to %s", poolReference.endPoint());
-                // session may have already finished; see CASSANDRA-5668
-                if (state == null)
-                {
-                    TraceState.trace(ByteBuffer.wrap(sessionBytes), message, -1);
-                }
-                else
-                {
-                    state.trace(message);
-                    if (qm.message.verb == MessagingService.Verb.REQUEST_RESPONSE)
-                        Tracing.instance.stopNonLocal(state);
-                }
-            }
-
-            writeInternal(qm.message, qm.id, qm.timestamp);
+            traceSending(qm.message, poolReference.endPoint());
+            writeInternal(out, qm.message, qm.id, qm.timestamp, targetVersion);
 
             completed++;
-            if (flush)
-                out.flush();
+            unflushed.add(qm);
         }
         catch (Exception e)
         {
             disconnect();
+            retryUnflushed();
             if (e instanceof IOException)
             {
                 if (logger.isDebugEnabled())
                     logger.debug("error writing to {}", poolReference.endPoint(), e);
 
-                // if the message was important, such as a repair acknowledgement, put it back on the queue
-                // to retry after re-connecting.  See CASSANDRA-5393
-                if (qm.shouldRetry())
-                {
-                    try
-                    {
-                        backlog.put(new RetriedQueuedMessage(qm));
-                    }
-                    catch (InterruptedException e1)
-                    {
-                        throw new AssertionError(e1);
-                    }
-                }
+                retry(qm);
             }
             else
             {
@@ -265,8 +246,30 @@ public class OutboundTcpConnection extends Thread
         }
     }
 
+    static void traceSending(MessageOut<?> message, InetAddress to)
+    {
+        byte[] sessionBytes = message.parameters.get(Tracing.TRACE_HEADER);
+        if (sessionBytes != null)
+        {
+            UUID sessionId = UUIDGen.getUUID(ByteBuffer.wrap(sessionBytes));
+            TraceState state = Tracing.instance.get(sessionId);
+            String traceMessage = String.format("Sending message to %s", to);
+            // session may have already finished; see CASSANDRA-5668
+            if (state == null)
+            {
+                TraceState.trace(ByteBuffer.wrap(sessionBytes), traceMessage, -1);
+            }
+            else
+            {
+                state.trace(traceMessage);
+                if (message.verb == MessagingService.Verb.REQUEST_RESPONSE)
+                    Tracing.instance.stopNonLocal(state);
+            }
+        }
+    }
+
     //对应IncomingTcpConnection.receiveMessage(DataInputStream, int)
-    private void writeInternal(MessageOut message, int id, long timestamp) throws IOException
+    static void writeInternal(DataOutputStream out, MessageOut message, int id, long timestamp, int targetVersion) throws IOException
     {
         out.writeInt(MessagingService.PROTOCOL_MAGIC);
 
@@ -281,7 +284,7 @@ public class OutboundTcpConnection extends Thread
         message.serialize(out, targetVersion);
     }
 
-    private static void writeHeader(DataOutputStream out, int version, boolean compressionEnabled) throws IOException
+    static void writeHeader(DataOutputStream out, int version, boolean compressionEnabled) throws IOException
     {
         // 2 bits: unused.  used to be "serializer type," which was always Binary
         // 1 bit: compression
@@ -296,6 +299,54 @@ public class OutboundTcpConnection extends Thread
         out.writeInt(header);
     }
 
+    private void flush()
+    {
+        if (socket == null || unflushed.isEmpty())
+            return;
+
+        try
+        {
+            out.flush();
+            flushes++;
+            flushedMessages += unflushed.size();
+            unflushed.clear();
+        }
+        catch (IOException e)
+        {
+            disconnect();
+            if (logger.isDebugEnabled())
+                logger.debug("error writing to {}", poolReference.endPoint(), e);
+            retryUnflushed();
+        }
+    }
+
+    /**
+     * Retries the messages written since the last flush, which may not have reached the socket before it failed.
+     */
+    private void retryUnflushed()
+    {
+        for (QueuedMessage qm : unflushed)
+            retry(qm);
+        unflushed.clear();
+    }
+
+    private void retry(QueuedMessage qm)
+    {
+        // if the message was important, such as a repair acknowledgement, put it back on the queue
+        // to retry after re-connecting.  See CASSANDRA-5393
+        if (qm.shouldRetry())
+        {
+            try
+            {
+                backlog.put(new RetriedQueuedMessage(qm));
+            }
+            catch (InterruptedException e)
+            {
+                throw new AssertionError(e);
+            }
+        }
+    }
+
     private void disconnect()
     {
         if (socket != null)
@@ -352,7 +403,7 @@ public class OutboundTcpConnection extends Thread
                 out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), 4096));
 
                 out.writeInt(MessagingService.PROTOCOL_MAGIC);
-                writeHeader(out, targetVersion, shouldCompressConnection());
+                writeHeader(out, targetVersion, shouldCompressConnection(poolReference.endPoint()));
                 out.flush();
 
                 DataInputStream in = new DataInputStream(socket.getInputStream());
@@ -385,7 +436,7 @@ public class OutboundTcpConnection extends Thread
                 out.writeInt(MessagingService.current_version);
                 //发送本机的ip地址
                 CompactEndpointSerializationHelper.serialize(FBUtilities.getBroadcastAddress(), out);
-                if (shouldCompressConnection())
+                if (shouldCompressConnection(poolReference.endPoint()))
                 {
                     out.flush();
                     logger.trace("Upgrading OutputStream to be compressed");
@@ -473,26 +524,34 @@ public class OutboundTcpConnection extends Thread
     }
 
     /** messages that have not been retried yet */
-    private static class QueuedMessage
+    static class QueuedMessage
     {
         final MessageOut<?> message;
         final int id;
         final long timestamp;
+        // for measuring the time between messages, which timestamp is too coarse for
+        final long arrivalNanos;
 
         QueuedMessage(MessageOut<?> message, int id)
         {
             this.message = message;
             this.id = id;
             this.timestamp = System.currentTimeMillis();
+            this.arrivalNanos = System.nanoTime();
         }
 
         boolean shouldRetry()
         {
             return !MessagingService.DROPPABLE_VERBS.contains(message.verb);
         }
+
+        boolean isTimedOut(long now)
+        {
+            return timestamp < now - message.getTimeout();
+        }
     }
 
-    private static class RetriedQueuedMessage extends QueuedMessage
+    static class RetriedQueuedMessage extends QueuedMessage
     {
         RetriedQueuedMessage(QueuedMessage msg)
         {
@@ -36,8 +36,8 @@ public class OutboundTcpConnectionPool
 {
     // pointer for the real Address.
     private final InetAddress id;
-    public final OutboundTcpConnection cmdCon;
-    public final OutboundTcpConnection ackCon;
+    public final IOutboundConnection cmdCon;
+    public final IOutboundConnection ackCon;
     // pointer to the reseted Address.
     private InetAddress resetedEndpoint;
     private ConnectionMetrics metrics;
@@ -63,19 +63,27 @@ public class OutboundTcpConnectionPool
         id = remoteEp;
         resetedEndpoint = SystemKeyspace.getPreferredIP(remoteEp);
 
-        cmdCon = new OutboundTcpConnection(this);
-        cmdCon.start();
-        ackCon = new OutboundTcpConnection(this);
-        ackCon.start();
+        cmdCon = newConnection();
+        ackCon = newConnection();
 
         metrics = new ConnectionMetrics(id, this);
     }
 
+    private IOutboundConnection newConnection()
+    {
+        if (DatabaseDescriptor.getInternodeTransport() == Config.InternodeTransport.netty)
+            return new NettyOutboundConnection(this);
+
+        OutboundTcpConnection connection = new OutboundTcpConnection(this);
+        connection.start();
+        return connection;
+    }
+
     /**
      * returns the appropriate connection based on message type.
      * returns null if a connection could not be established.
      */
-    OutboundTcpConnection getConnection(MessageOut msg)
+    IOutboundConnection getConnection(MessageOut msg)
     {
         Stage stage = msg.getStage();
         return stage == Stage.REQUEST_RESPONSE || stage == Stage.INTERNAL_RESPONSE || stage == Stage.GOSSIP
@@ -85,13 +93,13 @@ public class OutboundTcpConnectionPool
 
     void reset()
     {
-        for (OutboundTcpConnection conn : new OutboundTcpConnection[] { cmdCon, ackCon })
+        for (IOutboundConnection conn : new IOutboundConnection[] { cmdCon, ackCon })
             conn.closeSocket(false);
     }
 
     public void resetToNewerVersion(int version)
     {
-        for (OutboundTcpConnection conn : new OutboundTcpConnection[] { cmdCon, ackCon })
+        for (IOutboundConnection conn : new IOutboundConnection[] { cmdCon, ackCon })
         {
             if (version > conn.getTargetVersion())
                 conn.softCloseSocket();
@@ -107,7 +115,7 @@ public class OutboundTcpConnectionPool
     {
         SystemKeyspace.updatePreferredIP(id, remoteEP);
         resetedEndpoint = remoteEP;
-        for (OutboundTcpConnection conn : new OutboundTcpConnection[] { cmdCon, ackCon })
+        for (IOutboundConnection conn : new IOutboundConnection[] { cmdCon, ackCon })
             conn.softCloseSocket();
 
         // release previous metrics and create new one with reset address
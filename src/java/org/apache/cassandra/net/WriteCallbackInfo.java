@@ -33,7 +33,8 @@ public class WriteCallbackInfo extends CallbackInfo
     {
         super(target, callback, serializer);
         assert message != null;
-        this.sentMessage = message;
+        // only the mutation is needed, to hint it on timeout: the serialized payload can go once the message is written
+        this.sentMessage = message.withoutSerializedPayload();
         this.consistencyLevel = consistencyLevel;
     }
 
@@ -51,6 +51,7 @@ public class RepairJob
 
     public final RepairJobDesc desc;
     private final boolean isSequential;
+    private final boolean isIncremental;
     // first we send tree requests. this tracks the endpoints remaining to hear from
     private final RequestCoordinator<InetAddress> treeRequests;
     // tree responses are then tracked here
@@ -61,21 +62,26 @@ public class RepairJob
     private final Condition requestsSent = new SimpleCondition();
     private CountDownLatch snapshotLatch = null;
     private int gcBefore = -1;
+    // the rows are hashed with the best algorithm all the replicas know about
+    private Validator.HashAlgorithm hashAlgorithm = Validator.HashAlgorithm.SHA256;
 
     private volatile boolean failed = false;
 
     /**
      * Create repair job to run on specific columnfamily
+     *
+     * @param isIncremental if true, only the data that has not been repaired yet is validated
      */
-    public RepairJob(UUID sessionId, String keyspace, String columnFamily, Range<Token> range, boolean isSequential)
+    public RepairJob(UUID sessionId, String keyspace, String columnFamily, Range<Token> range, boolean isSequential, final boolean isIncremental)
     {
         this.desc = new RepairJobDesc(sessionId, keyspace, columnFamily, range);
         this.isSequential = isSequential;
+        this.isIncremental = isIncremental;
         this.treeRequests = new RequestCoordinator<InetAddress>(isSequential)
         {
             public void send(InetAddress endpoint)
             {
-                ValidationRequest request = new ValidationRequest(desc, gcBefore);
+                ValidationRequest request = new ValidationRequest(desc, gcBefore, isIncremental, hashAlgorithm);
                 MessagingService.instance().sendOneWay(request.createMessage(), endpoint);
             }
         };
@@ -110,6 +116,11 @@ public class RepairJob
 
         this.gcBefore = Keyspace.open(desc.keyspace).getColumnFamilyStore(desc.columnFamily).gcBefore(System.currentTimeMillis());
 
+        int minVersion = MessagingService.current_version;
+        for (InetAddress endpoint : endpoints)
+            minVersion = Math.min(minVersion, MessagingService.instance().getVersion(endpoint));
+        this.hashAlgorithm = Validator.HashAlgorithm.forVersion(minVersion);
+
         for (InetAddress endpoint : allEndpoints)
             treeRequests.add(endpoint);
 
@@ -22,6 +22,7 @@ import org.apache.cassandra.db.Keyspace;
 import org.apache.cassandra.db.compaction.CompactionManager;
 import org.apache.cassandra.net.IVerbHandler;
 import org.apache.cassandra.net.MessageIn;
+import org.apache.cassandra.repair.messages.AnticompactionRequest;
 import org.apache.cassandra.repair.messages.RepairMessage;
 import org.apache.cassandra.repair.messages.SyncRequest;
 import org.apache.cassandra.repair.messages.ValidationRequest;
@@ -44,7 +45,7 @@ public class RepairMessageVerbHandler implements IVerbHandler<RepairMessage>
                 ValidationRequest validationRequest = (ValidationRequest) message.payload;
                 // trigger read-only compaction
                 ColumnFamilyStore store = Keyspace.open(desc.keyspace).getColumnFamilyStore(desc.columnFamily);
-                Validator validator = new Validator(desc, message.from, validationRequest.gcBefore);
+                Validator validator = new Validator(desc, message.from, validationRequest.gcBefore, validationRequest.incremental, validationRequest.hashAlgorithm);
                 CompactionManager.instance.submitValidation(store, validator);
                 break;
 
@@ -55,6 +56,12 @@ public class RepairMessageVerbHandler implements IVerbHandler<RepairMessage>
                 task.run();
                 break;
 
+            case ANTICOMPACTION_REQUEST:
+                // the repair of the range this node validated succeeded
+                AnticompactionRequest anticompactionRequest = (AnticompactionRequest) message.payload;
+                ActiveRepairService.instance.doAntiCompaction(desc, anticompactionRequest.repairedAt);
+                break;
+
             default:
                 ActiveRepairService.instance.handleMessage(message.from, message.payload);
                 break;
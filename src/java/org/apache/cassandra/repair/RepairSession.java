@@ -33,6 +33,8 @@ import org.apache.cassandra.dht.Range;
 import org.apache.cassandra.dht.Token;
 import org.apache.cassandra.exceptions.RepairException;
 import org.apache.cassandra.gms.*;
+import org.apache.cassandra.net.MessagingService;
+import org.apache.cassandra.repair.messages.AnticompactionRequest;
 import org.apache.cassandra.service.ActiveRepairService;
 import org.apache.cassandra.utils.*;
 
@@ -78,6 +80,10 @@ public class RepairSession extends WrappedRunnable implements IEndpointStateChan
     public final String keyspace;
     private final String[] cfnames;
     public final boolean isSequential;
+    /** If true, only unrepaired data is repaired, and the repaired data is anticompacted once the session succeeds */
+    public final boolean isIncremental;
+    /** The time the data repaired by this session is marked repaired at */
+    public final long repairedAt;
     /** Range to repair */
     public final Range<Token> range;
     public final Set<InetAddress> endpoints;
@@ -102,23 +108,48 @@ public class RepairSession extends WrappedRunnable implements IEndpointStateChan
      * @param range range to repair
      * @param keyspace name of keyspace
      * @param isSequential true if performing repair on snapshots sequentially
+     * @param isIncremental true if only the data that has not been repaired yet should be repaired
      * @param dataCenters the data centers that should be part of the repair; null for all DCs
      * @param cfnames names of columnfamilies
      */
-    public RepairSession(Range<Token> range, String keyspace, boolean isSequential, Collection<String> dataCenters, String... cfnames)
+    public RepairSession(Range<Token> range, String keyspace, boolean isSequential, boolean isIncremental, Collection<String> dataCenters, String... cfnames)
     {
-        this(UUIDGen.getTimeUUID(), range, keyspace, isSequential, dataCenters, cfnames);
+        this(UUIDGen.getTimeUUID(), range, keyspace, isSequential, isIncremental, dataCenters, cfnames);
     }
 
-    public RepairSession(UUID id, Range<Token> range, String keyspace, boolean isSequential, Collection<String> dataCenters, String[] cfnames)
+    public RepairSession(UUID id, Range<Token> range, String keyspace, boolean isSequential, boolean isIncremental, Collection<String> dataCenters, String[] cfnames)
     {
         this.id = id;
         this.isSequential = isSequential;
+        // anything validated by this session was written before it started
+        this.repairedAt = System.currentTimeMillis();
         this.keyspace = keyspace;
         this.cfnames = cfnames;
         assert cfnames.length > 0 : "Repairing no column families seems pointless, doesn't it";
         this.range = range;
         this.endpoints = ActiveRepairService.getNeighbors(keyspace, range, dataCenters);
+        this.isIncremental = isIncremental && supportIncrementalRepair(endpoints);
+    }
+
+    /**
+     * Replicas that do not know about incremental repair validate all of their data, so their trees would
+     * differ from those of the others wherever these have repaired data: an incremental repair needs all of
+     * them to know about it, and falls back to a full repair otherwise.
+     */
+    private boolean supportIncrementalRepair(Set<InetAddress> endpoints)
+    {
+        List<InetAddress> unsupported = new ArrayList<>();
+        for (InetAddress endpoint : endpoints)
+        {
+            if (MessagingService.instance().getVersion(endpoint) < MessagingService.VERSION_21)
+                unsupported.add(endpoint);
+        }
+        if (unsupported.isEmpty())
+            return true;
+
+        logger.warn(String.format("[repair #%s] %s do not support incremental repair: running a full repair of %s on range %s instead",
+                                  getId(), unsupported, keyspace, range));
+        return false;
     }
 
     public UUID getId()
@@ -260,7 +291,7 @@ public class RepairSession extends WrappedRunnable implements IEndpointStateChan
             // Create and queue a RepairJob for each column family
             for (String cfname : cfnames)
             {
-                RepairJob job = new RepairJob(id, keyspace, cfname, range, isSequential);
+                RepairJob job = new RepairJob(id, keyspace, cfname, range, isSequential, isIncremental);
                 jobs.offer(job);
             }
 
@@ -272,6 +303,8 @@ public class RepairSession extends WrappedRunnable implements IEndpointStateChan
             if (exception == null)
             {
                 logger.info(String.format("[repair #%s] session completed successfully", getId()));
+                if (isIncremental)
+                    sendAnticompactionRequests();
             }
             else
             {
@@ -291,6 +324,24 @@ public class RepairSession extends WrappedRunnable implements IEndpointStateChan
         }
     }
 
+    /**
+     * Asks every replica that took part in this session, including this node, to mark the data it validated
+     * for the session as repaired.
+     */
+    private void sendAnticompactionRequests()
+    {
+        List<InetAddress> allEndpoints = new ArrayList<>(endpoints);
+        allEndpoints.add(FBUtilities.getBroadcastAddress());
+
+        logger.info(String.format("[repair #%s] requesting anticompaction of %s at %d (to %s)", getId(), Arrays.toString(cfnames), repairedAt, allEndpoints));
+        for (String cfname : cfnames)
+        {
+            AnticompactionRequest request = new AnticompactionRequest(new RepairJobDesc(id, keyspace, cfname, range), repairedAt);
+            for (InetAddress endpoint : allEndpoints)
+                MessagingService.instance().sendOneWay(request.createMessage(), endpoint);
+        }
+    }
+
     public void terminate()
     {
         terminated = true;
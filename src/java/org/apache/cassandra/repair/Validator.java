@@ -20,10 +20,15 @@ package org.apache.cassandra.repair;
 import java.net.InetAddress;
 import java.security.MessageDigest;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
 
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -33,6 +38,8 @@ import org.apache.cassandra.config.DatabaseDescriptor;
 import org.apache.cassandra.db.ColumnFamilyStore;
 import org.apache.cassandra.db.DecoratedKey;
 import org.apache.cassandra.db.compaction.AbstractCompactedRow;
+import org.apache.cassandra.dht.Range;
+import org.apache.cassandra.dht.Token;
 import org.apache.cassandra.net.MessagingService;
 import org.apache.cassandra.repair.messages.ValidationComplete;
 import org.apache.cassandra.utils.FBUtilities;
@@ -54,35 +61,82 @@ public class Validator implements Runnable
     public final InetAddress initiator;
     public final MerkleTree tree;
     public final int gcBefore;
+    /** if true, only the sstables that have not been repaired yet are validated */
+    public final boolean incremental;
+    public final HashAlgorithm hashAlgorithm;
 
-    // null when all rows with the min token have been consumed
-    private transient long validated;
-    private transient MerkleTree.TreeRange range;
-    private transient MerkleTree.TreeRangeIterator ranges;
-    private transient DecoratedKey lastKey;
+    private final AtomicLong validated = new AtomicLong();
+    // the leaves of the prepared tree, in token order
+    private transient List<MerkleTree.TreeRange> leaves;
+    // the single segment rows are added to by add()
+    private transient Segment segment;
+
+    /**
+     * The digest rows are hashed with.  The trees of the replicas can only be compared if they all hashed their
+     * rows the same way, so the coordinator of a repair only picks MURMUR3 if they all know about it.
+     */
+    public static enum HashAlgorithm
+    {
+        SHA256
+        {
+            MessageDigest newDigest()
+            {
+                return FBUtilities.newMessageDigest("SHA-256");
+            }
+        },
+        // no need for a cryptographic hash to tell rows apart, and validation is CPU bound on SHA-256
+        MURMUR3
+        {
+            MessageDigest newDigest()
+            {
+                return new Murmur3Digest();
+            }
+        };
+
+        abstract MessageDigest newDigest();
+
+        /**
+         * @return the fastest algorithm known to replicas of the given messaging version
+         */
+        public static HashAlgorithm forVersion(int version)
+        {
+            return version >= MessagingService.VERSION_21 ? MURMUR3 : SHA256;
+        }
+    }
 
     /**
      * Create Validator with default size of initial Merkle Tree.
      */
     public Validator(RepairJobDesc desc, InetAddress initiator, int gcBefore)
+    {
+        this(desc, initiator, gcBefore, false, HashAlgorithm.SHA256);
+    }
+
+    public Validator(RepairJobDesc desc, InetAddress initiator, int gcBefore, boolean incremental, HashAlgorithm hashAlgorithm)
     {
         this(desc,
              initiator,
              // TODO: memory usage (maxsize) should either be tunable per
              // CF, globally, or as shared for all CFs in a cluster
              new MerkleTree(DatabaseDescriptor.getPartitioner(), desc.range, MerkleTree.RECOMMENDED_DEPTH, (int)Math.pow(2, 15)),
-             gcBefore);
+             gcBefore,
+             incremental,
+             hashAlgorithm);
     }
 
     public Validator(RepairJobDesc desc, InetAddress initiator, MerkleTree tree, int gcBefore)
+    {
+        this(desc, initiator, tree, gcBefore, false, HashAlgorithm.SHA256);
+    }
+
+    public Validator(RepairJobDesc desc, InetAddress initiator, MerkleTree tree, int gcBefore, boolean incremental, HashAlgorithm hashAlgorithm)
     {
         this.desc = desc;
         this.initiator = initiator;
         this.tree = tree;
         this.gcBefore = gcBefore;
-        validated = 0;
-        range = null;
-        ranges = null;
+        this.incremental = incremental;
+        this.hashAlgorithm = hashAlgorithm;
     }
 
     public void prepare(ColumnFamilyStore cfs)
@@ -120,7 +174,9 @@ public class Validator implements Runnable
             }
         }
         logger.debug("Prepared AEService tree of size {} for {}", tree.size(), desc);
-        ranges = tree.invalids();
+        leaves = new ArrayList<>();
+        for (MerkleTree.TreeRangeIterator iter = tree.invalids(); iter.hasNext(); )
+            leaves.add(iter.next());
     }
 
     /**
@@ -131,24 +187,77 @@ public class Validator implements Runnable
      */
     public void add(AbstractCompactedRow row)
     {
-        assert desc.range.contains(row.key.token) : row.key.token + " is not contained in " + desc.range;
-        assert lastKey == null || lastKey.compareTo(row.key) < 0
-               : "row " + row.key + " received out of order wrt " + lastKey;
-        lastKey = row.key;
+        if (segment == null)
+            segment = new Segment(desc.range, leaves);
+        segment.add(row);
+    }
 
-        if (range == null)
-            range = ranges.next();
+    /**
+     * Splits the (prepared) tree into at most {@code count} segments of contiguous leaves, to be validated
+     * concurrently instead of adding every row through add().
+     */
+    public List<Segment> segments(int count)
+    {
+        assert leaves != null : "Validator was not prepared()";
+        if (count <= 1 || leaves.size() <= 1)
+            return Collections.singletonList(new Segment(desc.range, leaves));
 
-        // generate new ranges as long as case 1 is true
-        while (!range.contains(row.key.token))
+        int leavesPerSegment = (leaves.size() + count - 1) / count;
+        List<Segment> segments = new ArrayList<>(count);
+        for (int start = 0; start < leaves.size(); start += leavesPerSegment)
         {
-            // add the empty hash, and move to the next range
-            range.ensureHashInitialised();
-            range = ranges.next();
+            List<MerkleTree.TreeRange> segmentLeaves = leaves.subList(start, Math.min(start + leavesPerSegment, leaves.size()));
+            Token left = segmentLeaves.get(0).left;
+            Token right = segmentLeaves.get(segmentLeaves.size() - 1).right;
+            segments.add(new Segment(new Range<>(left, right), segmentLeaves));
         }
+        return segments;
+    }
+
+    /**
+     * The leaves of the tree covering a range.  Segments share no leaf, so each can be fed the rows of
+     * its range by its own thread.
+     */
+    public class Segment
+    {
+        public final Range<Token> range;
+        private final Iterator<MerkleTree.TreeRange> leaves;
+        private MerkleTree.TreeRange leaf;
+        private DecoratedKey lastKey;
+
+        private Segment(Range<Token> range, List<MerkleTree.TreeRange> leaves)
+        {
+            this.range = range;
+            this.leaves = leaves.iterator();
+        }
+
+        /**
+         * Called (in order) for every row of the CF within the range of this segment.
+         * Hashes the row, and adds it to the tree being built.
+         *
+         * @param row Row to add hash
+         */
+        public void add(AbstractCompactedRow row)
+        {
+            assert range.contains(row.key.token) : row.key.token + " is not contained in " + range;
+            assert lastKey == null || lastKey.compareTo(row.key) < 0
+                   : "row " + row.key + " received out of order wrt " + lastKey;
+            lastKey = row.key;
 
-        // case 3 must be true: mix in the hashed row
-        range.addHash(rowHash(row));
+            if (leaf == null)
+                leaf = leaves.next();
+
+            // generate new ranges as long as case 1 is true
+            while (!leaf.contains(row.key.token))
+            {
+                // add the empty hash, and move to the next range
+                leaf.ensureHashInitialised();
+                leaf = leaves.next();
+            }
+
+            // case 3 must be true: mix in the hashed row
+            leaf.addHash(rowHash(row));
+        }
     }
 
     static class CountingDigest extends MessageDigest
@@ -190,11 +299,50 @@ public class Validator implements Runnable
 
     }
 
+    /**
+     * The 128 bit x64 variant of Murmur3, fed incrementally like any digest.
+     */
+    static class Murmur3Digest extends MessageDigest
+    {
+        private Hasher hasher = Hashing.murmur3_128().newHasher();
+
+        public Murmur3Digest()
+        {
+            super("Murmur3-128");
+        }
+
+        @Override
+        protected void engineUpdate(byte input)
+        {
+            hasher.putByte(input);
+        }
+
+        @Override
+        protected void engineUpdate(byte[] input, int offset, int len)
+        {
+            hasher.putBytes(input, offset, len);
+        }
+
+        @Override
+        protected byte[] engineDigest()
+        {
+            byte[] digest = hasher.hash().asBytes();
+            engineReset();
+            return digest;
+        }
+
+        @Override
+        protected void engineReset()
+        {
+            hasher = Hashing.murmur3_128().newHasher();
+        }
+    }
+
     private MerkleTree.RowHash rowHash(AbstractCompactedRow row)
     {
-        validated++;
+        validated.incrementAndGet();
         // MerkleTree uses XOR internally, so we want lots of output bits here
-        CountingDigest digest = new CountingDigest(FBUtilities.newMessageDigest("SHA-256"));
+        CountingDigest digest = new CountingDigest(hashAlgorithm.newDigest());
         row.update(digest);
         return new MerkleTree.RowHash(row.key.token, digest.digest(), digest.count);
     }
@@ -221,15 +369,10 @@ public class Validator implements Runnable
     @VisibleForTesting
     public void completeTree()
     {
-        assert ranges != null : "Validator was not prepared()";
+        assert leaves != null : "Validator was not prepared()";
 
-        if (range != null)
-            range.ensureHashInitialised();
-        while (ranges.hasNext())
-        {
-            range = ranges.next();
-            range.ensureHashInitialised();
-        }
+        for (MerkleTree.TreeRange leaf : leaves)
+            leaf.ensureHashInitialised();
     }
 
     /**
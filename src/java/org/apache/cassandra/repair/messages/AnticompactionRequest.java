@@ -0,0 +1,68 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.repair.messages;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+import org.apache.cassandra.db.TypeSizes;
+import org.apache.cassandra.repair.RepairJobDesc;
+
+/**
+ * Body part of ANTICOMPACTION_REQUEST repair message.
+ * Sent once an incremental repair job succeeded, to ask each replica to split the sstables it
+ * validated into a part within the repaired range, marked repaired at {@code repairedAt}, and
+ * the rest, which stays unrepaired.
+ *
+ * @since 2.1
+ */
+public class AnticompactionRequest extends RepairMessage
+{
+    public static MessageSerializer serializer = new AnticompactionRequestSerializer();
+
+    public final long repairedAt;
+
+    public AnticompactionRequest(RepairJobDesc desc, long repairedAt)
+    {
+        super(Type.ANTICOMPACTION_REQUEST, desc);
+        this.repairedAt = repairedAt;
+    }
+
+    public static class AnticompactionRequestSerializer implements MessageSerializer<AnticompactionRequest>
+    {
+        public void serialize(AnticompactionRequest message, DataOutput out, int version) throws IOException
+        {
+            RepairJobDesc.serializer.serialize(message.desc, out, version);
+            out.writeLong(message.repairedAt);
+        }
+
+        public AnticompactionRequest deserialize(DataInput in, int version) throws IOException
+        {
+            RepairJobDesc desc = RepairJobDesc.serializer.deserialize(in, version);
+            return new AnticompactionRequest(desc, in.readLong());
+        }
+
+        public long serializedSize(AnticompactionRequest message, int version)
+        {
+            long size = RepairJobDesc.serializer.serializedSize(message.desc, version);
+            size += TypeSizes.NATIVE.sizeof(message.repairedAt);
+            return size;
+        }
+    }
+}
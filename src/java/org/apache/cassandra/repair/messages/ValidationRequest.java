@@ -22,7 +22,9 @@ import java.io.DataOutput;
 import java.io.IOException;
 
 import org.apache.cassandra.db.TypeSizes;
+import org.apache.cassandra.net.MessagingService;
 import org.apache.cassandra.repair.RepairJobDesc;
+import org.apache.cassandra.repair.Validator;
 
 /**
  * ValidationRequest
@@ -34,11 +36,21 @@ public class ValidationRequest extends RepairMessage
     public static MessageSerializer serializer = new ValidationRequestSerializer();
 
     public final int gcBefore;
+    /** if true, only the sstables that have not been repaired yet are validated */
+    public final boolean incremental;
+    public final Validator.HashAlgorithm hashAlgorithm;
 
     public ValidationRequest(RepairJobDesc desc, int gcBefore)
+    {
+        this(desc, gcBefore, false, Validator.HashAlgorithm.SHA256);
+    }
+
+    public ValidationRequest(RepairJobDesc desc, int gcBefore, boolean incremental, Validator.HashAlgorithm hashAlgorithm)
     {
         super(Type.VALIDATION_REQUEST, desc);
         this.gcBefore = gcBefore;
+        this.incremental = incremental;
+        this.hashAlgorithm = hashAlgorithm;
     }
 
     @Override
@@ -48,13 +60,14 @@ public class ValidationRequest extends RepairMessage
         if (o == null || getClass() != o.getClass()) return false;
 
         ValidationRequest that = (ValidationRequest) o;
-        return gcBefore == that.gcBefore;
+        return gcBefore == that.gcBefore && incremental == that.incremental && hashAlgorithm == that.hashAlgorithm;
     }
 
     @Override
     public int hashCode()
     {
-        return gcBefore;
+        int result = 31 * gcBefore + (incremental ? 1 : 0);
+        return 31 * result + hashAlgorithm.hashCode();
     }
 
     public static class ValidationRequestSerializer implements MessageSerializer<ValidationRequest>
@@ -63,18 +76,31 @@ public class ValidationRequest extends RepairMessage
         {
             RepairJobDesc.serializer.serialize(message.desc, out, version);
             out.writeInt(message.gcBefore);
+            if (version >= MessagingService.VERSION_21)
+            {
+                out.writeBoolean(message.incremental);
+                out.writeByte(message.hashAlgorithm.ordinal());
+            }
         }
 
         public ValidationRequest deserialize(DataInput dis, int version) throws IOException
         {
             RepairJobDesc desc = RepairJobDesc.serializer.deserialize(dis, version);
-            return new ValidationRequest(desc, dis.readInt());
+            int gcBefore = dis.readInt();
+            if (version < MessagingService.VERSION_21)
+                return new ValidationRequest(desc, gcBefore);
+
+            boolean incremental = dis.readBoolean();
+            Validator.HashAlgorithm hashAlgorithm = Validator.HashAlgorithm.values()[dis.readByte()];
+            return new ValidationRequest(desc, gcBefore, incremental, hashAlgorithm);
         }
 
         public long serializedSize(ValidationRequest message, int version)
         {
             long size = RepairJobDesc.serializer.serializedSize(message.desc, version);
             size += TypeSizes.NATIVE.sizeof(message.gcBefore);
+            if (version >= MessagingService.VERSION_21)
+                size += TypeSizes.NATIVE.sizeof(message.incremental) + 1;
             return size;
         }
     }
@@ -21,16 +21,24 @@ import java.net.InetAddress;
 import java.util.*;
 import java.util.concurrent.*;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.google.common.collect.Multimap;
 import com.google.common.collect.Sets;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import org.apache.cassandra.concurrent.JMXConfigurableThreadPoolExecutor;
 import org.apache.cassandra.concurrent.NamedThreadFactory;
 import org.apache.cassandra.config.DatabaseDescriptor;
+import org.apache.cassandra.db.ColumnFamilyStore;
+import org.apache.cassandra.db.Keyspace;
+import org.apache.cassandra.db.compaction.CompactionManager;
 import org.apache.cassandra.dht.Range;
 import org.apache.cassandra.dht.Token;
 import org.apache.cassandra.gms.FailureDetector;
 import org.apache.cassandra.gms.Gossiper;
+import org.apache.cassandra.io.sstable.SSTableReader;
 import org.apache.cassandra.locator.TokenMetadata;
 import org.apache.cassandra.repair.*;
 import org.apache.cassandra.repair.messages.RepairMessage;
@@ -54,9 +62,14 @@ import org.apache.cassandra.utils.FBUtilities;
  */
 public class ActiveRepairService
 {
+    private static final Logger logger = LoggerFactory.getLogger(ActiveRepairService.class);
+
     // singleton enforcement
     public static final ActiveRepairService instance = new ActiveRepairService();
 
+    /** The repairedAt of the sstables whose data has not been (incrementally) repaired */
+    public static final long UNREPAIRED_SSTABLE = 0;
+
     private static final ThreadPoolExecutor executor;
     static
     {
@@ -78,12 +91,19 @@ public class ActiveRepairService
      */
     private final ConcurrentMap<UUID, RepairSession> sessions;
 
+    /**
+     * The generations of the sstables validated by an incremental repair job on this node, which are the ones
+     * to anticompact if the job succeeds.  The coordinator may never tell us about a failed job, so these expire.
+     */
+    private final Cache<RepairJobDesc, Set<Integer>> validatedSSTables;
+
     /**
      * Protected constructor. Use ActiveRepairService.instance.
      */
     protected ActiveRepairService()
     {
         sessions = new ConcurrentHashMap<>();
+        validatedSSTables = CacheBuilder.newBuilder().expireAfterWrite(1, TimeUnit.DAYS).build();
     }
 
     /**
@@ -93,7 +113,18 @@ public class ActiveRepairService
      */
     public RepairFuture submitRepairSession(Range<Token> range, String keyspace, boolean isSequential, Collection<String> dataCenters, String... cfnames)
     {
-        RepairSession session = new RepairSession(range, keyspace, isSequential, dataCenters, cfnames);
+        return submitRepairSession(range, keyspace, isSequential, false, dataCenters, cfnames);
+    }
+
+    /**
+     * Requests repairs for the given keyspace and column families.
+     *
+     * @param isIncremental if true, only the data that has not been repaired yet is repaired, and then marked so
+     * @return Future for asynchronous call or null if there is no need to repair
+     */
+    public RepairFuture submitRepairSession(Range<Token> range, String keyspace, boolean isSequential, boolean isIncremental, Collection<String> dataCenters, String... cfnames)
+    {
+        RepairSession session = new RepairSession(range, keyspace, isSequential, isIncremental, dataCenters, cfnames);
         if (session.endpoints.isEmpty())
             return null;
         RepairFuture futureTask = new RepairFuture(session);
@@ -127,7 +158,7 @@ public class ActiveRepairService
     // add it to the sessions (avoid NPE in tests)
     RepairFuture submitArtificialRepairSession(RepairJobDesc desc)
     {
-        RepairSession session = new RepairSession(desc.sessionId, desc.range, desc.keyspace, false, null, new String[]{desc.columnFamily});
+        RepairSession session = new RepairSession(desc.sessionId, desc.range, desc.keyspace, false, false, null, new String[]{desc.columnFamily});
         sessions.put(session.getId(), session);
         RepairFuture futureTask = new RepairFuture(session);
         executor.execute(futureTask);
@@ -186,6 +217,42 @@ public class ActiveRepairService
         return neighbors;
     }
 
+    /**
+     * Remembers the sstables validated for an incremental repair job, for them to be anticompacted if it succeeds.
+     */
+    public void recordValidatedSSTables(RepairJobDesc desc, Collection<SSTableReader> sstables)
+    {
+        Set<Integer> generations = new HashSet<>(sstables.size());
+        for (SSTableReader sstable : sstables)
+            generations.add(sstable.descriptor.generation);
+        validatedSSTables.put(desc, generations);
+    }
+
+    /**
+     * Marks the data validated by this node for the given (successful) incremental repair job as repaired.
+     *
+     * @return a future on the completion of the anticompaction, or null if nothing was validated for that job
+     */
+    public Future<?> doAntiCompaction(RepairJobDesc desc, long repairedAt)
+    {
+        Set<Integer> generations = validatedSSTables.getIfPresent(desc);
+        if (generations == null)
+        {
+            logger.warn("[repair #{}] Nothing is known to have been validated for {}, skipping anticompaction", desc.sessionId, desc.columnFamily);
+            return null;
+        }
+        validatedSSTables.invalidate(desc);
+
+        ColumnFamilyStore cfs = Keyspace.open(desc.keyspace).getColumnFamilyStore(desc.columnFamily);
+        List<SSTableReader> sstables = new ArrayList<>(generations.size());
+        for (SSTableReader sstable : cfs.getSSTables())
+        {
+            if (generations.contains(sstable.descriptor.generation))
+                sstables.add(sstable);
+        }
+        return CompactionManager.instance.submitAntiCompaction(cfs, desc.range, sstables, repairedAt);
+    }
+
     public void handleMessage(InetAddress endpoint, RepairMessage message)
     {
         RepairJobDesc desc = message.desc;
@@ -27,12 +27,18 @@ public interface CacheServiceMBean
     public int getKeyCacheSavePeriodInSeconds();
     public void setKeyCacheSavePeriodInSeconds(int kcspis);
 
+    public int getCounterCacheSavePeriodInSeconds();
+    public void setCounterCacheSavePeriodInSeconds(int ccspis);
+
     public int getRowCacheKeysToSave();
     public void setRowCacheKeysToSave(int rckts);
 
     public int getKeyCacheKeysToSave();
     public void setKeyCacheKeysToSave(int kckts);
 
+    public int getCounterCacheKeysToSave();
+    public void setCounterCacheKeysToSave(int cckts);
+
     /**
      * invalidate the key cache; for use after invalidating row cache
      */
@@ -43,12 +49,19 @@ public interface CacheServiceMBean
      */
     public void invalidateRowCache();
 
+    /**
+     * invalidate the counter cache
+     */
+    public void invalidateCounterCache();
+
     public void setRowCacheCapacityInMB(long capacity);
 
     public void setKeyCacheCapacityInMB(long capacity);
 
+    public void setCounterCacheCapacityInMB(long capacity);
+
     /**
-     * save row and key caches
+     * save row, key and counter caches
      *
      * @throws ExecutionException when attempting to retrieve the result of a task that aborted by throwing an exception
      * @throws InterruptedException when a thread is waiting, sleeping, or otherwise occupied, and the thread is interrupted, either before or during the activity.
@@ -261,6 +261,10 @@ public class MigrationManager implements IEndpointStateChangeSubscriber
 
         oldCfm.validateCompatility(cfm);
 
+        // thrift and CQL2 have no bloom_filter_type, so updates coming from them keep the table's
+        if (fromThrift)
+            cfm.bloomFilterType(oldCfm.getBloomFilterType());
+
         logger.info(String.format("Update ColumnFamily '%s/%s' From %s To %s", cfm.ksName, cfm.cfName, oldCfm, cfm));
         announce(oldCfm.toSchemaUpdate(cfm, FBUtilities.timestampMicros(), fromThrift));
     }
@@ -259,6 +259,12 @@ public interface StorageServiceMBean extends NotificationEmitter
      */
     public int forceRepairAsync(String keyspace, boolean isSequential, Collection<String> dataCenters, boolean primaryRange, String... columnFamilies);
 
+    /**
+     * Same as forceRepairAsync, but if incremental is true, only repairs the data that has not been repaired
+     * yet, and marks it repaired once done.
+     */
+    public int forceRepairAsync(String keyspace, boolean isSequential, Collection<String> dataCenters, boolean primaryRange, boolean incremental, String... columnFamilies);
+
     /**
      * Same as forceRepairAsync, but handles a specified range
      */
@@ -285,8 +285,9 @@ public class ConnectionHandler
                 {
                     // receive message
                     StreamMessage message = StreamMessage.deserialize(in, protocolVersion, session);
-                    // Might be null if there is an error during streaming (see FileMessage.deserialize). It's ok
-                    // to ignore here since we'll have asked for a retry.
+                    // Might be null if there is an error during streaming, or if the file is still being written
+                    // (see FileMessage.deserialize). It's ok to ignore here since we'll have asked for a retry, or
+                    // the session will be told about the file once it is written.
                     if (message != null)
                     {
                         logger.debug("[Stream #{}] Received {}", session.planId(), message);
@@ -0,0 +1,167 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.streaming;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import com.google.common.base.Throwables;
+
+import org.apache.cassandra.cache.RowCacheKey;
+import org.apache.cassandra.config.Schema;
+import org.apache.cassandra.db.ColumnFamilyStore;
+import org.apache.cassandra.db.DecoratedKey;
+import org.apache.cassandra.db.Directories;
+import org.apache.cassandra.db.Keyspace;
+import org.apache.cassandra.io.sstable.Component;
+import org.apache.cassandra.io.sstable.Descriptor;
+import org.apache.cassandra.io.sstable.SSTable;
+import org.apache.cassandra.io.sstable.SSTableReader;
+import org.apache.cassandra.io.sstable.SSTableWriter;
+import org.apache.cassandra.io.util.FileUtils;
+import org.apache.cassandra.service.ActiveRepairService;
+import org.apache.cassandra.service.CacheService;
+import org.apache.cassandra.streaming.messages.FileMessageHeader;
+import org.apache.cassandra.utils.Pair;
+
+/**
+ * EntireSSTableStreamReader writes the components of an SSTable sent by {@link EntireSSTableStreamWriter}
+ * straight to disk, then opens the SSTable they make up.
+ */
+public class EntireSSTableStreamReader extends StreamReader
+{
+    private final List<Pair<Component, Long>> components;
+
+    public EntireSSTableStreamReader(FileMessageHeader header, StreamSession session)
+    {
+        super(header, session);
+        this.components = header.components;
+    }
+
+    /**
+     * @param channel where this reads data from
+     * @return SSTable transferred
+     * @throws IOException if reading the remote sstable fails. Will throw an RTE if local write fails.
+     */
+    @Override
+    public SSTableReader read(ReadableByteChannel channel) throws IOException
+    {
+        long totalSize = totalSize();
+
+        Pair<String, String> kscf = Schema.instance.getCF(cfId);
+        ColumnFamilyStore cfs = Keyspace.open(kscf.left).getColumnFamilyStore(kscf.right);
+
+        desc = createDescriptor(cfs, totalSize);
+        Set<Component> written = new HashSet<>();
+        long bytesRead = 0;
+        try
+        {
+            for (Pair<Component, Long> component : components)
+            {
+                RandomAccessFile file = new RandomAccessFile(desc.filenameFor(component.left), "rw");
+                written.add(component.left);
+                try
+                {
+                    FileChannel fc = file.getChannel();
+                    long length = component.right;
+                    long position = 0;
+                    while (position < length)
+                    {
+                        long lastRead = fc.transferFrom(channel, position, length - position);
+                        if (lastRead <= 0)
+                            throw new EOFException(String.format("Stream ended with %d bytes of %d received for %s",
+                                                                 position, length, desc.filenameFor(component.left)));
+                        position += lastRead;
+                        bytesRead += lastRead;
+                        session.progress(desc, ProgressInfo.Direction.IN, bytesRead, totalSize);
+                    }
+                    fc.force(true);
+                }
+                finally
+                {
+                    FileUtils.closeQuietly(file);
+                }
+            }
+        }
+        catch (Throwable e)
+        {
+            SSTable.delete(desc, written);
+            drain(Channels.newInputStream(channel), bytesRead);
+            if (e instanceof IOException)
+                throw (IOException) e;
+            else
+                throw Throwables.propagate(e);
+        }
+
+        Descriptor newDesc = desc.asTemporary(false);
+        SSTableWriter.rename(desc, newDesc, written);
+
+        // like the SSTables rebuilt row by row, the received one starts unleveled and unrepaired
+        newDesc.getMetadataSerializer().mutateLevel(newDesc, 0);
+        if (newDesc.version.hasRepairedAt)
+            newDesc.getMetadataSerializer().mutateRepairedAt(newDesc, ActiveRepairService.UNREPAIRED_SSTABLE);
+
+        SSTableReader sstable = SSTableReader.open(newDesc);
+        invalidateCachedRows(cfs, sstable);
+        return sstable;
+    }
+
+    private Descriptor createDescriptor(ColumnFamilyStore cfs, long totalSize) throws IOException
+    {
+        Directories.DataDirectory localDir = cfs.directories.getWriteableLocation();
+        if (localDir == null)
+            throw new IOException("Insufficient disk space to store " + totalSize + " bytes");
+        Descriptor tmpDesc = Descriptor.fromFilename(cfs.getTempSSTablePath(cfs.directories.getLocationForDisk(localDir)));
+
+        // keep the version of the files as they are
+        return new Descriptor(inputVersion, tmpDesc.directory, tmpDesc.ksname, tmpDesc.cfname, tmpDesc.generation, true);
+    }
+
+    /**
+     * The rows are not seen one by one, so drop any cached row the SSTable may cover.
+     */
+    private static void invalidateCachedRows(ColumnFamilyStore cfs, SSTableReader sstable)
+    {
+        for (RowCacheKey key : CacheService.instance.rowCache.getKeySet())
+        {
+            if (!key.cfId.equals(cfs.metadata.cfId))
+                continue;
+
+            DecoratedKey dk = cfs.partitioner.decorateKey(ByteBuffer.wrap(key.key));
+            if (dk.compareTo(sstable.first) >= 0 && dk.compareTo(sstable.last) <= 0)
+                cfs.invalidateCachedRow(dk);
+        }
+    }
+
+    @Override
+    protected long totalSize()
+    {
+        long size = 0;
+        for (Pair<Component, Long> component : components)
+            size += component.right;
+        return size;
+    }
+}
@@ -0,0 +1,154 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.streaming;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.cassandra.dht.Range;
+import org.apache.cassandra.dht.Token;
+import org.apache.cassandra.io.sstable.Component;
+import org.apache.cassandra.io.sstable.Descriptor;
+import org.apache.cassandra.io.sstable.SSTableReader;
+import org.apache.cassandra.io.util.FileUtils;
+import org.apache.cassandra.utils.Pair;
+
+/**
+ * EntireSSTableStreamWriter sends every component of the SSTable as it is on disk, letting the kernel copy
+ * the files to the channel, so that the rows need not be read nor rewritten on either side.
+ */
+public class EntireSSTableStreamWriter extends StreamWriter
+{
+    // the components an SSTable can be rebuilt from on the receiving side; custom ones are left out
+    private static final List<Component> STREAMED_COMPONENTS = Arrays.asList(Component.DATA,
+                                                                             Component.PRIMARY_INDEX,
+                                                                             Component.PARTITION_INDEX,
+                                                                             Component.FILTER,
+                                                                             Component.COMPRESSION_INFO,
+                                                                             Component.STATS,
+                                                                             Component.DIGEST,
+                                                                             Component.CRC,
+                                                                             Component.SUMMARY,
+                                                                             Component.TOC);
+
+    private static final int TRANSFER_CHUNK_SIZE = 1024 * 1024;
+
+    private final List<Pair<Component, Long>> components;
+
+    public EntireSSTableStreamWriter(SSTableReader sstable, List<Pair<Component, Long>> components, StreamSession session)
+    {
+        super(sstable, Collections.<Pair<Long, Long>>emptyList(), session);
+        this.components = components;
+    }
+
+    /**
+     * @return true if {@code sstable} can be sent as a whole to the peer of a session transferring {@code ranges}
+     */
+    public static boolean canStream(SSTableReader sstable, Collection<Range<Token>> ranges)
+    {
+        // the receiver needs to reset the counter shards of the peer, which means rewriting every cell
+        if (sstable.metadata.getDefaultValidator().isCommutative())
+            return false;
+        // make sure the receiver can read it
+        if (!sstable.descriptor.version.equals(Descriptor.Version.CURRENT))
+            return false;
+
+        for (Range<Token> range : Range.normalize(ranges))
+        {
+            // normalized ranges don't wrap, so all the keys between the first and last ones are in the same range
+            if (range.contains(sstable.first.token) && range.contains(sstable.last.token))
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * @return the components of {@code sstable} that are on disk and should be sent
+     */
+    public static List<Component> streamedComponents(SSTableReader sstable)
+    {
+        List<Component> components = new ArrayList<>(STREAMED_COMPONENTS.size());
+        for (Component component : STREAMED_COMPONENTS)
+        {
+            if (new File(sstable.descriptor.filenameFor(component)).exists())
+                components.add(component);
+        }
+        return components;
+    }
+
+    /**
+     * Stream every component of the SSTable to the given channel, in the order of the header.
+     *
+     * @param channel where this writes data to
+     * @throws IOException on any I/O error
+     */
+    @Override
+    public void write(WritableByteChannel channel) throws IOException
+    {
+        long totalSize = totalSize();
+        long progress = 0L;
+
+        for (Pair<Component, Long> component : components)
+        {
+            RandomAccessFile file = new RandomAccessFile(sstable.descriptor.filenameFor(component.left), "r");
+            try
+            {
+                FileChannel fc = file.getChannel();
+                long length = component.right;
+                long bytesTransferred = 0;
+                while (bytesTransferred < length)
+                {
+                    int toTransfer = (int) Math.min(TRANSFER_CHUNK_SIZE, length - bytesTransferred);
+                    limiter.acquire(toTransfer);
+                    long lastWrite = fc.transferTo(bytesTransferred, toTransfer, channel);
+                    // transferTo returns 0 rather than failing when the file is shorter than announced
+                    if (lastWrite <= 0)
+                        throw new IOException(String.format("Could not send %s: %d bytes of %d sent",
+                                                            sstable.descriptor.filenameFor(component.left), bytesTransferred, length));
+                    bytesTransferred += lastWrite;
+                    progress += lastWrite;
+                    session.progress(sstable.descriptor, ProgressInfo.Direction.OUT, progress, totalSize);
+                }
+            }
+            finally
+            {
+                FileUtils.closeQuietly(file);
+            }
+        }
+
+        // release reference only when completed successfully
+        sstable.releaseReference();
+    }
+
+    @Override
+    protected long totalSize()
+    {
+        long size = 0;
+        for (Pair<Component, Long> component : components)
+            size += component.right;
+        return size;
+    }
+}
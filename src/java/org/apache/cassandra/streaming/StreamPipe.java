@@ -0,0 +1,176 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.streaming;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.cassandra.metrics.StreamingMetrics;
+
+/**
+ * A bounded buffer of chunks between the thread reading a file off the network and the one building the SSTable
+ * from it.  The reading thread blocks when the buffer is full; once the building side is closed, what is
+ * written is discarded instead, so that the reading thread can still consume the rest of the file.
+ */
+public class StreamPipe
+{
+    public static final int CHUNK_SIZE = 64 * 1024;
+    // up to 4MB buffered per file
+    static final int MAX_CHUNKS = 64;
+
+    private static final byte[] EOF = new byte[0];
+
+    private final BlockingQueue<byte[]> chunks = new ArrayBlockingQueue<>(MAX_CHUNKS);
+    private final Input input = new Input();
+    private volatile boolean closed;
+    private volatile IOException failure;
+
+    /**
+     * Hands a chunk to the building side, blocking while the buffer is full.
+     */
+    public void write(byte[] chunk) throws IOException
+    {
+        assert chunk.length > 0;
+        StreamingMetrics.incomingReadRate.mark(chunk.length);
+        put(chunk);
+    }
+
+    /**
+     * Tells the building side that the whole file has been written.
+     */
+    public void finish() throws IOException
+    {
+        put(EOF);
+    }
+
+    /**
+     * Tells the building side that the rest of the file will not come.
+     */
+    public void fail(IOException e)
+    {
+        failure = e;
+        try
+        {
+            put(EOF);
+        }
+        catch (IOException ignore) {}
+    }
+
+    private void put(byte[] chunk) throws IOException
+    {
+        try
+        {
+            while (!closed)
+            {
+                if (chunks.offer(chunk, 100, TimeUnit.MILLISECONDS))
+                    return;
+            }
+        }
+        catch (InterruptedException e)
+        {
+            throw new IOException(e);
+        }
+    }
+
+    /**
+     * @return the stream the building side reads the file from
+     */
+    public InputStream input()
+    {
+        return input;
+    }
+
+    private class Input extends InputStream
+    {
+        private byte[] current;
+        private int position;
+
+        private boolean nextChunk() throws IOException
+        {
+            if (current == EOF)
+                return false;
+
+            try
+            {
+                current = null;
+                while (current == null)
+                {
+                    if (closed)
+                        current = EOF;
+                    else
+                        current = chunks.poll(100, TimeUnit.MILLISECONDS);
+                }
+            }
+            catch (InterruptedException e)
+            {
+                throw new EOFException("No chunk available");
+            }
+            position = 0;
+
+            if (current == EOF)
+            {
+                if (failure != null)
+                    throw failure;
+                return false;
+            }
+            StreamingMetrics.incomingWriteRate.mark(current.length);
+            return true;
+        }
+
+        public int read() throws IOException
+        {
+            if ((current == null || position == current.length) && !nextChunk())
+                return -1;
+            return current[position++] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException
+        {
+            if (len == 0)
+                return 0;
+            if ((current == null || position == current.length) && !nextChunk())
+                return -1;
+
+            int toRead = Math.min(len, current.length - position);
+            System.arraycopy(current, position, b, off, toRead);
+            position += toRead;
+            return toRead;
+        }
+
+        @Override
+        public int available()
+        {
+            return current == null || current == EOF ? 0 : current.length - position;
+        }
+
+        /**
+         * Stops the building side: what is still in the buffer, and whatever is written from now on, is dropped.
+         */
+        @Override
+        public void close()
+        {
+            closed = true;
+            chunks.clear();
+        }
+    }
+}
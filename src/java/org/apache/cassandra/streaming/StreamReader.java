@@ -25,8 +25,13 @@ import java.nio.channels.Channels;
 import java.nio.channels.ReadableByteChannel;
 import java.util.Collection;
 import java.util.UUID;
+import java.util.concurrent.Callable;
 
 import com.google.common.base.Throwables;
+import com.google.common.io.ByteStreams;
+import com.google.common.io.CountingInputStream;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
 import com.ning.compress.lzf.LZFInputStream;
 
 import org.apache.cassandra.config.Schema;
@@ -38,6 +43,7 @@ import org.apache.cassandra.io.sstable.Component;
 import org.apache.cassandra.io.sstable.Descriptor;
 import org.apache.cassandra.io.sstable.SSTableReader;
 import org.apache.cassandra.io.sstable.SSTableWriter;
+import org.apache.cassandra.metrics.StreamingMetrics;
 import org.apache.cassandra.service.StorageService;
 import org.apache.cassandra.streaming.messages.FileMessageHeader;
 import org.apache.cassandra.utils.ByteBufferUtil;
@@ -72,6 +78,89 @@ public class StreamReader
      * @throws IOException if reading the remote sstable fails. Will throw an RTE if local write fails.
      */
     public SSTableReader read(ReadableByteChannel channel) throws IOException
+    {
+        CountingInputStream in = new CountingInputStream(wireInput(channel));
+        try
+        {
+            return build(in);
+        }
+        catch (Throwable e)
+        {
+            drain(in, in.getCount());
+            if (e instanceof IOException)
+                throw (IOException) e;
+            else
+                throw Throwables.propagate(e);
+        }
+    }
+
+    /**
+     * Reads the file off the channel on the calling thread, while the SSTable is built from what was read on
+     * {@code executor}.  The calling thread only waits for the building one when it falls behind by more
+     * than a {@link StreamPipe} holds, and returns once the whole file has been read.
+     * If reading the file fails, the returned future fails with the error once the building side has
+     * stopped, so that the failure is reported in one place only.
+     *
+     * @param channel where this reads data from
+     * @return the SSTable being built
+     */
+    public ListenableFuture<SSTableReader> readAsync(ReadableByteChannel channel, ListeningExecutorService executor)
+    {
+        final StreamPipe pipe = new StreamPipe();
+        ListenableFuture<SSTableReader> future = executor.submit(new Callable<SSTableReader>()
+        {
+            public SSTableReader call() throws Exception
+            {
+                InputStream in = pipe.input();
+                StreamingMetrics.activeInboundWriters.inc();
+                try
+                {
+                    return build(in);
+                }
+                finally
+                {
+                    // let the reading side skip whatever we did not read if we failed
+                    in.close();
+                    StreamingMetrics.activeInboundWriters.dec();
+                }
+            }
+        });
+
+        try
+        {
+            InputStream in = wireInput(channel);
+            long remaining = totalSize();
+            while (remaining > 0)
+            {
+                byte[] chunk = new byte[(int) Math.min(StreamPipe.CHUNK_SIZE, remaining)];
+                ByteStreams.readFully(in, chunk);
+                pipe.write(chunk);
+                remaining -= chunk.length;
+            }
+            pipe.finish();
+        }
+        catch (Throwable e)
+        {
+            pipe.fail(e instanceof IOException ? (IOException) e : new IOException(e));
+        }
+        return future;
+    }
+
+    /**
+     * @return the stream of the bytes of the file, as counted by {@link #totalSize()}
+     */
+    protected InputStream wireInput(ReadableByteChannel channel) throws IOException
+    {
+        return new LZFInputStream(Channels.newInputStream(channel));
+    }
+
+    /**
+     * Writes the SSTable from the bytes of the file.
+     *
+     * @param input the stream returned by {@link #wireInput(ReadableByteChannel)}, or what was read from it
+     * @return SSTable transferred
+     */
+    protected SSTableReader build(InputStream input) throws IOException
     {
         long totalSize = totalSize();
 
@@ -79,8 +168,7 @@ public class StreamReader
         ColumnFamilyStore cfs = Keyspace.open(kscf.left).getColumnFamilyStore(kscf.right);
 
         SSTableWriter writer = createWriter(cfs, totalSize);
-        DataInputStream dis = new DataInputStream(new LZFInputStream(Channels.newInputStream(channel)));
-        BytesReadTracker in = new BytesReadTracker(dis);
+        BytesReadTracker in = new BytesReadTracker(new DataInputStream(input));
         try
         {
             while (in.getBytesRead() < totalSize)
@@ -94,7 +182,6 @@ public class StreamReader
         catch (Throwable e)
         {
             writer.abort();
-            drain(dis, in.getBytesRead());
             if (e instanceof IOException)
                 throw (IOException) e;
             else
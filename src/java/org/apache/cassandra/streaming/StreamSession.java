@@ -20,9 +20,12 @@ package org.apache.cassandra.streaming;
 import java.io.IOException;
 import java.net.InetAddress;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Future;
 
 import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -30,6 +33,7 @@ import org.apache.cassandra.concurrent.DebuggableThreadPoolExecutor;
 import org.apache.cassandra.config.DatabaseDescriptor;
 import org.apache.cassandra.db.ColumnFamilyStore;
 import org.apache.cassandra.db.Keyspace;
+import org.apache.cassandra.db.Memtable;
 import org.apache.cassandra.db.RowPosition;
 import org.apache.cassandra.dht.AbstractBounds;
 import org.apache.cassandra.dht.Range;
@@ -115,6 +119,10 @@ public class StreamSession implements IEndpointStateChangeSubscriber, IFailureDe
     // is directly handled by the ConnectionHandler incoming and outgoing threads.
     private static final DebuggableThreadPoolExecutor streamExecutor = DebuggableThreadPoolExecutor.createWithFixedPoolSize("StreamConnectionEstablisher",
                                                                                                                             FBUtilities.getAvailableProcessors());
+    // Executor building the SSTables of incoming files, so that the incoming handler threads can read the next file
+    // off the network while the previous ones are being written.
+    public static final ListeningExecutorService receiveExecutor = MoreExecutors.listeningDecorator(DebuggableThreadPoolExecutor.createWithFixedPoolSize("StreamReceiveWriter",
+                                                                                                                                                       FBUtilities.getAvailableProcessors()));
     public final InetAddress peer;
 
     // should not be null when session is started
@@ -125,7 +133,8 @@ public class StreamSession implements IEndpointStateChangeSubscriber, IFailureDe
     // streaming tasks are created and managed per ColumnFamily ID
     private final Map<UUID, StreamTransferTask> transfers = new HashMap<>();
     // data receivers, filled after receiving prepare message
-    private final Map<UUID, StreamReceiveTask> receivers = new HashMap<>();
+    // files may be received by several threads at once
+    private final Map<UUID, StreamReceiveTask> receivers = new ConcurrentHashMap<>();
     private final StreamingMetrics metrics;
 
     public final ConnectionHandler handler;
@@ -251,6 +260,8 @@ public class StreamSession implements IEndpointStateChangeSubscriber, IFailureDe
             for (Range<Token> range : normalizedRanges)
                 rowBoundsList.add(range.toRowBounds());
             ColumnFamilyStore.ViewFragment view = cfStore.markReferenced(rowBoundsList);
+            // only the sstables are streamed
+            Memtable.releaseReferences(view.memtables);
             sstables.addAll(view.sstables);
         }
         addTransferFiles(normalizedRanges, sstables);
@@ -267,7 +278,13 @@ public class StreamSession implements IEndpointStateChangeSubscriber, IFailureDe
     {
         List<SSTableStreamingSections> sstableDetails = new ArrayList<>(sstables.size());
         for (SSTableReader sstable : sstables)
-            sstableDetails.add(new SSTableStreamingSections(sstable, sstable.getPositionsForRanges(ranges), sstable.estimatedKeysForRanges(ranges)));
+        {
+            boolean entireSSTable = DatabaseDescriptor.streamEntireSSTables() && EntireSSTableStreamWriter.canStream(sstable, ranges);
+            sstableDetails.add(new SSTableStreamingSections(sstable,
+                                                            sstable.getPositionsForRanges(ranges),
+                                                            sstable.estimatedKeysForRanges(ranges),
+                                                            entireSSTable));
+        }
 
         addTransferFiles(sstableDetails);
     }
@@ -290,7 +307,7 @@ public class StreamSession implements IEndpointStateChangeSubscriber, IFailureDe
                 task = new StreamTransferTask(this, cfId);
                 transfers.put(cfId, task);
             }
-            task.addTransferFile(details.sstable, details.estimatedKeys, details.sections);
+            task.addTransferFile(details.sstable, details.estimatedKeys, details.sections, details.entireSSTable);
         }
     }
 
@@ -299,12 +316,20 @@ public class StreamSession implements IEndpointStateChangeSubscriber, IFailureDe
         public final SSTableReader sstable;
         public final List<Pair<Long, Long>> sections;
         public final long estimatedKeys;
+        /** if true, all the components of the SSTable are sent as they are on disk */
+        public final boolean entireSSTable;
 
         public SSTableStreamingSections(SSTableReader sstable, List<Pair<Long, Long>> sections, long estimatedKeys)
+        {
+            this(sstable, sections, estimatedKeys, false);
+        }
+
+        public SSTableStreamingSections(SSTableReader sstable, List<Pair<Long, Long>> sections, long estimatedKeys, boolean entireSSTable)
         {
             this.sstable = sstable;
             this.sections = sections;
             this.estimatedKeys = estimatedKeys;
+            this.entireSSTable = entireSSTable;
         }
     }
 
@@ -458,7 +483,7 @@ public class StreamSession implements IEndpointStateChangeSubscriber, IFailureDe
      *
      * @param message received file
      */
-    public void receive(FileMessage message)
+    public synchronized void receive(FileMessage message)
     {
         long headerSize = message.header.size();
         StreamingMetrics.totalIncomingBytes.inc(headerSize);
@@ -514,7 +539,7 @@ public class StreamSession implements IEndpointStateChangeSubscriber, IFailureDe
         closeSession(State.FAILED);
     }
 
-    public void doRetry(FileMessageHeader header, Throwable e)
+    public synchronized void doRetry(FileMessageHeader header, Throwable e)
     {
         logger.warn("[Stream #{}] Retrying for following error", planId(), e);
         // retry
@@ -42,6 +42,8 @@ public class CompressedInputStream extends InputStream
     private final CompressionInfo info;
     // chunk buffer
     private final BlockingQueue<byte[]> dataBuffer;
+    // put in the chunk buffer when the source fails before all chunks are read
+    private static final byte[] POISON_PILL = new byte[0];
 
     // uncompressed bytes
     private byte[] buffer;
@@ -81,14 +83,18 @@ public class CompressedInputStream extends InputStream
     {
         if (current >= bufferOffset + buffer.length || validBufferBytes == -1)
         {
+            byte[] compressed;
             try
             {
-                decompress(dataBuffer.take());
+                compressed = dataBuffer.take();
             }
             catch (InterruptedException e)
             {
                 throw new EOFException("No chunk available");
             }
+            if (compressed == POISON_PILL)
+                throw new EOFException("No chunk available");
+            decompress(compressed);
         }
 
         assert current >= bufferOffset && current < bufferOffset + validBufferBytes;
@@ -162,7 +168,25 @@ public class CompressedInputStream extends InputStream
 
                 int bufferRead = 0;
                 while (bufferRead < readLength)
-                    bufferRead += source.read(compressedWithCRC, bufferRead, readLength - bufferRead);
+                {
+                    int r;
+                    try
+                    {
+                        r = source.read(compressedWithCRC, bufferRead, readLength - bufferRead);
+                    }
+                    catch (IOException e)
+                    {
+                        dataBuffer.put(POISON_PILL);
+                        throw e;
+                    }
+                    if (r < 0)
+                    {
+                        // the source ended early: wake up the consumer rather than leaving it waiting forever
+                        dataBuffer.put(POISON_PILL);
+                        return;
+                    }
+                    bufferRead += r;
+                }
                 dataBuffer.put(compressedWithCRC);
             }
         }
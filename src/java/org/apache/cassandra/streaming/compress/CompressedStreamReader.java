@@ -19,6 +19,7 @@ package org.apache.cassandra.streaming.compress;
 
 import java.io.DataInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.nio.channels.Channels;
 import java.nio.channels.ReadableByteChannel;
 
@@ -50,12 +51,21 @@ public class CompressedStreamReader extends StreamReader
         this.compressionInfo = header.compressionInfo;
     }
 
+    /**
+     * The chunks are sent as they are on disk, and decompressed while building the SSTable.
+     */
+    @Override
+    protected InputStream wireInput(ReadableByteChannel channel)
+    {
+        return Channels.newInputStream(channel);
+    }
+
     /**
      * @return SSTable transferred
      * @throws java.io.IOException if reading the remote sstable fails. Will throw an RTE if local write fails.
      */
     @Override
-    public SSTableReader read(ReadableByteChannel channel) throws IOException
+    protected SSTableReader build(InputStream input) throws IOException
     {
         long totalSize = totalSize();
 
@@ -64,7 +74,7 @@ public class CompressedStreamReader extends StreamReader
 
         SSTableWriter writer = createWriter(cfs, totalSize);
 
-        CompressedInputStream cis = new CompressedInputStream(Channels.newInputStream(channel), compressionInfo, inputVersion.hasPostCompressionAdlerChecksums);
+        CompressedInputStream cis = new CompressedInputStream(input, compressionInfo, inputVersion.hasPostCompressionAdlerChecksums);
         BytesReadTracker in = new BytesReadTracker(new DataInputStream(cis));
         try
         {
@@ -86,7 +96,6 @@ public class CompressedStreamReader extends StreamReader
         catch (Throwable e)
         {
             writer.abort();
-            drain(cis, in.getBytesRead());
             if (e instanceof IOException)
                 throw (IOException) e;
             else
@@ -20,14 +20,24 @@ package org.apache.cassandra.streaming.messages;
 import java.io.DataInputStream;
 import java.io.DataOutput;
 import java.io.DataOutputStream;
+import java.io.File;
 import java.io.IOException;
 import java.nio.channels.Channels;
 import java.nio.channels.ReadableByteChannel;
 import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+
 import org.apache.cassandra.io.compress.CompressionMetadata;
+import org.apache.cassandra.io.sstable.Component;
 import org.apache.cassandra.io.sstable.SSTableReader;
+import org.apache.cassandra.streaming.EntireSSTableStreamReader;
+import org.apache.cassandra.streaming.EntireSSTableStreamWriter;
 import org.apache.cassandra.streaming.StreamReader;
 import org.apache.cassandra.streaming.StreamSession;
 import org.apache.cassandra.streaming.StreamWriter;
@@ -43,33 +53,65 @@ public class FileMessage extends StreamMessage
 {
     public static Serializer<FileMessage> serializer = new Serializer<FileMessage>()
     {
-        public FileMessage deserialize(ReadableByteChannel in, int version, StreamSession session) throws IOException
+        public FileMessage deserialize(ReadableByteChannel in, int version, final StreamSession session) throws IOException
         {
             DataInputStream input = new DataInputStream(Channels.newInputStream(in));
-            FileMessageHeader header = FileMessageHeader.serializer.deserialize(input, version);
+            final FileMessageHeader header = FileMessageHeader.serializer.deserialize(input, version);
+            if (header.isEntireSSTable())
+            {
+                // no rows to rebuild: the files are written as fast as they are read
+                try
+                {
+                    return new FileMessage(new EntireSSTableStreamReader(header, session).read(in), header);
+                }
+                catch (Throwable e)
+                {
+                    session.doRetry(header, e);
+                    return null;
+                }
+            }
+
             StreamReader reader = header.compressionInfo == null ? new StreamReader(header, session)
                                           : new CompressedStreamReader(header, session);
-
             try
             {
-                return new FileMessage(reader.read(in), header);
+                // the SSTable is built by another thread, so that we can move on to the next file as soon as this
+                // one is read; the session is told about it once it is built
+                ListenableFuture<SSTableReader> future = reader.readAsync(in, StreamSession.receiveExecutor);
+                Futures.addCallback(future, new FutureCallback<SSTableReader>()
+                {
+                    public void onSuccess(SSTableReader sstable)
+                    {
+                        session.messageReceived(new FileMessage(sstable, header));
+                    }
+
+                    public void onFailure(Throwable e)
+                    {
+                        session.doRetry(header, e);
+                    }
+                });
             }
             catch (Throwable e)
             {
+                // the SSTable could not be handed to a writer, so no callback will report this
                 session.doRetry(header, e);
-                return null;
             }
+            return null;
         }
 
         public void serialize(FileMessage message, WritableByteChannel out, int version, StreamSession session) throws IOException
         {
             DataOutput output = new DataOutputStream(Channels.newOutputStream(out));
             FileMessageHeader.serializer.serialize(message.header, output, version);
-            StreamWriter writer = message.header.compressionInfo == null ?
-                                          new StreamWriter(message.sstable, message.header.sections, session) :
-                                          new CompressedStreamWriter(message.sstable,
-                                                                     message.header.sections,
-                                                                     message.header.compressionInfo, session);
+            StreamWriter writer;
+            if (message.header.isEntireSSTable())
+                writer = new EntireSSTableStreamWriter(message.sstable, message.header.components, session);
+            else if (message.header.compressionInfo == null)
+                writer = new StreamWriter(message.sstable, message.header.sections, session);
+            else
+                writer = new CompressedStreamWriter(message.sstable,
+                                                    message.header.sections,
+                                                    message.header.compressionInfo, session);
             writer.write(out);
             session.fileSent(message.header);
         }
@@ -86,12 +128,28 @@ public class FileMessage extends StreamMessage
     }
 
     public FileMessage(SSTableReader sstable, int sequenceNumber, long estimatedKeys, List<Pair<Long, Long>> sections)
+    {
+        this(sstable, sequenceNumber, estimatedKeys, sections, false);
+    }
+
+    /**
+     * @param entireSSTable if true, all the components of the SSTable are sent as they are on disk, rather than
+     *                      the rows of the given sections of its data file
+     */
+    public FileMessage(SSTableReader sstable, int sequenceNumber, long estimatedKeys, List<Pair<Long, Long>> sections, boolean entireSSTable)
     {
         super(Type.FILE);
         this.sstable = sstable;
 
+        List<Pair<Component, Long>> components = Collections.emptyList();
         CompressionInfo compressionInfo = null;
-        if (sstable.compression)
+        if (entireSSTable)
+        {
+            components = new ArrayList<>();
+            for (Component component : EntireSSTableStreamWriter.streamedComponents(sstable))
+                components.add(Pair.create(component, new File(sstable.descriptor.filenameFor(component)).length()));
+        }
+        else if (sstable.compression)
         {
             CompressionMetadata meta = sstable.getCompressionMetadata();
             compressionInfo = new CompressionInfo(meta.getChunksForSections(sections), meta.parameters);
@@ -101,7 +159,8 @@ public class FileMessage extends StreamMessage
                                             sstable.descriptor.version.toString(),
                                             estimatedKeys,
                                             sections,
-                                            compressionInfo);
+                                            compressionInfo,
+                                            components);
     }
 
     @Override
@@ -21,12 +21,14 @@ import java.io.DataInput;
 import java.io.DataOutput;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.UUID;
 
 import org.apache.cassandra.db.TypeSizes;
 import org.apache.cassandra.io.IVersionedSerializer;
 import org.apache.cassandra.io.compress.CompressionMetadata;
+import org.apache.cassandra.io.sstable.Component;
 import org.apache.cassandra.net.MessagingService;
 import org.apache.cassandra.streaming.compress.CompressionInfo;
 import org.apache.cassandra.utils.Pair;
@@ -46,6 +48,11 @@ public class FileMessageHeader
     public final long estimatedKeys;
     public final List<Pair<Long, Long>> sections;
     public final CompressionInfo compressionInfo;
+    /**
+     * Components of the SSTable and their sizes, when the whole SSTable is transferred as it is on disk.
+     * Empty when only the sections of the data file are.
+     */
+    public final List<Pair<Component, Long>> components;
 
     public FileMessageHeader(UUID cfId,
                              int sequenceNumber,
@@ -53,6 +60,17 @@ public class FileMessageHeader
                              long estimatedKeys,
                              List<Pair<Long, Long>> sections,
                              CompressionInfo compressionInfo)
+    {
+        this(cfId, sequenceNumber, version, estimatedKeys, sections, compressionInfo, Collections.<Pair<Component, Long>>emptyList());
+    }
+
+    public FileMessageHeader(UUID cfId,
+                             int sequenceNumber,
+                             String version,
+                             long estimatedKeys,
+                             List<Pair<Long, Long>> sections,
+                             CompressionInfo compressionInfo,
+                             List<Pair<Component, Long>> components)
     {
         this.cfId = cfId;
         this.sequenceNumber = sequenceNumber;
@@ -60,6 +78,15 @@ public class FileMessageHeader
         this.estimatedKeys = estimatedKeys;
         this.sections = sections;
         this.compressionInfo = compressionInfo;
+        this.components = components;
+    }
+
+    /**
+     * @return true if the whole SSTable is transferred, component by component
+     */
+    public boolean isEntireSSTable()
+    {
+        return !components.isEmpty();
     }
 
     /**
@@ -68,7 +95,12 @@ public class FileMessageHeader
     public long size()
     {
         long size = 0;
-        if (compressionInfo != null)
+        if (isEntireSSTable())
+        {
+            for (Pair<Component, Long> component : components)
+                size += component.right;
+        }
+        else if (compressionInfo != null)
         {
             // calculate total length of transferring chunks
             for (CompressionMetadata.Chunk chunk : compressionInfo.chunks)
@@ -92,6 +124,7 @@ public class FileMessageHeader
         sb.append(", estimated keys: ").append(estimatedKeys);
         sb.append(", transfer size: ").append(size());
         sb.append(", compressed?: ").append(compressionInfo != null);
+        sb.append(", entire sstable?: ").append(isEntireSSTable());
         sb.append(')');
         return sb.toString();
     }
@@ -129,6 +162,13 @@ public class FileMessageHeader
                 out.writeLong(section.right);
             }
             CompressionInfo.serializer.serialize(header.compressionInfo, out, version);
+
+            out.writeInt(header.components.size());
+            for (Pair<Component, Long> component : header.components)
+            {
+                out.writeUTF(component.left.type.name());
+                out.writeLong(component.right);
+            }
         }
 
         public FileMessageHeader deserialize(DataInput in, int version) throws IOException
@@ -142,7 +182,12 @@ public class FileMessageHeader
             for (int k = 0; k < count; k++)
                 sections.add(Pair.create(in.readLong(), in.readLong()));
             CompressionInfo compressionInfo = CompressionInfo.serializer.deserialize(in, MessagingService.current_version);
-            return new FileMessageHeader(cfId, sequenceNumber, sstableVersion, estimatedKeys, sections, compressionInfo);
+
+            int componentCount = in.readInt();
+            List<Pair<Component, Long>> components = new ArrayList<>(componentCount);
+            for (int k = 0; k < componentCount; k++)
+                components.add(Pair.create(new Component(Component.Type.valueOf(in.readUTF())), in.readLong()));
+            return new FileMessageHeader(cfId, sequenceNumber, sstableVersion, estimatedKeys, sections, compressionInfo, components);
         }
 
         public long serializedSize(FileMessageHeader header, int version)
@@ -159,6 +204,13 @@ public class FileMessageHeader
                 size += TypeSizes.NATIVE.sizeof(section.right);
             }
             size += CompressionInfo.serializer.serializedSize(header.compressionInfo, version);
+
+            size += TypeSizes.NATIVE.sizeof(header.components.size());
+            for (Pair<Component, Long> component : header.components)
+            {
+                size += TypeSizes.NATIVE.sizeof(component.left.type.name());
+                size += TypeSizes.NATIVE.sizeof(component.right);
+            }
             return size;
         }
     }
@@ -32,7 +32,7 @@ import org.apache.cassandra.streaming.StreamSession;
 public abstract class StreamMessage
 {
     /** Streaming protocol version */
-    public static final int CURRENT_VERSION = 1;
+    public static final int CURRENT_VERSION = 2;
 
     public static void serialize(StreamMessage message, WritableByteChannel out, int version, StreamSession session) throws IOException
     {
@@ -67,6 +67,7 @@ public class NodeCmd
     private static final Pair<String, String> TOKENS_OPT = Pair.create("T", "tokens");
     private static final Pair<String, String> PRIMARY_RANGE_OPT = Pair.create("pr", "partitioner-range");
     private static final Pair<String, String> PARALLEL_REPAIR_OPT = Pair.create("par", "parallel");
+    private static final Pair<String, String> INCREMENTAL_REPAIR_OPT = Pair.create("inc", "incremental");
     private static final Pair<String, String> LOCAL_DC_REPAIR_OPT = Pair.create("local", "in-local-dc");
     private static final Pair<String, String> DC_REPAIR_OPT = Pair.create("dc", "in-dc");
     private static final Pair<String, String> START_TOKEN_OPT = Pair.create("st", "start-token");
@@ -94,6 +95,7 @@ public class NodeCmd
         options.addOption(TOKENS_OPT,   false, "display all tokens");
         options.addOption(PRIMARY_RANGE_OPT, false, "only repair the first range returned by the partitioner for the node");
         options.addOption(PARALLEL_REPAIR_OPT, false, "repair nodes in parallel.");
+        options.addOption(INCREMENTAL_REPAIR_OPT, false, "only repair the data that has not been repaired yet");
         options.addOption(LOCAL_DC_REPAIR_OPT, false, "only repair against nodes in the same datacenter");
         options.addOption(DC_REPAIR_OPT, true, "only repair against nodes in the specified datacenters (comma separated)");
         options.addOption(START_TOKEN_OPT, true, "token at which repair range starts");
@@ -142,6 +144,7 @@ public class NodeCmd
         INFO,
         INVALIDATEKEYCACHE,
         INVALIDATEROWCACHE,
+        INVALIDATECOUNTERCACHE,
         JOIN,
         MOVE,
         NETSTATS,
@@ -670,6 +673,17 @@ public class NodeCmd
                     probe.getCacheMetric("RowCache", "HitRate"),
                     cacheService.getRowCacheSavePeriodInSeconds());
 
+        // Counter Cache: Hits, Requests, RecentHitRate, SavePeriodInSeconds
+        outs.printf("%-17s: entries %d, size %d (bytes), capacity %d (bytes), %d hits, %d requests, %.3f recent hit rate, %d save period in seconds%n",
+                    "Counter Cache",
+                    probe.getCacheMetric("CounterCache", "Entries"),
+                    probe.getCacheMetric("CounterCache", "Size"),
+                    probe.getCacheMetric("CounterCache", "Capacity"),
+                    probe.getCacheMetric("CounterCache", "Hits"),
+                    probe.getCacheMetric("CounterCache", "Requests"),
+                    probe.getCacheMetric("CounterCache", "HitRate"),
+                    cacheService.getCounterCacheSavePeriodInSeconds());
+
         if (toks.size() > 1 && cmd.hasOption(TOKENS_OPT.left))
         {
             for (String tok : toks)
@@ -1286,6 +1300,10 @@ public class NodeCmd
                     probe.invalidateRowCache();
                     break;
 
+                case INVALIDATECOUNTERCACHE :
+                    probe.invalidateCounterCache();
+                    break;
+
                 case CLEANUP :
                 case COMPACT :
                 case REPAIR  :
@@ -1567,6 +1585,7 @@ public class NodeCmd
                     boolean localDC = cmd.hasOption(LOCAL_DC_REPAIR_OPT.left);
                     boolean specificDC = cmd.hasOption(DC_REPAIR_OPT.left);
                     boolean primaryRange = cmd.hasOption(PRIMARY_RANGE_OPT.left);
+                    boolean incremental = cmd.hasOption(INCREMENTAL_REPAIR_OPT.left);
                     Collection<String> dataCenters = null;
                     if (specificDC)
                         dataCenters = Arrays.asList(cmd.getOptionValue(DC_REPAIR_OPT.left).split(","));
@@ -1575,7 +1594,7 @@ public class NodeCmd
                     if (cmd.hasOption(START_TOKEN_OPT.left) || cmd.hasOption(END_TOKEN_OPT.left))
                         probe.forceRepairRangeAsync(System.out, keyspace, sequential, dataCenters, cmd.getOptionValue(START_TOKEN_OPT.left), cmd.getOptionValue(END_TOKEN_OPT.left), columnFamilies);
                     else
-                        probe.forceRepairAsync(System.out, keyspace, sequential, dataCenters, primaryRange, columnFamilies);
+                        probe.forceRepairAsync(System.out, keyspace, sequential, dataCenters, primaryRange, incremental, columnFamilies);
                     break;
                 case FLUSH   :
                     try { probe.forceKeyspaceFlush(keyspace, columnFamilies); }
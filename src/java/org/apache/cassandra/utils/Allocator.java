@@ -21,6 +21,9 @@ import java.nio.ByteBuffer;
 
 public abstract class Allocator
 {
+    // the share of the memtable pool this allocator reserves from, if it allocates on behalf of a memtable
+    private volatile MemtablePool.SubPool pool;
+
     /**
      * Allocate a slice of the given length.
      */
@@ -38,4 +41,41 @@ public abstract class Allocator
     public abstract ByteBuffer allocate(int size);
 
     public abstract long getMinimumSize();
+
+    /**
+     * @return true if the buffers handed out by this allocator live outside the Java heap. Such allocators
+     * account for every byte they reserve, so getMinimumSize() is exact rather than a lower bound.
+     */
+    public boolean isOffHeap()
+    {
+        return false;
+    }
+
+    /**
+     * Releases the memory backing everything this allocator has handed out, which must not be used afterwards.
+     * Allocators on the heap leave that to the garbage collector.
+     */
+    public void free()
+    {
+    }
+
+    /**
+     * Accounts all further memory claimed by this allocator against the given memtable sub pool.
+     * Only allocators created for a single memtable (see DatabaseDescriptor.getMemtableAllocator) may be bound.
+     */
+    public void setPool(MemtablePool.SubPool pool)
+    {
+        assert this.pool == null;
+        this.pool = pool;
+    }
+
+    /**
+     * Must be called by implementations before claiming size bytes of new memory.
+     */
+    protected void reserve(long size)
+    {
+        MemtablePool.SubPool current = pool;
+        if (current != null)
+            current.allocate(size);
+    }
 }
@@ -20,6 +20,8 @@ package org.apache.cassandra.utils;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 
+import org.apache.cassandra.db.DecoratedKey;
+
 public class AlwaysPresentFilter implements IFilter
 {
     public boolean isPresent(ByteBuffer key)
@@ -27,8 +29,15 @@ public class AlwaysPresentFilter implements IFilter
         return true;
     }
 
+    public boolean isPresent(DecoratedKey key)
+    {
+        return true;
+    }
+
     public void add(ByteBuffer key) { }
 
+    public void add(DecoratedKey key) { }
+
     public void clear() { }
 
     public void close() throws IOException { }
@@ -0,0 +1,199 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.utils;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import org.apache.cassandra.db.DecoratedKey;
+import org.apache.cassandra.db.TypeSizes;
+import org.apache.cassandra.dht.LongToken;
+import org.apache.cassandra.io.ISerializer;
+import org.apache.cassandra.utils.obs.IBitSet;
+import org.apache.cassandra.utils.obs.OffHeapBitSet;
+import org.apache.cassandra.utils.obs.OpenBitSet;
+
+/**
+ * A bloom filter that sets all the bits of a key within the same 512 bits block, the size of a cache line, so
+ * that a lookup touches one block of memory instead of hashCount random ones.
+ *
+ * All the bits are derived from one 64 bits hash of the key: the Murmur3 hash Murmur3Partitioner computes for
+ * its tokens.  Keys decorated by that partitioner are thus not hashed again, and nothing is allocated per lookup.
+ * Since the keys of an sstable may all fall within a narrow token range, and so share the upper bits of their
+ * hash, the hash is mixed again first: the lower half of the result picks the block, and the bits within it are
+ * generated from the upper half with the combinatorial approach of
+ * http://www.eecs.harvard.edu/~kirsch/pubs/bbbf/esa06.pdf.
+ */
+public class BlockedBloomFilter implements IFilter
+{
+    public static final BlockedBloomFilterSerializer serializer = new BlockedBloomFilterSerializer();
+
+    public static final int BLOCK_BITS = 512;
+    private static final int BLOCK_SHIFT = 9;
+
+    public final IBitSet bitset;
+    public final int hashCount;
+    private final long blocks;
+
+    public BlockedBloomFilter(int hashes, IBitSet bitset)
+    {
+        assert bitset.capacity() >= BLOCK_BITS;
+        this.hashCount = hashes;
+        this.bitset = bitset;
+        this.blocks = bitset.capacity() >> BLOCK_SHIFT;
+    }
+
+    /**
+     * @return the number of bits to allocate for a filter of {@code numBits} bits, rounded up to whole blocks
+     */
+    public static long blockAlignedBits(long numBits)
+    {
+        return ((numBits + BLOCK_BITS - 1) >> BLOCK_SHIFT) << BLOCK_SHIFT;
+    }
+
+    /**
+     * @return the hash of {@code key}, which is also its token for Murmur3Partitioner
+     */
+    static long hash(ByteBuffer key)
+    {
+        if (key.remaining() == 0)
+            return Long.MIN_VALUE;
+        long hash = MurmurHash.hash3_x64_128(key, key.position(), key.remaining(), 0)[0];
+        return hash == Long.MIN_VALUE ? Long.MAX_VALUE : hash;
+    }
+
+    static long hash(DecoratedKey key)
+    {
+        return key.token instanceof LongToken ? ((LongToken) key.token).token : hash(key.key);
+    }
+
+    private void add(long hash)
+    {
+        long mixed = mix(hash);
+        long block = block(mixed);
+        int a = (int) (mixed >>> 32);
+        int b = step(mixed);
+        for (int i = 0; i < hashCount; i++)
+            bitset.set(block + ((a + i * b) & (BLOCK_BITS - 1)));
+    }
+
+    private boolean isPresent(long hash)
+    {
+        long mixed = mix(hash);
+        long block = block(mixed);
+        int a = (int) (mixed >>> 32);
+        int b = step(mixed);
+        for (int i = 0; i < hashCount; i++)
+        {
+            if (!bitset.get(block + ((a + i * b) & (BLOCK_BITS - 1))))
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * @return the hash with each of its bits depending on all the others: the finalizer of Murmur3
+     */
+    static long mix(long hash)
+    {
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+    /**
+     * @return the index of the first bit of the block of the key
+     */
+    private long block(long mixed)
+    {
+        // maps the lower 32 bits onto [0, blocks) without a division
+        return (((mixed & 0xFFFFFFFFL) * blocks) >>> 32) << BLOCK_SHIFT;
+    }
+
+    private static int step(long mixed)
+    {
+        // derived from the upper 32 bits, like the first probe; odd, so that no bit repeats within a block
+        return (int) (((mixed >>> 32) * 0x9E3779B97F4A7C15L) >>> 32) | 1;
+    }
+
+    public void add(ByteBuffer key)
+    {
+        add(hash(key));
+    }
+
+    public void add(DecoratedKey key)
+    {
+        add(hash(key));
+    }
+
+    public boolean isPresent(ByteBuffer key)
+    {
+        return isPresent(hash(key));
+    }
+
+    public boolean isPresent(DecoratedKey key)
+    {
+        return isPresent(hash(key));
+    }
+
+    public void clear()
+    {
+        bitset.clear();
+    }
+
+    public void close() throws IOException
+    {
+        bitset.close();
+    }
+
+    public long serializedSize()
+    {
+        return serializer.serializedSize(this, TypeSizes.NATIVE);
+    }
+
+    public static class BlockedBloomFilterSerializer implements ISerializer<BlockedBloomFilter>
+    {
+        public void serialize(BlockedBloomFilter bf, DataOutput out) throws IOException
+        {
+            out.writeInt(bf.hashCount);
+            bf.bitset.serialize(out);
+        }
+
+        public BlockedBloomFilter deserialize(DataInput in) throws IOException
+        {
+            return deserialize(in, false);
+        }
+
+        public BlockedBloomFilter deserialize(DataInput in, boolean offheap) throws IOException
+        {
+            int hashes = in.readInt();
+            IBitSet bs = offheap ? OffHeapBitSet.deserialize(in) : OpenBitSet.deserialize(in);
+            return new BlockedBloomFilter(hashes, bs);
+        }
+
+        public long serializedSize(BlockedBloomFilter bf, TypeSizes typeSizes)
+        {
+            return typeSizes.sizeof(bf.hashCount) + bf.bitset.serializedSize(typeSizes);
+        }
+    }
+}
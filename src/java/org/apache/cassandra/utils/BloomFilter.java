@@ -20,6 +20,7 @@ package org.apache.cassandra.utils;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 
+import org.apache.cassandra.db.DecoratedKey;
 import org.apache.cassandra.utils.obs.IBitSet;
 
 public abstract class BloomFilter implements IFilter
@@ -64,6 +65,16 @@ public abstract class BloomFilter implements IFilter
         }
     }
 
+    public void add(DecoratedKey key)
+    {
+        add(key.key);
+    }
+
+    public boolean isPresent(DecoratedKey key)
+    {
+        return isPresent(key.key);
+    }
+
     public boolean isPresent(ByteBuffer key)
     {
       for (long bucketIndex : getHashBuckets(key))
@@ -0,0 +1,143 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.utils;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A histogram over the buckets of {@link EstimatedHistogram} in which older values weigh less than newer ones.
+ *
+ * Each value adds a fixed weight to its bucket, and {@link #decay(double)} scales every bucket down, so that the
+ * histogram uses the same memory however many values it has seen and neither adding to it nor reading from it
+ * ever takes a lock or sorts anything.
+ */
+public class DecayingHistogram
+{
+    // the weight of a value before any decay; large enough for a value to still count after many decays
+    private static final long UNIT = 1 << 16;
+
+    private static final long[] DEFAULT_OFFSETS = EstimatedHistogram.newOffsets(90);
+
+    private final long[] bucketOffsets;
+    // one element longer than bucketOffsets -- the last element is values greater than the last offset
+    private final AtomicLongArray buckets;
+
+    public DecayingHistogram()
+    {
+        this(DEFAULT_OFFSETS);
+    }
+
+    public DecayingHistogram(long[] bucketOffsets)
+    {
+        this.bucketOffsets = bucketOffsets;
+        this.buckets = new AtomicLongArray(bucketOffsets.length + 1);
+    }
+
+    /**
+     * Adds a value to the bucket closest to n, rounding UP.
+     */
+    public void add(long n)
+    {
+        int index = Arrays.binarySearch(bucketOffsets, n);
+        if (index < 0)
+            index = -index - 1;
+        buckets.addAndGet(index, UNIT);
+    }
+
+    /**
+     * Scales the weight of every value seen so far by {@code factor}.
+     *
+     * @param factor between 0 and 1
+     */
+    public void decay(double factor)
+    {
+        assert factor >= 0 && factor <= 1.0;
+        for (int i = 0; i < buckets.length(); i++)
+        {
+            while (true)
+            {
+                long current = buckets.get(i);
+                if (current == 0 || buckets.compareAndSet(i, current, (long) (current * factor)))
+                    break;
+            }
+        }
+    }
+
+    /**
+     * @return the weight of all the values seen, in number of undecayed values
+     */
+    public double count()
+    {
+        long total = 0;
+        for (int i = 0; i < buckets.length(); i++)
+            total += buckets.get(i);
+        return total / (double) UNIT;
+    }
+
+    /**
+     * @param percentile between 0 and 1
+     * @return the estimated value at the given percentile of the weighted values, or 0 if there is none. Values
+     * greater than the last bucket offset count as that offset.
+     */
+    public long percentile(double percentile)
+    {
+        assert percentile >= 0 && percentile <= 1.0;
+        long[] weights = new long[buckets.length()];
+        long total = 0;
+        for (int i = 0; i < weights.length; i++)
+        {
+            weights[i] = buckets.get(i);
+            total += weights[i];
+        }
+        if (total == 0)
+            return 0;
+
+        long target = (long) Math.ceil(total * percentile);
+        long seen = 0;
+        for (int i = 0; i < bucketOffsets.length; i++)
+        {
+            seen += weights[i];
+            if (seen >= target && seen > 0)
+                return bucketOffsets[i];
+        }
+        return bucketOffsets[bucketOffsets.length - 1];
+    }
+
+    /**
+     * @return the offset of each bucket, repeated by the number of undecayed values it holds, rounded
+     */
+    public long[] values()
+    {
+        long[] values = new long[(int) Math.round(count()) + buckets.length()];
+        int size = 0;
+        for (int i = 0; i < buckets.length(); i++)
+        {
+            long offset = bucketOffsets[Math.min(i, bucketOffsets.length - 1)];
+            for (long n = Math.round(buckets.get(i) / (double) UNIT); n > 0 && size < values.length; n--)
+                values[size++] = offset;
+        }
+        return Arrays.copyOf(values, size);
+    }
+
+    public void clear()
+    {
+        for (int i = 0; i < buckets.length(); i++)
+            buckets.set(i, 0L);
+    }
+}
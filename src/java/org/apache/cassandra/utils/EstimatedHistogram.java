@@ -56,7 +56,7 @@ public class EstimatedHistogram
 
     public EstimatedHistogram(int bucketCount)
     {
-        makeOffsets(bucketCount);
+        bucketOffsets = newOffsets(bucketCount);
         buckets = new AtomicLongArray(bucketOffsets.length + 1);
     }
 
@@ -67,19 +67,23 @@ public class EstimatedHistogram
         buckets = new AtomicLongArray(bucketData); //AtomicLongArray在jdk1.7才有
     }
 
-    private void makeOffsets(int size)
+    /**
+     * @return the first {@code size} offsets of the series described in {@link #bucketOffsets}
+     */
+    public static long[] newOffsets(int size)
     {
-        bucketOffsets = new long[size];
+        long[] offsets = new long[size];
         long last = 1;
-        bucketOffsets[0] = last;
+        offsets[0] = last;
         for (int i = 1; i < size; i++)
         {
             long next = Math.round(last * 1.2);
             if (next == last)
                 next++;
-            bucketOffsets[i] = next;
+            offsets[i] = next;
             last = next;
         }
+        return offsets;
     }
 
     /**
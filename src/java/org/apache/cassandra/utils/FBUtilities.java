@@ -620,6 +620,37 @@ public class FBUtilities
         checksum.update((v >>> 0) & 0xFF);
     }
 
+    private static final ThreadLocal<byte[]> localChecksumScratch = new ThreadLocal<byte[]>()
+    {
+        @Override
+        protected byte[] initialValue()
+        {
+            return new byte[4096];
+        }
+    };
+
+    /**
+     * Updates the checksum with the remaining bytes of the buffer, without moving its position.  Off-heap buffers
+     * are copied through a small scratch array, since Checksum can only consume arrays before Java 8.
+     */
+    public static void updateChecksum(Checksum checksum, ByteBuffer buffer)
+    {
+        if (buffer.hasArray())
+        {
+            checksum.update(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+            return;
+        }
+
+        ByteBuffer src = buffer.duplicate();
+        byte[] scratch = localChecksumScratch.get();
+        while (src.hasRemaining())
+        {
+            int length = Math.min(scratch.length, src.remaining());
+            src.get(scratch, 0, length);
+            checksum.update(scratch, 0, length);
+        }
+    }
+
     private static final class WrappedCloseableIterator<T>
         extends AbstractIterator<T> implements CloseableIterator<T>
     {
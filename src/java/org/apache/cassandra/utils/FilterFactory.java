@@ -20,8 +20,10 @@ package org.apache.cassandra.utils;
 import java.io.DataInput;
 import java.io.DataOutput;
 import java.io.IOException;
+import java.util.Arrays;
 
 import org.apache.cassandra.db.TypeSizes;
+import org.apache.cassandra.exceptions.ConfigurationException;
 import org.apache.cassandra.utils.obs.IBitSet;
 import org.apache.cassandra.utils.obs.OffHeapBitSet;
 import org.apache.cassandra.utils.obs.OpenBitSet;
@@ -36,14 +38,60 @@ public class FilterFactory
     private static final Logger logger = LoggerFactory.getLogger(FilterFactory.class);
     private static final long BITSET_EXCESS = 20;
 
+    // A Filter.db of a Murmur3BloomFilter starts with its hash count, which is positive. The other kinds of
+    // filters start with a negative version instead, followed by their own serialization.
+    private static final int BLOCKED_BLOOM_FILTER_VERSION = -1;
+
+    /**
+     * The kinds of bloom filters a table can use for its sstables.
+     */
+    public enum Type
+    {
+        // a Murmur3BloomFilter, whose bits are spread over the whole filter
+        STANDARD,
+        // a BlockedBloomFilter, whose bits for a given key are all in one cache line
+        BLOCKED;
+
+        public static Type fromString(String name) throws ConfigurationException
+        {
+            try
+            {
+                return valueOf(name.toUpperCase());
+            }
+            catch (IllegalArgumentException e)
+            {
+                throw new ConfigurationException(String.format("Invalid bloom filter type %s, should be one of %s", name, Arrays.toString(values())));
+            }
+        }
+
+        @Override
+        public String toString()
+        {
+            return name().toLowerCase();
+        }
+    }
+
     public static void serialize(IFilter bf, DataOutput output) throws IOException
     {
-        Murmur3BloomFilter.serializer.serialize((Murmur3BloomFilter) bf, output);
+        if (bf instanceof BlockedBloomFilter)
+        {
+            output.writeInt(BLOCKED_BLOOM_FILTER_VERSION);
+            BlockedBloomFilter.serializer.serialize((BlockedBloomFilter) bf, output);
+        }
+        else
+        {
+            Murmur3BloomFilter.serializer.serialize((Murmur3BloomFilter) bf, output);
+        }
     }
 
     public static IFilter deserialize(DataInput input, boolean offheap) throws IOException
     {
-        return Murmur3BloomFilter.serializer.deserialize(input, offheap);
+        int header = input.readInt();
+        if (header == BLOCKED_BLOOM_FILTER_VERSION)
+            return BlockedBloomFilter.serializer.deserialize(input, offheap);
+        if (header < 0)
+            throw new IOException("Unknown bloom filter version " + header);
+        return Murmur3BloomFilter.serializer.deserialize(header, input, offheap);
     }
 
     /**
@@ -51,6 +99,11 @@ public class FilterFactory
      *         probability for the given number of elements.
      */
     public static IFilter getFilter(long numElements, int targetBucketsPerElem, boolean offheap)
+    {
+        return getFilter(numElements, targetBucketsPerElem, offheap, Type.STANDARD);
+    }
+
+    public static IFilter getFilter(long numElements, int targetBucketsPerElem, boolean offheap, Type type)
     {
         int maxBucketsPerElement = Math.max(1, BloomCalculations.maxBucketsPerElement(numElements));
         int bucketsPerElement = Math.min(targetBucketsPerElem, maxBucketsPerElement);
@@ -59,7 +112,7 @@ public class FilterFactory
             logger.warn(String.format("Cannot provide an optimal BloomFilter for %d elements (%d/%d buckets per element).", numElements, bucketsPerElement, targetBucketsPerElem));
         }
         BloomCalculations.BloomSpecification spec = BloomCalculations.computeBloomSpec(bucketsPerElement);
-        return createFilter(spec.K, numElements, spec.bucketsPerElement, offheap);
+        return createFilter(spec.K, numElements, spec.bucketsPerElement, offheap, type);
     }
 
     /**
@@ -70,17 +123,30 @@ public class FilterFactory
      *         filter.
      */
     public static IFilter getFilter(long numElements, double maxFalsePosProbability, boolean offheap)
+    {
+        return getFilter(numElements, maxFalsePosProbability, offheap, Type.STANDARD);
+    }
+
+    public static IFilter getFilter(long numElements, double maxFalsePosProbability, boolean offheap, Type type)
     {
         assert maxFalsePosProbability <= 1.0 : "Invalid probability";
         if (maxFalsePosProbability == 1.0)
             return new AlwaysPresentFilter();
         int bucketsPerElement = BloomCalculations.maxBucketsPerElement(numElements);
         BloomCalculations.BloomSpecification spec = BloomCalculations.computeBloomSpec(bucketsPerElement, maxFalsePosProbability);
-        return createFilter(spec.K, numElements, spec.bucketsPerElement, offheap);
+        return createFilter(spec.K, numElements, spec.bucketsPerElement, offheap, type);
     }
 
-    private static IFilter createFilter(int hash, long numElements, int bucketsPer, boolean offheap)
+    private static IFilter createFilter(int hash, long numElements, int bucketsPer, boolean offheap, Type type)
     {
+        if (type == Type.BLOCKED)
+        {
+            // keys don't spread evenly over the blocks, which the bits of one more bucket per element make up for
+            long numBits = BlockedBloomFilter.blockAlignedBits((numElements * (bucketsPer + 1)) + BITSET_EXCESS);
+            IBitSet bitset = offheap ? new OffHeapBitSet(numBits) : new OpenBitSet(numBits);
+            return new BlockedBloomFilter(hash, bitset);
+        }
+
         long numBits = (numElements * bucketsPer) + BITSET_EXCESS;
         IBitSet bitset = offheap ? new OffHeapBitSet(numBits) : new OpenBitSet(numBits);
         return new Murmur3BloomFilter(hash, bitset);
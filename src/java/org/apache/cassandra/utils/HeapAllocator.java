@@ -29,8 +29,16 @@ public final class HeapAllocator extends Allocator
      */
     public HeapAllocator() {}
 
+    @Override
+    public void setPool(MemtablePool.SubPool pool)
+    {
+        assert this != instance : "the shared HeapAllocator cannot be bound to a memtable";
+        super.setPool(pool);
+    }
+
     public ByteBuffer allocate(int size)
     {
+        reserve(size);
         return ByteBuffer.allocate(size);
     }
 
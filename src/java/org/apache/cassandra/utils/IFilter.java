@@ -20,12 +20,21 @@ package org.apache.cassandra.utils;
 import java.io.Closeable;
 import java.nio.ByteBuffer;
 
+import org.apache.cassandra.db.DecoratedKey;
+
 public interface IFilter extends Closeable
 {
     void add(ByteBuffer key);
 
+    /**
+     * Same as {@code add(key.key)}, but may reuse the token of the key rather than hash it again.
+     */
+    void add(DecoratedKey key);
+
     boolean isPresent(ByteBuffer key);
 
+    boolean isPresent(DecoratedKey key);
+
     void clear();
 
     long serializedSize();
@@ -0,0 +1,227 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.utils;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.common.util.concurrent.Uninterruptibles;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A node-wide budget of memory shared by all memtables.
+ * <p/>
+ * Every memtable owns a SubPool, and its allocator reserves from it synchronously as it claims memory, so the
+ * pool always knows exactly how much memory memtables are holding on to.  Memory is handed back in bulk when a
+ * memtable is discarded after being flushed.
+ * <p/>
+ * Once the memory not already being reclaimed by a flush crosses cleanThreshold of the limit, a dedicated cleaner
+ * thread runs the provided cleaner task (which is expected to flush a memtable).  Writers call awaitRoom() before
+ * writing, which blocks them while the pool is exhausted.
+ */
+public class MemtablePool
+{
+    private static final Logger logger = LoggerFactory.getLogger(MemtablePool.class);
+
+    // how long the cleaner backs off when it could not find anything to clean
+    private static final long CLEANER_BACKOFF_MILLIS = 100;
+
+    public final long limit;
+    public final double cleanThreshold;
+
+    // total memory reserved by all memtables, including those being flushed
+    private final AtomicLong allocated = new AtomicLong(0);
+    // memory reserved by memtables that are being flushed, and will be released once they are discarded
+    private final AtomicLong reclaiming = new AtomicLong(0);
+
+    private final WaitQueue hasRoom = new WaitQueue();
+    private final WaitQueue hasWork = new WaitQueue();
+
+    /**
+     * @param limit the maximum number of bytes memtables may hold before writes are blocked
+     * @param cleanThreshold the fraction of limit, not already being reclaimed, above which the cleaner is run
+     * @param cleaner invoked to free up memory; returns false if it could find nothing to clean
+     */
+    public MemtablePool(long limit, double cleanThreshold, Callable<Boolean> cleaner)
+    {
+        assert limit > 0;
+        assert cleanThreshold > 0 && cleanThreshold <= 1.0;
+        this.limit = limit;
+        this.cleanThreshold = cleanThreshold;
+
+        Thread thread = new Thread(new Cleaner(cleaner), "MemtablePoolCleaner");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public SubPool newSubPool()
+    {
+        return new SubPool();
+    }
+
+    /**
+     * Blocks the calling thread until the pool is below its limit.  Must not be called while holding a lock
+     * that flushing memtables need.
+     */
+    public void awaitRoom()
+    {
+        while (isExhausted())
+        {
+            WaitQueue.Signal signal = hasRoom.register();
+            if (isExhausted())
+                signal.awaitUninterruptibly();
+            else
+                signal.cancel();
+        }
+    }
+
+    public boolean isExhausted()
+    {
+        return allocated.get() >= limit;
+    }
+
+    public boolean needsCleaning()
+    {
+        return allocated.get() - reclaiming.get() > limit * cleanThreshold;
+    }
+
+    /**
+     * @return the number of bytes currently held by all memtables
+     */
+    public long allocated()
+    {
+        return allocated.get();
+    }
+
+    /**
+     * @return the number of bytes held by memtables that are being flushed
+     */
+    public long reclaiming()
+    {
+        return reclaiming.get();
+    }
+
+    private void adjustAllocated(long size)
+    {
+        allocated.addAndGet(size);
+        if (size > 0)
+        {
+            if (needsCleaning())
+                hasWork.signal();
+        }
+        else
+        {
+            hasRoom.signalAll();
+        }
+    }
+
+    /**
+     * The share of the pool owned by a single memtable.
+     */
+    public class SubPool
+    {
+        private final AtomicLong owns = new AtomicLong(0);
+        private volatile boolean reclaiming;
+
+        /**
+         * Reserves size bytes from the pool.  This never blocks: writers are throttled ahead of time by awaitRoom(),
+         * so the pool may briefly overshoot its limit by the size of the writes in flight.
+         */
+        public void allocate(long size)
+        {
+            owns.addAndGet(size);
+            if (reclaiming)
+                MemtablePool.this.reclaiming.addAndGet(size);
+            adjustAllocated(size);
+        }
+
+        /**
+         * Marks the memory owned by this sub pool as being reclaimed, so the cleaner no longer considers it.
+         */
+        public synchronized void markReclaiming()
+        {
+            if (reclaiming)
+                return;
+            reclaiming = true;
+            MemtablePool.this.reclaiming.addAndGet(owns.get());
+        }
+
+        /**
+         * Hands all the memory owned by this sub pool back to the pool.  Idempotent.
+         */
+        public synchronized void release()
+        {
+            long size = owns.getAndSet(0);
+            if (size == 0)
+                return;
+            if (reclaiming)
+                MemtablePool.this.reclaiming.addAndGet(-size);
+            adjustAllocated(-size);
+        }
+
+        public long owns()
+        {
+            return owns.get();
+        }
+
+        public boolean isReclaiming()
+        {
+            return reclaiming;
+        }
+    }
+
+    private final class Cleaner implements Runnable
+    {
+        private final Callable<Boolean> cleaner;
+
+        private Cleaner(Callable<Boolean> cleaner)
+        {
+            this.cleaner = cleaner;
+        }
+
+        public void run()
+        {
+            while (true)
+            {
+                while (!needsCleaning())
+                {
+                    WaitQueue.Signal signal = hasWork.register();
+                    if (!needsCleaning())
+                        signal.awaitUninterruptibly();
+                    else
+                        signal.cancel();
+                }
+
+                boolean cleaned = false;
+                try
+                {
+                    cleaned = cleaner.call();
+                }
+                catch (Throwable t)
+                {
+                    logger.error("Memtable pool cleaner failed", t);
+                }
+
+                if (!cleaned)
+                    Uninterruptibles.sleepUninterruptibly(CLEANER_BACKOFF_MILLIS, TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+}
@@ -0,0 +1,72 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.utils;
+
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import org.apache.cassandra.io.util.Memory;
+
+/**
+ * A SlabAllocator whose regions are allocated outside the Java heap.
+ * <p/>
+ * Cell names, values and partition keys copied into a memtable by this allocator
+ * are never seen by the garbage collector, which keeps memtable data out of the
+ * old generation altogether.
+ * <p/>
+ * Regions are Memory blocks, freed by free() once the memtable owning them has been
+ * discarded and no read references it anymore.  Reads copy what they return from such
+ * a memtable on heap, so nothing points into the regions after that.
+ */
+public class OffHeapSlabAllocator extends SlabAllocator
+{
+    // every block handed out so far, all freed together
+    private final Queue<Memory> blocks = new ConcurrentLinkedQueue<Memory>();
+
+    @Override
+    protected ByteBuffer allocateBuffer(int size)
+    {
+        Memory block = Memory.allocate(size);
+        blocks.add(block);
+        return block.asByteBuffer(0, size);
+    }
+
+    @Override
+    public void free()
+    {
+        Memory block;
+        while ((block = blocks.poll()) != null)
+            block.free();
+    }
+
+    /**
+     * @return the exact number of off-heap bytes reserved by this allocator
+     */
+    @Override
+    public long getMinimumSize()
+    {
+        return getReservedSize();
+    }
+
+    @Override
+    public boolean isOffHeap()
+    {
+        return true;
+    }
+}
@@ -0,0 +1,347 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.utils.btree;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * An immutable B-tree packed into nested Object[] arrays.
+ * <p/>
+ * A leaf is an array holding its keys in order. A branch with n keys is an array of length 2n + 1 holding its keys
+ * followed by its n + 1 children; a node is thus a branch if and only if its last element is an Object[], which
+ * requires that keys are never themselves Object[]. All leaves are at the same depth.
+ * <p/>
+ * Trees are never modified. update() applies a sorted batch of values in a single pass, copying only the nodes on
+ * the paths leading to the updated positions and sharing every other node with the original tree, which stays
+ * valid for concurrent readers.
+ */
+public class BTree
+{
+    // maximum number of keys in a node
+    static final int MAX_KEYS = 32;
+
+    static final Object[] EMPTY_LEAF = new Object[0];
+
+    public static Object[] empty()
+    {
+        return EMPTY_LEAF;
+    }
+
+    /**
+     * @param sorted values in comparator order, without duplicates
+     */
+    public static <V> Object[] build(Collection<V> sorted, Comparator<Object> comparator)
+    {
+        return update(EMPTY_LEAF, comparator, sorted, null);
+    }
+
+    /**
+     * Returns a new tree containing the values of btree plus the given updates.
+     *
+     * @param updates values in comparator order, without duplicates
+     * @param updateF decides which value to keep for each update; if null, updates are inserted as they are
+     * and replace any equal value
+     * @return the new tree, or null if updateF asked to abort
+     */
+    public static <V> Object[] update(Object[] btree, Comparator<Object> comparator, Collection<V> updates, UpdateFunction<V> updateF)
+    {
+        if (updates.isEmpty())
+            return btree;
+
+        Object[] sorted = updates.toArray();
+        List<Object> level = new ArrayList<>();
+        if (!update(btree, comparator, sorted, 0, sorted.length, updateF, level))
+            return null;
+
+        // the root may have split; keep adding levels until everything fits in a single node
+        while (level.size() > 1)
+        {
+            List<Object> parent = new ArrayList<>();
+            group(level, parent);
+            level = parent;
+        }
+        return (Object[]) level.get(0);
+    }
+
+    public static boolean isEmpty(Object[] btree)
+    {
+        return btree.length == 0;
+    }
+
+    public static int size(Object[] btree)
+    {
+        if (isLeaf(btree))
+            return btree.length;
+
+        int keys = keyCount(btree);
+        int size = keys;
+        for (int i = 0; i <= keys; i++)
+            size += size((Object[]) btree[keys + i]);
+        return size;
+    }
+
+    /**
+     * @return the value comparing equal to key, or null if there is none
+     */
+    public static <V> V find(Object[] btree, Comparator<Object> comparator, Object key)
+    {
+        Object[] node = btree;
+        while (true)
+        {
+            int keys = keyCount(node);
+            int i = Arrays.binarySearch(node, 0, keys, key, comparator);
+            if (i >= 0)
+                return (V) node[i];
+            if (isLeaf(node))
+                return null;
+            node = (Object[]) node[keys - i - 1];
+        }
+    }
+
+    /**
+     * @param lower the inclusive lower bound, or null to start from the first value
+     * @param upper the inclusive upper bound, or null to stop at the last value
+     * @param forwards whether to iterate in ascending or descending order
+     */
+    public static <V> Cursor<V> slice(Object[] btree, Comparator<Object> comparator, Object lower, Object upper, boolean forwards)
+    {
+        return new Cursor<>(btree, comparator, lower, upper, forwards);
+    }
+
+    public static <V> Cursor<V> slice(Object[] btree, boolean forwards)
+    {
+        return new Cursor<>(btree, null, null, null, forwards);
+    }
+
+    static boolean isLeaf(Object[] node)
+    {
+        return node.length == 0 || !(node[node.length - 1] instanceof Object[]);
+    }
+
+    static int keyCount(Object[] node)
+    {
+        return isLeaf(node) ? node.length : node.length / 2;
+    }
+
+    /**
+     * Applies updates[from, to) to node, appending the resulting subtrees to out, separated by keys: if the node
+     * overflows it is split into several nodes of the same height, to be adopted by the caller.
+     */
+    private static <V> boolean update(Object[] node, Comparator<Object> comparator, Object[] updates, int from, int to, UpdateFunction<V> updateF, List<Object> out)
+    {
+        if (updateF != null && updateF.abortEarly())
+            return false;
+
+        if (isLeaf(node))
+        {
+            List<Object> merged = new ArrayList<>(node.length + to - from);
+            int i = 0;
+            int u = from;
+            while (i < node.length && u < to)
+            {
+                int c = comparator.compare(node[i], updates[u]);
+                if (c < 0)
+                    merged.add(node[i++]);
+                else if (c > 0)
+                    merged.add(insert(updates[u++], updateF));
+                else
+                    merged.add(replace(node[i++], updates[u++], updateF));
+            }
+            while (i < node.length)
+                merged.add(node[i++]);
+            while (u < to)
+                merged.add(insert(updates[u++], updateF));
+
+            splitLeaves(merged, out);
+            return true;
+        }
+
+        int keys = keyCount(node);
+        // the children of this node and the keys separating them, alternately, after applying the updates
+        List<Object> children = new ArrayList<>(node.length + 2);
+        int u = from;
+        for (int i = 0; i <= keys; i++)
+        {
+            // updates sorting before the i-th key belong to the i-th child
+            int end = i < keys ? lowerBound(updates, u, to, node[i], comparator) : to;
+            Object[] child = (Object[]) node[keys + i];
+            if (end > u)
+            {
+                if (!update(child, comparator, updates, u, end, updateF, children))
+                    return false;
+            }
+            else
+            {
+                children.add(child);
+            }
+
+            if (i < keys)
+            {
+                Object key = node[i];
+                if (end < to && comparator.compare(key, updates[end]) == 0)
+                    key = replace(key, updates[end++], updateF);
+                children.add(key);
+            }
+            u = end;
+        }
+
+        group(children, out);
+        return true;
+    }
+
+    private static <V> Object insert(Object update, UpdateFunction<V> updateF)
+    {
+        return updateF == null ? update : updateF.apply((V) update);
+    }
+
+    private static <V> Object replace(Object replaced, Object update, UpdateFunction<V> updateF)
+    {
+        return updateF == null ? update : updateF.apply((V) replaced, (V) update);
+    }
+
+    /**
+     * @return the index of the first of updates[from, to) that is not less than key
+     */
+    private static int lowerBound(Object[] updates, int from, int to, Object key, Comparator<Object> comparator)
+    {
+        int i = Arrays.binarySearch(updates, from, to, key, comparator);
+        return i >= 0 ? i : -i - 1;
+    }
+
+    /**
+     * Packs keys into as few leaves as possible, appending them to out separated by keys.
+     */
+    private static void splitLeaves(List<Object> keys, List<Object> out)
+    {
+        int size = keys.size();
+        if (size <= MAX_KEYS)
+        {
+            out.add(keys.toArray());
+            return;
+        }
+
+        // each leaf but the last is followed by a separator that moves up to the parent
+        int leaves = (size + 1 + MAX_KEYS) / (MAX_KEYS + 1);
+        int perLeaf = (size - (leaves - 1)) / leaves;
+        int remainder = (size - (leaves - 1)) % leaves;
+        int offset = 0;
+        for (int i = 0; i < leaves; i++)
+        {
+            int count = perLeaf + (i < remainder ? 1 : 0);
+            out.add(keys.subList(offset, offset + count).toArray());
+            offset += count;
+            if (i < leaves - 1)
+                out.add(keys.get(offset++));
+        }
+    }
+
+    /**
+     * Packs a list of children separated by keys into as few branches as possible, appending them to out
+     * separated by keys.
+     */
+    private static void group(List<Object> children, List<Object> out)
+    {
+        int childCount = (children.size() + 1) / 2;
+        int branches = (childCount + MAX_KEYS) / (MAX_KEYS + 1);
+        int perBranch = childCount / branches;
+        int remainder = childCount % branches;
+        int offset = 0;
+        for (int i = 0; i < branches; i++)
+        {
+            int count = perBranch + (i < remainder ? 1 : 0);
+            out.add(branch(children, offset, count));
+            offset += 2 * count - 1;
+            if (i < branches - 1)
+                out.add(children.get(offset++));
+        }
+    }
+
+    /**
+     * Builds a branch out of count children, starting at offset in a list of children separated by keys.
+     */
+    private static Object[] branch(List<Object> children, int offset, int count)
+    {
+        if (count == 1)
+            return (Object[]) children.get(offset);
+
+        int keys = count - 1;
+        Object[] branch = new Object[2 * keys + 1];
+        for (int i = 0; i < count; i++)
+        {
+            branch[keys + i] = children.get(offset + 2 * i);
+            if (i < keys)
+                branch[i] = children.get(offset + 2 * i + 1);
+        }
+        return branch;
+    }
+
+    /**
+     * @return true if all the invariants of the tree hold, for testing
+     */
+    public static boolean isWellFormed(Object[] btree, Comparator<Object> comparator)
+    {
+        return isWellFormed(btree, comparator, null, null, depth(btree), true);
+    }
+
+    private static int depth(Object[] node)
+    {
+        int depth = 0;
+        while (!isLeaf(node))
+        {
+            node = (Object[]) node[keyCount(node)];
+            depth++;
+        }
+        return depth;
+    }
+
+    private static boolean isWellFormed(Object[] node, Comparator<Object> comparator, Object min, Object max, int depth, boolean isRoot)
+    {
+        int keys = keyCount(node);
+        if (keys > MAX_KEYS || (!isRoot && keys == 0))
+            return false;
+        if (isLeaf(node) != (depth == 0))
+            return false;
+
+        for (int i = 0; i < keys; i++)
+        {
+            if (node[i] == null || node[i] instanceof Object[])
+                return false;
+            if (i > 0 && comparator.compare(node[i - 1], node[i]) >= 0)
+                return false;
+        }
+        if (keys > 0 && ((min != null && comparator.compare(min, node[0]) >= 0)
+                         || (max != null && comparator.compare(node[keys - 1], max) >= 0)))
+            return false;
+
+        if (isLeaf(node))
+            return true;
+
+        for (int i = 0; i <= keys; i++)
+        {
+            Object childMin = i == 0 ? min : node[i - 1];
+            Object childMax = i == keys ? max : node[i];
+            if (!isWellFormed((Object[]) node[keys + i], comparator, childMin, childMax, depth - 1, false))
+                return false;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,167 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.utils.btree;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+import com.google.common.collect.AbstractIterator;
+
+import static org.apache.cassandra.utils.btree.BTree.isLeaf;
+import static org.apache.cassandra.utils.btree.BTree.keyCount;
+
+/**
+ * Iterates over the values of a BTree between two inclusive bounds, in either direction.
+ * <p/>
+ * The cursor keeps the path from the root to its current position, so it allocates nothing per value returned.
+ */
+public class Cursor<V> extends AbstractIterator<V>
+{
+    // enough for any tree we will ever build
+    private static final int MAX_DEPTH = 16;
+
+    private final Comparator<Object> comparator;
+    private final Object bound;
+    private final boolean forwards;
+
+    private final Object[][] path = new Object[MAX_DEPTH][];
+    // for a leaf on the path, the position of the next key to return going forwards, or of the key following it
+    // going backwards; for a branch, the child we have descended into
+    private final int[] indexes = new int[MAX_DEPTH];
+    private int depth;
+
+    Cursor(Object[] btree, Comparator<Object> comparator, Object lower, Object upper, boolean forwards)
+    {
+        this.comparator = comparator;
+        this.forwards = forwards;
+        this.bound = forwards ? upper : lower;
+        seek(btree, forwards ? lower : upper);
+    }
+
+    /**
+     * Positions the cursor just before (forwards) or just after (backwards) the given start value.
+     */
+    private void seek(Object[] node, Object start)
+    {
+        depth = -1;
+        while (true)
+        {
+            int keys = keyCount(node);
+            int i;
+            if (start == null)
+            {
+                i = forwards ? 0 : keys;
+            }
+            else
+            {
+                i = Arrays.binarySearch(node, 0, keys, start, comparator);
+                // going forwards we start at the first key >= start, backwards right after the last key <= start
+                if (i < 0)
+                    i = -i - 1;
+                else if (!forwards)
+                    i++;
+            }
+
+            // in a branch, the i-th child holds the values between the keys surrounding i; if start matches one
+            // of them exactly, that child has nothing in range and we will go straight back up to the key
+            path[++depth] = node;
+            indexes[depth] = i;
+            if (isLeaf(node))
+                return;
+            node = (Object[]) node[keys + i];
+        }
+    }
+
+    protected V computeNext()
+    {
+        Object next = forwards ? advance() : retreat();
+        if (next == null || (bound != null && (forwards ? comparator.compare(next, bound) > 0 : comparator.compare(next, bound) < 0)))
+            return endOfData();
+        return (V) next;
+    }
+
+    private Object advance()
+    {
+        while (depth >= 0)
+        {
+            Object[] node = path[depth];
+            int i = indexes[depth];
+            int keys = keyCount(node);
+            if (isLeaf(node))
+            {
+                if (i < keys)
+                {
+                    indexes[depth] = i + 1;
+                    return node[i];
+                }
+            }
+            else if (i < keys)
+            {
+                // we are back from the i-th child: return the key following it, then descend into the next child
+                indexes[depth] = i + 1;
+                descend((Object[]) node[keys + i + 1]);
+                return node[i];
+            }
+            depth--;
+        }
+        return null;
+    }
+
+    private Object retreat()
+    {
+        while (depth >= 0)
+        {
+            Object[] node = path[depth];
+            int i = indexes[depth];
+            if (isLeaf(node))
+            {
+                if (i > 0)
+                {
+                    indexes[depth] = i - 1;
+                    return node[i - 1];
+                }
+            }
+            else if (i > 0)
+            {
+                // we are back from the i-th child: return the key preceding it, then descend into the previous child
+                indexes[depth] = i - 1;
+                descend((Object[]) node[keyCount(node) + i - 1]);
+                return node[i - 1];
+            }
+            depth--;
+        }
+        return null;
+    }
+
+    /**
+     * Pushes the path to the first (forwards) or last (backwards) value of the given subtree.
+     */
+    private void descend(Object[] node)
+    {
+        while (true)
+        {
+            int keys = keyCount(node);
+            int i = forwards ? 0 : keys;
+            path[++depth] = node;
+            indexes[depth] = i;
+            if (isLeaf(node))
+                return;
+            node = (Object[]) node[keys + i];
+        }
+    }
+}
@@ -0,0 +1,42 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.utils.btree;
+
+/**
+ * Decides what ends up in the tree when a batch of updates is applied with BTree.update.
+ */
+public interface UpdateFunction<V>
+{
+    /**
+     * @param v the update, for which no equal value exists in the tree
+     * @return the value to insert
+     */
+    V apply(V v);
+
+    /**
+     * @param replaced the value currently in the tree
+     * @param update the update that compares equal to it
+     * @return the value to keep in its place
+     */
+    V apply(V replaced, V update);
+
+    /**
+     * @return true if the update should be abandoned, in which case BTree.update returns null
+     */
+    boolean abortEarly();
+}
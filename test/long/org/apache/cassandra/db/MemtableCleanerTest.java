@@ -34,7 +34,7 @@ import org.apache.cassandra.db.marshal.UTF8Type;
 import org.apache.cassandra.service.MigrationManager;
 import org.apache.cassandra.utils.ByteBufferUtil;
 
-public class MeteredFlusherTest extends SchemaLoader
+public class MemtableCleanerTest extends SchemaLoader
 {
     @Test
     public void testManyMemtables() throws IOException, ConfigurationException
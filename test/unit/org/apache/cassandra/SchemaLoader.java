@@ -232,7 +232,9 @@ public class SchemaLoader
                                            simple,
                                            opts_rf1,
                                            standardCFMD(ks_rcs, "CFWithoutCache").caching(CFMetaData.Caching.NONE),
-                                           standardCFMD(ks_rcs, "CachedCF").caching(CFMetaData.Caching.ALL)));
+                                           standardCFMD(ks_rcs, "CachedCF").caching(CFMetaData.Caching.ALL),
+                                           standardCFMD(ks_rcs, "CachedHeadCF").caching(CFMetaData.Caching.ALL)
+                                                                               .rowsPerPartitionToCache(10)));
 
         schema.add(KSMetaData.testMetadataNotDurable(ks_nocommit,
                                                      simple,
@@ -21,6 +21,8 @@ package org.apache.cassandra.cache;
  */
 
 
+import java.io.File;
+import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.List;
@@ -29,12 +31,21 @@ import java.util.UUID;
 import org.junit.Test;
 
 import org.apache.cassandra.SchemaLoader;
+import org.apache.cassandra.config.Schema;
 import org.apache.cassandra.db.ColumnFamily;
+import org.apache.cassandra.db.ColumnIndex;
+import org.apache.cassandra.db.DeletionTime;
+import org.apache.cassandra.db.RowIndexEntry;
+import org.apache.cassandra.db.composites.CType;
+import org.apache.cassandra.io.sstable.Descriptor;
+import org.apache.cassandra.io.sstable.IndexHelper;
+import org.apache.cassandra.io.util.DataOutputBuffer;
 
 import com.googlecode.concurrentlinkedhashmap.Weighers;
 import org.apache.cassandra.db.TreeMapBackedSortedColumns;
 
 import static org.apache.cassandra.Util.column;
+import static org.apache.cassandra.utils.ByteBufferUtil.bytes;
 import static org.junit.Assert.*;
 
 public class CacheProviderTest extends SchemaLoader
@@ -115,6 +126,64 @@ public class CacheProviderTest extends SchemaLoader
         concurrentCase(cf, cache);
     }
     
+    @Test
+    public void testSerializingKeyCache() throws IOException
+    {
+        ICache<KeyCacheKey, RowIndexEntry> cache = SerializingKeyCache.create(1024 * 1024);
+        CType type = Schema.instance.getCFMetaData(keyspaceName, cfName).comparator;
+        RowIndexEntry.Serializer serializer = type.rowIndexEntrySerializer();
+
+        ColumnFamily cf = TreeMapBackedSortedColumns.factory.create(keyspaceName, cfName);
+        for (int i = 0; i < 100; i++)
+            cf.addColumn(column("column" + i, new String(new char[100]), 1));
+        ColumnIndex index = new ColumnIndex.Builder(cf, bytes("key"), new DataOutputBuffer()).build(cf);
+        RowIndexEntry indexed = RowIndexEntry.create(42, new DeletionTime(123, 456), index);
+        RowIndexEntry shallow = serializer.onDisk(indexed, 1000);
+        // neither entry has a column index to read from a primary index
+        List<IndexHelper.IndexInfo> columnsIndex = indexed.columnsIndex(null, type);
+        assertTrue(columnsIndex.size() > 1);
+
+        // entries of sstables deserializing their column index are cached with it, those of current ones without
+        Descriptor legacy = new Descriptor("jb", new File("."), keyspaceName, cfName, 1, false);
+        Descriptor current = new Descriptor(new File("."), keyspaceName, cfName, 2, false);
+        KeyCacheKey plainKey = new KeyCacheKey(current, bytes("plain"));
+        KeyCacheKey legacyKey = new KeyCacheKey(legacy, bytes("legacy"));
+        KeyCacheKey currentKey = new KeyCacheKey(current, bytes("current"));
+        cache.put(plainKey, new RowIndexEntry(7));
+        cache.put(legacyKey, indexed);
+        cache.put(currentKey, shallow);
+
+        RowIndexEntry entry = cache.get(plainKey);
+        assertEquals(7, entry.position);
+        assertFalse(entry.isIndexed());
+
+        entry = cache.get(legacyKey);
+        assertEquals(42, entry.position);
+        assertEquals(indexed.deletionTime(), entry.deletionTime());
+        List<IndexHelper.IndexInfo> cachedColumnsIndex = entry.columnsIndex(null, type);
+        assertEquals(columnsIndex.size(), cachedColumnsIndex.size());
+        for (int i = 0; i < columnsIndex.size(); i++)
+        {
+            assertEquals(columnsIndex.get(i).offset, cachedColumnsIndex.get(i).offset);
+            assertEquals(columnsIndex.get(i).width, cachedColumnsIndex.get(i).width);
+        }
+
+        entry = cache.get(currentKey);
+        assertEquals(42, entry.position);
+        assertTrue(entry.isIndexed());
+        assertEquals(indexed.deletionTime(), entry.deletionTime());
+        assertEquals(shallow.toString(), entry.toString());
+
+        // the cache is weighed by the off-heap memory it holds
+        assertTrue(cache.weightedSize() > 0);
+        assertTrue(cache.weightedSize() <= cache.capacity());
+
+        // the entries of a dropped table are not cached
+        KeyCacheKey droppedKey = new KeyCacheKey(new Descriptor(new File("."), keyspaceName, "Dropped", 3, false), bytes("dropped"));
+        cache.put(droppedKey, new RowIndexEntry(7));
+        assertNull(cache.get(droppedKey));
+    }
+
     @Test
     public void testKeys()
     {
@@ -0,0 +1,79 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.cache;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import org.apache.cassandra.utils.ByteBufferUtil;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ChunkCacheTest
+{
+    @Test
+    public void testReadAndInvalidate()
+    {
+        ChunkCache cache = ChunkCache.instance;
+        ByteBuffer chunk = ByteBufferUtil.bytes("chunk content");
+
+        assertEquals(-1, cache.read("/some/path", 0, ByteBuffer.allocate(64)));
+        cache.put("/some/path", 0, chunk.duplicate());
+        cache.put("/some/path", 4096, chunk.duplicate());
+        cache.put("/other/path", 0, chunk.duplicate());
+
+        for (ByteBuffer buffer : Arrays.asList(ByteBuffer.allocate(64), ByteBuffer.allocateDirect(64)))
+        {
+            assertEquals(chunk.remaining(), cache.read("/some/path", 0, buffer));
+            buffer.limit(chunk.remaining());
+            assertEquals(chunk, buffer);
+        }
+
+        cache.invalidate("/some/path");
+        assertEquals(-1, cache.read("/some/path", 0, ByteBuffer.allocate(64)));
+        assertEquals(-1, cache.read("/some/path", 4096, ByteBuffer.allocate(64)));
+        assertEquals(chunk.remaining(), cache.read("/other/path", 0, ByteBuffer.allocate(64)));
+        cache.clear();
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void testReplace()
+    {
+        ChunkCache cache = ChunkCache.instance;
+        ChunkCache.Key key = new ChunkCache.Key("/some/path", 0);
+        ByteBuffer chunk = ByteBufferUtil.bytes("chunk content");
+        ByteBuffer other = ByteBufferUtil.bytes("other content");
+
+        assertFalse(cache.replace(key, chunk, other));
+        cache.put(key, chunk.duplicate());
+        assertFalse(cache.replace(key, other, other));
+        assertEquals(chunk, cache.get(key));
+        assertTrue(cache.replace(key, chunk, other));
+        assertEquals(other, cache.get(key));
+
+        // the replacement is dropped with the rest of the file
+        cache.invalidate("/some/path");
+        assertFalse(cache.containsKey(key));
+        assertEquals(0, cache.size());
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.cache;
+
+import java.io.File;
+import java.util.Set;
+
+import org.junit.Test;
+
+import org.apache.cassandra.SchemaLoader;
+import org.apache.cassandra.db.RowIndexEntry;
+import org.apache.cassandra.io.sstable.Descriptor;
+
+import static org.apache.cassandra.utils.ByteBufferUtil.bytes;
+import static org.junit.Assert.*;
+
+public class SerializingKeyCacheTest extends SchemaLoader
+{
+    private static final String KEYSPACE = "Keyspace1";
+    private static final String CF = "Standard1";
+
+    private final Descriptor desc = new Descriptor(new File("."), KEYSPACE, CF, 1, false);
+
+    private KeyCacheKey key(int i)
+    {
+        return new KeyCacheKey(desc, bytes("key" + i));
+    }
+
+    @Test
+    public void testPutGetRemove()
+    {
+        SerializingKeyCache cache = SerializingKeyCache.create(1024 * 1024);
+        for (int i = 0; i < 1000; i++)
+            cache.put(key(i), new RowIndexEntry(i));
+        assertEquals(1000, cache.size());
+        for (int i = 0; i < 1000; i++)
+            assertEquals(i, cache.get(key(i)).position);
+
+        cache.put(key(1), new RowIndexEntry(-1));
+        assertEquals(-1, cache.get(key(1)).position);
+        assertEquals(1000, cache.size());
+
+        assertFalse(cache.putIfAbsent(key(2), new RowIndexEntry(-2)));
+        assertEquals(2, cache.get(key(2)).position);
+        assertTrue(cache.putIfAbsent(key(1000), new RowIndexEntry(1000)));
+
+        assertFalse(cache.replace(key(3), new RowIndexEntry(4), new RowIndexEntry(-3)));
+        assertTrue(cache.replace(key(3), new RowIndexEntry(3), new RowIndexEntry(-3)));
+        assertEquals(-3, cache.get(key(3)).position);
+
+        cache.remove(key(4));
+        assertNull(cache.get(key(4)));
+        assertFalse(cache.containsKey(key(4)));
+        assertTrue(cache.containsKey(key(5)));
+        assertEquals(1000, cache.size());
+
+        // keys of another sstable are not mixed up
+        assertNull(cache.get(new KeyCacheKey(new Descriptor(new File("."), KEYSPACE, CF, 2, false), bytes("key5"))));
+
+        Set<KeyCacheKey> keys = cache.keySet();
+        assertEquals(1000, keys.size());
+        assertTrue(keys.contains(key(1000)));
+        assertFalse(keys.contains(key(4)));
+
+        cache.clear();
+        assertEquals(0, cache.size());
+        assertNull(cache.get(key(5)));
+    }
+
+    @Test
+    public void testEvictionKeepsHotKeys()
+    {
+        long capacity = 1024 * 1024;
+        SerializingKeyCache cache = SerializingKeyCache.create(capacity);
+        for (int i = 0; i < 100000; i++)
+        {
+            cache.put(key(i), new RowIndexEntry(i));
+            // keep reading the first keys
+            for (int j = 0; j < Math.min(i + 1, 10); j++)
+                assertEquals(j, cache.get(key(j)).position);
+        }
+
+        assertTrue(cache.size() < 100000);
+        assertTrue(cache.weightedSize() <= capacity);
+        assertEquals(99999, cache.get(key(99999)).position);
+        assertNull(cache.get(key(10)));
+
+        Set<KeyCacheKey> hotKeys = cache.hotKeySet(100);
+        assertEquals(100, hotKeys.size());
+        assertTrue(hotKeys.contains(key(0)));
+
+        // shrinking frees the oldest slabs
+        int size = cache.size();
+        cache.setCapacity(capacity / 2);
+        assertTrue(cache.weightedSize() <= capacity / 2);
+        assertTrue(cache.size() < size);
+        assertEquals(99999, cache.get(key(99999)).position);
+        assertEquals(cache.size(), cache.keySet().size());
+    }
+}
@@ -30,11 +30,13 @@ import org.apache.cassandra.db.*;
 import org.apache.cassandra.db.marshal.AsciiType;
 import org.apache.cassandra.db.marshal.UTF8Type;
 import org.apache.cassandra.io.compress.*;
+import org.apache.cassandra.service.MigrationManager;
 import org.apache.cassandra.service.StorageService;
 import org.apache.cassandra.thrift.CfDef;
 import org.apache.cassandra.thrift.ColumnDef;
 import org.apache.cassandra.thrift.IndexType;
 import org.apache.cassandra.utils.ByteBufferUtil;
+import org.apache.cassandra.utils.FilterFactory;
 
 import org.junit.Test;
 
@@ -116,6 +118,33 @@ public class CFMetaDataTest extends SchemaLoader
         }
     }
 
+    @Test
+    public void testThriftUpdateKeepsBloomFilterType() throws Exception
+    {
+        CFMetaData blocked = Schema.instance.getCFMetaData(KEYSPACE, "Standard2").clone();
+        blocked.bloomFilterType(FilterFactory.Type.BLOCKED);
+        MigrationManager.announceColumnFamilyUpdate(blocked, false);
+        assertEquals(FilterFactory.Type.BLOCKED, Schema.instance.getCFMetaData(KEYSPACE, "Standard2").getBloomFilterType());
+
+        try
+        {
+            // the CfDef has no bloom filter type, which must not reset the table's
+            CFMetaData fromThrift = CFMetaData.fromThrift(Schema.instance.getCFMetaData(KEYSPACE, "Standard2").toThrift());
+            fromThrift.comment("updated through thrift");
+            MigrationManager.announceColumnFamilyUpdate(fromThrift, true);
+            CFMetaData updated = Schema.instance.getCFMetaData(KEYSPACE, "Standard2");
+            assertEquals("updated through thrift", updated.getComment());
+            assertEquals(FilterFactory.Type.BLOCKED, updated.getBloomFilterType());
+        }
+        finally
+        {
+            // testConversionsInverses expects every table to survive a thrift round trip
+            CFMetaData standard = Schema.instance.getCFMetaData(KEYSPACE, "Standard2").clone();
+            standard.bloomFilterType(FilterFactory.Type.STANDARD);
+            MigrationManager.announceColumnFamilyUpdate(standard, false);
+        }
+    }
+
     private void checkInverses(CFMetaData cfm) throws Exception
     {
         DecoratedKey k = StorageService.getPartitioner().decorateKey(ByteBufferUtil.bytes(cfm.ksName));
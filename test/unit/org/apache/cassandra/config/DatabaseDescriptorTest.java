@@ -112,6 +112,45 @@ public class DatabaseDescriptorTest
         assertEquals("ConfigurationLoader Test", config.cluster_name);
     }
 
+    @Test
+    public void testCommitLogSyncValidation() throws Exception
+    {
+        Config config = new Config();
+        config.commitlog_sync = Config.CommitLogSync.group;
+        assertInvalidCommitLogSync(config);
+
+        config.commitlog_sync_group_window_in_ms = 15.0;
+        DatabaseDescriptor.validateCommitLogSync(config);
+
+        // only the setting of the chosen mode may be given
+        config.commitlog_sync_batch_window_in_ms = 50.0;
+        assertInvalidCommitLogSync(config);
+        config.commitlog_sync = Config.CommitLogSync.batch;
+        assertInvalidCommitLogSync(config);
+        config.commitlog_sync_group_window_in_ms = null;
+        DatabaseDescriptor.validateCommitLogSync(config);
+
+        config.commitlog_sync = Config.CommitLogSync.periodic;
+        config.commitlog_sync_batch_window_in_ms = null;
+        config.commitlog_sync_period_in_ms = 10000;
+        DatabaseDescriptor.validateCommitLogSync(config);
+        config.commitlog_sync_group_window_in_ms = 15.0;
+        assertInvalidCommitLogSync(config);
+    }
+
+    private static void assertInvalidCommitLogSync(Config config)
+    {
+        try
+        {
+            DatabaseDescriptor.validateCommitLogSync(config);
+            fail("Expected a ConfigurationException");
+        }
+        catch (ConfigurationException e)
+        {
+            // expected
+        }
+    }
+
     public static class TestLoader implements ConfigurationLoader
     {
         public Config loadConfig() throws ConfigurationException
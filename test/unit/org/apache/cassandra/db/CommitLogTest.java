@@ -21,6 +21,7 @@ package org.apache.cassandra.db;
 
 import java.io.*;
 import java.nio.ByteBuffer;
+import java.util.Collections;
 import java.util.UUID;
 import java.util.zip.CRC32;
 import java.util.zip.Checksum;
@@ -33,6 +34,8 @@ import org.apache.cassandra.Util;
 import org.apache.cassandra.config.DatabaseDescriptor;
 import org.apache.cassandra.db.commitlog.CommitLog;
 import org.apache.cassandra.db.commitlog.CommitLogDescriptor;
+import org.apache.cassandra.io.compress.LZ4Compressor;
+import org.apache.cassandra.io.util.RandomAccessReader;
 import org.apache.cassandra.net.MessagingService;
 
 import static org.apache.cassandra.utils.ByteBufferUtil.bytes;
@@ -147,7 +150,7 @@ public class CommitLogTest extends SchemaLoader
 
         // Adding new mutation on another CF, large enough (including CL entry overhead) that a new segment is created
         Mutation rm2 = new Mutation("Keyspace1", bytes("k"));
-        rm2.add("Standard2", Util.cellname("c1"), ByteBuffer.allocate((DatabaseDescriptor.getCommitLogSegmentSize()/2) - 100), 0);
+        rm2.add("Standard2", Util.cellname("c1"), ByteBuffer.allocate((DatabaseDescriptor.getCommitLogSegmentSize()/2) - 150), 0);
         CommitLog.instance.add(rm2);
         // also forces a new segment, since each entry-with-overhead is just under half the CL size
         CommitLog.instance.add(rm2);
@@ -177,6 +180,41 @@ public class CommitLogTest extends SchemaLoader
         CommitLog.instance.add(rm);
     }
 
+    @Test
+    public void testCompressedRecovery() throws Exception
+    {
+        DatabaseDescriptor.setCommitLogCompressor(LZ4Compressor.create(Collections.<String, String>emptyMap()));
+        try
+        {
+            CommitLog.instance.resetUnsafe();
+            Mutation rm = new Mutation("Keyspace1", bytes("k"));
+            rm.add("Standard1", Util.cellname("c1"), ByteBuffer.allocate(1024), 0);
+
+            // two sync sections
+            for (int i = 0; i < 10; i++)
+                CommitLog.instance.add(rm);
+            CommitLog.instance.sync(true);
+            for (int i = 0; i < 10; i++)
+                CommitLog.instance.add(rm);
+            CommitLog.instance.sync(true);
+
+            File segment = new File(DatabaseDescriptor.getCommitLogLocation(), CommitLog.instance.getActiveSegmentNames().get(0));
+            try (RandomAccessReader reader = RandomAccessReader.open(segment))
+            {
+                Assert.assertEquals(LZ4Compressor.class.getName(), CommitLogDescriptor.readHeader(reader).compressorClass);
+            }
+            // the segment is not preallocated, and 20KB of zeros compress well
+            Assert.assertTrue(segment.length() < 20 * 1024);
+
+            Assert.assertEquals(20, CommitLog.instance.recover(segment));
+        }
+        finally
+        {
+            DatabaseDescriptor.setCommitLogCompressor(null);
+            CommitLog.instance.resetUnsafe();
+        }
+    }
+
     protected void testRecoveryWithBadSizeArgument(int size, int dataSize) throws Exception
     {
         Checksum checksum = new CRC32();
@@ -208,6 +246,10 @@ public class CommitLogTest extends SchemaLoader
         File logFile = tmpFile();
         try (OutputStream lout = new FileOutputStream(logFile))
         {
+            CommitLogDescriptor desc = CommitLogDescriptor.fromFileName(logFile.getName());
+            ByteBuffer header = ByteBuffer.allocate(desc.headerSize());
+            CommitLogDescriptor.writeHeader(header, desc);
+            lout.write(header.array());
             lout.write(logData);
             //statics make it annoying to test things correctly
             CommitLog.instance.recover(new File[]{ logFile }); //CASSANDRA-1119 / CASSANDRA-1179 throw on failure*/
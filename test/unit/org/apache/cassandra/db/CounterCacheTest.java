@@ -0,0 +1,100 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.db;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import org.junit.AfterClass;
+import org.junit.Test;
+
+import org.apache.cassandra.SchemaLoader;
+import org.apache.cassandra.Util;
+import org.apache.cassandra.service.CacheService;
+import org.apache.cassandra.utils.ByteBufferUtil;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class CounterCacheTest extends SchemaLoader
+{
+    private static final String KS = "Keyspace1";
+    private static final String CF = "Counter1";
+
+    @AfterClass
+    public static void cleanup()
+    {
+        cleanupSavedCaches();
+    }
+
+    @Test
+    public void testReplicationFromCache() throws IOException
+    {
+        ColumnFamilyStore cfs = Keyspace.open(KS).getColumnFamilyStore(CF);
+        CacheService.instance.invalidateCounterCache();
+        ByteBuffer key = ByteBufferUtil.bytes("key1");
+
+        assertNull(cfs.getCachedCounter(key, Util.cellname("c1")));
+
+        // a miss reads the counter back, then caches it
+        Mutation mutation = new Mutation(KS, key);
+        mutation.addCounter(CF, Util.cellname("c1"), 1);
+        CounterMutation cm = new CounterMutation(mutation, ConsistencyLevel.ONE);
+        cm.apply();
+        assertEquals(ClockAndCount.create(1L, 1L), cfs.getCachedCounter(key, Util.cellname("c1")));
+        assertEquals(1L, ((CounterCell) cm.makeReplicationMutation().getColumnFamily(cfs.metadata.cfId).getColumn(Util.cellname("c1"))).total());
+
+        // a hit only adds the update to the cached shard
+        mutation = new Mutation(KS, key);
+        mutation.addCounter(CF, Util.cellname("c1"), 2);
+        mutation.addCounter(CF, Util.cellname("c2"), 5);
+        cm = new CounterMutation(mutation, ConsistencyLevel.ONE);
+        cm.apply();
+        assertEquals(ClockAndCount.create(2L, 3L), cfs.getCachedCounter(key, Util.cellname("c1")));
+        assertEquals(ClockAndCount.create(1L, 5L), cfs.getCachedCounter(key, Util.cellname("c2")));
+        ColumnFamily replicated = cm.makeReplicationMutation().getColumnFamily(cfs.metadata.cfId);
+        assertEquals(3L, ((CounterCell) replicated.getColumn(Util.cellname("c1"))).total());
+        assertEquals(5L, ((CounterCell) replicated.getColumn(Util.cellname("c2"))).total());
+
+        // the cache agrees with what a read returns
+        ColumnFamily cf = Util.getColumnFamily(Keyspace.open(KS), Util.dk("key1"), CF);
+        assertEquals(3L, ((CounterCell) cf.getColumn(Util.cellname("c1"))).total());
+    }
+
+    @Test
+    public void testSaveLoad() throws Exception
+    {
+        ColumnFamilyStore cfs = Keyspace.open(KS).getColumnFamilyStore(CF);
+        CacheService.instance.invalidateCounterCache();
+        ByteBuffer key = ByteBufferUtil.bytes("key2");
+
+        Mutation mutation = new Mutation(KS, key);
+        mutation.addCounter(CF, Util.cellname("c1"), 1);
+        mutation.addCounter(CF, Util.cellname("c2"), 2);
+        new CounterMutation(mutation, ConsistencyLevel.ONE).apply();
+        assertEquals(2, CacheService.instance.counterCache.size());
+
+        CacheService.instance.counterCache.submitWrite(Integer.MAX_VALUE).get();
+        CacheService.instance.invalidateCounterCache();
+        assertEquals(0, CacheService.instance.counterCache.size());
+
+        assertEquals(2, CacheService.instance.counterCache.loadSaved(cfs));
+        assertEquals(ClockAndCount.create(1L, 1L), cfs.getCachedCounter(key, Util.cellname("c1")));
+        assertEquals(ClockAndCount.create(1L, 2L), cfs.getCachedCounter(key, Util.cellname("c2")));
+    }
+}
@@ -21,7 +21,9 @@ package org.apache.cassandra.db;
  */
 
 
+import java.io.File;
 import java.net.InetAddress;
+import java.util.List;
 import java.util.Map;
 import java.util.UUID;
 import java.util.concurrent.TimeUnit;
@@ -33,6 +35,8 @@ import org.apache.cassandra.Util;
 import org.apache.cassandra.cql3.UntypedResultSet;
 import org.apache.cassandra.db.compaction.CompactionManager;
 import org.apache.cassandra.db.compaction.SizeTieredCompactionStrategy;
+import org.apache.cassandra.db.hints.Hint;
+import org.apache.cassandra.db.hints.HintsReader;
 import org.apache.cassandra.db.marshal.Int32Type;
 import org.apache.cassandra.db.marshal.UUIDType;
 import org.apache.cassandra.utils.ByteBufferUtil;
@@ -41,6 +45,7 @@ import org.apache.cassandra.utils.FBUtilities;
 import com.google.common.collect.Iterators;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
 import static org.apache.cassandra.cql3.QueryProcessor.processInternal;
 
 public class HintedHandOffTest extends SchemaLoader
@@ -66,7 +71,8 @@ public class HintedHandOffTest extends SchemaLoader
         Mutation rm = new Mutation(KEYSPACE4, ByteBufferUtil.bytes(1));
         rm.add(STANDARD1_CF, Util.cellname(COLUMN1), ByteBufferUtil.EMPTY_BYTE_BUFFER, System.currentTimeMillis());
 
-        HintedHandOffManager.instance.hintFor(rm, HintedHandOffManager.calculateHintTTL(rm), UUID.randomUUID()).apply();
+        Hint hint = new Hint(rm, System.currentTimeMillis(), HintedHandOffManager.calculateHintTTL(rm));
+        HintedHandOffManager.legacyHintFor(hint, UUID.randomUUID(), System.currentTimeMillis()).apply();
 
         // flush data to disk
         hintStore.forceBlockingFlush();
@@ -94,35 +100,70 @@ public class HintedHandOffTest extends SchemaLoader
         assertEquals(Iterators.getLast(returned.values().iterator()).intValue(), 99);
     }
 
+    @Test
+    public void testStoreHint() throws Exception
+    {
+        HintedHandOffManager.instance.hintsStore.deleteAllHints();
+        UUID hostId = UUID.randomUUID();
+
+        // insert 2 hints
+        for (int i = 0; i < 2; i++)
+        {
+            Mutation rm = new Mutation(KEYSPACE4, ByteBufferUtil.bytes(i));
+            rm.add(STANDARD1_CF, Util.cellname(COLUMN1), ByteBufferUtil.EMPTY_BYTE_BUFFER, System.currentTimeMillis());
+            HintedHandOffManager.instance.storeHint(rm, HintedHandOffManager.calculateHintTTL(rm), hostId);
+        }
+        assertEquals(1, HintedHandOffManager.instance.hintsStore.getHostIds().size());
+
+        // the file being written to is only delivered once closed
+        HintedHandOffManager.instance.flushHints();
+        assertEquals(0, HintedHandOffManager.instance.hintsStore.getFiles(hostId).size());
+        HintedHandOffManager.instance.hintsStore.closeWriter(hostId);
+        List<File> files = HintedHandOffManager.instance.hintsStore.getFiles(hostId);
+        assertEquals(1, files.size());
+
+        HintsReader reader = HintsReader.open(files.get(0));
+        try
+        {
+            List<Hint> hints = reader.readBlock();
+            assertEquals(2, hints.size());
+            assertEquals(ByteBufferUtil.bytes(0), hints.get(0).mutation.key());
+            assertEquals(ByteBufferUtil.bytes(1), hints.get(1).mutation.key());
+            assert hints.get(0).isLive(System.currentTimeMillis());
+            assertNull(reader.readBlock());
+        }
+        finally
+        {
+            reader.close();
+        }
+    }
+
     @Test(timeout = 5000)
     public void testTruncateHints() throws Exception
     {
-        Keyspace systemKeyspace = Keyspace.open("system");
-        ColumnFamilyStore hintStore = systemKeyspace.getColumnFamilyStore(SystemKeyspace.HINTS_CF);
-        hintStore.clearUnsafe();
+        HintedHandOffManager.instance.hintsStore.deleteAllHints();
 
         // insert 1 hint
         Mutation rm = new Mutation(KEYSPACE4, ByteBufferUtil.bytes(1));
         rm.add(STANDARD1_CF, Util.cellname(COLUMN1), ByteBufferUtil.EMPTY_BYTE_BUFFER, System.currentTimeMillis());
 
-        HintedHandOffManager.instance.hintFor(rm, HintedHandOffManager.calculateHintTTL(rm), UUID.randomUUID()).apply();
+        HintedHandOffManager.instance.storeHint(rm, HintedHandOffManager.calculateHintTTL(rm), UUID.randomUUID());
+        HintedHandOffManager.instance.flushHints();
 
-        assert getNoOfHints() == 1;
+        assert getNoOfHintedHosts() == 1;
 
         HintedHandOffManager.instance.truncateAllHints();
 
-        while(getNoOfHints() > 0)
+        while(getNoOfHintedHosts() > 0)
         {
             Thread.sleep(100);
         }
 
-        assert getNoOfHints() == 0;
+        assert getNoOfHintedHosts() == 0;
     }
 
-    private int getNoOfHints()
+    private int getNoOfHintedHosts()
     {
-        String req = "SELECT * FROM system.%s";
-        UntypedResultSet resultSet = processInternal(String.format(req, SystemKeyspace.HINTS_CF));
-        return resultSet.size();
+        return HintedHandOffManager.instance.listEndpointsPendingHints().size();
     }
 }
@@ -17,7 +17,9 @@
  */
 package org.apache.cassandra.db;
 
+import java.nio.ByteBuffer;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ExecutionException;
 
@@ -30,16 +32,21 @@ import org.apache.cassandra.cache.KeyCacheKey;
 import org.apache.cassandra.db.composites.*;
 import org.apache.cassandra.db.compaction.CompactionManager;
 import org.apache.cassandra.db.filter.QueryFilter;
+import org.apache.cassandra.io.sstable.IndexHelper;
+import org.apache.cassandra.io.sstable.SSTableReader;
 import org.apache.cassandra.service.CacheService;
 import org.apache.cassandra.utils.ByteBufferUtil;
+import org.apache.cassandra.utils.FBUtilities;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 public class KeyCacheTest extends SchemaLoader
 {
     private static final String KEYSPACE1 = "KeyCacheSpace";
     private static final String COLUMN_FAMILY1 = "Standard1";
     private static final String COLUMN_FAMILY2 = "Standard2";
+    private static final String COLUMN_FAMILY3 = "Standard3";
 
     @AfterClass
     public static void cleanup()
@@ -89,7 +96,13 @@ public class KeyCacheTest extends SchemaLoader
             RowIndexEntry expected = entry.getValue();
             RowIndexEntry actual = CacheService.instance.keyCache.get(entry.getKey());
             assertEquals(expected.position, actual.position);
-            assertEquals(expected.columnsIndex(), actual.columnsIndex());
+            SSTableReader sstable = null;
+            for (SSTableReader candidate : store.getSSTables())
+            {
+                if (candidate.descriptor.equals(entry.getKey().desc))
+                    sstable = candidate;
+            }
+            assertEquals(sstable.getColumnsIndex(expected), sstable.getColumnsIndex(actual));
             if (expected.isIndexed())
             {
                 assertEquals(expected.deletionTime(), actual.deletionTime());
@@ -170,6 +183,66 @@ public class KeyCacheTest extends SchemaLoader
         assertKeyCacheSize(4, KEYSPACE1, COLUMN_FAMILY1);
     }
 
+    @Test
+    public void testKeyCacheWideRow() throws Exception
+    {
+        CompactionManager.instance.disableAutoCompaction();
+
+        ColumnFamilyStore cfs = Keyspace.open(KEYSPACE1).getColumnFamilyStore(COLUMN_FAMILY3);
+        CacheService.instance.invalidateKeyCache();
+
+        // a row wide enough for its column index to have many entries
+        DecoratedKey key = Util.dk("wide");
+        Mutation rm = new Mutation(KEYSPACE1, key.key);
+        for (int i = 0; i < 1000; i++)
+            rm.add(COLUMN_FAMILY3, wideCellName(i), ByteBuffer.allocate(100), 0);
+        rm.apply();
+        cfs.forceBlockingFlush();
+
+        SSTableReader sstable = cfs.getSSTables().iterator().next();
+        RowIndexEntry entry = sstable.getPosition(key, SSTableReader.Operator.EQ);
+        List<IndexHelper.IndexInfo> columnsIndex = sstable.getColumnsIndex(entry);
+        assertTrue(columnsIndex.size() > 10);
+        readWideRow(cfs, key);
+
+        // the key cache only holds where the column index is
+        RowIndexEntry cached = CacheService.instance.keyCache.get(new KeyCacheKey(sstable.descriptor, key.key));
+        long columnsIndexSize = 0;
+        for (IndexHelper.IndexInfo info : columnsIndex)
+            columnsIndexSize += info.memorySize();
+        assertTrue(cached.memorySize() * 10 < columnsIndexSize);
+
+        CacheService.instance.keyCache.submitWrite(Integer.MAX_VALUE).get();
+        CacheService.instance.invalidateKeyCache();
+        CacheService.instance.keyCache.loadSaved(cfs);
+        assertKeyCacheSize(1, KEYSPACE1, COLUMN_FAMILY3);
+
+        RowIndexEntry loaded = CacheService.instance.keyCache.get(new KeyCacheKey(sstable.descriptor, key.key));
+        assertEquals(entry.position, loaded.position);
+        assertEquals(columnsIndex.size(), sstable.getColumnsIndex(loaded).size());
+        readWideRow(cfs, key);
+    }
+
+    private static CellName wideCellName(int i)
+    {
+        return Util.cellname(String.format("col%04d", i));
+    }
+
+    private static void readWideRow(ColumnFamilyStore cfs, DecoratedKey key)
+    {
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < 1000; i += 37)
+        {
+            int expected = Math.min(5, 1000 - i);
+            ColumnFamily cf = cfs.getColumnFamily(QueryFilter.getSliceFilter(key, COLUMN_FAMILY3, wideCellName(i), wideCellName(i + 4), false, 10, now));
+            assertEquals(expected, cf.getColumnCount());
+            cf = cfs.getColumnFamily(QueryFilter.getSliceFilter(key, COLUMN_FAMILY3, wideCellName(i + 4), wideCellName(i), true, 10, now));
+            assertEquals(expected, cf.getColumnCount());
+            cf = cfs.getColumnFamily(QueryFilter.getNamesFilter(key, COLUMN_FAMILY3, FBUtilities.singleton(wideCellName(i), cfs.getComparator()), now));
+            assertEquals(1, cf.getColumnCount());
+        }
+    }
+
     private void assertKeyCacheSize(int expected, String keyspace, String columnFamily)
     {
         int size = 0;
@@ -0,0 +1,115 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.db;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import org.apache.cassandra.SchemaLoader;
+import org.apache.cassandra.Util;
+import org.apache.cassandra.config.DatabaseDescriptor;
+import org.apache.cassandra.exceptions.ConfigurationException;
+import org.apache.cassandra.utils.OffHeapSlabAllocator;
+
+import static org.apache.cassandra.utils.ByteBufferUtil.bytes;
+import static org.junit.Assert.*;
+
+public class OffHeapMemtableTest
+{
+    private static final String KEYSPACE = "Keyspace1";
+    private static final String CF = "Standard1";
+
+    @BeforeClass
+    public static void setUp() throws ConfigurationException
+    {
+        // memtables pick their allocator when they are created, so this must come before loading the schema
+        DatabaseDescriptor.setMemtableAllocator(OffHeapSlabAllocator.class);
+        SchemaLoader.loadSchema();
+    }
+
+    @AfterClass
+    public static void tearDown()
+    {
+        SchemaLoader.stopGossiper();
+    }
+
+    private static ColumnFamilyStore store()
+    {
+        return Keyspace.open(KEYSPACE).getColumnFamilyStore(CF);
+    }
+
+    private static void write(String key, String name, String value, long timestamp)
+    {
+        Mutation rm = new Mutation(KEYSPACE, bytes(key));
+        rm.add(CF, Util.cellname(name), bytes(value), timestamp);
+        rm.apply();
+    }
+
+    @Test
+    public void testReadsCopyOnHeap() throws Exception
+    {
+        write("k1", "c1", "v1", 0);
+
+        Cell cell = Util.getColumnFamily(Keyspace.open(KEYSPACE), Util.dk("k1"), CF).getColumn(Util.cellname("c1"));
+        assertEquals(bytes("v1"), cell.value());
+        assertTrue(cell.value().hasArray());
+        assertTrue(cell.name().get(0).hasArray());
+
+        for (Row row : Util.getRangeSlice(store()))
+        {
+            assertTrue(row.key.key.hasArray());
+            for (Cell c : row.cf)
+                assertTrue(c.value().hasArray());
+        }
+    }
+
+    @Test
+    public void testOnlyAddedCellsAreCharged()
+    {
+        Memtable memtable = store().getMemtableThreadSafe();
+        write("k2", "c1", "v1", 1);
+        long size = memtable.getLiveSize();
+
+        // an overwrite replaces the cell in place
+        write("k2", "c1", "v2", 2);
+        assertEquals(size, memtable.getLiveSize());
+
+        write("k2", "c2", "v1", 2);
+        assertTrue(memtable.getLiveSize() > size);
+    }
+
+    @Test
+    public void testFreedOnceReadsAreDone()
+    {
+        ColumnFamilyStore cfs = store();
+        write("k3", "c1", "v1", 0);
+
+        ColumnFamilyStore.ViewFragment view = cfs.markReferenced(Util.dk("k3"));
+        Memtable memtable = view.memtables.get(0);
+        cfs.forceBlockingFlush();
+
+        // flushed and discarded, but still referenced by the read
+        assertTrue(memtable.acquireReference());
+        memtable.releaseReference();
+        assertEquals(bytes("v1"), memtable.getColumnFamily(Util.dk("k3")).getColumn(Util.cellname("c1")).value());
+
+        view.release();
+        assertFalse(memtable.acquireReference());
+    }
+}
@@ -30,6 +30,7 @@ import org.junit.Test;
 import org.apache.cassandra.SchemaLoader;
 import org.apache.cassandra.db.commitlog.CommitLog;
 import org.apache.cassandra.db.commitlog.CommitLogArchiver;
+import org.apache.cassandra.utils.ByteBufferUtil;
 
 import static org.apache.cassandra.Util.column;
 import static org.apache.cassandra.db.KeyspaceTest.assertColumns;
@@ -72,6 +73,36 @@ public class RecoveryManagerTest extends SchemaLoader
         assertColumns(Util.getColumnFamily(keyspace2, dk, "Standard3"), "col2");
     }
 
+    @Test
+    public void testRecoverManySections() throws IOException
+    {
+        Keyspace keyspace1 = Keyspace.open("Keyspace1");
+
+        // rewrite the same cell of each partition under the same timestamp with increasing values, syncing
+        // after every round so that the writes of a partition are spread over many sync sections
+        for (int i = 0; i < 50; i++)
+        {
+            for (int k = 0; k < 20; k++)
+            {
+                ColumnFamily cf = TreeMapBackedSortedColumns.factory.create("Keyspace1", "Standard1");
+                cf.addColumn(column("col", String.format("val%02d", i), 1L));
+                new Mutation("Keyspace1", Util.dk("manysections" + k).key, cf).apply();
+            }
+            CommitLog.instance.sync(true);
+        }
+
+        keyspace1.getColumnFamilyStore("Standard1").clearUnsafe();
+
+        CommitLog.instance.resetUnsafe(); // disassociate segments from live CL
+        CommitLog.instance.recover();
+
+        for (int k = 0; k < 20; k++)
+        {
+            ColumnFamily cf = Util.getColumnFamily(keyspace1, Util.dk("manysections" + k), "Standard1");
+            Assert.assertEquals(ByteBufferUtil.bytes("val49"), cf.getColumn(cellname("col")).value());
+        }
+    }
+
     @Test
     public void testRecoverCounter() throws IOException, ExecutionException, InterruptedException
     {
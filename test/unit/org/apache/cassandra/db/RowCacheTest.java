@@ -116,6 +116,41 @@ public class RowCacheTest extends SchemaLoader
         CacheService.instance.setRowCacheCapacityInMB(0);
     }
 
+    @Test
+    public void testRowCacheHead() throws Exception
+    {
+        CompactionManager.instance.disableAutoCompaction();
+
+        ColumnFamilyStore cachedStore = Keyspace.open(KEYSPACE).getColumnFamilyStore("CachedHeadCF");
+        CacheService.instance.invalidateRowCache();
+        CacheService.instance.setRowCacheCapacityInMB(1);
+
+        DecoratedKey key = Util.dk("key");
+        Mutation mutation = new Mutation(KEYSPACE, key.key);
+        for (int i = 0; i < 100; i++)
+            mutation.add("CachedHeadCF", Util.cellname(String.format("col%02d", i)), ByteBufferUtil.bytes("val" + i), System.currentTimeMillis());
+        mutation.applyUnsafe();
+
+        // only the first 10 cells of the partition get cached
+        ColumnFamily cf = cachedStore.getColumnFamily(key, Composites.EMPTY, Composites.EMPTY, false, 5, System.currentTimeMillis());
+        assertEquals(5, cf.getColumnCount());
+        assertEquals(10, cachedStore.getRawCachedRow(key).getColumnCount());
+
+        // queries within the cached head are served from it, the others read through to the sstables
+        cf = cachedStore.getColumnFamily(key, Util.cellname("col02"), Util.cellname("col08"), false, 100, System.currentTimeMillis());
+        assertEquals(7, cf.getColumnCount());
+        cf = cachedStore.getColumnFamily(key, Composites.EMPTY, Composites.EMPTY, false, 20, System.currentTimeMillis());
+        assertEquals(20, cf.getColumnCount());
+        cf = cachedStore.getColumnFamily(key, Util.cellname("col05"), Util.cellname("col50"), false, 100, System.currentTimeMillis());
+        assertEquals(46, cf.getColumnCount());
+        cf = cachedStore.getColumnFamily(key, Composites.EMPTY, Composites.EMPTY, true, 3, System.currentTimeMillis());
+        assertEquals(3, cf.getColumnCount());
+        assertEquals(ByteBufferUtil.bytes("col99"), cf.getReverseSortedColumns().iterator().next().name().toByteBuffer());
+
+        assertEquals(10, cachedStore.getRawCachedRow(key).getColumnCount());
+        CacheService.instance.setRowCacheCapacityInMB(0);
+    }
+
     @Test
     public void testRowCacheLoad() throws Exception
     {
@@ -0,0 +1,118 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.db.commitlog;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import org.apache.cassandra.SchemaLoader;
+import org.apache.cassandra.Util;
+import org.apache.cassandra.config.Config;
+import org.apache.cassandra.config.DatabaseDescriptor;
+import org.apache.cassandra.db.Mutation;
+import org.apache.cassandra.exceptions.ConfigurationException;
+
+import static org.apache.cassandra.utils.ByteBufferUtil.bytes;
+import static org.junit.Assert.*;
+
+public class GroupCommitLogTest
+{
+    private static final int WINDOW_MILLIS = 100;
+    private static final int WRITERS = 16;
+
+    @BeforeClass
+    public static void setUp() throws ConfigurationException
+    {
+        // the commit log picks its sync service when it starts, so this must come before loading the schema
+        DatabaseDescriptor.setCommitLogSync(Config.CommitLogSync.group);
+        DatabaseDescriptor.setCommitLogSyncGroupWindow(WINDOW_MILLIS);
+        SchemaLoader.loadSchema();
+    }
+
+    @AfterClass
+    public static void tearDown()
+    {
+        SchemaLoader.stopGossiper();
+    }
+
+    private static Mutation mutation(String key)
+    {
+        Mutation rm = new Mutation("Keyspace1", bytes(key));
+        rm.add("Standard1", Util.cellname("c1"), ByteBuffer.allocate(100), 0);
+        return rm;
+    }
+
+    @Test
+    public void testGroupIsBatch()
+    {
+        assertTrue(CommitLog.instance.executor instanceof BatchCommitLogService);
+        assertEquals(WINDOW_MILLIS, DatabaseDescriptor.getCommitLogSyncBatchWindow(), 0);
+    }
+
+    @Test
+    public void testWriteWaitsForSync()
+    {
+        long syncs = CommitLog.instance.metrics.syncLatency.count();
+        long started = System.currentTimeMillis();
+        CommitLog.instance.add(mutation("k"));
+
+        // a write is only acknowledged once a sync that started after it has completed
+        assertTrue(CommitLog.instance.executor.lastSyncedAt >= started);
+        assertTrue(CommitLog.instance.metrics.syncLatency.count() > syncs);
+    }
+
+    @Test
+    public void testWritersShareSync() throws InterruptedException
+    {
+        long syncs = CommitLog.instance.metrics.syncLatency.count();
+        final CountDownLatch start = new CountDownLatch(1);
+        Thread[] writers = new Thread[WRITERS];
+        for (int i = 0; i < WRITERS; i++)
+        {
+            final String key = "k" + i;
+            writers[i] = new Thread()
+            {
+                public void run()
+                {
+                    try
+                    {
+                        start.await();
+                    }
+                    catch (InterruptedException e)
+                    {
+                        throw new AssertionError(e);
+                    }
+                    CommitLog.instance.add(mutation(key));
+                }
+            };
+            writers[i].start();
+        }
+        start.countDown();
+        for (Thread writer : writers)
+            writer.join();
+
+        // writers arriving within the same window are released by the same fsync
+        assertTrue(CommitLog.instance.metrics.syncLatency.count() - syncs < WRITERS);
+        assertTrue(CommitLog.instance.metrics.writersPerSync.max() > 1);
+        assertEquals(0, CommitLog.instance.executor.pending.get());
+    }
+}
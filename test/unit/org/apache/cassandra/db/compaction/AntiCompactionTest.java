@@ -0,0 +1,148 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.db.compaction;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+
+import org.junit.Test;
+
+import org.apache.cassandra.SchemaLoader;
+import org.apache.cassandra.Util;
+import org.apache.cassandra.db.ColumnFamilyStore;
+import org.apache.cassandra.db.DecoratedKey;
+import org.apache.cassandra.db.Keyspace;
+import org.apache.cassandra.db.Mutation;
+import org.apache.cassandra.db.columniterator.OnDiskAtomIterator;
+import org.apache.cassandra.dht.Range;
+import org.apache.cassandra.dht.Token;
+import org.apache.cassandra.io.sstable.SSTableReader;
+import org.apache.cassandra.io.sstable.SSTableScanner;
+import org.apache.cassandra.io.sstable.metadata.MetadataType;
+import org.apache.cassandra.io.sstable.metadata.StatsMetadata;
+import org.apache.cassandra.utils.ByteBufferUtil;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class AntiCompactionTest extends SchemaLoader
+{
+    private static final String KEYSPACE = "Keyspace1";
+    private static final String CF = "Standard1";
+
+    @Test
+    public void testAntiCompaction() throws Exception
+    {
+        ColumnFamilyStore store = prepareColumnFamilyStore();
+        Collection<SSTableReader> sstables = store.getSSTables();
+        assertEquals(1, sstables.size());
+
+        // keys "1" to "4"
+        Range<Token> range = new Range<>(Util.token("0"), Util.token("4"));
+        long repairedAt = 1000;
+        CompactionManager.instance.performAntiCompaction(store, range, sstables, repairedAt);
+
+        assertEquals(2, store.getSSTables().size());
+        int repairedKeys = 0;
+        int unrepairedKeys = 0;
+        for (SSTableReader sstable : store.getSSTables())
+        {
+            assertFalse(sstables.contains(sstable));
+            SSTableScanner scanner = sstable.getScanner();
+            while (scanner.hasNext())
+            {
+                DecoratedKey key = ((OnDiskAtomIterator) scanner.next()).getKey();
+                if (sstable.isRepaired())
+                {
+                    assertTrue(range.contains(key.token));
+                    assertEquals(repairedAt, sstable.getRepairedAt());
+                    repairedKeys++;
+                }
+                else
+                {
+                    assertFalse(range.contains(key.token));
+                    unrepairedKeys++;
+                }
+            }
+            scanner.close();
+        }
+        assertEquals(4, repairedKeys);
+        assertEquals(6, unrepairedKeys);
+        assertEquals(0, store.getDataTracker().getCompacting().size());
+    }
+
+    @Test
+    public void testAntiCompactionOfContainedSSTable() throws Exception
+    {
+        ColumnFamilyStore store = prepareColumnFamilyStore();
+        Collection<SSTableReader> sstables = store.getSSTables();
+        SSTableReader sstable = sstables.iterator().next();
+        assertFalse(sstable.isRepaired());
+
+        // the sstable isn't rewritten, only its metadata is
+        Range<Token> range = new Range<>(Util.token(""), Util.token("9999"));
+        CompactionManager.instance.performAntiCompaction(store, range, sstables, 1000);
+
+        assertEquals(new ArrayList<>(sstables), new ArrayList<>(store.getSSTables()));
+        assertTrue(sstable.isRepaired());
+        assertEquals(1000, sstable.getRepairedAt());
+        assertEquals(1000, ((StatsMetadata) sstable.descriptor.getMetadataSerializer().deserialize(sstable.descriptor, MetadataType.STATS)).repairedAt);
+        assertEquals(0, store.getDataTracker().getCompacting().size());
+    }
+
+    @Test
+    public void testRepairedSSTablesAreNotCompactedWithUnrepaired() throws Exception
+    {
+        ColumnFamilyStore store = prepareColumnFamilyStore();
+        CompactionManager.instance.performAntiCompaction(store, new Range<>(Util.token("0"), Util.token("4")), store.getSSTables(), 1000);
+
+        // keep the repaired sstable apart from the unrepaired ones, which are enough to be compacted together
+        for (int i = 0; i < 3; i++)
+            insertAndFlush(store, 10);
+        SizeTieredCompactionStrategy strategy = new SizeTieredCompactionStrategy(store, store.metadata.compactionStrategyOptions);
+        AbstractCompactionTask task = strategy.getNextBackgroundTask(Integer.MAX_VALUE);
+        assertTrue(task != null);
+        for (SSTableReader sstable : task.sstables)
+            assertFalse(sstable.isRepaired());
+        store.getDataTracker().unmarkCompacting(task.sstables);
+    }
+
+    private ColumnFamilyStore prepareColumnFamilyStore() throws IOException
+    {
+        Keyspace keyspace = Keyspace.open(KEYSPACE);
+        ColumnFamilyStore store = keyspace.getColumnFamilyStore(CF);
+        store.disableAutoCompaction();
+        store.truncateBlocking();
+        insertAndFlush(store, 10);
+        return store;
+    }
+
+    private static void insertAndFlush(ColumnFamilyStore store, int keys)
+    {
+        long timestamp = System.currentTimeMillis();
+        for (int i = 0; i < keys; i++)
+        {
+            Mutation rm = new Mutation(KEYSPACE, ByteBufferUtil.bytes(Integer.toString(i)));
+            rm.add(CF, Util.cellname("0"), ByteBufferUtil.EMPTY_BYTE_BUFFER, timestamp);
+            rm.apply();
+        }
+        store.forceBlockingFlush();
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.io.compress;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Random;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class ByteBufferCompressorsTest
+{
+    private static ByteBuffer allocate(int size, boolean direct)
+    {
+        return direct ? ByteBuffer.allocateDirect(size) : ByteBuffer.allocate(size);
+    }
+
+    private void test(ICompressor compressor) throws IOException
+    {
+        byte[] data = new byte[1 << 16];
+        Random random = new Random(0);
+        // half random, half compressible
+        random.nextBytes(data);
+        for (int i = data.length / 2; i < data.length; i++)
+            data[i] = (byte) (i % 7);
+
+        ICompressor.WrappedArray compressed = new ICompressor.WrappedArray(new byte[compressor.initialCompressedBufferLength(data.length)]);
+        int compressedLength = compressor.compress(data, 0, data.length, compressed, 0);
+
+        for (boolean directInput : new boolean[]{ false, true })
+        {
+            for (boolean directOutput : new boolean[]{ false, true })
+            {
+                // exercise non-zero positions on both sides
+                ByteBuffer input = allocate(compressedLength + 3, directInput);
+                input.position(3);
+                input.put(compressed.buffer, 0, compressedLength);
+                input.position(3);
+                ByteBuffer output = allocate(data.length + 5, directOutput);
+                output.position(5);
+
+                String message = String.format("%s, direct input %b, direct output %b", compressor.getClass().getSimpleName(), directInput, directOutput);
+                assertEquals(message, data.length, ByteBufferCompressors.uncompress(compressor, input, output));
+                assertEquals(message, 3, input.position());
+                assertEquals(message, compressedLength + 3, input.limit());
+                assertEquals(message, 5, output.position());
+                assertEquals(message, data.length + 5, output.limit());
+
+                byte[] restored = new byte[data.length];
+                output.duplicate().get(restored);
+                assertTrue(message, Arrays.equals(data, restored));
+            }
+        }
+    }
+
+    @Test
+    public void testLZ4() throws IOException
+    {
+        test(LZ4Compressor.create(Collections.<String, String>emptyMap()));
+    }
+
+    @Test
+    public void testDeflate() throws IOException
+    {
+        test(DeflateCompressor.instance);
+    }
+
+    @Test
+    public void testSnappy() throws IOException
+    {
+        if (SnappyCompressor.isAvailable())
+            test(SnappyCompressor.instance);
+    }
+
+    @Test
+    public void testSupportsDirectBuffers()
+    {
+        // LZ4 and Deflate only implement ICompressor, and get copies of direct buffers
+        assertFalse(ByteBufferCompressors.supportsDirectBuffers(LZ4Compressor.create(Collections.<String, String>emptyMap())));
+        assertFalse(ByteBufferCompressors.supportsDirectBuffers(DeflateCompressor.instance));
+        assertTrue(ByteBufferCompressors.supportsDirectBuffers(SnappyCompressor.instance));
+    }
+}
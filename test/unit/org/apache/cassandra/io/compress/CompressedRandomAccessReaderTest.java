@@ -19,16 +19,22 @@
 package org.apache.cassandra.io.compress;
 
 import java.io.*;
+import java.nio.MappedByteBuffer;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Random;
+import java.util.TreeMap;
 
 import org.junit.Test;
 
+import org.apache.cassandra.cache.ChunkCache;
 import org.apache.cassandra.db.composites.*;
 import org.apache.cassandra.db.marshal.BytesType;
 import org.apache.cassandra.io.sstable.CorruptSSTableException;
 import org.apache.cassandra.io.sstable.metadata.MetadataCollector;
 import org.apache.cassandra.io.util.*;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 
@@ -178,6 +184,99 @@ public class CompressedRandomAccessReaderTest
         }
     }
 
+    @Test
+    public void testMappedSegments() throws Exception
+    {
+        testMappedSegments(LZ4Compressor.create(Collections.<String, String>emptyMap()));
+        if (SnappyCompressor.isAvailable())
+            testMappedSegments(SnappyCompressor.instance);
+    }
+
+    private void testMappedSegments(ICompressor compressor) throws Exception
+    {
+        File file = File.createTempFile("mapped", "1");
+        File metadata = new File(file.getPath() + ".meta");
+        long maxSegmentSize = MmappedSegmentedFile.MAX_SEGMENT_SIZE;
+        try
+        {
+            MetadataCollector sstableMetadataCollector = new MetadataCollector(new SimpleDenseCellNameType(BytesType.instance)).replayPosition(null);
+            CompressionParameters parameters = new CompressionParameters(compressor, 1024, Collections.<String, String>emptyMap());
+            SequentialWriter writer = new CompressedSequentialWriter(file, metadata.getPath(), false, parameters, sstableMetadataCollector);
+            byte[] data = new byte[100000];
+            Random random = new Random(0);
+            for (int i = 0; i < data.length; i++)
+                data[i] = (byte) random.nextInt(16);
+            writer.write(data);
+            writer.close();
+
+            // force the chunks to be spread over several segments
+            MmappedSegmentedFile.MAX_SEGMENT_SIZE = 4000;
+            CompressionMetadata meta = new CompressionMetadata(metadata.getPath(), file.length(), true);
+            TreeMap<Long, MappedByteBuffer> segments = CompressedMmappedSegmentedFile.createSegments(file.getPath(), meta);
+            assert segments.size() > 1;
+
+            RandomAccessReader reader = CompressedRandomAccessReader.open(file.getPath(), meta, segments, null);
+            byte[] read = new byte[data.length];
+            reader.readFully(read);
+            assert Arrays.equals(data, read);
+
+            for (int i = 0; i < 100; i++)
+            {
+                int position = random.nextInt(data.length);
+                reader.seek(position);
+                assertEquals(data[position], reader.readByte());
+            }
+            reader.close();
+            meta.close();
+        }
+        finally
+        {
+            MmappedSegmentedFile.MAX_SEGMENT_SIZE = maxSegmentSize;
+            file.delete();
+            metadata.delete();
+        }
+    }
+
+    @Test
+    public void testChunkCache() throws Exception
+    {
+        File file = File.createTempFile("chunkcache", "1");
+        File metadata = new File(file.getPath() + ".meta");
+        try
+        {
+            MetadataCollector sstableMetadataCollector = new MetadataCollector(new SimpleDenseCellNameType(BytesType.instance)).replayPosition(null);
+            CompressionParameters parameters = new CompressionParameters(LZ4Compressor.create(Collections.<String, String>emptyMap()), 1024, Collections.<String, String>emptyMap());
+            SequentialWriter writer = new CompressedSequentialWriter(file, metadata.getPath(), false, parameters, sstableMetadataCollector);
+            byte[] data = new byte[10000];
+            new Random(0).nextBytes(data);
+            writer.write(data);
+            writer.close();
+
+            CompressionMetadata meta = new CompressionMetadata(metadata.getPath(), file.length(), true);
+            CompressedPoolingSegmentedFile segmentedFile = new CompressedPoolingSegmentedFile(file.getPath(), meta);
+            long hits = ChunkCache.instance.metrics.hits.count();
+            for (int i = 0; i < 2; i++)
+            {
+                FileDataInput in = segmentedFile.getSegment(0);
+                byte[] read = new byte[data.length];
+                in.readFully(read);
+                assertArrayEquals(data, read);
+                in.close();
+            }
+            // the second pass is entirely served by the cache
+            assertEquals(hits + 10, ChunkCache.instance.metrics.hits.count());
+
+            segmentedFile.cleanup();
+            for (ChunkCache.Key key : ChunkCache.instance.keySet())
+                assert !key.path.equals(segmentedFile.path);
+        }
+        finally
+        {
+            file.delete();
+            metadata.delete();
+        }
+    }
+
     private void updateChecksum(RandomAccessFile file, long checksumOffset, byte[] checksum) throws IOException
     {
         file.seek(checksumOffset);
@@ -21,6 +21,7 @@ package org.apache.cassandra.io.sstable;
  */
 
 
+import java.io.File;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.util.*;
@@ -40,6 +41,7 @@ import org.slf4j.LoggerFactory;
 import org.apache.cassandra.OrderedJUnit4ClassRunner;
 import org.apache.cassandra.SchemaLoader;
 import org.apache.cassandra.Util;
+import org.apache.cassandra.config.CFMetaData;
 import org.apache.cassandra.config.DatabaseDescriptor;
 import org.apache.cassandra.db.*;
 import org.apache.cassandra.db.columniterator.IdentityQueryFilter;
@@ -56,7 +58,9 @@ import org.apache.cassandra.io.util.FileDataInput;
 import org.apache.cassandra.io.util.MmappedSegmentedFile;
 import org.apache.cassandra.io.util.SegmentedFile;
 import org.apache.cassandra.service.StorageService;
+import org.apache.cassandra.utils.BlockedBloomFilter;
 import org.apache.cassandra.utils.ByteBufferUtil;
+import org.apache.cassandra.utils.FilterFactory;
 import org.apache.cassandra.utils.Pair;
 
 import static org.junit.Assert.assertEquals;
@@ -269,6 +273,103 @@ public class SSTableReaderTest extends SchemaLoader
         assert target.last.equals(lastKey);
     }
 
+    @Test
+    public void testBlockedBloomFilter() throws Exception
+    {
+        Keyspace keyspace = Keyspace.open("Keyspace1");
+        ColumnFamilyStore store = keyspace.getColumnFamilyStore("Standard1");
+        store.clearUnsafe();
+        store.disableAutoCompaction();
+        store.metadata.bloomFilterType(FilterFactory.Type.BLOCKED);
+        try
+        {
+            for (int i = 0; i < 100; i++)
+            {
+                Mutation rm = new Mutation("Keyspace1", ByteBufferUtil.bytes(String.valueOf(i)));
+                rm.add("Standard1", cellname("col"), ByteBufferUtil.EMPTY_BYTE_BUFFER, System.currentTimeMillis());
+                rm.apply();
+            }
+            store.forceBlockingFlush();
+
+            SSTableReader sstable = store.getSSTables().iterator().next();
+            assertTrue(sstable.getBloomFilter() instanceof BlockedBloomFilter);
+
+            // the filter read back from Filter.db finds every key of the sstable
+            SSTableReader reopened = SSTableReader.open(sstable.descriptor);
+            assertTrue(reopened.getBloomFilter() instanceof BlockedBloomFilter);
+            for (int i = 0; i < 100; i++)
+            {
+                DecoratedKey key = Util.dk(String.valueOf(i));
+                assertTrue(reopened.getBloomFilter().isPresent(key));
+                assertNotNull(reopened.getPosition(key, SSTableReader.Operator.EQ));
+            }
+        }
+        finally
+        {
+            store.metadata.bloomFilterType(CFMetaData.DEFAULT_BLOOM_FILTER_TYPE);
+        }
+    }
+
+    @Test
+    public void testPartitionIndex() throws Exception
+    {
+        Keyspace keyspace = Keyspace.open("Keyspace1");
+        ColumnFamilyStore store = keyspace.getColumnFamilyStore("StandardLowIndexInterval");
+        store.clearUnsafe();
+        store.disableAutoCompaction();
+
+        // only the even keys are written, so that the odd ones fall between two of them
+        for (int i = 0; i < 1000; i += 2)
+        {
+            Mutation rm = new Mutation("Keyspace1", ByteBufferUtil.bytes(String.valueOf(i)));
+            rm.add("StandardLowIndexInterval", cellname("col"), ByteBufferUtil.EMPTY_BYTE_BUFFER, System.currentTimeMillis());
+            rm.apply();
+        }
+        store.forceBlockingFlush();
+
+        SSTableReader sstable = store.getSSTables().iterator().next();
+        assertTrue(sstable.components.contains(Component.PARTITION_INDEX));
+        assertEquals(500 * PartitionIndex.ENTRY_SIZE, new File(sstable.descriptor.filenameFor(Component.PARTITION_INDEX)).length());
+
+        // the same sstable, opened without its partition index, is looked up through the index summary
+        Set<Component> components = new HashSet<>(sstable.components);
+        components.remove(Component.PARTITION_INDEX);
+        SSTableReader summaryOnly = SSTableReader.open(sstable.descriptor, components, store.metadata, sstable.partitioner);
+        SSTableReader reopened = SSTableReader.open(sstable.descriptor);
+
+        for (int i = -1; i < 1001; i++)
+        {
+            DecoratedKey key = Util.dk(String.valueOf(i));
+            for (SSTableReader.Operator op : Arrays.asList(SSTableReader.Operator.EQ, SSTableReader.Operator.GE, SSTableReader.Operator.GT))
+            {
+                Long expected = position(summaryOnly.getPosition(key, op, false));
+                assertEquals(key + " " + op, expected, position(sstable.getPosition(key, op, false)));
+                assertEquals(key + " " + op, expected, position(reopened.getPosition(key, op, false)));
+            }
+            RowPosition bound = key.token.maxKeyBound();
+            assertEquals(position(summaryOnly.getPosition(bound, SSTableReader.Operator.GE, false)),
+                         position(reopened.getPosition(bound, SSTableReader.Operator.GE, false)));
+            assertEquals(summaryOnly.firstKeyBeyond(bound), reopened.firstKeyBeyond(bound));
+        }
+
+        // with a downsampled index summary, the partition index is searched over wider ranges of partitions
+        SSTableReader downsampled = sstable.cloneWithNewSummarySamplingLevel(Downsampling.MIN_SAMPLING_LEVEL);
+        store.getDataTracker().replaceReaders(Arrays.asList(sstable), Arrays.asList(downsampled));
+        for (int i = -1; i < 1001; i++)
+        {
+            DecoratedKey key = Util.dk(String.valueOf(i));
+            for (SSTableReader.Operator op : Arrays.asList(SSTableReader.Operator.EQ, SSTableReader.Operator.GE, SSTableReader.Operator.GT))
+                assertEquals(key + " " + op, position(summaryOnly.getPosition(key, op, false)), position(downsampled.getPosition(key, op, false)));
+            RowPosition bound = key.token.maxKeyBound();
+            assertEquals(summaryOnly.firstKeyBeyond(bound), downsampled.firstKeyBeyond(bound));
+        }
+    }
+
+    private static Long position(RowIndexEntry entry)
+    {
+        return entry == null ? null : entry.position;
+    }
+
     @Test
     public void testLoadingSummaryUsesCorrectPartitioner() throws Exception
     {
@@ -287,7 +388,7 @@ public class SSTableReaderTest extends SchemaLoader
 
         SegmentedFile.Builder ibuilder = SegmentedFile.getBuilder(DatabaseDescriptor.getIndexAccessMode());
         SegmentedFile.Builder dbuilder = sstable.compression
-                                          ? SegmentedFile.getCompressedBuilder()
+                                          ? SegmentedFile.getCompressedBuilder(DatabaseDescriptor.getDiskAccessMode())
                                           : SegmentedFile.getBuilder(DatabaseDescriptor.getDiskAccessMode());
         sstable.saveSummary(ibuilder, dbuilder);
 
@@ -22,6 +22,7 @@ package org.apache.cassandra.locator;
 import java.io.IOException;
 import java.net.InetAddress;
 import java.util.ArrayList;
+import java.util.Arrays;
 
 import org.apache.cassandra.exceptions.ConfigurationException;
 import org.apache.cassandra.service.StorageService;
@@ -29,6 +30,8 @@ import org.junit.Test;
 
 import org.apache.cassandra.utils.FBUtilities;
 
+import static org.junit.Assert.assertEquals;
+
 public class DynamicEndpointSnitchTest
 {
     @Test
@@ -114,4 +117,34 @@ public class DynamicEndpointSnitchTest
         order.add(host3);
         assert dsnitch.getSortedListByProximity(self, order).equals(order);
     }
+
+    @Test
+    public void testRequestsInFlight() throws InterruptedException, IOException, ConfigurationException
+    {
+        StorageService.instance.initClient();
+        SimpleSnitch ss = new SimpleSnitch();
+        DynamicEndpointSnitch dsnitch = new DynamicEndpointSnitch(ss, String.valueOf(ss.hashCode()));
+        InetAddress self = FBUtilities.getBroadcastAddress();
+        InetAddress host1 = InetAddress.getByName("127.0.0.4");
+        InetAddress host2 = InetAddress.getByName("127.0.0.2");
+
+        for (int i = 0; i < 5; i++)
+        {
+            dsnitch.receiveTiming(host1, 1L);
+            dsnitch.receiveTiming(host2, 1L);
+        }
+        Thread.sleep(150);
+
+        // host1 stops answering: it falls behind as soon as requests to it pile up, before any score update
+        for (int i = 0; i < 10; i++)
+            dsnitch.requestSent(host1);
+        assertEquals(Arrays.asList(host2, host1), dsnitch.getSortedListByProximity(self, Arrays.asList(host1, host2)));
+
+        // and gets back in front once it answers them
+        for (int i = 0; i < 10; i++)
+            dsnitch.receiveTiming(host1, 1L);
+        for (int i = 0; i < 10; i++)
+            dsnitch.requestSent(host2);
+        assertEquals(Arrays.asList(host1, host2), dsnitch.getSortedListByProximity(self, Arrays.asList(host2, host1)));
+    }
 }
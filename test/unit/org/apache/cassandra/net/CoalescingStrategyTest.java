@@ -0,0 +1,104 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.net;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.util.concurrent.Uninterruptibles;
+import org.junit.Test;
+
+import org.apache.cassandra.net.OutboundTcpConnection.QueuedMessage;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class CoalescingStrategyTest
+{
+    private static final long WINDOW = TimeUnit.MILLISECONDS.toNanos(50);
+
+    private static QueuedMessage message()
+    {
+        return new QueuedMessage(new MessageOut(MessagingService.Verb.ECHO), 0);
+    }
+
+    @Test
+    public void testDisabledDrainsWithoutWaiting() throws InterruptedException
+    {
+        BlockingQueue<QueuedMessage> backlog = new LinkedBlockingQueue<>();
+        for (int i = 0; i < 10; i++)
+            backlog.add(message());
+
+        List<QueuedMessage> out = new ArrayList<>();
+        new CoalescingStrategy.Disabled().coalesce(backlog, out, 4);
+        assertEquals(4, out.size());
+        assertEquals(6, backlog.size());
+    }
+
+    @Test
+    public void testFixedWaitsForLateMessages() throws InterruptedException
+    {
+        final BlockingQueue<QueuedMessage> backlog = new LinkedBlockingQueue<>();
+        backlog.add(message());
+        Thread producer = new Thread()
+        {
+            public void run()
+            {
+                Uninterruptibles.sleepUninterruptibly(5, TimeUnit.MILLISECONDS);
+                backlog.add(message());
+            }
+        };
+        producer.start();
+
+        List<QueuedMessage> out = new ArrayList<>();
+        new CoalescingStrategy.Fixed(WINDOW).coalesce(backlog, out, 128);
+        producer.join();
+        assertEquals(2, out.size());
+    }
+
+    @Test
+    public void testMovingAverageOnlyWaitsWhenMessagesAreClose() throws InterruptedException
+    {
+        CoalescingStrategy.MovingAverage strategy = new CoalescingStrategy.MovingAverage(WINDOW);
+
+        // nothing known yet: don't wait
+        List<QueuedMessage> drained = new ArrayList<>();
+        drained.add(message());
+        assertEquals(0, strategy.waitNanos(drained, 128));
+
+        // messages arriving in quick succession: wait, but never more than the window
+        drained.clear();
+        for (int i = 0; i < 64; i++)
+            drained.add(message());
+        long wait = strategy.waitNanos(drained, 128);
+        assertTrue(wait > 0 && wait <= WINDOW);
+
+        // messages far apart: stop waiting
+        for (int i = 0; i < 16; i++)
+        {
+            drained.clear();
+            Uninterruptibles.sleepUninterruptibly(60, TimeUnit.MILLISECONDS);
+            drained.add(message());
+            wait = strategy.waitNanos(drained, 128);
+        }
+        assertEquals(0, wait);
+    }
+}
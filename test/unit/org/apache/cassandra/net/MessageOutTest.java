@@ -0,0 +1,102 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.net;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import org.apache.cassandra.db.TypeSizes;
+import org.apache.cassandra.io.IVersionedSerializer;
+import org.apache.cassandra.io.util.DataOutputBuffer;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+public class MessageOutTest
+{
+    private static class CountingSerializer implements IVersionedSerializer<String>
+    {
+        final AtomicInteger serializations = new AtomicInteger();
+
+        public void serialize(String s, DataOutput out, int version) throws IOException
+        {
+            serializations.incrementAndGet();
+            out.writeInt(version);
+            out.writeUTF(s);
+        }
+
+        public String deserialize(DataInput in, int version) throws IOException
+        {
+            in.readInt();
+            return in.readUTF();
+        }
+
+        public long serializedSize(String s, int version)
+        {
+            return TypeSizes.NATIVE.sizeof(version) + TypeSizes.NATIVE.sizeof(s);
+        }
+    }
+
+    private static byte[] serialize(MessageOut<?> message, int version) throws IOException
+    {
+        DataOutputBuffer out = new DataOutputBuffer();
+        message.serialize(out, version);
+        assertEquals(out.getLength(), message.serializedSize(version));
+        return Arrays.copyOf(out.getData(), out.getLength());
+    }
+
+    @Test
+    public void testSerializeOnce() throws IOException
+    {
+        InetAddress from = InetAddress.getByName("127.0.0.1");
+        CountingSerializer serializer = new CountingSerializer();
+        MessageOut<String> message = new MessageOut<>(from, MessagingService.Verb.MUTATION, "payload", serializer, Collections.<String, byte[]>emptyMap());
+        MessageOut<String> once = message.serializeOnce();
+        assertSame(once, once.serializeOnce());
+
+        byte[] expected12 = serialize(message, MessagingService.VERSION_12);
+        byte[] expected21 = serialize(message, MessagingService.VERSION_21);
+        serializer.serializations.set(0);
+
+        for (int i = 0; i < 3; i++)
+        {
+            assertArrayEquals(expected21, serialize(once, MessagingService.VERSION_21));
+            assertArrayEquals(expected12, serialize(once, MessagingService.VERSION_12));
+        }
+        assertEquals(2, serializer.serializations.get());
+
+        // copies with other parameters reuse the serialized payload
+        MessageOut<String> forwarded = once.withParameter("FWD_TO", new byte[]{ 1, 2, 3 });
+        serialize(forwarded, MessagingService.VERSION_21);
+        assertEquals(2, serializer.serializations.get());
+
+        // but not copies kept after the message is written
+        MessageOut<String> kept = once.withoutSerializedPayload();
+        assertSame(once.payload, kept.payload);
+        assertArrayEquals(expected21, serialize(kept, MessagingService.VERSION_21));
+        assertEquals(3, serializer.serializations.get());
+    }
+}
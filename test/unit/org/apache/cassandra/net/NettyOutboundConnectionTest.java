@@ -0,0 +1,293 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.net;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import org.apache.cassandra.SchemaLoader;
+import org.apache.cassandra.config.DatabaseDescriptor;
+import org.apache.cassandra.utils.FBUtilities;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+public class NettyOutboundConnectionTest extends SchemaLoader
+{
+    private static final long TIMEOUT_MILLIS = 10000;
+
+    private static FakePeer peer;
+    private NettyOutboundConnection connection;
+
+    @BeforeClass
+    public static void startPeer() throws IOException
+    {
+        peer = new FakePeer();
+    }
+
+    @AfterClass
+    public static void stopPeer() throws IOException
+    {
+        peer.close();
+    }
+
+    @Before
+    public void setUp()
+    {
+        connection = new NettyOutboundConnection(new OutboundTcpConnectionPool(FBUtilities.getLocalAddress()));
+    }
+
+    @After
+    public void tearDown() throws IOException
+    {
+        connection.closeSocket(true);
+        peer.reset();
+    }
+
+    private void send(int id)
+    {
+        connection.enqueue(new MessageOut(MessagingService.Verb.GOSSIP_SHUTDOWN), id);
+    }
+
+    private void waitForPendingMessages(int expected) throws InterruptedException
+    {
+        long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        while (connection.getPendingMessages() != expected && System.currentTimeMillis() < deadline)
+            Thread.sleep(10);
+        assertEquals(expected, connection.getPendingMessages());
+    }
+
+    @Test
+    public void testConnectAndFlushBacklog() throws Exception
+    {
+        // queued while the connection is still being established
+        for (int i = 0; i < 100; i++)
+            send(i);
+
+        for (int i = 0; i < 100; i++)
+            peer.expect(1, i);
+        waitForPendingMessages(0);
+        assertEquals(100, connection.getCompletedMesssages());
+        assertEquals(0, connection.getDroppedMessages());
+        assertEquals(1, peer.connections.size());
+
+        // once connected, later messages go through the same connection
+        for (int i = 100; i < 200; i++)
+            send(i);
+        for (int i = 100; i < 200; i++)
+            peer.expect(1, i);
+        assertEquals(1, peer.connections.size());
+    }
+
+    @Test
+    public void testSoftCloseSwapsConnection() throws Exception
+    {
+        for (int i = 0; i < 10; i++)
+            send(i);
+        connection.softCloseSocket();
+        for (int i = 10; i < 20; i++)
+            send(i);
+
+        // what was queued before the close goes through the first connection, the rest through a new one
+        for (int i = 0; i < 10; i++)
+            peer.expect(1, i);
+        for (int i = 10; i < 20; i++)
+            peer.expect(2, i);
+        waitForPendingMessages(0);
+
+        // repeatedly, while messages keep coming
+        for (int round = 0; round < 5; round++)
+        {
+            int first = 100 * (round + 1);
+            for (int i = first; i < first + 50; i++)
+            {
+                send(i);
+                if (i == first + 25)
+                    connection.softCloseSocket();
+            }
+            for (int i = first; i < first + 50; i++)
+                peer.expect(i <= first + 25 ? round + 2 : round + 3, i);
+        }
+    }
+
+    @Test
+    public void testReconnectAfterPeerCloses() throws Exception
+    {
+        for (int i = 0; i < 10; i++)
+            send(i);
+        for (int i = 0; i < 10; i++)
+            peer.expect(1, i);
+
+        peer.connections.get(0).close();
+
+        // until the connection notices the peer is gone, messages may be lost or still read off the first
+        // connection; then a new one gets established
+        int id = 10;
+        long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        Received received = null;
+        while ((received == null || received.connection == 1) && System.currentTimeMillis() < deadline)
+        {
+            send(id++);
+            received = peer.received.poll(100, TimeUnit.MILLISECONDS);
+        }
+        assertNotNull("no message received after the peer closed the connection", received);
+        assertEquals(2, received.connection);
+
+        // skip whatever else was sent while waiting
+        while (peer.received.poll(100, TimeUnit.MILLISECONDS) != null) {}
+        for (int i = 1000; i < 1100; i++)
+            send(i);
+        for (int i = 1000; i < 1100; i++)
+            peer.expect(2, i);
+    }
+
+    private static class Received
+    {
+        final int connection;
+        final int id;
+
+        Received(int connection, int id)
+        {
+            this.connection = connection;
+            this.id = id;
+        }
+    }
+
+    /**
+     * Accepts connections on the storage port, answers the version handshake and records the messages it reads.
+     */
+    private static class FakePeer implements Runnable
+    {
+        final ServerSocket server = new ServerSocket();
+        final List<Socket> connections = new CopyOnWriteArrayList<>();
+        final BlockingQueue<Received> received = new LinkedBlockingQueue<>();
+
+        FakePeer() throws IOException
+        {
+            server.setReuseAddress(true);
+            server.bind(new InetSocketAddress(FBUtilities.getLocalAddress(), DatabaseDescriptor.getStoragePort()));
+            start(this);
+        }
+
+        private static void start(Runnable runnable)
+        {
+            Thread thread = new Thread(runnable);
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        void expect(int connection, int id) throws InterruptedException
+        {
+            Received message = received.poll(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+            assertNotNull("message " + id + " not received", message);
+            assertEquals(id, message.id);
+            assertEquals(connection, message.connection);
+        }
+
+        public void run()
+        {
+            try
+            {
+                while (true)
+                {
+                    final Socket socket = server.accept();
+                    final int number;
+                    synchronized (this)
+                    {
+                        connections.add(socket);
+                        number = connections.size();
+                    }
+                    start(new Runnable()
+                    {
+                        public void run()
+                        {
+                            read(socket, number);
+                        }
+                    });
+                }
+            }
+            catch (IOException e)
+            {
+                // closed
+            }
+        }
+
+        private void read(Socket socket, int number)
+        {
+            try
+            {
+                DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+                DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+                assertEquals(MessagingService.PROTOCOL_MAGIC, in.readInt());
+                int version = MessagingService.getBits(in.readInt(), 15, 8);
+                out.writeInt(MessagingService.current_version);
+                out.flush();
+                in.readInt();
+                InetAddress from = CompactEndpointSerializationHelper.deserialize(in);
+                assertEquals(FBUtilities.getBroadcastAddress(), from);
+
+                while (true)
+                {
+                    MessagingService.validateMagic(in.readInt());
+                    int id = in.readInt();
+                    in.readInt(); // timestamp
+                    MessageIn.read(in, version, id);
+                    received.add(new Received(number, id));
+                }
+            }
+            catch (IOException e)
+            {
+                // closed by either side
+            }
+        }
+
+        /**
+         * Closes the connections accepted so far, so that the next one is numbered 1.
+         */
+        synchronized void reset() throws IOException
+        {
+            for (Socket socket : connections)
+                socket.close();
+            connections.clear();
+            received.clear();
+        }
+
+        void close() throws IOException
+        {
+            server.close();
+            reset();
+        }
+    }
+}
@@ -21,6 +21,9 @@ import java.io.DataOutput;
 import java.io.IOException;
 import java.net.InetAddress;
 import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.UUID;
 
 import org.junit.After;
@@ -45,6 +48,7 @@ import org.apache.cassandra.repair.messages.RepairMessage;
 import org.apache.cassandra.repair.messages.ValidationComplete;
 import org.apache.cassandra.service.StorageService;
 import org.apache.cassandra.utils.ByteBufferUtil;
+import org.apache.cassandra.utils.MerkleTree;
 import org.apache.cassandra.utils.SimpleCondition;
 
 import static org.junit.Assert.*;
@@ -132,7 +136,10 @@ public class ValidatorTest extends SchemaLoader
             throw new UnsupportedOperationException();
         }
 
-        public void update(MessageDigest digest) { }
+        public void update(MessageDigest digest)
+        {
+            digest.update(key.key.duplicate());
+        }
 
         public ColumnStats columnStats()
         {
@@ -142,6 +149,44 @@ public class ValidatorTest extends SchemaLoader
         public void close() throws IOException { }
     }
 
+    @Test
+    public void testSegmentedValidation() throws Throwable
+    {
+        Token min = partitioner.getMinimumToken();
+        RepairJobDesc desc = new RepairJobDesc(UUID.randomUUID(), keyspace, columnFamily, new Range<>(min, min));
+        InetAddress remote = InetAddress.getByName("127.0.0.2");
+        ColumnFamilyStore cfs = Keyspace.open(keyspace).getColumnFamilyStore(columnFamily);
+
+        List<DecoratedKey> keys = new ArrayList<>();
+        for (int i = 0; i < 1000; i++)
+            keys.add(partitioner.decorateKey(ByteBufferUtil.bytes("key" + i)));
+        Collections.sort(keys);
+
+        Validator whole = new Validator(desc, remote, 0, false, Validator.HashAlgorithm.MURMUR3);
+        whole.prepare(cfs);
+        for (DecoratedKey key : keys)
+            whole.add(new CompactedRowStub(key));
+        whole.completeTree();
+
+        Validator segmented = new Validator(desc, remote, 0, false, Validator.HashAlgorithm.MURMUR3);
+        segmented.prepare(cfs);
+        List<Validator.Segment> segments = segmented.segments(4);
+        assertEquals(4, segments.size());
+        for (Validator.Segment segment : segments)
+        {
+            for (DecoratedKey key : keys)
+            {
+                if (segment.range.contains(key.token))
+                    segment.add(new CompactedRowStub(key));
+            }
+        }
+        segmented.completeTree();
+
+        // the segments build the same tree as a single pass over the range
+        assertArrayEquals(whole.tree.hash(desc.range), segmented.tree.hash(desc.range));
+        assertEquals(0, MerkleTree.difference(whole.tree, segmented.tree).size());
+    }
+
     @Test
     public void testValidatorFailed() throws Throwable
     {
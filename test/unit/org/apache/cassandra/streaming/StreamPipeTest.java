@@ -0,0 +1,159 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.streaming;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+public class StreamPipeTest
+{
+    private static byte[] chunk(int value)
+    {
+        byte[] chunk = new byte[16];
+        for (int i = 0; i < chunk.length; i++)
+            chunk[i] = (byte) (value + i);
+        return chunk;
+    }
+
+    private static Future<Void> writeAsync(ExecutorService executor, final StreamPipe pipe, final byte[] chunk)
+    {
+        return executor.submit(new Callable<Void>()
+        {
+            public Void call() throws IOException
+            {
+                pipe.write(chunk);
+                return null;
+            }
+        });
+    }
+
+    @Test
+    public void testWriteBlocksWhenFull() throws Exception
+    {
+        StreamPipe pipe = new StreamPipe();
+        for (int i = 0; i < StreamPipe.MAX_CHUNKS; i++)
+            pipe.write(chunk(i));
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try
+        {
+            Future<Void> write = writeAsync(executor, pipe, chunk(StreamPipe.MAX_CHUNKS));
+            try
+            {
+                write.get(300, TimeUnit.MILLISECONDS);
+                fail("write should block while the pipe is full");
+            }
+            catch (TimeoutException expected) {}
+
+            // consuming a chunk makes room for the blocked one
+            InputStream in = pipe.input();
+            byte[] read = new byte[16];
+            assertEquals(16, in.read(read));
+            assertArrayEquals(chunk(0), read);
+            write.get(5, TimeUnit.SECONDS);
+
+            for (int i = 1; i <= StreamPipe.MAX_CHUNKS; i++)
+            {
+                assertEquals(16, in.read(read));
+                assertArrayEquals(chunk(i), read);
+            }
+            pipe.finish();
+            assertEquals(-1, in.read());
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testWritesDiscardedAfterClose() throws Exception
+    {
+        StreamPipe pipe = new StreamPipe();
+        for (int i = 0; i < StreamPipe.MAX_CHUNKS; i++)
+            pipe.write(chunk(i));
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try
+        {
+            Future<Void> write = writeAsync(executor, pipe, chunk(StreamPipe.MAX_CHUNKS));
+            // closing the building side releases the blocked writer...
+            InputStream in = pipe.input();
+            in.close();
+            write.get(5, TimeUnit.SECONDS);
+
+            // ... and whatever is written from then on is dropped rather than blocking
+            for (int i = 0; i < 2 * StreamPipe.MAX_CHUNKS; i++)
+                pipe.write(chunk(i));
+            pipe.finish();
+            assertEquals(0, in.available());
+            assertEquals(-1, in.read());
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testFailurePropagation() throws IOException
+    {
+        StreamPipe pipe = new StreamPipe();
+        pipe.write(chunk(0));
+        IOException failure = new IOException("connection reset");
+        pipe.fail(failure);
+
+        // what was written before the failure is still read
+        InputStream in = pipe.input();
+        byte[] read = new byte[16];
+        assertEquals(16, in.read(read));
+        assertArrayEquals(chunk(0), read);
+        try
+        {
+            in.read(read);
+            fail("the failure should be rethrown to the building side");
+        }
+        catch (IOException e)
+        {
+            assertSame(failure, e);
+        }
+    }
+
+    @Test
+    public void testFailAfterClose() throws IOException
+    {
+        StreamPipe pipe = new StreamPipe();
+        pipe.input().close();
+        // must not block even though nobody reads anymore
+        for (int i = 0; i < StreamPipe.MAX_CHUNKS + 1; i++)
+            pipe.fail(new IOException());
+    }
+}
@@ -477,6 +477,40 @@ public class StreamingTransferTest extends SchemaLoader
         assertEquals(7, Util.getRangeSlice(cfs).size());
     }
 
+    @Test
+    public void testTransferEntireSSTable() throws Exception
+    {
+        final Keyspace keyspace = Keyspace.open("Keyspace1");
+        final ColumnFamilyStore cfs = keyspace.getColumnFamilyStore("Standard2");
+        for (int i = 1; i <= 100; i++)
+        {
+            Mutation rm = new Mutation("Keyspace1", ByteBufferUtil.bytes("key" + i));
+            rm.add(cfs.name, cellname("col" + i), ByteBufferUtil.bytes("value" + i), 1234);
+            rm.apply();
+        }
+        cfs.forceBlockingFlush();
+        SSTableReader sstable = cfs.getSSTables().iterator().next();
+
+        // only an sstable covered by a single range is sent as a whole
+        IPartitioner p = StorageService.getPartitioner();
+        List<Range<Token>> ranges = Arrays.asList(new Range<>(p.getMinimumToken(), p.getMinimumToken()));
+        assert EntireSSTableStreamWriter.canStream(sstable, ranges);
+        List<Range<Token>> partialRanges = Arrays.asList(new Range<>(p.getMinimumToken(), p.getToken(ByteBufferUtil.bytes("key5"))));
+        assert !EntireSSTableStreamWriter.canStream(sstable, partialRanges);
+
+        long beforeStreaming = System.currentTimeMillis();
+        new StreamPlan("StreamingTransferTest").transferRanges(LOCAL, keyspace.getName(), ranges, cfs.name).execute().get();
+        cfs.discardSSTables(beforeStreaming);
+
+        // the received sstable is a copy of the one sent
+        assertEquals(1, cfs.getSSTables().size());
+        SSTableReader streamed = cfs.getSSTables().iterator().next();
+        assertEquals(sstable.onDiskLength(), streamed.onDiskLength());
+        assertEquals(0, streamed.getSSTableLevel());
+        assertEquals(100, Util.getRangeSlice(cfs).size());
+        assert cfs.getColumnFamily(QueryFilter.getIdentityFilter(Util.dk("key42"), cfs.name, System.currentTimeMillis())).getColumn(cellname("col42")) != null;
+    }
+
     public interface Mutator
     {
         public void mutate(String key, String col, long timestamp) throws Exception;
@@ -0,0 +1,144 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.utils;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import org.apache.cassandra.db.DecoratedKey;
+import org.apache.cassandra.dht.LongToken;
+import org.apache.cassandra.dht.Murmur3Partitioner;
+import org.apache.cassandra.dht.RandomPartitioner;
+
+public class BlockedBloomFilterTest
+{
+    public IFilter bf;
+
+    public BlockedBloomFilterTest()
+    {
+        bf = FilterFactory.getFilter(10000L, FilterTestHelper.MAX_FAILURE_RATE, true, FilterFactory.Type.BLOCKED);
+    }
+
+    @Before
+    public void clear()
+    {
+        bf.clear();
+    }
+
+    @Test
+    public void testOne()
+    {
+        assert bf instanceof BlockedBloomFilter;
+        bf.add(ByteBufferUtil.bytes("a"));
+        assert bf.isPresent(ByteBufferUtil.bytes("a"));
+        assert !bf.isPresent(ByteBufferUtil.bytes("b"));
+    }
+
+    @Test
+    public void testFalsePositivesInt()
+    {
+        FilterTestHelper.testFalsePositives(bf, FilterTestHelper.intKeys(), FilterTestHelper.randomKeys2());
+    }
+
+    @Test
+    public void testFalsePositivesRandom()
+    {
+        FilterTestHelper.testFalsePositives(bf, FilterTestHelper.randomKeys(), FilterTestHelper.randomKeys2());
+    }
+
+    @Test
+    public void testFalsePositivesNarrowTokenRange()
+    {
+        // the keys of an sstable covering a small slice of the ring, as with leveled compaction, share the upper
+        // bits of their token
+        Random random = new Random(314159);
+        long start = random.nextLong();
+        for (int i = 0; i < FilterTestHelper.ELEMENTS; i++)
+            bf.add(narrowKey(random, start, i));
+
+        int fp = 0;
+        for (int i = 0; i < FilterTestHelper.ELEMENTS; i++)
+        {
+            if (bf.isPresent(narrowKey(random, start, FilterTestHelper.ELEMENTS + i)))
+                fp++;
+        }
+        double fpRatio = fp / (FilterTestHelper.ELEMENTS * BloomCalculations.probs[FilterTestHelper.spec.bucketsPerElement][FilterTestHelper.spec.K]);
+        assert fpRatio < 1.03 : fpRatio;
+    }
+
+    private static DecoratedKey narrowKey(Random random, long start, int i)
+    {
+        // a token within 2^32 of start, with a key distinct from the others
+        long token = start + (random.nextLong() >>> 32);
+        return new DecoratedKey(new LongToken(token), ByteBufferUtil.bytes(i));
+    }
+
+    @Test
+    public void testSerialize() throws IOException
+    {
+        IFilter f2 = BloomFilterTest.testSerialize(bf);
+        assert f2 instanceof BlockedBloomFilter;
+    }
+
+    @Test
+    public void testHashIsMurmur3Token()
+    {
+        Murmur3Partitioner partitioner = new Murmur3Partitioner();
+        ResetableIterator<ByteBuffer> keys = FilterTestHelper.randomKeys();
+        while (keys.hasNext())
+        {
+            ByteBuffer key = keys.next();
+            assert BlockedBloomFilter.hash(key) == partitioner.getToken(key).token;
+        }
+        assert BlockedBloomFilter.hash(ByteBufferUtil.EMPTY_BYTE_BUFFER) == partitioner.getMinimumToken().token;
+    }
+
+    @Test
+    public void testDecoratedKeys()
+    {
+        // keys added either way are found either way, whatever the partitioner
+        Murmur3Partitioner murmur3 = new Murmur3Partitioner();
+        RandomPartitioner random = new RandomPartitioner();
+        ResetableIterator<ByteBuffer> keys = FilterTestHelper.randomKeys();
+        boolean decorated = false;
+        while (keys.hasNext())
+        {
+            ByteBuffer key = keys.next();
+            if (decorated)
+                bf.add(murmur3.decorateKey(key));
+            else
+                bf.add(key);
+            decorated = !decorated;
+        }
+
+        keys.reset();
+        while (keys.hasNext())
+        {
+            ByteBuffer key = keys.next();
+            DecoratedKey murmur3Key = murmur3.decorateKey(key);
+            DecoratedKey randomKey = random.decorateKey(key);
+            assert bf.isPresent(key);
+            assert bf.isPresent(murmur3Key);
+            assert bf.isPresent(randomKey);
+        }
+    }
+}
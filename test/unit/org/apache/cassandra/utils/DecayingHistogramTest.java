@@ -0,0 +1,75 @@
+/*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+*
+*    http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+package org.apache.cassandra.utils;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class DecayingHistogramTest
+{
+    @Test
+    public void testPercentile()
+    {
+        DecayingHistogram histogram = new DecayingHistogram();
+        assertEquals(0, histogram.percentile(0.5));
+
+        for (int i = 0; i < 9; i++)
+            histogram.add(1);
+        histogram.add(10);
+        assertEquals(1, histogram.percentile(0.5));
+        assertEquals(1, histogram.percentile(0.9));
+        assertEquals(10, histogram.percentile(0.99));
+        assertEquals(10.0, histogram.count(), 0.001);
+    }
+
+    @Test
+    public void testDecay()
+    {
+        DecayingHistogram histogram = new DecayingHistogram();
+        for (int i = 0; i < 10; i++)
+            histogram.add(1);
+        histogram.decay(0.1);
+        assertEquals(1.0, histogram.count(), 0.001);
+
+        // newer values outweigh the older ones
+        for (int i = 0; i < 2; i++)
+            histogram.add(103);
+        assertEquals(103, histogram.percentile(0.5));
+        assertArrayEquals(new long[]{ 1, 103, 103 }, histogram.values());
+    }
+
+    @Test
+    public void testOverflow()
+    {
+        DecayingHistogram histogram = new DecayingHistogram(new long[]{ 1, 2 });
+        histogram.add(100);
+        assertEquals(2, histogram.percentile(0.5));
+    }
+
+    @Test
+    public void testClear()
+    {
+        DecayingHistogram histogram = new DecayingHistogram();
+        histogram.add(5);
+        histogram.clear();
+        assertEquals(0.0, histogram.count(), 0.0);
+        assertEquals(0, histogram.percentile(0.9));
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.utils;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class MemtablePoolTest
+{
+    @Test
+    public void testAccounting()
+    {
+        MemtablePool pool = new MemtablePool(1000, 1.0, new NoopCleaner());
+        MemtablePool.SubPool sub1 = pool.newSubPool();
+        MemtablePool.SubPool sub2 = pool.newSubPool();
+
+        sub1.allocate(100);
+        sub2.allocate(200);
+        assertEquals(100, sub1.owns());
+        assertEquals(300, pool.allocated());
+        assertEquals(0, pool.reclaiming());
+
+        sub1.markReclaiming();
+        sub1.allocate(50);
+        assertEquals(150, pool.reclaiming());
+
+        sub1.release();
+        sub1.release();
+        assertEquals(0, sub1.owns());
+        assertEquals(200, pool.allocated());
+        assertEquals(0, pool.reclaiming());
+    }
+
+    @Test
+    public void testHeapAllocatorReserves()
+    {
+        MemtablePool pool = new MemtablePool(1 << 20, 1.0, new NoopCleaner());
+        HeapAllocator allocator = new HeapAllocator();
+        allocator.setPool(pool.newSubPool());
+        allocator.clone(ByteBuffer.allocate(10));
+        assertEquals(10, pool.allocated());
+    }
+
+    @Test
+    public void testCleanerRunsAboveThreshold() throws InterruptedException
+    {
+        final CountDownLatch cleaned = new CountDownLatch(1);
+        final AtomicReference<MemtablePool.SubPool> toClean = new AtomicReference<>();
+        MemtablePool pool = new MemtablePool(1000, 0.5, new Callable<Boolean>()
+        {
+            public Boolean call()
+            {
+                toClean.get().markReclaiming();
+                cleaned.countDown();
+                return true;
+            }
+        });
+        MemtablePool.SubPool sub = pool.newSubPool();
+        toClean.set(sub);
+
+        sub.allocate(400);
+        assertFalse(pool.needsCleaning());
+        sub.allocate(200);
+        assertTrue(cleaned.await(10, TimeUnit.SECONDS));
+        assertFalse(pool.needsCleaning());
+    }
+
+    @Test
+    public void testAwaitRoomBlocksUntilReleased() throws InterruptedException
+    {
+        MemtablePool pool = new MemtablePool(1000, 1.0, new NoopCleaner());
+        final MemtablePool.SubPool sub = pool.newSubPool();
+        sub.allocate(1000);
+        assertTrue(pool.isExhausted());
+
+        Thread releaser = new Thread()
+        {
+            public void run()
+            {
+                try
+                {
+                    Thread.sleep(100);
+                }
+                catch (InterruptedException e)
+                {
+                    throw new AssertionError(e);
+                }
+                sub.release();
+            }
+        };
+        releaser.start();
+        pool.awaitRoom();
+        assertEquals(0, pool.allocated());
+        releaser.join();
+    }
+
+    private static class NoopCleaner implements Callable<Boolean>
+    {
+        public Boolean call()
+        {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,64 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.utils;
+
+import java.nio.ByteBuffer;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class OffHeapSlabAllocatorTest
+{
+    @Test
+    public void testCloneIsOffHeap()
+    {
+        OffHeapSlabAllocator allocator = new OffHeapSlabAllocator();
+        assertTrue(allocator.isOffHeap());
+
+        ByteBuffer source = ByteBufferUtil.bytes("abcdef");
+        ByteBuffer cloned = allocator.clone(source);
+        assertTrue(cloned.isDirect());
+        assertFalse(cloned.hasArray());
+        assertEquals(source, cloned);
+        assertEquals(0, ByteBufferUtil.compareUnsigned(source, cloned));
+    }
+
+    @Test
+    public void testExactAccounting()
+    {
+        OffHeapSlabAllocator allocator = new OffHeapSlabAllocator();
+        assertEquals(0, allocator.getMinimumSize());
+
+        // small allocations share the first region
+        allocator.allocate(10);
+        allocator.allocate(1000);
+        assertEquals(1024 * 1024, allocator.getMinimumSize());
+
+        // large allocations are not slabbed but still accounted for
+        allocator.allocate(200 * 1024);
+        assertEquals(1024 * 1024 + 200 * 1024, allocator.getMinimumSize());
+
+        // filling the first region forces a second one
+        for (int i = 0; i < 11; i++)
+            allocator.allocate(100 * 1024);
+        assertEquals(2 * 1024 * 1024 + 200 * 1024, allocator.getMinimumSize());
+    }
+}
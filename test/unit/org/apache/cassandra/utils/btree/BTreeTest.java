@@ -0,0 +1,184 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.utils.btree;
+
+import java.util.*;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class BTreeTest
+{
+    private static final Comparator<Object> CMP = new Comparator<Object>()
+    {
+        public int compare(Object o1, Object o2)
+        {
+            return Integer.compare((Integer) o1, (Integer) o2);
+        }
+    };
+
+    private static final Random random = new Random(42);
+
+    @Test
+    public void testBuildAndFind()
+    {
+        for (int size : new int[]{ 0, 1, 32, 33, 34, 100, 1089, 1090, 50000 })
+        {
+            List<Integer> values = range(0, size, 2);
+            Object[] btree = BTree.build(values, CMP);
+            assertTrue(BTree.isWellFormed(btree, CMP));
+            assertEquals(values.size(), BTree.size(btree));
+            for (int i = 0; i < size; i++)
+            {
+                Integer found = BTree.find(btree, CMP, i);
+                if (i % 2 == 0)
+                    assertEquals(Integer.valueOf(i), found);
+                else
+                    assertNull(found);
+            }
+        }
+    }
+
+    @Test
+    public void testRandomUpdates()
+    {
+        TreeSet<Integer> expected = new TreeSet<>();
+        Object[] btree = BTree.empty();
+        for (int round = 0; round < 200; round++)
+        {
+            TreeSet<Integer> batch = new TreeSet<>();
+            int batchSize = 1 + random.nextInt(round % 10 == 0 ? 2000 : 20);
+            for (int i = 0; i < batchSize; i++)
+                batch.add(random.nextInt(100000));
+
+            Object[] previous = btree;
+            List<Integer> previousContent = toList(BTree.<Integer>slice(previous, true));
+
+            btree = BTree.update(btree, CMP, batch, null);
+            expected.addAll(batch);
+
+            assertTrue(BTree.isWellFormed(btree, CMP));
+            assertEquals(expected.size(), BTree.size(btree));
+            assertEquals(new ArrayList<>(expected), toList(BTree.<Integer>slice(btree, true)));
+            // the original tree is left untouched
+            assertEquals(previousContent, toList(BTree.<Integer>slice(previous, true)));
+        }
+    }
+
+    @Test
+    public void testUpdateFunction()
+    {
+        Object[] btree = BTree.build(range(0, 100, 1), CMP);
+        final int[] inserted = new int[1];
+        final int[] replaced = new int[1];
+        UpdateFunction<Integer> updateF = new UpdateFunction<Integer>()
+        {
+            public Integer apply(Integer v)
+            {
+                inserted[0]++;
+                return v;
+            }
+
+            public Integer apply(Integer replacedValue, Integer update)
+            {
+                replaced[0]++;
+                return replacedValue;
+            }
+
+            public boolean abortEarly()
+            {
+                return false;
+            }
+        };
+        btree = BTree.update(btree, CMP, range(50, 150, 1), updateF);
+        assertEquals(50, inserted[0]);
+        assertEquals(50, replaced[0]);
+        assertEquals(150, BTree.size(btree));
+    }
+
+    @Test
+    public void testAbort()
+    {
+        Object[] btree = BTree.build(range(0, 100, 1), CMP);
+        UpdateFunction<Integer> abort = new UpdateFunction<Integer>()
+        {
+            public Integer apply(Integer v)
+            {
+                return v;
+            }
+
+            public Integer apply(Integer replaced, Integer update)
+            {
+                return update;
+            }
+
+            public boolean abortEarly()
+            {
+                return true;
+            }
+        };
+        assertNull(BTree.update(btree, CMP, range(0, 10, 1), abort));
+    }
+
+    @Test
+    public void testSlices()
+    {
+        for (int size : new int[]{ 0, 1, 10, 33, 1000, 5000 })
+        {
+            List<Integer> values = range(0, size * 2, 2);
+            Object[] btree = BTree.build(values, CMP);
+            TreeSet<Integer> set = new TreeSet<>(values);
+
+            for (int i = 0; i < 200; i++)
+            {
+                int a = random.nextInt(size * 2 + 2) - 1;
+                int b = a + random.nextInt(size * 2 + 2);
+                Integer lower = random.nextInt(10) == 0 ? null : a;
+                Integer upper = random.nextInt(10) == 0 ? null : b;
+
+                NavigableSet<Integer> expected = set;
+                if (lower != null)
+                    expected = expected.tailSet(lower, true);
+                if (upper != null)
+                    expected = expected.headSet(upper, true);
+
+                assertEquals(new ArrayList<>(expected), toList(BTree.<Integer>slice(btree, CMP, lower, upper, true)));
+                assertEquals(new ArrayList<>(expected.descendingSet()), toList(BTree.<Integer>slice(btree, CMP, lower, upper, false)));
+            }
+        }
+    }
+
+    private static List<Integer> range(int from, int to, int step)
+    {
+        List<Integer> list = new ArrayList<>();
+        for (int i = from; i < to; i += step)
+            list.add(i);
+        return list;
+    }
+
+    private static <V> List<V> toList(Iterator<V> iter)
+    {
+        List<V> list = new ArrayList<>();
+        while (iter.hasNext())
+            list.add(iter.next());
+        return list;
+    }
+}